@@ -0,0 +1,90 @@
+/**
+ * AckedTimestampedObject.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+
+/**
+ * A {@link TimestampedObject} logged by {@link ObjectLogger#logAndAck(Object)}
+ * which carries the {@link PersistFuture} to complete once it is persisted.
+ * The {@link PersistFuture} is not serialised.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class AckedTimestampedObject<T> extends TimestampedObject<T> {
+
+	private final PersistFuture persistFuture;
+
+	public AckedTimestampedObject(long logTime, T obj,
+			PersistFuture persistFuture) {
+		super(logTime, obj);
+		this.persistFuture = persistFuture;
+	}
+
+	/**
+	 * @return the {@link PersistFuture} to complete once persisted.
+	 */
+	@JsonIgnore
+	public PersistFuture getPersistFuture() {
+		return persistFuture;
+	}
+
+	/**
+	 * Completes the {@link PersistFuture} of the given object if it has one.
+	 * 
+	 * @param object
+	 *            The {@link TimestampedObject} which was persisted
+	 */
+	static void persisted(TimestampedObject<?> object) {
+		if (object instanceof AckedTimestampedObject) {
+			((AckedTimestampedObject<?>) object).persistFuture.complete();
+		}
+	}
+
+	/**
+	 * Completes the {@link PersistFuture}s of the given batch.
+	 * 
+	 * @param batch
+	 *            The {@link TimestampedObject}s which were persisted
+	 */
+	static void persisted(List<TimestampedObject<?>> batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			persisted(batch.get(i));
+		}
+	}
+
+	/**
+	 * Fails the {@link PersistFuture} of the given object if it has one.
+	 * 
+	 * @param object
+	 *            The {@link TimestampedObject} which was not persisted
+	 * @param failure
+	 *            Why it was not persisted
+	 */
+	static void failed(TimestampedObject<?> object, Exception failure) {
+		if (object instanceof AckedTimestampedObject) {
+			((AckedTimestampedObject<?>) object).persistFuture.fail(failure);
+		}
+	}
+
+	/**
+	 * Fails the {@link PersistFuture}s of the given batch.
+	 * 
+	 * @param batch
+	 *            The {@link TimestampedObject}s which were not persisted
+	 * @param failure
+	 *            Why they were not persisted
+	 */
+	static void failed(List<TimestampedObject<?>> batch, Exception failure) {
+		for (int i = 0; i < batch.size(); i++) {
+			failed(batch.get(i), failure);
+		}
+	}
+
+}
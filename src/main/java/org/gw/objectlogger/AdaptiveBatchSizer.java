@@ -0,0 +1,104 @@
+package org.gw.objectlogger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link IBatchSizer} which tunes the batch size so that each call to
+ * {@link IDataSource#persist(java.util.List)} takes about the target latency.
+ * A batch which takes longer than the target shrinks the batch size in
+ * proportion. A full batch which takes less grows it in proportion, at most
+ * doubling each time, within <code>minBatchSize</code> and
+ * <code>maxBatchSize</code>. A batch which was not full says little about how
+ * long a bigger one would take, so it only ever shrinks the batch size.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class AdaptiveBatchSizer implements IBatchSizer {
+
+	private final long targetNanos;
+
+	private final int minBatchSize;
+
+	private final int maxBatchSize;
+
+	private int batchSize;
+
+	/**
+	 * Creates an {@link AdaptiveBatchSizer} with batches between 1 and 10000.
+	 * 
+	 * @param targetLatency
+	 *            The target time to persist each batch
+	 * @param unit
+	 *            The {@link TimeUnit} of the target latency
+	 */
+	public AdaptiveBatchSizer(long targetLatency, TimeUnit unit) {
+		this(targetLatency, unit, 1, 10000);
+	}
+
+	/**
+	 * @param targetLatency
+	 *            The target time to persist each batch
+	 * @param unit
+	 *            The {@link TimeUnit} of the target latency
+	 * @param minBatchSize
+	 *            The smallest batch size to use
+	 * @param maxBatchSize
+	 *            The largest batch size to use
+	 */
+	public AdaptiveBatchSizer(long targetLatency, TimeUnit unit,
+			int minBatchSize, int maxBatchSize) {
+		if (targetLatency <= 0) {
+			throw new IllegalArgumentException(
+					"targetLatency must be greater than 0");
+		}
+		if (minBatchSize < 1 || maxBatchSize < minBatchSize) {
+			throw new IllegalArgumentException(
+					"Expected 1 <= minBatchSize <= maxBatchSize, found "
+							+ minBatchSize + " and " + maxBatchSize);
+		}
+		this.targetNanos = unit.toNanos(targetLatency);
+		this.minBatchSize = minBatchSize;
+		this.maxBatchSize = maxBatchSize;
+		this.batchSize = minBatchSize;
+	}
+
+	@Override
+	public int nextBatchSize() {
+		return batchSize;
+	}
+
+	@Override
+	public void batchPersisted(int size, long persistNanos) {
+		if (size <= 0) {
+			return;
+		}
+		double next;
+		if (persistNanos > targetNanos) {
+			next = (double) size * targetNanos / persistNanos;
+		} else if (size >= batchSize) {
+			next = Math.min(size * 2.0,
+					(double) size * targetNanos / Math.max(persistNanos, 1));
+		} else {
+			return;
+		}
+
+		if (next < minBatchSize) {
+			batchSize = minBatchSize;
+		} else if (next > maxBatchSize) {
+			batchSize = maxBatchSize;
+		} else {
+			batchSize = (int) next;
+		}
+	}
+
+	/**
+	 * @return the target time in nanoseconds to persist each batch
+	 */
+	public long getTargetNanos() {
+		return targetNanos;
+	}
+
+}
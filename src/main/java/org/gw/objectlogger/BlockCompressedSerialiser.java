@@ -0,0 +1,369 @@
+package org.gw.objectlogger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the records of a {@link LengthPrefixedRecordSerialiser} in
+ * blocks. Records are gathered into a block of up to the block size (64KB by
+ * default) uncompressed, and each block is deflated on its own and written
+ * as its compressed length, its uncompressed length and the deflated
+ * records. Each write ends its last block, so everything written is in the
+ * file when the write returns, and appending never touches earlier blocks.
+ * A small write therefore makes a small block which deflates poorly, and a
+ * block of a single record is larger than the record, so this pays off for
+ * batches of a hundred or more records.
+ * Readers inflate one block at a time, and can skip a block by its length
+ * without inflating it. A {@link TimeIndex} of the block offsets is kept
+ * beside each file, so a range of log times is read by seeking to the blocks
+ * which may hold it. A large file is split for parallel reads by stepping
+ * over the block headers; the file handling is shared with the record
+ * serialiser by {@link FramedFileSerialiser}. A {@link RecordFilter} is
+ * applied to each record by the record serialiser as its block is read.
+ * <p>
+ * The extension is the extension of the record serialiser followed by "z",
+ * e.g. "smilez".
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class BlockCompressedSerialiser extends FramedFileSerialiser {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(BlockCompressedSerialiser.class);
+
+	/**
+	 * The default uncompressed size of a block
+	 */
+	public static final int defaultBlockSize = 64 * 1024;
+
+	/**
+	 * The size of a block header: the compressed and uncompressed lengths.
+	 */
+	static final int headerLength = 8;
+
+	private final LengthPrefixedRecordSerialiser records;
+
+	private final int blockSize;
+
+	private final Deflater deflater;
+
+	/**
+	 * The records of the block being gathered, each prefixed by its length.
+	 */
+	private final ByteArrayBuffer block;
+
+	/**
+	 * The number of records in the block and their earliest and latest log
+	 * time.
+	 */
+	private int blockRecords;
+	private long blockFirstLogTime;
+	private long blockLastLogTime;
+
+	private byte[] compressed;
+
+	public BlockCompressedSerialiser(LengthPrefixedRecordSerialiser records) {
+		this(records, defaultBlockSize, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * @param records
+	 *            The serialiser whose records are compressed.
+	 * @param blockSize
+	 *            The uncompressed size at which a block is ended. A record
+	 *            larger than this makes a block of its own.
+	 * @param level
+	 *            The {@link Deflater} compression level.
+	 */
+	public BlockCompressedSerialiser(LengthPrefixedRecordSerialiser records,
+			int blockSize, int level) {
+		super(headerLength, "block");
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("blockSize must be positive");
+		}
+		this.records = records;
+		this.blockSize = blockSize;
+		this.deflater = new Deflater(level);
+		this.block = new ByteArrayBuffer(blockSize + 1024);
+		this.compressed = new byte[blockSize / 2];
+	}
+
+	/**
+	 * Writes the object in a block of its own.
+	 */
+	@Override
+	public void write(TimestampedObject<?> object) throws IOException,
+			SerialisationException {
+		checkOpen();
+		if (object == null) {
+			return;
+		}
+		resetBlock();
+		append(object);
+		endBlock();
+		flush();
+	}
+
+	@Override
+	public void write(List<TimestampedObject<?>> batch) throws IOException,
+			SerialisationException {
+		checkOpen();
+		if (batch == null || batch.isEmpty()) {
+			return;
+		}
+		// Drop anything left by a write which failed
+		resetBlock();
+		for (TimestampedObject<?> object : batch) {
+			if (object != null) {
+				append(object);
+			}
+		}
+		endBlock();
+		flush();
+	}
+
+	/**
+	 * Writes records encoded by {@link #getEncoder()}, the encoder of the
+	 * record serialiser.
+	 */
+	@Override
+	public void writeEncoded(List<TimestampedObject<?>> batch,
+			List<byte[]> encoded) throws IOException {
+		checkOpen();
+		resetBlock();
+		for (int i = 0; i < encoded.size(); i++) {
+			byte[] data = encoded.get(i);
+			writeInt(block, data.length);
+			block.write(data, 0, data.length);
+			added(batch.get(i));
+			if (block.size() >= blockSize) {
+				endBlock();
+			}
+		}
+		endBlock();
+		flush();
+	}
+
+	/**
+	 * Encodes the object into the block behind a length prefix, which is
+	 * filled in once the length is known.
+	 */
+	private void append(TimestampedObject<?> object) throws IOException,
+			SerialisationException {
+		int start = block.size();
+		writeInt(block, 0);
+		try {
+			records.encode(object, block);
+		} catch (SerialisationException e) {
+			block.truncate(start);
+			throw e;
+		}
+		int length = block.size() - start
+				- LengthPrefixedRecordSerialiser.prefixLength;
+		byte[] array = block.array();
+		array[start] = (byte) (length >>> 24);
+		array[start + 1] = (byte) (length >>> 16);
+		array[start + 2] = (byte) (length >>> 8);
+		array[start + 3] = (byte) length;
+		added(object);
+		if (block.size() >= blockSize) {
+			endBlock();
+		}
+	}
+
+	/**
+	 * Counts an object added to the block.
+	 */
+	private void added(TimestampedObject<?> object) {
+		blockRecords++;
+		blockFirstLogTime = Math.min(blockFirstLogTime,
+				object.getLogTimeMillis());
+		blockLastLogTime = Math.max(blockLastLogTime, object.getLogTimeMillis());
+	}
+
+	private void resetBlock() {
+		block.reset();
+		blockRecords = 0;
+		blockFirstLogTime = Long.MAX_VALUE;
+		blockLastLogTime = Long.MIN_VALUE;
+	}
+
+	private static void writeInt(ByteArrayBuffer buffer, int value) {
+		buffer.write(value >>> 24);
+		buffer.write(value >>> 16);
+		buffer.write(value >>> 8);
+		buffer.write(value);
+	}
+
+	/**
+	 * Deflates the block and writes it out with its header.
+	 */
+	private void endBlock() throws IOException {
+		int length = block.size();
+		if (length == 0) {
+			return;
+		}
+		deflater.reset();
+		deflater.setInput(block.array(), 0, length);
+		deflater.finish();
+		int compressedLength = 0;
+		while (!deflater.finished()) {
+			if (compressedLength == compressed.length) {
+				byte[] grown = new byte[compressed.length * 2];
+				System.arraycopy(compressed, 0, grown, 0, compressedLength);
+				compressed = grown;
+			}
+			compressedLength += deflater.deflate(compressed, compressedLength,
+					compressed.length - compressedLength);
+		}
+		DataOutputStream output = getOutput();
+		output.writeInt(compressedLength);
+		output.writeInt(length);
+		output.write(compressed, 0, compressedLength);
+		getIndex().add(blockFirstLogTime, blockLastLogTime, blockRecords,
+				written(headerLength + compressedLength));
+		resetBlock();
+	}
+
+	@Override
+	public ITimestampedObjectEncoder getEncoder() {
+		return records.getEncoder();
+	}
+
+	@Override
+	<T> ITimestampedObjectCursor<T> newCursor(File file, Class<T> type,
+			RecordFilter filter, long length, InputStream input) {
+		return new BlockCursor<T>(file, type, filter, length, input);
+	}
+
+	/**
+	 * Returns the extension of the record serialiser followed by "z".
+	 */
+	@Override
+	public String getExtension() {
+		return records.getExtension() + "z";
+	}
+
+	/**
+	 * Reads a file a block at a time, inflating each block into a reused
+	 * buffer and decoding its records as they are asked for.
+	 */
+	private class BlockCursor<T> extends FrameCursor<T> {
+
+		private final Inflater inflater = new Inflater();
+		private byte[] compressedBlock = new byte[1024];
+		private byte[] block = new byte[1024];
+		private int blockLength;
+		private int position;
+
+		BlockCursor(File file, Class<T> type, RecordFilter filter,
+				long length, InputStream input) {
+			super(file, type, filter, length, input);
+		}
+
+		@Override
+		TimestampedObject<T> readNext() throws IOException {
+			while (true) {
+				while (position >= blockLength) {
+					if (!readBlock()) {
+						return null;
+					}
+				}
+				int length = ((block[position] & 0xff) << 24)
+						| ((block[position + 1] & 0xff) << 16)
+						| ((block[position + 2] & 0xff) << 8)
+						| (block[position + 3] & 0xff);
+				position += LengthPrefixedRecordSerialiser.prefixLength;
+				if (length < 0 || position + length > blockLength) {
+					throw new IOException("Corrupt record in a block of "
+							+ file.getAbsolutePath());
+				}
+				TimestampedObject<T> object = filter == null ? records.decode(
+						type, block, position, length) : records.decode(type,
+						block, position, length, filter);
+				position += length;
+				if (object != null) {
+					return object;
+				}
+			}
+		}
+
+		/**
+		 * Reads and inflates the next block.
+		 *
+		 * @return false at the end of the file or a truncated block.
+		 */
+		private boolean readBlock() throws IOException {
+			int compressedLength;
+			int length;
+			try {
+				compressedLength = input.readInt();
+				length = input.readInt();
+			} catch (EOFException e) {
+				return false;
+			}
+			remaining -= headerLength;
+			if (compressedLength < 0 || compressedLength > remaining
+					|| length < 0) {
+				logger.warn("Stopping at a truncated or corrupt block in "
+						+ file.getAbsolutePath());
+				return false;
+			}
+			if (compressedLength > compressedBlock.length) {
+				compressedBlock = new byte[compressedLength];
+			}
+			input.readFully(compressedBlock, 0, compressedLength);
+			remaining -= compressedLength;
+			if (length > block.length) {
+				block = new byte[length];
+			}
+			inflater.reset();
+			inflater.setInput(compressedBlock, 0, compressedLength);
+			try {
+				int inflated = 0;
+				while (inflated < length && !inflater.finished()) {
+					int n = inflater.inflate(block, inflated, length
+							- inflated);
+					if (n == 0 && inflater.needsInput()) {
+						break;
+					}
+					inflated += n;
+				}
+				if (inflated != length) {
+					throw new IOException("Block of " + file.getAbsolutePath()
+							+ " inflated to " + inflated + " bytes, expected "
+							+ length);
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupt block in "
+						+ file.getAbsolutePath(), e);
+			}
+			blockLength = length;
+			position = 0;
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package org.gw.objectlogger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link IBackpressurePolicy} which blocks the logging thread until there is
+ * room in the queue or the timeout elapses, in which case the object is
+ * discarded. An interrupt also discards the object and leaves the thread's
+ * interrupt flag set.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class BlockingBackpressurePolicy implements IBackpressurePolicy {
+
+	/**
+	 * The longest the logging thread parks between attempts.
+	 */
+	private static final long maxBackoffNanos = TimeUnit.MILLISECONDS
+			.toNanos(1);
+
+	private final long timeoutNanos;
+
+	/**
+	 * @param timeout
+	 *            The longest to block for
+	 * @param unit
+	 *            The {@link TimeUnit} of the timeout
+	 */
+	public BlockingBackpressurePolicy(long timeout, TimeUnit unit) {
+		this.timeoutNanos = unit.toNanos(timeout);
+	}
+
+	@Override
+	public <T> void onQueueFull(TimestampedObject<T> object,
+			ILoggerQueue<TimestampedObject<T>> queue, IDataSource dataSource,
+			IDiscardListener<T> listener) {
+		long deadline = System.nanoTime() + timeoutNanos;
+		long backoff = 1000;
+		while (!queue.offer(object)) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+				listener.discarded(object);
+				return;
+			}
+			LockSupport.parkNanos(this, Math.min(backoff, remaining));
+			backoff = Math.min(backoff << 1, maxBackoffNanos);
+		}
+	}
+
+}
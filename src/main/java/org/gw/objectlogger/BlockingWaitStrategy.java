@@ -0,0 +1,60 @@
+package org.gw.objectlogger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link IWaitStrategy} which parks the worker until a producer signals it.
+ * This uses no CPU while idle and wakes the worker as soon as an object is
+ * logged while it waits. This is the default {@link IWaitStrategy}.
+ * <p>
+ * The worker never parks longer than <code>maxParkMillis</code> so that it
+ * still notices being shut down.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class BlockingWaitStrategy implements IWaitStrategy {
+
+	/**
+	 * The default maximum time in milliseconds to park the worker for.
+	 */
+	private static final long defaultMaxParkMillis = 1000;
+
+	private final long maxParkNanos;
+
+	public BlockingWaitStrategy() {
+		this(defaultMaxParkMillis);
+	}
+
+	/**
+	 * @param maxParkMillis
+	 *            The maximum time in milliseconds to park the worker for.
+	 */
+	public BlockingWaitStrategy(long maxParkMillis) {
+		this.maxParkNanos = TimeUnit.MILLISECONDS.toNanos(maxParkMillis);
+	}
+
+	/**
+	 * Parks the worker until it is signalled, interrupted or
+	 * <code>maxParkMillis</code> has elapsed.
+	 */
+	@Override
+	public void waitForWork(int idleCount) {
+		LockSupport.parkNanos(this, maxParkNanos);
+	}
+
+	/**
+	 * Unparks the worker. If the worker is not parked yet its next park
+	 * returns immediately, so a signal can never be lost.
+	 */
+	@Override
+	public void signal(Thread worker) {
+		if (worker != null) {
+			LockSupport.unpark(worker);
+		}
+	}
+
+}
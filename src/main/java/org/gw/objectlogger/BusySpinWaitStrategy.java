@@ -0,0 +1,26 @@
+package org.gw.objectlogger;
+
+/**
+ * {@link IWaitStrategy} which spins without ever giving up the CPU. Gives the
+ * lowest latency but burns a whole core per worker. Only use it when the
+ * worker has a core to itself.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class BusySpinWaitStrategy implements IWaitStrategy {
+
+	@Override
+	public void waitForWork(int idleCount) {
+	}
+
+	/**
+	 * Does nothing. The worker never stops polling.
+	 */
+	@Override
+	public void signal(Thread worker) {
+	}
+
+}
@@ -0,0 +1,47 @@
+package org.gw.objectlogger;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A {@link ByteArrayOutputStream} whose array can be written out without
+ * copying it. It is meant to be reset and reused rather than created per
+ * object.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class ByteArrayBuffer extends ByteArrayOutputStream {
+
+	public ByteArrayBuffer(int size) {
+		super(size);
+	}
+
+	/**
+	 * @return the backing array. Only the first {@link #size()} bytes are
+	 *         valid.
+	 */
+	public byte[] array() {
+		return buf;
+	}
+
+	/**
+	 * Discards everything after the first <code>size</code> bytes.
+	 */
+	public void truncate(int size) {
+		if (size < 0 || size > count) {
+			throw new IllegalArgumentException("size " + size
+					+ " is outside 0 to " + count);
+		}
+		count = size;
+	}
+
+	/**
+	 * @return the length of the backing array.
+	 */
+	public int capacity() {
+		return buf.length;
+	}
+
+}
@@ -34,6 +34,17 @@ public final class ByteArrayLogger extends ObjectLogger<byte[]> {
 		super(capacity, dataSource);
 	}
 
+	/**
+	 * @param queue
+	 *            The asynchronous {@link ILoggerQueue}
+	 * @param dataSource
+	 *            A byte array {@link IDataSource}
+	 */
+	public ByteArrayLogger(ILoggerQueue<TimestampedObject<byte[]>> queue,
+			IDataSource dataSource) {
+		super(queue, dataSource);
+	}
+
 	/**
 	 * Creates a {@link ByteArrayLogger} using a {@link FileSystemDataSource}
 	 * with the given filename and a {@link MinuteRollingStrategy} with the
@@ -0,0 +1,89 @@
+package org.gw.objectlogger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A coarse {@link IClock} which returns a time updated by a ticker thread
+ * every <code>tickMillis</code>, so reading it is a single volatile read.
+ * The time it returns can be up to <code>tickMillis</code> behind
+ * {@link System#currentTimeMillis()}, so {@link TimestampedObject}s logged
+ * within the same tick get the same log time. Call {@link #shutdown()} to
+ * stop the ticker thread.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class CachedClock implements IClock, Runnable {
+
+	private static Logger logger = LoggerFactory.getLogger(CachedClock.class);
+
+	private final long tickMillis;
+
+	private volatile long now = System.currentTimeMillis();
+
+	private volatile boolean running = true;
+
+	private final Thread ticker;
+
+	/**
+	 * Creates a {@link CachedClock} which ticks every millisecond.
+	 */
+	public CachedClock() {
+		this(1);
+	}
+
+	/**
+	 * @param tickMillis
+	 *            How often in milliseconds the time is updated
+	 */
+	public CachedClock(long tickMillis) {
+		if (tickMillis < 1) {
+			throw new IllegalArgumentException("tickMillis must be at least 1");
+		}
+		this.tickMillis = tickMillis;
+		ticker = new Thread(this, "ObjectLoggers Clock Ticker");
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		return now;
+	}
+
+	/**
+	 * Updates the time every <code>tickMillis</code> until shutdown.
+	 */
+	@Override
+	public void run() {
+		while (running) {
+			now = System.currentTimeMillis();
+			try {
+				Thread.sleep(tickMillis);
+			} catch (InterruptedException e) {
+				if (running) {
+					logger.warn("CachedClock ticker was interrupted while running.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the ticker thread. The time no longer changes after this.
+	 */
+	public void shutdown() {
+		running = false;
+		ticker.interrupt();
+	}
+
+	/**
+	 * @return how often in milliseconds the time is updated
+	 */
+	public long getTickMillis() {
+		return tickMillis;
+	}
+
+}
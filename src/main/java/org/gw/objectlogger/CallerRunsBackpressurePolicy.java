@@ -0,0 +1,42 @@
+package org.gw.objectlogger;
+
+/**
+ * {@link IBackpressurePolicy} which persists the object on the logging thread
+ * when the queue is full. Nothing is discarded unless it cannot be persisted,
+ * and the logging threads are slowed down to the speed of the
+ * {@link IDataSource}. The object may be persisted before objects that are
+ * still in the queue. An object which could not be persisted fails its
+ * {@link PersistFuture} with the cause and is handed to the
+ * {@link IDiscardListener}.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class CallerRunsBackpressurePolicy implements IBackpressurePolicy {
+
+	@Override
+	public <T> void onQueueFull(TimestampedObject<T> object,
+			ILoggerQueue<TimestampedObject<T>> queue, IDataSource dataSource,
+			IDiscardListener<T> listener) {
+		try {
+			dataSource.persist(object);
+			AckedTimestampedObject.persisted(object);
+		} catch (DataSourceException e) {
+			notPersisted(object, e, listener);
+		} catch (RuntimeException e) {
+			notPersisted(object, e, listener);
+		}
+	}
+
+	/**
+	 * Fails the ack with the cause before the listener fails it as discarded.
+	 */
+	private static <T> void notPersisted(TimestampedObject<T> object,
+			Exception cause, IDiscardListener<T> listener) {
+		AckedTimestampedObject.failed(object, cause);
+		listener.discarded(object);
+	}
+
+}
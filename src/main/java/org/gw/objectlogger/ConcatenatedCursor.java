@@ -0,0 +1,105 @@
+package org.gw.objectlogger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An {@link ITimestampedObjectCursor} over several files, read one after the
+ * other. Each file is only opened once the one before it has been read, so
+ * one file is open at a time whatever the number of files. A file which
+ * cannot be opened is logged and skipped.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ * @param <T>
+ *            The underlying type of {@link TimestampedObject}
+ */
+class ConcatenatedCursor<T> implements ITimestampedObjectCursor<T> {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(ConcatenatedCursor.class);
+
+	/**
+	 * Opens the cursor of one file.
+	 */
+	interface IFileOpener<T> {
+		ITimestampedObjectCursor<T> open(File file) throws IOException;
+	}
+
+	private final List<File> files;
+	private final IFileOpener<T> opener;
+	private int index;
+	private ITimestampedObjectCursor<T> cursor;
+	private boolean closed;
+
+	ConcatenatedCursor(List<File> files, IFileOpener<T> opener) {
+		this.files = files;
+		this.opener = opener;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!closed) {
+			if (cursor != null && cursor.hasNext()) {
+				return true;
+			}
+			closeCursor();
+			if (index == files.size()) {
+				closed = true;
+			} else {
+				File file = files.get(index++);
+				try {
+					cursor = opener.open(file);
+				} catch (IOException e) {
+					logger.error("Could not read " + file.getAbsolutePath(),
+							e);
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public TimestampedObject<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return cursor.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if (cursor != null) {
+			try {
+				cursor.close();
+			} finally {
+				cursor = null;
+			}
+		}
+	}
+
+	private void closeCursor() {
+		if (cursor != null) {
+			try {
+				cursor.close();
+			} catch (IOException e) {
+				logger.warn("Could not close a cursor.", e);
+			}
+			cursor = null;
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+package org.gw.objectlogger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link IWriterScheduler} which gives each {@link IDataSource} its own
+ * {@link ObjectLoggerWorkerThread}. This is the default
+ * {@link IWriterScheduler}. The worker threads are platform threads unless a
+ * {@link ThreadFactory}, such as the {@link VirtualThreadFactory}, is given.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class DedicatedThreadWriterScheduler implements IWriterScheduler {
+
+	/**
+	 * The lanes keyed by {@link IDataSource}.
+	 */
+	private final Map<IDataSource, ObjectLoggerWorkerThread> lanes = new ConcurrentHashMap<IDataSource, ObjectLoggerWorkerThread>();
+
+	/**
+	 * Numbers the worker threads.
+	 */
+	private final AtomicInteger threadCount = new AtomicInteger();
+
+	/**
+	 * Creates the worker threads. Null for named platform threads.
+	 */
+	private final ThreadFactory threadFactory;
+
+	/**
+	 * The {@link IWaitStrategy} of all lanes.
+	 */
+	private volatile IWaitStrategy waitStrategy;
+
+	/**
+	 * Creates a {@link DedicatedThreadWriterScheduler} using the
+	 * {@link IWaitStrategy} named by <code>-Dobject.logger.wait.strategy</code>
+	 * . See {@link ObjectLoggerWorkerThread#createWaitStrategy(String)}.
+	 */
+	public DedicatedThreadWriterScheduler() {
+		this(ObjectLoggerWorkerThread.createWaitStrategy(System.getProperty(
+				"object.logger.wait.strategy", "blocking")));
+	}
+
+	/**
+	 * Creates a {@link DedicatedThreadWriterScheduler} using the given
+	 * {@link IWaitStrategy}.
+	 */
+	public DedicatedThreadWriterScheduler(IWaitStrategy waitStrategy) {
+		this(waitStrategy, null);
+	}
+
+	/**
+	 * Creates a {@link DedicatedThreadWriterScheduler} using the given
+	 * {@link IWaitStrategy} and creating the worker threads with the given
+	 * {@link ThreadFactory}.
+	 */
+	public DedicatedThreadWriterScheduler(IWaitStrategy waitStrategy,
+			ThreadFactory threadFactory) {
+		setWaitStrategy(waitStrategy);
+		this.threadFactory = threadFactory;
+	}
+
+	@Override
+	public synchronized IWriterLane register(ObjectLogger<?> objLogger) {
+		ObjectLoggerWorkerThread lane = lanes.get(objLogger.getDataSource());
+		if (lane == null) {
+			if (threadFactory == null) {
+				lane = new ObjectLoggerWorkerThread(waitStrategy,
+						"ObjectLoggers Worker Thread-"
+								+ threadCount.incrementAndGet());
+			} else {
+				lane = new ObjectLoggerWorkerThread(waitStrategy, threadFactory);
+			}
+			lanes.put(objLogger.getDataSource(), lane);
+		}
+		lane.addLogger(objLogger);
+		return lane;
+	}
+
+	@Override
+	public synchronized void unregister(ObjectLogger<?> objLogger) {
+		ObjectLoggerWorkerThread lane = lanes.get(objLogger.getDataSource());
+		if (lane != null && lane.removeLogger(objLogger)
+				&& lane.getAllObjectLoggers().isEmpty()) {
+			lanes.remove(objLogger.getDataSource());
+			lane.shutdown();
+		}
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		for (ObjectLoggerWorkerThread lane : lanes.values()) {
+			lane.shutdown();
+		}
+		lanes.clear();
+	}
+
+	/**
+	 * @return the number of lanes.
+	 */
+	public int getLaneCount() {
+		return lanes.size();
+	}
+
+	/**
+	 * @return the waitStrategy
+	 */
+	public IWaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	/**
+	 * Sets the {@link IWaitStrategy} of all current and future lanes.
+	 * 
+	 * @param waitStrategy
+	 *            the waitStrategy to set
+	 */
+	public void setWaitStrategy(IWaitStrategy waitStrategy) {
+		if (waitStrategy == null) {
+			throw new IllegalArgumentException("waitStrategy cannot be null");
+		}
+		this.waitStrategy = waitStrategy;
+		for (ObjectLoggerWorkerThread lane : lanes.values()) {
+			lane.setWaitStrategy(waitStrategy);
+		}
+	}
+
+}
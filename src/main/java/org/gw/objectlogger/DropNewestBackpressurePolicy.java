@@ -0,0 +1,21 @@
+package org.gw.objectlogger;
+
+/**
+ * {@link IBackpressurePolicy} which discards the object that could not be
+ * added to the full queue. This is the default {@link IBackpressurePolicy}.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class DropNewestBackpressurePolicy implements IBackpressurePolicy {
+
+	@Override
+	public <T> void onQueueFull(TimestampedObject<T> object,
+			ILoggerQueue<TimestampedObject<T>> queue, IDataSource dataSource,
+			IDiscardListener<T> listener) {
+		listener.discarded(object);
+	}
+
+}
@@ -0,0 +1,31 @@
+package org.gw.objectlogger;
+
+/**
+ * {@link IBackpressurePolicy} which discards the oldest object in the queue
+ * to make room for the new one, so the queue always holds the most recent
+ * objects.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class DropOldestBackpressurePolicy implements IBackpressurePolicy {
+
+	/**
+	 * Evicts the head of the queue until the object fits. Usually once, but
+	 * another producer may take the space first.
+	 */
+	@Override
+	public <T> void onQueueFull(TimestampedObject<T> object,
+			ILoggerQueue<TimestampedObject<T>> queue, IDataSource dataSource,
+			IDiscardListener<T> listener) {
+		do {
+			TimestampedObject<T> oldest = queue.poll();
+			if (oldest != null) {
+				listener.discarded(oldest);
+			}
+		} while (!queue.offer(object));
+	}
+
+}
@@ -0,0 +1,49 @@
+package org.gw.objectlogger;
+
+/**
+ * Creates the {@link IDurabilityPolicy}s for the supported durability modes:
+ * <ul>
+ * <li><code>buffered</code>: {@link OsBufferedDurabilityPolicy}, never sync</li>
+ * <li><code>group</code>: {@link GroupCommitDurabilityPolicy}, sync once per
+ * write or batch</li>
+ * <li><code>periodic</code>: {@link PeriodicDurabilityPolicy}, sync every N
+ * milliseconds or N bytes</li>
+ * </ul>
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public final class DurabilityPolicies {
+
+	private DurabilityPolicies() {
+	}
+
+	/**
+	 * Creates the {@link IDurabilityPolicy} for the mode named by
+	 * <code>-Dobject.logger.durability</code> (default <code>buffered</code>
+	 * ). The <code>periodic</code> intervals are given by
+	 * <code>-Dobject.logger.durability.interval.millis</code> (default 1000)
+	 * and <code>-Dobject.logger.durability.interval.bytes</code> (default
+	 * 1048576).
+	 */
+	public static IDurabilityPolicy fromSystemProperties() {
+		String mode = System.getProperty("object.logger.durability",
+				"buffered");
+		if ("buffered".equalsIgnoreCase(mode)) {
+			return new OsBufferedDurabilityPolicy();
+		} else if ("group".equalsIgnoreCase(mode)) {
+			return new GroupCommitDurabilityPolicy();
+		} else if ("periodic".equalsIgnoreCase(mode)) {
+			return new PeriodicDurabilityPolicy(Long.getLong(
+					"object.logger.durability.interval.millis", 1000),
+					Long.getLong("object.logger.durability.interval.bytes",
+							1024 * 1024));
+		}
+		throw new IllegalArgumentException(
+				"Could not parse -Dobject.logger.durability. Expected one of buffered, group or periodic, found "
+						+ mode);
+	}
+
+}
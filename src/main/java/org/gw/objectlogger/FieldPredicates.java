@@ -0,0 +1,91 @@
+package org.gw.objectlogger;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates the common {@link IFieldPredicate}s.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public final class FieldPredicates {
+
+	private FieldPredicates() {
+	}
+
+	/**
+	 * Keeps the records whose field equals the given value. Numbers are
+	 * equal if their values are, whatever their type, and an enum or any
+	 * other value written as a string is compared by its
+	 * {@link Object#toString()}.
+	 *
+	 * @param field
+	 *            The name of the field
+	 * @param value
+	 *            The value to keep, or null to keep the records without one
+	 */
+	public static IFieldPredicate equalTo(String field, Object value) {
+		return in(field, value);
+	}
+
+	/**
+	 * Keeps the records whose field equals any of the given values, as
+	 * {@link #equalTo(String, Object)}.
+	 *
+	 * @param field
+	 *            The name of the field
+	 * @param values
+	 *            The values to keep
+	 */
+	public static IFieldPredicate in(final String field, Object... values) {
+		if (field == null) {
+			throw new IllegalArgumentException("field cannot be null");
+		}
+		final List<Object> expected = Arrays.asList(values);
+		return new IFieldPredicate() {
+			@Override
+			public String getField() {
+				return field;
+			}
+
+			@Override
+			public boolean accept(Object value) {
+				for (Object e : expected) {
+					if (matches(e, value)) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			@Override
+			public String toString() {
+				return field + " in " + expected;
+			}
+		};
+	}
+
+	private static boolean matches(Object expected, Object value) {
+		if (expected == null || value == null) {
+			return expected == value;
+		}
+		if (expected instanceof Number && value instanceof Number) {
+			try {
+				return new BigDecimal(expected.toString())
+						.compareTo(new BigDecimal(value.toString())) == 0;
+			} catch (NumberFormatException e) {
+				// NaN or infinite
+				return expected.toString().equals(value.toString());
+			}
+		}
+		if (value instanceof String) {
+			return value.equals(expected.toString());
+		}
+		return value.equals(expected);
+	}
+
+}
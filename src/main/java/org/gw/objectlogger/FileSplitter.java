@@ -0,0 +1,214 @@
+package org.gw.objectlogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits part of a file into parts of about a given size at record
+ * boundaries, so the parts can be read in parallel, and reads each part
+ * through a memory mapped {@link InputStream}. A boundary is found either by
+ * scanning for a separator which only appears between records, or by
+ * stepping over length prefixed records. The file is memory mapped a window
+ * at a time, so files larger than a single mapping can be split.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+final class FileSplitter {
+
+	/**
+	 * The most bytes mapped at a time while splitting.
+	 */
+	private static final int windowSize = 64 * 1024 * 1024;
+
+	/**
+	 * The bytes first mapped when looking for a separator.
+	 */
+	private static final int searchSize = 64 * 1024;
+
+	private FileSplitter() {
+	}
+
+	/**
+	 * Splits <code>[start, end)</code> of the file at the first separator
+	 * after every <code>chunkSize</code> bytes. The separators are left out
+	 * of the parts, so each part holds whole records and nothing else.
+	 *
+	 * @return the parts in order, as <code>{start, end}</code>
+	 */
+	static List<long[]> atSeparator(File file, long start, long end,
+			long chunkSize, byte[] separator) throws IOException {
+		List<long[]> parts = new ArrayList<long[]>();
+		long partStart = start;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			while (end - partStart > chunkSize) {
+				long found = find(channel, partStart + chunkSize, end,
+						separator);
+				if (found < 0) {
+					break;
+				}
+				parts.add(new long[] { partStart, found });
+				partStart = found + separator.length;
+			}
+		} finally {
+			raf.close();
+		}
+		if (partStart < end) {
+			parts.add(new long[] { partStart, end });
+		}
+		return parts;
+	}
+
+	/**
+	 * @return the offset of the first separator at or after
+	 *         <code>from</code>, or -1 if there is none before
+	 *         <code>end</code>.
+	 */
+	private static long find(FileChannel channel, long from, long end,
+			byte[] separator) throws IOException {
+		long position = from;
+		int size = searchSize;
+		while (position < end) {
+			int length = (int) Math.min(size, end - position);
+			MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, position, length);
+			for (int i = 0; i + separator.length <= length; i++) {
+				if (matches(buffer, i, separator)) {
+					return position + i;
+				}
+			}
+			if (position + length >= end) {
+				break;
+			}
+			// Look again from where a separator could still start
+			position += length - separator.length + 1;
+			size = Math.min(size * 2, windowSize);
+		}
+		return -1;
+	}
+
+	private static boolean matches(ByteBuffer buffer, int offset,
+			byte[] separator) {
+		for (int i = 0; i < separator.length; i++) {
+			if (buffer.get(offset + i) != separator[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Splits <code>[start, end)</code> of a file of length prefixed records
+	 * at the first record after every <code>chunkSize</code> bytes. Each
+	 * record is a header, whose first 4 bytes are the length of the rest of
+	 * the record, followed by the rest of the record. A truncated record is
+	 * left in the last part, for the cursor reading it to stop at.
+	 *
+	 * @return the parts in order, as <code>{start, end}</code>
+	 */
+	static List<long[]> atLengthPrefixes(File file, long start, long end,
+			long chunkSize, int headerLength) throws IOException {
+		List<long[]> parts = new ArrayList<long[]>();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer window = null;
+			long windowStart = 0;
+			long partStart = start;
+			long position = start;
+			while (position + headerLength <= end) {
+				if (window == null
+						|| position + headerLength > windowStart
+								+ window.capacity()) {
+					windowStart = position;
+					window = channel.map(FileChannel.MapMode.READ_ONLY,
+							windowStart, Math.min(windowSize, end - windowStart));
+				}
+				int length = window.getInt((int) (position - windowStart));
+				if (length < 0) {
+					break;
+				}
+				if (position - partStart >= chunkSize) {
+					parts.add(new long[] { partStart, position });
+					partStart = position;
+				}
+				position += headerLength + length;
+			}
+			if (partStart < end) {
+				parts.add(new long[] { partStart, end });
+			}
+		} finally {
+			raf.close();
+		}
+		return parts;
+	}
+
+	/**
+	 * Opens an {@link InputStream} over <code>[start, end)</code> of the
+	 * file, memory mapped.
+	 */
+	static InputStream openPart(File file, long start, long end)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// The mapping stays valid once the file is closed
+			return new MappedInputStream(raf.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, start, end - start));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * An {@link InputStream} over a {@link ByteBuffer}.
+	 */
+	private static class MappedInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		MappedInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) {
+			int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+}
@@ -5,16 +5,23 @@ import org.gw.commons.utils.DateUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.NumberFormat;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * {@link IFileSystemDataSource} which uses the file system to persist the log
@@ -34,7 +41,8 @@ import java.util.concurrent.locks.ReentrantLock;
  * @version 1.0
  * 
  */
-public class FileSystemDataSource implements IFileSystemDataSource {
+public class FileSystemDataSource implements IFileSystemDataSource,
+		Closeable {
 
 	private static Logger logger = LoggerFactory.getLogger(FileSystemDataSource.class);
 
@@ -49,6 +57,11 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 	 */
 	private final String defaultNumberOfDaysLookupStr = "28";
 
+	/**
+	 * The extension added to the filename for the {@link SegmentCatalog} file
+	 */
+	private static final String catalogExtension = ".catalog";
+
 	/**
 	 * The absolute path to the log files.
 	 */
@@ -72,6 +85,65 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 	 */
 	private ITimestampedObjectSerialiser serialiser;
 
+	/**
+	 * The {@link IDurabilityPolicy} deciding when what the serialiser has
+	 * written is synced to the device. Only applies to an
+	 * {@link ISyncableSerialiser}. Given by
+	 * <code>-Dobject.logger.durability</code> by default, see
+	 * {@link DurabilityPolicies#fromSystemProperties()}.
+	 */
+	private IDurabilityPolicy durabilityPolicy = DurabilityPolicies
+			.fromSystemProperties();
+
+	/**
+	 * The {@link ParallelEncoder} which encodes batches before the write lock
+	 * is taken, if the serialiser is an {@link IEncodingSerialiser}. Null to
+	 * encode while writing. Given by
+	 * <code>-Dobject.logger.encoding.threads</code> by default, see
+	 * {@link ParallelEncoder#fromSystemProperties()}.
+	 */
+	private ParallelEncoder parallelEncoder = ParallelEncoder
+			.fromSystemProperties();
+
+	/**
+	 * The {@link ParallelReader} which reads the files of a range several at
+	 * a time, or null to read them one at a time on the calling thread. Given
+	 * by <code>-Dobject.logger.reading.threads</code> by default, see
+	 * {@link ParallelReader#fromSystemProperties()}.
+	 */
+	private ParallelReader parallelReader = ParallelReader
+			.fromSystemProperties();
+
+	/**
+	 * The {@link SegmentCompressor} which compresses each file once it is
+	 * rolled, or null to leave them uncompressed. Given by
+	 * <code>-Dobject.logger.compress.rolled</code> by default, see
+	 * {@link SegmentCompressor#fromSystemProperties()}.
+	 */
+	private SegmentCompressor segmentCompressor = SegmentCompressor
+			.fromSystemProperties();
+
+	/**
+	 * The {@link SegmentCache} keeping the objects of the files read most
+	 * recently, or null to read them from the disk every time. Given by
+	 * <code>-Dobject.logger.cache.bytes</code> by default, see
+	 * {@link SegmentCache#fromSystemProperties()}.
+	 */
+	private SegmentCache segmentCache = SegmentCache.fromSystemProperties();
+
+	/**
+	 * The file the serialiser was last opened on. Read without the lock by
+	 * the {@link SegmentCache}.
+	 */
+	private volatile File openFile;
+
+	/**
+	 * The {@link SegmentCatalog} of the files written to
+	 * <code>fileSystemLoggerPath</code>. Created on first use, and again if
+	 * the path or filename changes.
+	 */
+	private SegmentCatalog catalog;
+
 	/**
 	 * The filename for writing the logged {@link Object}. This file will be
 	 * found in <code>fileSystemLoggerPath</code>/ <code>yyyy-MM-dd</code>/
@@ -141,20 +213,24 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 		setRollingStrategy(rollingStrategy);
 		setSerialiser(serialiser);
 
-		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
-			@Override
-			public void run() {
-				if (getSerialiser() != null && getSerialiser().isOpen()) {
-					try {
-						getSerialiser().close();
-					} catch (IOException e) {
-						logger.warn(
-								"Could not close serialiser: " + e.getMessage(),
-								e);
-					}
-				}
+		// Closed on shutdown once the ObjectLoggers have been flushed
+		ObjectLoggerShutdownHook.register(this);
+	}
+
+	/**
+	 * Closes the {@link ITimestampedObjectSerialiser} if it is open. It is
+	 * opened again by the next persist.
+	 */
+	@Override
+	public void close() throws IOException {
+		writeLock.lock();
+		try {
+			if (getSerialiser() != null && getSerialiser().isOpen()) {
+				closeSerialiser();
 			}
-		}));
+		} finally {
+			writeLock.unlock();
+		}
 	}
 
 	/**
@@ -176,7 +252,7 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 		try {
 			/* Check if we roll the log */
 			if (getSerialiser().isOpen() && rollingStrategy.doRoll()) {
-				getSerialiser().close();
+				roll();
 			}
 
 			/*
@@ -184,7 +260,9 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 			 * rolling
 			 */
 			if (!getSerialiser().isOpen()) {
-				getSerialiser().open(getFile());
+				openFile = getFile();
+				getSerialiser().open(openFile);
+				catalogOpened();
 				rollingStrategy.didRoll();
 				// openOutputStream();
 			}
@@ -195,6 +273,9 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 
 			// Call write() on the Serialiser
 			getSerialiser().write(object);
+			afterWrite();
+			catalogWritten(1, object.getLogTimeMillis(),
+					object.getLogTimeMillis());
 
 			if (logger.isDebugEnabled()) {
 				logger.debug("Finished persisting object of type: "
@@ -227,12 +308,31 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 			return;
 		}
 
+		/*
+		 * Encode the batch on the ParallelEncoder before taking the lock, so
+		 * only appending the bytes is serial.
+		 */
+		ITimestampedObjectSerialiser batchSerialiser = getSerialiser();
+		List<byte[]> encoded = null;
+		if (parallelEncoder != null
+				&& batchSerialiser instanceof IEncodingSerialiser) {
+			try {
+				encoded = parallelEncoder.encode(
+						((IEncodingSerialiser) batchSerialiser).getEncoder(),
+						batch);
+			} catch (SerialisationException e) {
+				throw new DataSourceException(
+						"Could not log data as the batch could not be serialised.",
+						e);
+			}
+		}
+
 		writeLock.lock();
 
 		try {
 			/* Check if we roll the log */
 			if (getSerialiser().isOpen() && rollingStrategy.doRoll()) {
-				getSerialiser().close();
+				roll();
 			}
 
 			/*
@@ -240,7 +340,9 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 			 * rolling
 			 */
 			if (!getSerialiser().isOpen()) {
-				getSerialiser().open(getFile());
+				openFile = getFile();
+				getSerialiser().open(openFile);
+				catalogOpened();
 				rollingStrategy.didRoll();
 				// openOutputStream();
 			}
@@ -250,7 +352,14 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 			}
 
 			// Call write() on the Serialiser
-			getSerialiser().write(batch);
+			if (encoded != null && getSerialiser() == batchSerialiser) {
+				((IEncodingSerialiser) batchSerialiser).writeEncoded(batch,
+						encoded);
+			} else {
+				getSerialiser().write(batch);
+			}
+			afterWrite();
+			catalogWritten(batch);
 
 			if (logger.isDebugEnabled()) {
 				logger.debug("Finished persisting batch of type: "
@@ -268,10 +377,95 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 		}
 	}
 
+	/**
+	 * Lets the {@link IDurabilityPolicy} sync what was just written.
+	 */
+	private void afterWrite() throws IOException {
+		if (getSerialiser() instanceof ISyncableSerialiser) {
+			durabilityPolicy.afterWrite((ISyncableSerialiser) getSerialiser());
+		}
+	}
+
+	/**
+	 * Closes the serialiser and hands the file it was writing to the
+	 * {@link SegmentCompressor}, unless the next file is the same one.
+	 */
+	private void roll() throws IOException {
+		File rolled = openFile;
+		closeSerialiser();
+		if (segmentCompressor != null && rolled != null
+				&& !rolled.equals(getFile())) {
+			segmentCompressor.submit(rolled);
+		}
+	}
+
+	/**
+	 * Lets the {@link IDurabilityPolicy} sync before closing the serialiser.
+	 */
+	private void closeSerialiser() throws IOException {
+		try {
+			if (getSerialiser() instanceof ISyncableSerialiser) {
+				durabilityPolicy
+						.beforeClose((ISyncableSerialiser) getSerialiser());
+			}
+		} finally {
+			getSerialiser().close();
+			catalogClosed();
+		}
+	}
+
+	/**
+	 * Records the newly opened file in the {@link SegmentCatalog}, starting at
+	 * the minute in its name.
+	 */
+	private void catalogOpened() {
+		long start = getFileStart(openFile);
+		try {
+			getCatalog().opened(openFile,
+					start == -1 ? System.currentTimeMillis() : start);
+		} catch (IOException e) {
+			logger.warn("Could not add " + openFile.getAbsolutePath()
+					+ " to the catalog.", e);
+		}
+	}
+
+	private void catalogWritten(List<TimestampedObject<?>> batch) {
+		int records = 0;
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		for (TimestampedObject<?> object : batch) {
+			if (object != null) {
+				records++;
+				first = Math.min(first, object.getLogTimeMillis());
+				last = Math.max(last, object.getLogTimeMillis());
+			}
+		}
+		catalogWritten(records, first, last);
+	}
+
+	private void catalogWritten(int records, long first, long last) {
+		if (records > 0) {
+			getCatalog().written(records, first, last);
+		}
+	}
+
+	private void catalogClosed() {
+		if (openFile == null) {
+			return;
+		}
+		try {
+			getCatalog().closed(openFile.length());
+		} catch (IOException e) {
+			logger.warn("Could not mark " + openFile.getAbsolutePath()
+					+ " closed in the catalog.", e);
+		}
+	}
+
 	/**
 	 * Returns the existing {@link java.io.File}s between the given date range. If there
 	 * are no {@link java.io.File}s in the given {@link java.util.Date}s a
-	 * {@link java.io.FileNotFoundException} is thrown.
+	 * {@link java.io.FileNotFoundException} is thrown. A file which has been
+	 * compressed is returned as its compressed file.
 	 * 
 	 * @param from
 	 *            The from {@link java.util.Date} of the range (inclusive)
@@ -289,6 +483,40 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 		Date fromRounded = DateUtil.roundDownToMinute(from);
 		Date toRounded = DateUtil.roundUpToMinute(to);
 
+		try {
+			for (SegmentCatalog.Segment segment : getCatalog().find(
+					from.getTime(), toRounded.getTime())) {
+				File file = segment.getFile();
+				if (file.exists()) {
+					filesInRange.add(file);
+				} else {
+					File compressed = SegmentCompressor.getCompressedFile(file);
+					if (compressed.exists()) {
+						filesInRange.add(compressed);
+					}
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Could not read the catalog, looking for each file.",
+					e);
+			probeFilesInRange(fromRounded, toRounded, filesInRange);
+		}
+
+		if (filesInRange.isEmpty()) {
+			throw new FileNotFoundException("Could not find any "
+					+ getFilename() + " at " + getFileSystemLoggerPath()
+					+ " files between " + from + " (inclusive) and  " + to
+					+ " (exclusive).");
+		}
+		return filesInRange;
+	}
+
+	/**
+	 * Adds the file of each minute in the range which exists.
+	 */
+	private void probeFilesInRange(Date fromRounded, Date toRounded,
+			List<File> filesInRange) {
+
 		/*
 		 * Get a Calendar representation for easy manipulation
 		 */
@@ -304,17 +532,116 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 			file = getFile(cal.getTime());
 			if (file.exists()) {
 				filesInRange.add(file);
+			} else {
+				File compressed = SegmentCompressor.getCompressedFile(file);
+				if (compressed.exists()) {
+					filesInRange.add(compressed);
+				}
 			}
 			cal.add(Calendar.MINUTE, 1);
 		}
+	}
 
-		if (filesInRange.isEmpty()) {
-			throw new FileNotFoundException("Could not find any "
-					+ getFilename() + " at " + getFileSystemLoggerPath()
-					+ " files between " + from + " (inclusive) and  " + to
-					+ " (exclusive).");
+	/**
+	 * Returns the {@link SegmentCatalog} of the files in
+	 * <code>fileSystemLoggerPath</code>, kept in
+	 * <code>fileSystemLoggerPath</code>/<code>filename</code>.catalog. If the
+	 * catalog file does not exist it is rebuilt from the files found.
+	 */
+	public synchronized SegmentCatalog getCatalog() {
+		File catalogFile = new File(getFileSystemLoggerPath(), getFilename()
+				+ catalogExtension);
+		if (catalog == null || !catalog.getCatalogFile().equals(catalogFile)) {
+			catalog = new SegmentCatalog(catalogFile,
+					new SegmentCatalog.ISegmentScanner() {
+						@Override
+						public List<SegmentCatalog.Segment> scan() {
+							return scanSegments();
+						}
+					});
 		}
-		return filesInRange;
+		return catalog;
+	}
+
+	/**
+	 * Finds the files in each <code>yyyy-MM-dd</code> folder of
+	 * <code>fileSystemLoggerPath</code>. Each is taken to hold objects up to
+	 * the start of the next one.
+	 */
+	private List<SegmentCatalog.Segment> scanSegments() {
+		// A compressed file has the same start as its file, so is found once
+		TreeMap<Long, File> files = new TreeMap<Long, File>();
+		File[] folders = new File(getFileSystemLoggerPath()).listFiles();
+		if (folders != null) {
+			for (File folder : folders) {
+				File[] children = folder.listFiles();
+				if (children == null) {
+					continue;
+				}
+				for (File child : children) {
+					long start = getFileStart(child);
+					if (start == -1) {
+						continue;
+					}
+					if (SegmentCompressor.isCompressed(child)) {
+						String path = child.getPath();
+						child = new File(path.substring(0, path.length()
+								- SegmentCompressor.compressedExtension
+										.length()));
+					}
+					files.put(start, child);
+				}
+			}
+		}
+		List<SegmentCatalog.Segment> segments = new ArrayList<SegmentCatalog.Segment>();
+		for (Map.Entry<Long, File> entry : files.entrySet()) {
+			Long next = files.higherKey(entry.getKey());
+			segments.add(SegmentCatalog.Segment.scanned(entry.getValue(),
+					entry.getKey(), next == null ? Long.MAX_VALUE : next - 1));
+		}
+		return segments;
+	}
+
+	/**
+	 * Returns the time the given file starts, from its
+	 * <code>yyyy-MM-dd</code> folder and the hour and minute in its name, the
+	 * inverse of {@link #getFile(Date)}.
+	 * 
+	 * @return the start of the file, or -1 if it is not one of this logger's
+	 *         files.
+	 */
+	protected long getFileStart(File file) {
+		if (file.getParentFile() == null) {
+			return -1;
+		}
+		// As getFile(Date), every "." is preceded by the hour and minute
+		StringBuilder regex = new StringBuilder();
+		String[] parts = getFilename().split("\\.", -1);
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0) {
+				regex.append("-(\\d\\d)-(\\d\\d)\\.");
+			}
+			regex.append(Pattern.quote(parts[i]));
+		}
+		regex.append("(").append(
+				Pattern.quote(SegmentCompressor.compressedExtension)).append(
+				")?");
+		Matcher matcher = Pattern.compile(regex.toString()).matcher(
+				file.getName());
+		if (parts.length < 2 || !matcher.matches()) {
+			return -1;
+		}
+		Date day;
+		try {
+			day = formatter.parse(file.getParentFile().getName());
+		} catch (ParseException e) {
+			return -1;
+		}
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(day);
+		cal.set(Calendar.HOUR_OF_DAY, Integer.parseInt(matcher.group(1)));
+		cal.set(Calendar.MINUTE, Integer.parseInt(matcher.group(2)));
+		return cal.getTimeInMillis();
 	}
 
 	/**
@@ -368,7 +695,10 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 
 	/**
 	 * Returns all Serialised objects in the <code>fileSystemLoggerPath</code>
-	 * from the given {@link java.util.Date}.
+	 * from the given {@link java.util.Date}: every object in the files from
+	 * the one holding it to the one being written. The files are read as
+	 * {@link #stream(Class, RecordFilter)} reads them, so with a
+	 * {@link SegmentCache} a refresh only reads what has changed.
 	 */
 	@Override
 	public <T> TimestampedObjectSet<T> getAll(Class<T> type, Date from)
@@ -376,40 +706,381 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 		assert type != null : "type cannot be null";
 		assert from != null : "from should not be null";
 
-		TimestampedObjectSet<T> set = new TimestampedObjectSet<T>();
-		for (File file : getExistingFilesInRange(from, new Date())) {
-			TimestampedObjectSet<T> fileSet = getAll(type, file);
-			set.addAll(fileSet);
-		}
-		return set;
+		return drain(stream(type, getExistingFilesInRange(from, new Date()),
+				new RecordFilter(Long.MIN_VALUE, Long.MAX_VALUE)));
 	}
 
 	/**
 	 * Returns all Serialised objects in the <code>fileSystemLoggerPath</code>
 	 * from the given {@link java.util.Date} (inclusive) to the given {@link java.util.Date}
-	 * (exclusive).
+	 * (exclusive). An {@link ITimeIndexedSerialiser} only reads the parts of
+	 * each file which may hold them.
 	 * 
 	 */
 	@Override
 	public <T> TimestampedObjectSet<T> getAll(Class<T> type, Date from, Date to)
 			throws FileNotFoundException {
-		assert type != null : "type cannot be null";
+		return drain(stream(type, from, to));
+	}
+
+	/**
+	 * Returns the Serialised objects in the <code>fileSystemLoggerPath</code>
+	 * from the given {@link java.util.Date} (inclusive) to the given
+	 * {@link java.util.Date} (exclusive) whose Object is accepted by every
+	 * one of the given {@link IFieldPredicate}s. See
+	 * {@link #stream(Class, Date, Date, IFieldPredicate...)}.
+	 */
+	@Override
+	public <T> TimestampedObjectSet<T> getAll(Class<T> type, Date from,
+			Date to, IFieldPredicate... predicates)
+			throws FileNotFoundException {
+		return drain(stream(type, from, to, predicates));
+	}
+
+	private static <T> TimestampedObjectSet<T> drain(
+			ITimestampedObjectCursor<T> cursor) {
+		TimestampedObjectSet<T> set = new TimestampedObjectSet<T>();
+		try {
+			while (cursor.hasNext()) {
+				set.add(cursor.next());
+			}
+		} finally {
+			closeQuietly(cursor);
+		}
+		return set;
+	}
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the objects logged from
+	 * the given {@link java.util.Date} (inclusive) to the given
+	 * {@link java.util.Date} (exclusive). The files in the range are read one
+	 * at a time in time order, and an {@link IStreamingSerialiser} reads
+	 * them an object at a time, so memory does not grow with the range. With
+	 * a {@link ParallelReader} the files are read several at a time and the
+	 * objects are returned in log time order, except that an object written
+	 * to a file started after it was logged, such as one queued across a
+	 * roll, follows the objects of the file before logged up to that start.
+	 */
+	@Override
+	public <T> ITimestampedObjectCursor<T> stream(Class<T> type, Date from,
+			Date to) throws FileNotFoundException {
+		return stream(type, from, to, new IFieldPredicate[0]);
+	}
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the objects logged from
+	 * the given {@link java.util.Date} (inclusive) to the given
+	 * {@link java.util.Date} (exclusive) whose Object is accepted by every
+	 * one of the given {@link IFieldPredicate}s. An
+	 * {@link IFilteringSerialiser} tests each record as it is read, before
+	 * its object is built, so the records which are not kept are never
+	 * deserialised. Any other serialiser tests each object once it is read.
+	 */
+	@Override
+	public <T> ITimestampedObjectCursor<T> stream(Class<T> type, Date from,
+			Date to, IFieldPredicate... predicates)
+			throws FileNotFoundException {
 		assert from != null : "from should not be null";
 		assert to != null : "to should not be null";
-		assert from.before(to) : "from ("+from+") should be before to("+to+").";
+		return stream(type, new RecordFilter(from.getTime(), to.getTime(),
+				predicates));
+	}
 
-		TimestampedObjectSet<T> set = new TimestampedObjectSet<T>();
-		for (File file : getExistingFilesInRange(from, to)) {
+	/**
+	 * Returns the Serialised objects in the <code>fileSystemLoggerPath</code>
+	 * from the given {@link java.util.Date} (inclusive) to the given
+	 * {@link java.util.Date} (exclusive) with only the named fields of each
+	 * Object read. See {@link #stream(Class, Date, Date, String...)}.
+	 */
+	@Override
+	public <T> TimestampedObjectSet<T> getAll(Class<T> type, Date from,
+			Date to, String... fields) throws FileNotFoundException {
+		return drain(stream(type, from, to, fields));
+	}
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the objects logged from
+	 * the given {@link java.util.Date} (inclusive) to the given
+	 * {@link java.util.Date} (exclusive) with only the named fields of each
+	 * Object read. The json and Smile serialisers skip the other fields
+	 * without building them, so the type may be a view class holding only
+	 * the named fields. The POJO serialiser skips their bytes. Any other
+	 * serialiser reads the whole Object.
+	 */
+	@Override
+	public <T> ITimestampedObjectCursor<T> stream(Class<T> type, Date from,
+			Date to, String... fields) throws FileNotFoundException {
+		assert from != null : "from should not be null";
+		assert to != null : "to should not be null";
+		return stream(type, new RecordFilter(from.getTime(), to.getTime())
+				.withFields(fields));
+	}
 
-			TimestampedObjectSet<T> fileSet = getAll(type, file);
-			set.addAll(fileSet);
+	/**
+	 * Returns the Serialised objects in the <code>fileSystemLoggerPath</code>
+	 * kept by the given {@link RecordFilter}. See
+	 * {@link #stream(Class, RecordFilter)}.
+	 */
+	public <T> TimestampedObjectSet<T> getAll(Class<T> type,
+			RecordFilter filter) throws FileNotFoundException {
+		return drain(stream(type, filter));
+	}
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the objects kept by the
+	 * given {@link RecordFilter}, which may both test and project the
+	 * Objects. An {@link IFilteringSerialiser} applies it to each record as
+	 * it is read, before its object is built. Any other serialiser tests
+	 * each object once it is read, and reads the whole Object.
+	 */
+	public <T> ITimestampedObjectCursor<T> stream(final Class<T> type,
+			final RecordFilter filter) throws FileNotFoundException {
+		assert type != null : "type cannot be null";
+		assert filter != null : "filter cannot be null";
+		assert filter.getFrom() < filter.getTo() : "from ("
+				+ filter.getFrom() + ") should be before to("
+				+ filter.getTo() + ").";
+
+		return stream(type, getExistingFilesInRange(new Date(filter.getFrom()),
+				new Date(filter.getTo())), filter);
+	}
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the objects of the given
+	 * files kept by the filter.
+	 */
+	private <T> ITimestampedObjectCursor<T> stream(final Class<T> type,
+			List<File> files, final RecordFilter filter) {
+		ConcatenatedCursor.IFileOpener<T> opener = new ConcatenatedCursor.IFileOpener<T>() {
+			@Override
+			public ITimestampedObjectCursor<T> open(File file)
+					throws IOException {
+				return openCursor(type, file, filter);
+			}
+		};
+		if (parallelReader == null) {
+			return new ConcatenatedCursor<T>(files, opener);
+		}
+		long[] starts = new long[files.size()];
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = getFileStart(files.get(i));
+		}
+		ITimestampedObjectSerialiser serialiser = getSerialiser();
+		if (!(serialiser instanceof ISplittableSerialiser)) {
+			return parallelReader.read(files, starts, opener);
+		}
+		return parallelReader.read(files, starts, opener, newSplitter(
+				(ISplittableSerialiser) serialiser, type, filter));
+	}
+
+	/**
+	 * Splits a large uncompressed file into parts holding every object in the
+	 * range of the filter. The {@link TimeIndex} of an
+	 * {@link ITimeIndexedSerialiser} gives the parts without reading the
+	 * file; the serialiser splits anything it does not cover.
+	 */
+	private <T> ParallelReader.IFileSplitter<T> newSplitter(
+			final ISplittableSerialiser serialiser, final Class<T> type,
+			final RecordFilter filter) {
+		return new ParallelReader.IFileSplitter<T>() {
+			@Override
+			public List<long[]> split(File file, long chunkSize)
+					throws IOException {
+				if (SegmentCompressor.isCompressed(file)) {
+					return null;
+				}
+				long length = file.length();
+				// Read whole through the cache
+				if (isCached(filter) && length <= segmentCache.getMaxWeight()) {
+					return null;
+				}
+				List<long[]> ranges;
+				if (serialiser instanceof ITimeIndexedSerialiser) {
+					ranges = TimeIndex.getParts(TimeIndex.read(file, length),
+							length, filter.getFrom(), filter.getTo(), chunkSize);
+				} else {
+					ranges = Collections.singletonList(new long[] { 0, length });
+				}
+				List<long[]> parts = new ArrayList<long[]>();
+				for (long[] range : ranges) {
+					if (range[1] - range[0] > chunkSize) {
+						parts.addAll(serialiser.split(file, range[0], range[1],
+								chunkSize));
+					} else {
+						parts.add(range);
+					}
+				}
+				return parts;
+			}
+
+			@Override
+			public ITimestampedObjectCursor<T> open(File file, long start,
+					long end) throws IOException {
+				return serialiser.openPartCursor(file, type, start, end,
+						filter);
+			}
+		};
+	}
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the objects in the
+	 * given log file kept by the filter. If the file has been compressed its
+	 * compressed file is read.
+	 */
+	private <T> ITimestampedObjectCursor<T> openCursor(Class<T> type,
+			File file, RecordFilter filter) throws IOException {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Getting objects from: " + file.getAbsolutePath()
+					+ " " + filter);
+		}
+		try {
+			return openFileCursor(type, file, filter);
+		} catch (FileNotFoundException e) {
+			// Compressed since it was found
+			File compressed = SegmentCompressor.getCompressedFile(file);
+			if (SegmentCompressor.isCompressed(file) || !compressed.exists()) {
+				throw e;
+			}
+			return openFileCursor(type, compressed, filter);
+		}
+	}
+
+	/**
+	 * Opens the cursor of the serialiser, which tests each record before it
+	 * is built for an {@link IFilteringSerialiser}, and reads only the parts
+	 * of the file which may hold the range for an
+	 * {@link ITimeIndexedSerialiser}. A serialiser which cannot stream reads
+	 * the whole file. With a {@link SegmentCache} a filter on only the log
+	 * time reads the file from the cache.
+	 */
+	private <T> ITimestampedObjectCursor<T> openFileCursor(Class<T> type,
+			File file, RecordFilter filter) throws IOException {
+		if (isCached(filter)) {
+			List<TimestampedObject<T>> objects = readCached(type, file);
+			if (objects != null) {
+				return new TimeFilteredCursor<T>(objects.iterator(), filter);
+			}
+		}
+		ITimestampedObjectSerialiser serialiser = getSerialiser();
+		if (serialiser instanceof IFilteringSerialiser) {
+			return ((IFilteringSerialiser) serialiser).openCursor(file, type,
+					filter);
+		}
+		if (serialiser instanceof ITimeIndexedSerialiser) {
+			return new TimeFilteredCursor<T>(
+					((ITimeIndexedSerialiser) serialiser).openCursor(file,
+							type, filter.getFrom(), filter.getTo()), filter);
+		}
+		if (serialiser instanceof IStreamingSerialiser) {
+			return new TimeFilteredCursor<T>(
+					((IStreamingSerialiser) serialiser).openCursor(file, type),
+					filter);
+		}
+		try {
+			return new TimeFilteredCursor<T>(serialiser.readAll(file, type)
+					.asTimestampedList().iterator(), filter);
+		} catch (DeserialisationException e) {
+			throw new IOException("Could not deserialise "
+					+ file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * @return true if the files are read through the {@link SegmentCache}
+	 *         for the filter. Only whole objects are cached, so a filter
+	 *         which tests or projects them is applied as the file is read.
+	 */
+	private boolean isCached(RecordFilter filter) {
+		return segmentCache != null && !filter.hasPredicates()
+				&& filter.getFields() == null;
+	}
+
+	/**
+	 * Returns every object in the file from the {@link SegmentCache}, reading
+	 * only what has been appended since it was cached if the serialiser can
+	 * read part of a file. The file being written to is read up to the end
+	 * of the last write.
+	 *
+	 * @return the objects, or null if the file is too large to cache.
+	 */
+	private <T> List<TimestampedObject<T>> readCached(final Class<T> type,
+			File file) throws IOException {
+		final ITimestampedObjectSerialiser serialiser = getSerialiser();
+		final boolean appendable = serialiser instanceof ISplittableSerialiser
+				&& serialiser instanceof ITimeIndexedSerialiser
+				&& !SegmentCompressor.isCompressed(file);
+		long length;
+		if (file.equals(openFile)) {
+			writeLock.lock();
+			try {
+				length = file.length();
+			} finally {
+				writeLock.unlock();
+			}
+		} else {
+			length = file.length();
+		}
+		return segmentCache.get(file, type, length, appendable,
+				new SegmentCache.ISegmentReader<T>() {
+					@Override
+					public List<TimestampedObject<T>> read(File file,
+							long start, long end) throws IOException {
+						if (!appendable) {
+							return readAll(serialiser, type, file);
+						}
+						ISplittableSerialiser splittable = (ISplittableSerialiser) serialiser;
+						return toList(splittable.openPartCursor(file, type,
+								splittable.getAppendOffset(start), end));
+					}
+				});
+	}
+
+	/**
+	 * Reads every object in the file, in the order they were written.
+	 */
+	private static <T> List<TimestampedObject<T>> readAll(
+			ITimestampedObjectSerialiser serialiser, Class<T> type, File file)
+			throws IOException {
+		if (!(serialiser instanceof IStreamingSerialiser)) {
+			try {
+				return serialiser.readAll(file, type).asTimestampedList();
+			} catch (DeserialisationException e) {
+				throw new IOException("Could not deserialise "
+						+ file.getAbsolutePath(), e);
+			}
+		}
+		return toList(((IStreamingSerialiser) serialiser).openCursor(file,
+				type));
+	}
+
+	/**
+	 * Drains the cursor into a list and closes it.
+	 */
+	private static <T> List<TimestampedObject<T>> toList(
+			ITimestampedObjectCursor<T> cursor) {
+		List<TimestampedObject<T>> objects = new ArrayList<TimestampedObject<T>>();
+		try {
+			while (cursor.hasNext()) {
+				objects.add(cursor.next());
+			}
+		} finally {
+			closeQuietly(cursor);
+		}
+		return objects;
+	}
+
+	private static void closeQuietly(ITimestampedObjectCursor<?> cursor) {
+		try {
+			cursor.close();
+		} catch (IOException e) {
+			logger.warn("Could not close a cursor.", e);
 		}
-		return set;
 	}
 
 	/**
 	 * Return the contents of the given log file as a
-	 * {@link TimestampedObjectSet} of {@link Object} of type T.
+	 * {@link TimestampedObjectSet} of {@link Object} of type T. If the file
+	 * has been compressed its compressed file is read.
 	 */
 	@Override
 	public <T> TimestampedObjectSet<T> getAll(Class<T> type, File file)
@@ -422,7 +1093,17 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 			if (logger.isDebugEnabled()) {
 				logger.debug("Getting objects from: " + file.getAbsolutePath());
 			}
-			set = getSerialiser().readAll(file, type);
+			try {
+				set = getSerialiser().readAll(file, type);
+			} catch (FileNotFoundException e) {
+				// Compressed since it was found
+				File compressed = SegmentCompressor.getCompressedFile(file);
+				if (SegmentCompressor.isCompressed(file)
+						|| !compressed.exists()) {
+					throw e;
+				}
+				set = getSerialiser().readAll(compressed, type);
+			}
 		} catch (IOException e) {
 			logger.error(e.getMessage(), e);
 		} catch (DeserialisationException e) {
@@ -509,6 +1190,111 @@ public class FileSystemDataSource implements IFileSystemDataSource {
 		this.serialiser = serialiser;
 	}
 
+	/**
+	 * @return the {@link ParallelEncoder}, or null if batches are encoded
+	 *         while writing.
+	 */
+	public ParallelEncoder getParallelEncoder() {
+		return parallelEncoder;
+	}
+
+	/**
+	 * Sets the {@link ParallelEncoder} to encode batches on before they are
+	 * written. Only used if the serialiser is an {@link IEncodingSerialiser}.
+	 * Set to null to encode while writing.
+	 * 
+	 * @param parallelEncoder
+	 *            the parallelEncoder to set
+	 */
+	public void setParallelEncoder(ParallelEncoder parallelEncoder) {
+		this.parallelEncoder = parallelEncoder;
+	}
+
+	/**
+	 * @return the {@link ParallelReader}, or null if the files of a range are
+	 *         read one at a time.
+	 */
+	public ParallelReader getParallelReader() {
+		return parallelReader;
+	}
+
+	/**
+	 * Sets the {@link ParallelReader} to read the files of a range on. Set to
+	 * null to read them one at a time on the calling thread.
+	 * 
+	 * @param parallelReader
+	 *            the parallelReader to set
+	 */
+	public void setParallelReader(ParallelReader parallelReader) {
+		this.parallelReader = parallelReader;
+	}
+
+	/**
+	 * @return the {@link SegmentCompressor}, or null if rolled files are not
+	 *         compressed.
+	 */
+	public SegmentCompressor getSegmentCompressor() {
+		return segmentCompressor;
+	}
+
+	/**
+	 * Sets the {@link SegmentCompressor} to compress each file once it is
+	 * rolled. Set to null to leave them uncompressed.
+	 * 
+	 * @param segmentCompressor
+	 *            the segmentCompressor to set
+	 */
+	public void setSegmentCompressor(SegmentCompressor segmentCompressor) {
+		this.segmentCompressor = segmentCompressor;
+	}
+
+	/**
+	 * @return the {@link SegmentCache}, or null if the files are read from
+	 *         the disk every time.
+	 */
+	public SegmentCache getSegmentCache() {
+		return segmentCache;
+	}
+
+	/**
+	 * Sets the {@link SegmentCache} to keep the objects of the files read
+	 * most recently in. Set to null to read them from the disk every time.
+	 * 
+	 * @param segmentCache
+	 *            the segmentCache to set
+	 */
+	public void setSegmentCache(SegmentCache segmentCache) {
+		this.segmentCache = segmentCache;
+	}
+
+	/**
+	 * @return the {@link IDurabilityPolicy}
+	 */
+	public IDurabilityPolicy getDurabilityPolicy() {
+		return durabilityPolicy;
+	}
+
+	/**
+	 * Sets the {@link IDurabilityPolicy} deciding when what is written is
+	 * synced to the device. Ignored unless the serialiser is an
+	 * {@link ISyncableSerialiser}.
+	 * 
+	 * @param durabilityPolicy
+	 *            the durabilityPolicy to set
+	 */
+	public void setDurabilityPolicy(IDurabilityPolicy durabilityPolicy) {
+		if (durabilityPolicy == null) {
+			throw new IllegalArgumentException(
+					"durabilityPolicy cannot be null");
+		}
+		writeLock.lock();
+		try {
+			this.durabilityPolicy = durabilityPolicy;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
 	/**
 	 * @return the numberOfPastDaysLookup
 	 */
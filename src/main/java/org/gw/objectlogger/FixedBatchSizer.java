@@ -0,0 +1,42 @@
+package org.gw.objectlogger;
+
+/**
+ * An {@link IBatchSizer} which always returns the same batch size.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class FixedBatchSizer implements IBatchSizer {
+
+	private final int batchSize;
+
+	/**
+	 * @param batchSize
+	 *            The number of {@link TimestampedObject}s in each batch
+	 */
+	public FixedBatchSizer(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be at least 1");
+		}
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public int nextBatchSize() {
+		return batchSize;
+	}
+
+	@Override
+	public void batchPersisted(int size, long persistNanos) {
+	}
+
+	/**
+	 * @return the batchSize
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+}
@@ -0,0 +1,385 @@
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The file handling shared by the serialisers which write a file as a run of
+ * frames, each a header starting with the 4 byte length of its body followed
+ * by the body: a record of a {@link LengthPrefixedRecordSerialiser} or a
+ * block of a {@link BlockCompressedSerialiser}.
+ * <p>
+ * Frames are only ever appended. Opening a file whose last frame was cut
+ * short by a crash truncates it, a {@link TimeIndex} of the frame offsets is
+ * kept beside each file, and a large file is split for parallel reads by
+ * stepping over the headers. Subclasses write the frames and read them back
+ * with a {@link FrameCursor}.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public abstract class FramedFileSerialiser implements ISyncableSerialiser,
+		IEncodingSerialiser, ITimeIndexedSerialiser, ISplittableSerialiser,
+		IFilteringSerialiser {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(FramedFileSerialiser.class);
+
+	/**
+	 * The size of the header of a frame, including its length.
+	 */
+	private final int headerLength;
+
+	/**
+	 * What a frame is called in the log.
+	 */
+	private final String frameName;
+
+	private FileOutputStream fileOutput;
+
+	private DataOutputStream output;
+
+	/**
+	 * The index of the open file.
+	 */
+	private TimeIndex index;
+
+	/**
+	 * The length of the open file when it was opened.
+	 */
+	private long openedLength;
+
+	/**
+	 * The number of bytes written since the file was opened.
+	 */
+	private long bytesWritten;
+
+	FramedFileSerialiser(int headerLength, String frameName) {
+		this.headerLength = headerLength;
+		this.frameName = frameName;
+	}
+
+	/**
+	 * Opens a cursor over the frames of the input.
+	 *
+	 * @param filter
+	 *            The {@link RecordFilter} to keep the records of, or null to
+	 *            keep them all
+	 * @param length
+	 *            The length of the input, Long.MAX_VALUE if it is not known
+	 */
+	abstract <T> ITimestampedObjectCursor<T> newCursor(File file,
+			Class<T> type, RecordFilter filter, long length, InputStream input);
+
+	/**
+	 * @return the stream frames are written to.
+	 */
+	DataOutputStream getOutput() {
+		return output;
+	}
+
+	/**
+	 * @return the index of the open file.
+	 */
+	TimeIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Counts a frame written, returning the offset of the end of the file.
+	 */
+	long written(int length) {
+		bytesWritten += length;
+		return openedLength + bytesWritten;
+	}
+
+	/**
+	 * Flushes the frames written to the file and the index.
+	 */
+	void flush() throws IOException {
+		output.flush();
+		index.flush();
+	}
+
+	void checkOpen() {
+		if (output == null) {
+			throw new IllegalStateException("Please call open(File) first");
+		}
+	}
+
+	/**
+	 * Reads the whole file with an {@link ITimestampedObjectCursor}.
+	 */
+	@Override
+	public <T> TimestampedObjectSet<T> readAll(File file, Class<T> type)
+			throws IOException {
+		TimestampedObjectSet<T> set = new TimestampedObjectSet<T>();
+		ITimestampedObjectCursor<T> cursor = openCursor(file, type);
+		try {
+			while (cursor.hasNext()) {
+				set.add(cursor.next());
+			}
+		} finally {
+			cursor.close();
+		}
+		return set;
+	}
+
+	@Override
+	public <T> ITimestampedObjectCursor<T> openCursor(File file, Class<T> type)
+			throws IOException {
+		return newCursor(file, type, null,
+				SegmentCompressor.isCompressed(file) ? Long.MAX_VALUE
+						: file.length(),
+				SegmentCompressor.openInputStream(file));
+	}
+
+	/**
+	 * Reads only the frames its {@link TimeIndex} says may be in the range of
+	 * the filter.
+	 */
+	@Override
+	public <T> ITimestampedObjectCursor<T> openCursor(File file,
+			Class<T> type, RecordFilter filter) throws IOException {
+		return openCursor(file, type, filter.getFrom(), filter.getTo(), filter);
+	}
+
+	/**
+	 * Reads only the frames its {@link TimeIndex} says may be in the range.
+	 */
+	@Override
+	public <T> ITimestampedObjectCursor<T> openCursor(File file,
+			Class<T> type, long from, long to) throws IOException {
+		return openCursor(file, type, from, to, null);
+	}
+
+	private <T> ITimestampedObjectCursor<T> openCursor(final File file,
+			final Class<T> type, long from, long to, final RecordFilter filter)
+			throws IOException {
+		return new TimeRangeCursor<T>(file, from, to,
+				new TimeRangeCursor.IPartReader<T>() {
+					@Override
+					public ITimestampedObjectCursor<T> open(InputStream input,
+							long length) {
+						return newCursor(file, type, filter, length, input);
+					}
+				});
+	}
+
+	/**
+	 * Splits at the first frame after every <code>chunkSize</code> bytes.
+	 */
+	@Override
+	public List<long[]> split(File file, long start, long end, long chunkSize)
+			throws IOException {
+		return FileSplitter.atLengthPrefixes(file, start, end, chunkSize,
+				headerLength);
+	}
+
+	@Override
+	public <T> ITimestampedObjectCursor<T> openPartCursor(File file,
+			Class<T> type, long start, long end) throws IOException {
+		return openPartCursor(file, type, start, end, null);
+	}
+
+	@Override
+	public <T> ITimestampedObjectCursor<T> openPartCursor(File file,
+			Class<T> type, long start, long end, RecordFilter filter)
+			throws IOException {
+		return newCursor(file, type, filter, end - start,
+				FileSplitter.openPart(file, start, end));
+	}
+
+	/**
+	 * Frames are only appended, so returns the length.
+	 */
+	@Override
+	public long getAppendOffset(long length) {
+		return length;
+	}
+
+	/**
+	 * Opens the file for appending. A truncated last frame is cut off.
+	 */
+	@Override
+	public void open(File file) throws IOException {
+		FileUtils.touch(file);
+		truncatePartialFrame(file);
+		openedLength = file.length();
+		index = new TimeIndex(file);
+		index.open(openedLength);
+		fileOutput = new FileOutputStream(file, true);
+		output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+		bytesWritten = 0;
+	}
+
+	/**
+	 * Walks the headers to the end of the last complete frame and truncates
+	 * anything after it.
+	 */
+	private void truncatePartialFrame(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			long length = raf.length();
+			long position = 0;
+			while (position + headerLength <= length) {
+				raf.seek(position);
+				int frameLength = raf.readInt();
+				if (frameLength < 0
+						|| position + headerLength + frameLength > length) {
+					break;
+				}
+				position += headerLength + frameLength;
+			}
+			if (position < length) {
+				logger.warn("Truncating a partial " + frameName
+						+ " at the end of " + file.getAbsolutePath());
+				raf.setLength(position);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (output != null) {
+			try {
+				output.close();
+			} finally {
+				output = null;
+				fileOutput = null;
+				index.close();
+			}
+		}
+	}
+
+	@Override
+	public void sync() throws IOException {
+		checkOpen();
+		fileOutput.getChannel().force(false);
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return output != null;
+	}
+
+	/**
+	 * Reads the frames of a file or part in order, returning the objects
+	 * {@link #readNext()} decodes from them.
+	 */
+	abstract static class FrameCursor<T> implements
+			ITimestampedObjectCursor<T> {
+
+		protected final File file;
+		protected final Class<T> type;
+		protected final RecordFilter filter;
+		protected DataInputStream input;
+
+		/**
+		 * The number of bytes not yet read, of the length of the file or part
+		 * when the cursor was opened, or unknown for a compressed file.
+		 * Anything appended later is not read.
+		 */
+		protected long remaining;
+
+		private TimestampedObject<T> next;
+
+		/**
+		 * @param filter
+		 *            The {@link RecordFilter} to keep the records of, or null
+		 *            to keep them all
+		 * @param length
+		 *            The length of the input, Long.MAX_VALUE if it is not
+		 *            known
+		 */
+		FrameCursor(File file, Class<T> type, RecordFilter filter,
+				long length, InputStream input) {
+			this.file = file;
+			this.type = type;
+			this.filter = filter;
+			this.remaining = length;
+			this.input = new DataInputStream(new BufferedInputStream(input,
+					64 * 1024));
+		}
+
+		/**
+		 * @return the next record kept, or null at the end of the input or a
+		 *         truncated frame.
+		 */
+		abstract TimestampedObject<T> readNext() throws IOException;
+
+		@Override
+		public boolean hasNext() {
+			if (next == null && input != null) {
+				try {
+					next = readNext();
+					if (next == null) {
+						close();
+					}
+				} catch (IOException e) {
+					closeQuietly();
+					throw new IllegalStateException("Could not read "
+							+ file.getAbsolutePath(), e);
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public TimestampedObject<T> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			TimestampedObject<T> result = next;
+			next = null;
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (input != null) {
+				try {
+					input.close();
+				} finally {
+					input = null;
+				}
+			}
+		}
+
+		private void closeQuietly() {
+			try {
+				close();
+			} catch (IOException e) {
+				logger.warn("Could not close " + file.getAbsolutePath(), e);
+			}
+		}
+	}
+
+}
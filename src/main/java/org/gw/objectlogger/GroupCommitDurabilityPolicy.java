@@ -0,0 +1,28 @@
+package org.gw.objectlogger;
+
+import java.io.IOException;
+
+/**
+ * {@link IDurabilityPolicy} which syncs once after every write, so a whole
+ * batch shares one sync. Once an object is persisted it is on the device, so
+ * the {@link PersistFuture} from {@link ObjectLogger#logAndAck(Object)} means
+ * it is durable. Use it for audit loggers.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class GroupCommitDurabilityPolicy implements IDurabilityPolicy {
+
+	@Override
+	public void afterWrite(ISyncableSerialiser serialiser) throws IOException {
+		serialiser.sync();
+	}
+
+	@Override
+	public void beforeClose(ISyncableSerialiser serialiser) {
+		// Already synced by the last write
+	}
+
+}
@@ -0,0 +1,33 @@
+package org.gw.objectlogger;
+
+/**
+ * An interface defining what an {@link ObjectLogger} does with an object when
+ * its asynchronous {@link ILoggerQueue} is full.
+ * <p>
+ * Implementations must not log anything per object. They are called when the
+ * logger is already overloaded. Every object that does not make it into the
+ * queue or the {@link IDataSource} must be handed to the
+ * {@link IDiscardListener}, which counts it.
+ * 
+ * @author Gman
+ * 
+ */
+public interface IBackpressurePolicy {
+
+	/**
+	 * Called when the given object could not be added to the full queue.
+	 * 
+	 * @param object
+	 *            The {@link TimestampedObject} that could not be added.
+	 * @param queue
+	 *            The full {@link ILoggerQueue}
+	 * @param dataSource
+	 *            The {@link IDataSource} the queue is logged to
+	 * @param listener
+	 *            The {@link IDiscardListener} to hand discarded objects to
+	 */
+	<T> void onQueueFull(TimestampedObject<T> object,
+			ILoggerQueue<TimestampedObject<T>> queue, IDataSource dataSource,
+			IDiscardListener<T> listener);
+
+}
@@ -0,0 +1,33 @@
+package org.gw.objectlogger;
+
+/**
+ * Decides how many {@link TimestampedObject}s the {@link ObjectLogger} takes
+ * from its queue for each call to {@link IDataSource#persist(java.util.List)}.
+ * An {@link IBatchSizer} is only ever called by the thread logging the queue,
+ * but keeps state for one {@link ObjectLogger} so must not be shared.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public interface IBatchSizer {
+
+	/**
+	 * @return the number of {@link TimestampedObject}s to take from the queue
+	 *         for the next batch. Always at least 1.
+	 */
+	int nextBatchSize();
+
+	/**
+	 * Called after each batch has been persisted.
+	 * 
+	 * @param size
+	 *            The number of {@link TimestampedObject}s in the batch
+	 * @param persistNanos
+	 *            How long {@link IDataSource#persist(java.util.List)} took in
+	 *            nanoseconds
+	 */
+	void batchPersisted(int size, long persistNanos);
+
+}
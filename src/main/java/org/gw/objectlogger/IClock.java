@@ -0,0 +1,19 @@
+package org.gw.objectlogger;
+
+/**
+ * The source of the log time given to each {@link TimestampedObject} by the
+ * {@link ObjectLogger}.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public interface IClock {
+
+	/**
+	 * @return the current time in milliseconds since the epoch.
+	 */
+	long currentTimeMillis();
+
+}
@@ -25,7 +25,8 @@ public interface IDataSource {
 
 	/**
 	 * Persists the {@link java.util.List} of {@link TimestampedObject}s in the data
-	 * source
+	 * source. The {@link ObjectLogger} reuses the {@link java.util.List} once
+	 * this returns, so it must not be kept.
 	 * 
 	 * @param object
 	 */
@@ -93,6 +94,122 @@ public interface IDataSource {
 	<T> TimestampedObjectSet<T> getAll(Class<T> type, Date from, Date to)
 			throws FileNotFoundException;
 
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the
+	 * {@link TimestampedObject}s logged between the given {@link java.util.Date}s,
+	 * which reads them as they are asked for rather than all at once. The
+	 * caller must close it.
+	 * 
+	 * @param type
+	 *            The type of Object expected to be return. Should be the same
+	 *            type as persisted by this {@link IDataSource}.
+	 * @param from
+	 *            The earliest log time inclusive.
+	 * @param to
+	 *            The latest log time exclusive.
+	 * @return an {@link ITimestampedObjectCursor} over the objects in the
+	 *         range.
+	 * @throws java.io.FileNotFoundException
+	 *             If no file could be found.
+	 */
+	<T> ITimestampedObjectCursor<T> stream(Class<T> type, Date from, Date to)
+			throws FileNotFoundException;
+
+	/**
+	 * Returns the {@link TimestampedObject}s logged between the given
+	 * {@link java.util.Date}s whose Object is accepted by every one of the
+	 * given {@link IFieldPredicate}s. Where the data source can, each record
+	 * is tested before its Object is built, so the records which are not
+	 * kept are never deserialised.
+	 * 
+	 * @param type
+	 *            The type of Object expected to be return. Should be the same
+	 *            type as persisted by this {@link IDataSource}.
+	 * @param from
+	 *            The earliest log time inclusive.
+	 * @param to
+	 *            The latest log time exclusive.
+	 * @param predicates
+	 *            The predicates every Object returned is accepted by.
+	 * @return Returns the {@link TimestampedObject}s kept.
+	 * @throws java.io.FileNotFoundException
+	 *             If no file could be found.
+	 */
+	<T> TimestampedObjectSet<T> getAll(Class<T> type, Date from, Date to,
+			IFieldPredicate... predicates) throws FileNotFoundException;
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the
+	 * {@link TimestampedObject}s logged between the given {@link java.util.Date}s
+	 * whose Object is accepted by every one of the given
+	 * {@link IFieldPredicate}s. Where the data source can, each record is
+	 * tested before its Object is built. The caller must close it.
+	 * 
+	 * @param type
+	 *            The type of Object expected to be return. Should be the same
+	 *            type as persisted by this {@link IDataSource}.
+	 * @param from
+	 *            The earliest log time inclusive.
+	 * @param to
+	 *            The latest log time exclusive.
+	 * @param predicates
+	 *            The predicates every Object returned is accepted by.
+	 * @return an {@link ITimestampedObjectCursor} over the objects kept.
+	 * @throws java.io.FileNotFoundException
+	 *             If no file could be found.
+	 */
+	<T> ITimestampedObjectCursor<T> stream(Class<T> type, Date from, Date to,
+			IFieldPredicate... predicates) throws FileNotFoundException;
+
+	/**
+	 * Returns the {@link TimestampedObject}s logged between the given
+	 * {@link java.util.Date}s with only the named fields of each Object read.
+	 * Where the data source can, the other fields are skipped without being
+	 * built, so the type may be a smaller view class holding only the named
+	 * fields.
+	 * 
+	 * @param type
+	 *            The type of Object expected to be return, or a view class of
+	 *            the named fields.
+	 * @param from
+	 *            The earliest log time inclusive.
+	 * @param to
+	 *            The latest log time exclusive.
+	 * @param fields
+	 *            The names of the fields at the top level of the Object to
+	 *            read.
+	 * @return Returns the {@link TimestampedObject}s in the range.
+	 * @throws java.io.FileNotFoundException
+	 *             If no file could be found.
+	 */
+	<T> TimestampedObjectSet<T> getAll(Class<T> type, Date from, Date to,
+			String... fields) throws FileNotFoundException;
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the
+	 * {@link TimestampedObject}s logged between the given {@link java.util.Date}s
+	 * with only the named fields of each Object read. Where the data source
+	 * can, the other fields are skipped without being built. The caller must
+	 * close it.
+	 * 
+	 * @param type
+	 *            The type of Object expected to be return, or a view class of
+	 *            the named fields.
+	 * @param from
+	 *            The earliest log time inclusive.
+	 * @param to
+	 *            The latest log time exclusive.
+	 * @param fields
+	 *            The names of the fields at the top level of the Object to
+	 *            read.
+	 * @return an {@link ITimestampedObjectCursor} over the objects in the
+	 *         range.
+	 * @throws java.io.FileNotFoundException
+	 *             If no file could be found.
+	 */
+	<T> ITimestampedObjectCursor<T> stream(Class<T> type, Date from, Date to,
+			String... fields) throws FileNotFoundException;
+
 	/**
 	 * Cleans the {@link IDataSource}. See concrete classes for more info.
 	 */
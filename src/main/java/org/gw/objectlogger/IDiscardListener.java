@@ -0,0 +1,22 @@
+package org.gw.objectlogger;
+
+/**
+ * An interface for being told about objects an {@link ObjectLogger} has
+ * discarded without logging them.
+ * 
+ * @author Gman
+ * 
+ * @param <T>
+ *            The underlying type of {@link TimestampedObject}
+ */
+public interface IDiscardListener<T> {
+
+	/**
+	 * Called for each {@link TimestampedObject} that was discarded.
+	 * 
+	 * @param object
+	 *            The discarded {@link TimestampedObject}
+	 */
+	void discarded(TimestampedObject<T> object);
+
+}
@@ -0,0 +1,35 @@
+package org.gw.objectlogger;
+
+import java.io.IOException;
+
+/**
+ * Decides when the {@link FileSystemDataSource} forces what its
+ * {@link ISyncableSerialiser} has written to the storage device. An
+ * {@link IDurabilityPolicy} may keep state for the file being written, so
+ * each {@link FileSystemDataSource} needs its own. It is only called while
+ * the {@link FileSystemDataSource} holds its write lock.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public interface IDurabilityPolicy {
+
+	/**
+	 * Called after each write of an object or batch.
+	 * 
+	 * @param serialiser
+	 *            The {@link ISyncableSerialiser} which wrote it
+	 */
+	void afterWrite(ISyncableSerialiser serialiser) throws IOException;
+
+	/**
+	 * Called before the file is closed, either to roll it or on shutdown.
+	 * 
+	 * @param serialiser
+	 *            The {@link ISyncableSerialiser} about to be closed
+	 */
+	void beforeClose(ISyncableSerialiser serialiser) throws IOException;
+
+}
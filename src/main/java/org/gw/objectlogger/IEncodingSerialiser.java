@@ -0,0 +1,39 @@
+package org.gw.objectlogger;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * An {@link ITimestampedObjectSerialiser} split into a stateless
+ * {@link ITimestampedObjectEncoder} and a stateful file sink, so that a
+ * batch can be encoded by many threads and then written in order by one.
+ * {@link #write(List)} is the same as encoding each object with the
+ * {@link ITimestampedObjectEncoder} and calling
+ * {@link #writeEncoded(List, List)}.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public interface IEncodingSerialiser extends ITimestampedObjectSerialiser {
+
+	/**
+	 * @return the thread safe {@link ITimestampedObjectEncoder} for the
+	 *         objects this writes.
+	 */
+	ITimestampedObjectEncoder getEncoder();
+
+	/**
+	 * Writes the objects encoded by the {@link ITimestampedObjectEncoder} to
+	 * the open file, in order.
+	 * 
+	 * @param batch
+	 *            The objects which were encoded, for their log times
+	 * @param encoded
+	 *            The encoded objects, one for each object of the batch
+	 */
+	void writeEncoded(List<TimestampedObject<?>> batch, List<byte[]> encoded)
+			throws IOException;
+
+}
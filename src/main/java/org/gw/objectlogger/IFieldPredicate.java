@@ -0,0 +1,33 @@
+package org.gw.objectlogger;
+
+/**
+ * Tests a field of the logged Object while a record is read, before the
+ * Object is built, so the records it rejects are never deserialised. Only
+ * the fields at the top level of the Object are tested.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public interface IFieldPredicate {
+
+	/**
+	 * @return the name of the field tested, as it is written in json.
+	 */
+	String getField();
+
+	/**
+	 * Tests the value of the field. This may be called by more than one
+	 * thread.
+	 *
+	 * @param value
+	 *            The value as read: a {@link String}, {@link Long},
+	 *            {@link java.math.BigInteger}, {@link Double} or
+	 *            {@link Boolean}, or null if the field is null, missing, or
+	 *            holds an object or array
+	 * @return true to keep the record.
+	 */
+	boolean accept(Object value);
+
+}
@@ -0,0 +1,39 @@
+package org.gw.objectlogger;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * An {@link IStreamingSerialiser} which tests each record against a
+ * {@link RecordFilter} as it is read, before its Object is built, so the
+ * records the filter does not keep cost little more than reading their
+ * bytes.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public interface IFilteringSerialiser extends IStreamingSerialiser {
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the
+	 * {@link TimestampedObject}s in the given file the filter keeps, in the
+	 * order they were written. An {@link ITimeIndexedSerialiser} only reads
+	 * the parts of the file which may hold the range of the filter. The
+	 * caller must close it.
+	 *
+	 * @param file
+	 *            The {@link File} to read
+	 * @param type
+	 *            The type of Object in the file
+	 * @param filter
+	 *            The {@link RecordFilter} to keep the records of
+	 * @return an {@link ITimestampedObjectCursor} over the records kept.
+	 * @throws IOException
+	 *             If the file could not be opened.
+	 */
+	<T> ITimestampedObjectCursor<T> openCursor(File file, Class<T> type,
+			RecordFilter filter) throws IOException;
+
+}
@@ -0,0 +1,60 @@
+package org.gw.objectlogger;
+
+import java.util.Collection;
+
+/**
+ * An interface for the queue an {@link ObjectLogger} holds its objects in
+ * until they are logged asynchronously. Any number of threads may add to the
+ * queue. Elements are taken off by the worker that logs the queue.
+ * 
+ * @author Gman
+ * 
+ * @param <E>
+ *            The type of element held in the queue
+ */
+public interface ILoggerQueue<E> {
+
+	/**
+	 * Adds the given element to the tail of the queue if there is space.
+	 * 
+	 * @param e
+	 *            The element to add. Cannot be null.
+	 * @return true if the element was added, false if the queue is full.
+	 */
+	boolean offer(E e);
+
+	/**
+	 * Removes and returns the head of the queue.
+	 * 
+	 * @return the head of the queue, or null if the queue is empty.
+	 */
+	E poll();
+
+	/**
+	 * Removes at most <code>maxElements</code> from the head of the queue and
+	 * adds them to the given {@link java.util.Collection} in queue order.
+	 * 
+	 * @param c
+	 *            The {@link java.util.Collection} to add the elements to
+	 * @param maxElements
+	 *            The maximum number of elements to remove
+	 * @return the number of elements removed.
+	 */
+	int drainTo(Collection<? super E> c, int maxElements);
+
+	/**
+	 * @return the number of elements in the queue.
+	 */
+	int size();
+
+	/**
+	 * @return true if there is nothing to take from the queue.
+	 */
+	boolean isEmpty();
+
+	/**
+	 * @return the maximum number of elements the queue can hold.
+	 */
+	int capacity();
+
+}
@@ -0,0 +1,99 @@
+package org.gw.objectlogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * An {@link IStreamingSerialiser} whose files can be split into parts at
+ * record boundaries, so a single large file can be read by several threads
+ * at once. Only uncompressed files can be split.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public interface ISplittableSerialiser extends IStreamingSerialiser {
+
+	/**
+	 * Splits <code>[start, end)</code> of the given file into parts of about
+	 * <code>chunkSize</code> bytes, each holding whole records. The range is
+	 * either the whole file or starts at a record, such as a part of its
+	 * {@link TimeIndex}.
+	 *
+	 * @param file
+	 *            The uncompressed {@link File} to split
+	 * @param start
+	 *            The offset to split from
+	 * @param end
+	 *            The offset to split to (exclusive)
+	 * @param chunkSize
+	 *            The size of part to split at
+	 * @return the parts in order, as <code>{start, end}</code>
+	 * @throws IOException
+	 *             If the file could not be read.
+	 */
+	List<long[]> split(File file, long start, long end, long chunkSize)
+			throws IOException;
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the
+	 * {@link TimestampedObject}s in a part of the given file returned by
+	 * {@link #split(File, long, long, long)}, in the order they were written.
+	 * The caller must close it.
+	 *
+	 * @param file
+	 *            The {@link File} to read
+	 * @param type
+	 *            The type of Object in the file
+	 * @param start
+	 *            The offset of the part
+	 * @param end
+	 *            The end of the part (exclusive)
+	 * @return an {@link ITimestampedObjectCursor} over the part.
+	 * @throws IOException
+	 *             If the file could not be opened.
+	 */
+	<T> ITimestampedObjectCursor<T> openPartCursor(File file, Class<T> type,
+			long start, long end) throws IOException;
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the
+	 * {@link TimestampedObject}s the filter keeps in a part of the given file
+	 * returned by {@link #split(File, long, long, long)}, in the order they
+	 * were written. The caller must close it.
+	 *
+	 * @param file
+	 *            The {@link File} to read
+	 * @param type
+	 *            The type of Object in the file
+	 * @param start
+	 *            The offset of the part
+	 * @param end
+	 *            The end of the part (exclusive)
+	 * @param filter
+	 *            The {@link RecordFilter} to keep the records of, or null to
+	 *            keep them all
+	 * @return an {@link ITimestampedObjectCursor} over the records kept.
+	 * @throws IOException
+	 *             If the file could not be opened.
+	 */
+	<T> ITimestampedObjectCursor<T> openPartCursor(File file, Class<T> type,
+			long start, long end, RecordFilter filter) throws IOException;
+
+	/**
+	 * Returns the offset from which the records written to a file after it
+	 * was <code>length</code> bytes long can be read as a part: the length
+	 * itself for a file which is only ever appended to, or the start of
+	 * whatever the next write is written over, such as the closing bracket
+	 * of a json array.
+	 *
+	 * @param length
+	 *            The length of the file when it was read, at the end of a
+	 *            write
+	 * @return the offset to read the records written since from.
+	 */
+	long getAppendOffset(long length);
+
+}
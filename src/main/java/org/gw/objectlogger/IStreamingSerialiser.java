@@ -0,0 +1,34 @@
+package org.gw.objectlogger;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * An {@link ITimestampedObjectSerialiser} which can read a file one
+ * {@link TimestampedObject} at a time, rather than all at once with
+ * {@link #readAll(File, Class)}.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public interface IStreamingSerialiser extends ITimestampedObjectSerialiser {
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the
+	 * {@link TimestampedObject}s in the given file, in the order they were
+	 * written. The caller must close it.
+	 * 
+	 * @param file
+	 *            The {@link File} to read
+	 * @param type
+	 *            The type of Object in the file
+	 * @return an {@link ITimestampedObjectCursor} over the file.
+	 * @throws IOException
+	 *             If the file could not be opened.
+	 */
+	<T> ITimestampedObjectCursor<T> openCursor(File file, Class<T> type)
+			throws IOException;
+
+}
@@ -0,0 +1,30 @@
+package org.gw.objectlogger;
+
+import java.io.IOException;
+
+/**
+ * An {@link ITimestampedObjectSerialiser} which can force what it has written
+ * to the storage device. The {@link IDurabilityPolicy} of the
+ * {@link FileSystemDataSource} decides when to call {@link #sync()}.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public interface ISyncableSerialiser extends ITimestampedObjectSerialiser {
+
+	/**
+	 * Forces everything written to the open file to the storage device.
+	 * 
+	 * @throws IOException
+	 *             If the file is not open or could not be synced.
+	 */
+	void sync() throws IOException;
+
+	/**
+	 * @return the number of bytes written since the file was opened.
+	 */
+	long getBytesWritten();
+
+}
@@ -0,0 +1,39 @@
+package org.gw.objectlogger;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * An {@link IStreamingSerialiser} which keeps a {@link TimeIndex} beside each
+ * file it writes, so the objects logged in a range of time are read without
+ * reading the rest of the file.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public interface ITimeIndexedSerialiser extends IStreamingSerialiser {
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the
+	 * {@link TimestampedObject}s in the given file logged from
+	 * <code>from</code> (inclusive) to <code>to</code> (exclusive), in the
+	 * order they were written. The caller must close it.
+	 *
+	 * @param file
+	 *            The {@link File} to read
+	 * @param type
+	 *            The type of Object in the file
+	 * @param from
+	 *            The earliest log time in milliseconds (inclusive)
+	 * @param to
+	 *            The latest log time in milliseconds (exclusive)
+	 * @return an {@link ITimestampedObjectCursor} over the range.
+	 * @throws IOException
+	 *             If the file could not be opened.
+	 */
+	<T> ITimestampedObjectCursor<T> openCursor(File file, Class<T> type,
+			long from, long to) throws IOException;
+
+}
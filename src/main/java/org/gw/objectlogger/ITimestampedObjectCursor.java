@@ -0,0 +1,22 @@
+package org.gw.objectlogger;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * An {@link Iterator} over the {@link TimestampedObject}s read from a file,
+ * one at a time, by an {@link IStreamingSerialiser}. It holds the file open
+ * until it is closed or has been read to the end. {@link #remove()} is not
+ * supported.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ * @param <T>
+ *            The underlying type of {@link TimestampedObject}
+ */
+public interface ITimestampedObjectCursor<T> extends
+		Iterator<TimestampedObject<T>>, Closeable {
+
+}
@@ -0,0 +1,24 @@
+package org.gw.objectlogger;
+
+/**
+ * Encodes a {@link TimestampedObject} to the bytes an
+ * {@link IEncodingSerialiser} writes for it. An encoder holds no state about
+ * the file being written, so it may be called by many threads at once.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public interface ITimestampedObjectEncoder {
+
+	/**
+	 * @param object
+	 *            The {@link TimestampedObject} to encode
+	 * @return the encoded bytes of the given {@link TimestampedObject}.
+	 * @throws SerialisationException
+	 *             If it could not be encoded.
+	 */
+	byte[] encode(TimestampedObject<?> object) throws SerialisationException;
+
+}
@@ -0,0 +1,35 @@
+package org.gw.objectlogger;
+
+/**
+ * An interface defining how an {@link ObjectLoggerWorkerThread} waits when
+ * none of its {@link ObjectLogger}s have anything in their queues, and how
+ * producers wake it up again. Implementations trade CPU usage for the latency
+ * between an object being logged and it being persisted.
+ * <p>
+ * Implementations must be stateless with respect to the worker so that one
+ * instance can be shared by many workers.
+ * 
+ * @author Gman
+ * 
+ */
+public interface IWaitStrategy {
+
+	/**
+	 * Called by the worker after a pass over its {@link ObjectLogger}s found
+	 * nothing to log.
+	 * 
+	 * @param idleCount
+	 *            The number of consecutive idle passes, starting at 1.
+	 */
+	void waitForWork(int idleCount);
+
+	/**
+	 * Called by a producer after it added an object to a queue while the
+	 * worker was waiting for work.
+	 * 
+	 * @param worker
+	 *            The {@link Thread} of the worker that drains the queue.
+	 */
+	void signal(Thread worker);
+
+}
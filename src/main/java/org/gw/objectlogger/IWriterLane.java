@@ -0,0 +1,19 @@
+package org.gw.objectlogger;
+
+/**
+ * A lane of an {@link IWriterScheduler}. A lane logs the queues of the
+ * {@link ObjectLogger}s that share one {@link IDataSource}, one at a time, so
+ * a slow {@link IDataSource} only holds up its own lane.
+ * 
+ * @author Gman
+ * 
+ */
+public interface IWriterLane {
+
+	/**
+	 * Called by an {@link ObjectLogger} after it added an object to its
+	 * queue. Wakes the lane if it is waiting for work.
+	 */
+	void signal();
+
+}
@@ -0,0 +1,38 @@
+package org.gw.objectlogger;
+
+/**
+ * An interface for scheduling the asynchronous logging of the
+ * {@link ObjectLogger}s' queues. The {@link ObjectLogger}s are grouped into
+ * {@link IWriterLane}s by their {@link IDataSource}. Each lane is logged
+ * serially, and different lanes are logged independently of each other.
+ * 
+ * @author Gman
+ * 
+ */
+public interface IWriterScheduler {
+
+	/**
+	 * Adds the given {@link ObjectLogger} to the lane of its
+	 * {@link IDataSource}, creating the lane if needed.
+	 * 
+	 * @param objLogger
+	 *            The {@link ObjectLogger} to register
+	 * @return the {@link IWriterLane} to signal when objects are logged.
+	 */
+	IWriterLane register(ObjectLogger<?> objLogger);
+
+	/**
+	 * Removes the given {@link ObjectLogger} from its lane. The lane is
+	 * removed when it has no {@link ObjectLogger}s left.
+	 * 
+	 * @param objLogger
+	 *            The {@link ObjectLogger} to unregister
+	 */
+	void unregister(ObjectLogger<?> objLogger);
+
+	/**
+	 * Stops logging all lanes.
+	 */
+	void shutdown();
+
+}
@@ -0,0 +1,232 @@
+package org.gw.objectlogger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * An {@link ITimestampedObjectSerialiser} which writes each
+ * {@link TimestampedObject} as a record: its length as a 4 byte int followed
+ * by the encoded object. Subclasses only encode and decode a single object.
+ * <p>
+ * Records are only ever appended. Opening a file whose last record was cut
+ * short by a crash truncates it, and a cursor stops at a truncated record, so
+ * every complete record stays readable.
+ * <p>
+ * A {@link TimeIndex} of the record offsets is kept beside each file, so a
+ * range of log times is read by seeking to the records which may hold it.
+ * A large file is split for parallel reads by stepping over the length
+ * prefixes. The file handling is shared with
+ * {@link BlockCompressedSerialiser} by {@link FramedFileSerialiser}. A
+ * {@link RecordFilter} tests each record as it is read, which a subclass may
+ * do without building the object.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public abstract class LengthPrefixedRecordSerialiser extends
+		FramedFileSerialiser {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(LengthPrefixedRecordSerialiser.class);
+
+	/**
+	 * The size of the length prefix
+	 */
+	protected static final int prefixLength = 4;
+
+	/**
+	 * The initial size of the record buffer
+	 */
+	private static final int initialBufferSize = 512;
+
+	/**
+	 * A record buffer grown beyond this by a large object is dropped after
+	 * use.
+	 */
+	private static final int maxRetainedBufferSize = 1024 * 1024;
+
+	/**
+	 * The buffer each record is encoded into before it is written. Only used
+	 * by the thread writing to the file.
+	 */
+	private ByteArrayBuffer record = new ByteArrayBuffer(initialBufferSize);
+
+	/**
+	 * Encodes each {@link TimestampedObject} into a new array, so it can be
+	 * called by more than one thread.
+	 */
+	private final ITimestampedObjectEncoder encoder = new ITimestampedObjectEncoder() {
+		@Override
+		public byte[] encode(TimestampedObject<?> object)
+				throws SerialisationException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(
+					initialBufferSize);
+			LengthPrefixedRecordSerialiser.this.encode(object, out);
+			return out.toByteArray();
+		}
+	};
+
+	public LengthPrefixedRecordSerialiser() {
+		super(prefixLength, "record");
+	}
+
+	/**
+	 * Writes the encoded object, without the length prefix, to the given
+	 * {@link OutputStream}. This may be called by more than one thread.
+	 */
+	protected abstract void encode(TimestampedObject<?> object,
+			OutputStream out) throws SerialisationException;
+
+	/**
+	 * Decodes one record, without its length prefix. This may be called by
+	 * more than one thread.
+	 */
+	protected abstract <T> TimestampedObject<T> decode(Class<T> type,
+			byte[] data, int offset, int length) throws IOException;
+
+	/**
+	 * Decodes one record, without its length prefix, if the filter keeps it.
+	 * The record is decoded and then tested; a subclass which can read the
+	 * log time or fields of a record without building its object should
+	 * override this. This may be called by more than one thread.
+	 *
+	 * @return the object, or null if it is not kept.
+	 */
+	protected <T> TimestampedObject<T> decode(Class<T> type, byte[] data,
+			int offset, int length, RecordFilter filter) throws IOException {
+		TimestampedObject<T> object = decode(type, data, offset, length);
+		return filter.accept(object) ? object : null;
+	}
+
+	@Override
+	public void write(TimestampedObject<?> object) throws IOException,
+			SerialisationException {
+		checkOpen();
+		if (object == null) {
+			return;
+		}
+		writeRecord(object);
+		flush();
+	}
+
+	/**
+	 * Writes the batch, flushing to the file once at the end.
+	 */
+	@Override
+	public void write(List<TimestampedObject<?>> batch) throws IOException,
+			SerialisationException {
+		checkOpen();
+		if (batch == null || batch.isEmpty()) {
+			return;
+		}
+		for (TimestampedObject<?> object : batch) {
+			if (object != null) {
+				writeRecord(object);
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Writes the given objects encoded by {@link #getEncoder()}, flushing to
+	 * the file once at the end.
+	 */
+	@Override
+	public void writeEncoded(List<TimestampedObject<?>> batch,
+			List<byte[]> encoded) throws IOException {
+		checkOpen();
+		for (int i = 0; i < encoded.size(); i++) {
+			byte[] data = encoded.get(i);
+			getIndex().add(batch.get(i).getLogTimeMillis(),
+					writeRecord(data, data.length));
+		}
+		flush();
+	}
+
+	private void writeRecord(TimestampedObject<?> object) throws IOException,
+			SerialisationException {
+		record.reset();
+		encode(object, record);
+		getIndex().add(object.getLogTimeMillis(),
+				writeRecord(record.array(), record.size()));
+		if (record.capacity() > maxRetainedBufferSize) {
+			record = new ByteArrayBuffer(initialBufferSize);
+		}
+	}
+
+	/**
+	 * @return the offset of the end of the record.
+	 */
+	private long writeRecord(byte[] data, int length) throws IOException {
+		getOutput().writeInt(length);
+		getOutput().write(data, 0, length);
+		return written(prefixLength + length);
+	}
+
+	@Override
+	public ITimestampedObjectEncoder getEncoder() {
+		return encoder;
+	}
+
+	@Override
+	<T> ITimestampedObjectCursor<T> newCursor(File file, Class<T> type,
+			RecordFilter filter, long length, InputStream input) {
+		return new RecordCursor<T>(file, type, filter, length, input);
+	}
+
+	/**
+	 * Reads a file a record at a time into a reused buffer. With a
+	 * {@link RecordFilter} the records it does not keep are skipped.
+	 */
+	private class RecordCursor<T> extends FrameCursor<T> {
+
+		private byte[] data = new byte[initialBufferSize];
+
+		RecordCursor(File file, Class<T> type, RecordFilter filter,
+				long length, InputStream input) {
+			super(file, type, filter, length, input);
+		}
+
+		@Override
+		TimestampedObject<T> readNext() throws IOException {
+			while (true) {
+				int length;
+				try {
+					length = input.readInt();
+				} catch (EOFException e) {
+					return null;
+				}
+				remaining -= prefixLength;
+				if (length < 0 || length > remaining) {
+					logger.warn("Stopping at a truncated or corrupt record in "
+							+ file.getAbsolutePath());
+					return null;
+				}
+				if (length > data.length) {
+					data = new byte[Math.max(length, data.length * 2)];
+				}
+				input.readFully(data, 0, length);
+				remaining -= length;
+				if (filter == null) {
+					return decode(type, data, 0, length);
+				}
+				TimestampedObject<T> object = decode(type, data, 0, length,
+						filter);
+				if (object != null) {
+					return object;
+				}
+			}
+		}
+	}
+
+}
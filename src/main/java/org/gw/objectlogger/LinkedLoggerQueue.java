@@ -0,0 +1,64 @@
+package org.gw.objectlogger;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * {@link ILoggerQueue} backed by a
+ * {@link java.util.concurrent.LinkedBlockingQueue}. This is the default queue
+ * of an {@link ObjectLogger}.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ * @param <E>
+ *            The type of element held in the queue
+ */
+public class LinkedLoggerQueue<E> implements ILoggerQueue<E> {
+
+	private final BlockingQueue<E> queue;
+
+	private final int capacity;
+
+	/**
+	 * @param capacity
+	 *            The maximum number of elements the queue can hold.
+	 */
+	public LinkedLoggerQueue(int capacity) {
+		this.queue = new LinkedBlockingQueue<E>(capacity);
+		this.capacity = capacity;
+	}
+
+	@Override
+	public boolean offer(E e) {
+		return queue.offer(e);
+	}
+
+	@Override
+	public E poll() {
+		return queue.poll();
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		return queue.drainTo(c, maxElements);
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+
+}
@@ -0,0 +1,270 @@
+package org.gw.objectlogger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An {@link ITimestampedObjectCursor} over several files or parts of files,
+ * each read whole on an {@link ExecutorService}, which returns their
+ * {@link TimestampedObject}s in log time order with a k-way merge. Up to
+ * <code>readAhead</code> reads are run ahead of the merge, in order.
+ * <p>
+ * Each read is sorted by log time before it joins the merge, as objects are
+ * written in the order they were persisted, which is not always the order
+ * they were logged in. A read only joins the merge once the earliest object
+ * left is logged at or after its start, so only the reads which overlap the
+ * objects being returned are held in memory. The start of a read is the
+ * time its file was started, or the last log time of the part before it in
+ * the same file. An object logged before the start of its read, such as one
+ * queued before a roll and written after it, is returned once its read
+ * joins, after the objects of earlier reads logged before that start.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ * @param <T>
+ *            The underlying type of {@link TimestampedObject}
+ */
+class MergingCursor<T> implements ITimestampedObjectCursor<T> {
+
+	/**
+	 * Reads a file, or part of one, whole.
+	 */
+	abstract static class Read<T> implements
+			Callable<List<TimestampedObject<T>>> {
+
+		/**
+		 * No object read is logged before this, -1 if it is not known.
+		 */
+		long start;
+
+		/**
+		 * True if this reads on from the read before it in the same file.
+		 */
+		final boolean continues;
+
+		/**
+		 * @param start
+		 *            The time the file was started in milliseconds, -1 if
+		 *            it is not known
+		 * @param continues
+		 *            True if this reads on from the read before it in the
+		 *            same file, whose last object gives its start
+		 */
+		Read(long start, boolean continues) {
+			this.start = start;
+			this.continues = continues;
+		}
+	}
+
+	/**
+	 * Orders {@link TimestampedObject}s by log time.
+	 */
+	private static final Comparator<TimestampedObject<?>> logTimeOrder = new Comparator<TimestampedObject<?>>() {
+		@Override
+		public int compare(TimestampedObject<?> o1, TimestampedObject<?> o2) {
+			long a = o1.getLogTimeMillis();
+			long b = o2.getLogTimeMillis();
+			return a < b ? -1 : (a == b ? 0 : 1);
+		}
+	};
+
+	private final List<? extends Read<T>> reads;
+	private final ExecutorService executor;
+	private final int readAhead;
+
+	/**
+	 * The reads submitted but not yet merged, in order.
+	 */
+	private final LinkedList<Future<List<TimestampedObject<T>>>> pending = new LinkedList<Future<List<TimestampedObject<T>>>>();
+
+	private final PriorityQueue<Source<T>> queue = new PriorityQueue<Source<T>>();
+
+	private int submitted;
+	private int merged;
+	private boolean closed;
+
+	/**
+	 * @param reads
+	 *            The reads, in the order the files were started
+	 * @param executor
+	 *            The {@link ExecutorService} to read on
+	 * @param readAhead
+	 *            The most reads run ahead of the merge
+	 */
+	MergingCursor(List<? extends Read<T>> reads, ExecutorService executor,
+			int readAhead) {
+		this.reads = reads;
+		this.executor = executor;
+		this.readAhead = readAhead;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!closed) {
+			submit();
+			if (merged < reads.size() && isDue(reads.get(merged))) {
+				merge(pending.removeFirst());
+			} else {
+				break;
+			}
+		}
+		return !queue.isEmpty();
+	}
+
+	/**
+	 * @return true if the read may hold an object logged before the
+	 *         earliest object left.
+	 */
+	private boolean isDue(Read<T> read) {
+		return queue.isEmpty() || read.start < 0
+				|| read.start <= queue.peek().head.getLogTimeMillis();
+	}
+
+	@Override
+	public TimestampedObject<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Source<T> source = queue.poll();
+		TimestampedObject<T> result = source.head;
+		if (source.advance()) {
+			queue.add(source);
+		}
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		for (Future<List<TimestampedObject<T>>> future : pending) {
+			future.cancel(false);
+		}
+		pending.clear();
+		queue.clear();
+	}
+
+	/**
+	 * Submits the reads up to <code>readAhead</code> ahead of the merge.
+	 */
+	private void submit() {
+		while (submitted < reads.size() && submitted - merged < readAhead) {
+			Read<T> read = reads.get(submitted++);
+			try {
+				pending.add(executor.submit(read));
+			} catch (RejectedExecutionException e) {
+				// Read it on the calling thread
+				FutureTask<List<TimestampedObject<T>>> task = new FutureTask<List<TimestampedObject<T>>>(
+						read);
+				task.run();
+				pending.add(task);
+			}
+		}
+	}
+
+	/**
+	 * Waits for the next read and adds it to the merge.
+	 */
+	private void merge(Future<List<TimestampedObject<T>>> future) {
+		Read<T> read = reads.get(merged);
+		List<TimestampedObject<T>> objects;
+		try {
+			objects = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new IllegalStateException("Interrupted while reading "
+					+ read, e);
+		} catch (ExecutionException e) {
+			close();
+			throw new IllegalStateException("Could not read " + read,
+					e.getCause());
+		}
+		merged++;
+		if (!isSorted(objects)) {
+			objects = new ArrayList<TimestampedObject<T>>(objects);
+			// Stable, so objects logged at the same time keep their order
+			Collections.sort(objects, logTimeOrder);
+		}
+		if (merged < reads.size() && reads.get(merged).continues) {
+			long start = read.start;
+			if (!objects.isEmpty()) {
+				start = Math.max(start, objects.get(objects.size() - 1)
+						.getLogTimeMillis());
+			}
+			reads.get(merged).start = start;
+		}
+		Source<T> source = new Source<T>(objects.iterator(), merged);
+		if (source.advance()) {
+			queue.add(source);
+		}
+	}
+
+	/**
+	 * @return true if the objects are in log time order.
+	 */
+	private static boolean isSorted(
+			List<? extends TimestampedObject<?>> objects) {
+		long last = Long.MIN_VALUE;
+		for (TimestampedObject<?> object : objects) {
+			if (object.getLogTimeMillis() < last) {
+				return false;
+			}
+			last = object.getLogTimeMillis();
+		}
+		return true;
+	}
+
+	/**
+	 * The objects left of one read, ordered by the log time of the next one
+	 * and then the order of the read, so objects logged at the same time are
+	 * returned in the order they were written.
+	 */
+	private static class Source<T> implements Comparable<Source<T>> {
+		private final Iterator<TimestampedObject<T>> objects;
+		private final int order;
+		private TimestampedObject<T> head;
+
+		Source(Iterator<TimestampedObject<T>> objects, int order) {
+			this.objects = objects;
+			this.order = order;
+		}
+
+		/**
+		 * @return false if there are no more objects.
+		 */
+		boolean advance() {
+			head = objects.hasNext() ? objects.next() : null;
+			return head != null;
+		}
+
+		@Override
+		public int compareTo(Source<T> o) {
+			long a = head.getLogTimeMillis();
+			long b = o.head.getLogTimeMillis();
+			if (a != b) {
+				return a < b ? -1 : 1;
+			}
+			return order < o.order ? -1 : (order == o.order ? 0 : 1);
+		}
+	}
+
+}
@@ -6,10 +6,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Abstract Object logger class that logs an {@link Object} to an
@@ -41,6 +43,34 @@ public abstract class ObjectLogger<T> implements IObjectLogger<T> {
 	@Value("${object.logger.clean:false}")
 	private boolean clean = false;
 
+	/**
+	 * The most {@link TimestampedObject}s passed to
+	 * {@link IDataSource#persist(List)} at once.
+	 */
+	@Value("${object.logger.max.batch.size:1000}")
+	private int maxBatchSize = 1000;
+
+	/**
+	 * The longest, in milliseconds, one call to {@link #logAllInQueue()}
+	 * keeps persisting batches before giving the other loggers in its lane a
+	 * turn. At least one batch is always persisted.
+	 */
+	@Value("${object.logger.max.batch.delay:100}")
+	private long maxBatchDelay = 100;
+
+	/**
+	 * The optional {@link IBatchSizer} which picks the size of each batch,
+	 * never more than <code>maxBatchSize</code>. If null every batch is
+	 * <code>maxBatchSize</code>.
+	 */
+	private IBatchSizer batchSizer;
+
+	/**
+	 * The batch given to the {@link IDataSource}, reused for every batch.
+	 * Only used while holding the <code>drainLock</code>.
+	 */
+	private final List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+
 	/**
 	 * The {@link IDataSource} for this {@link ObjectLogger}. Defaults to the
 	 * {@link FileSystemDataSource}.
@@ -48,9 +78,45 @@ public abstract class ObjectLogger<T> implements IObjectLogger<T> {
 	private IDataSource dataSource;
 
 	/**
-	 * The {@link java.util.concurrent.BlockingQueue} to store Objects that have yet to be logged.
+	 * The {@link ILoggerQueue} to store Objects that have yet to be logged.
+	 */
+	private final ILoggerQueue<TimestampedObject<T>> queue;
+
+	/**
+	 * The {@link IBackpressurePolicy} used when the queue is full. Defaults
+	 * to the {@link DropNewestBackpressurePolicy}.
+	 */
+	private IBackpressurePolicy backpressurePolicy = new DropNewestBackpressurePolicy();
+
+	/**
+	 * The number of objects discarded because the queue was full.
 	 */
-	private final BlockingQueue<TimestampedObject<T>> queue;
+	private final AtomicLong discardedCount = new AtomicLong();
+
+	/**
+	 * Counts the objects discarded by the {@link IBackpressurePolicy}. Only
+	 * the first discard is logged.
+	 */
+	private final IDiscardListener<T> discardListener = new IDiscardListener<T>() {
+		@Override
+		public void discarded(TimestampedObject<T> object) {
+			AckedTimestampedObject.failed(object, new IllegalStateException(
+					"Discarded as the queue was full"));
+			if (discardedCount.incrementAndGet() == 1) {
+				logger.warn("The Async Logger queue has reached capacity and objects are being discarded. Further discards are counted but not logged.");
+			}
+		}
+	};
+
+	/**
+	 * The {@link IClock} used by new {@link ObjectLogger}s.
+	 */
+	private final static IClock defaultClock = new SystemClock();
+
+	/**
+	 * The {@link IClock} giving the log time of each logged Object.
+	 */
+	private IClock clock = defaultClock;
 
 	/**
 	 * The default queue capacity
@@ -58,14 +124,43 @@ public abstract class ObjectLogger<T> implements IObjectLogger<T> {
 	private static int defaultQueueCapacity = 100000;
 
 	/**
-	 * The static worker thread that makes the {@link ObjectLogger} logs the
-	 * objects in its queue. For it to do that it must add itself to the
-	 * {@link ObjectLoggerWorkerThread}'s set of {@link ObjectLogger}s.
+	 * The default {@link IWriterScheduler} for the execution mode given by
+	 * <code>-Dobject.logger.execution.mode</code>. See
+	 * {@link WriterSchedulers#fromSystemProperties()}.
+	 */
+	private final static IWriterScheduler defaultWriterScheduler = WriterSchedulers
+			.fromSystemProperties();
+
+	/**
+	 * The {@link IWriterScheduler} that logs the objects in the queue. For it
+	 * to do that the {@link ObjectLogger} must register with it.
+	 */
+	private IWriterScheduler writerScheduler = defaultWriterScheduler;
+
+	/**
+	 * The {@link IWriterLane} this {@link ObjectLogger} is registered with.
+	 */
+	private volatile IWriterLane lane;
+
+	/**
+	 * Makes sure only one thread logs the queue at a time, even while moving
+	 * between lanes.
+	 */
+	private final ReentrantLock drainLock = new ReentrantLock();
+
+	/**
+	 * Notified after each pass over the queue while there are threads
+	 * waiting in {@link #flush(long, TimeUnit)}.
 	 */
-	private final static ObjectLoggerWorkerThread worker = new ObjectLoggerWorkerThread();
+	private final Object flushMonitor = new Object();
 
 	/**
-	 * Creates a {@link ObjectLogger} using a {@link java.util.concurrent.LinkedBlockingQueue} with
+	 * The number of threads waiting in {@link #flush(long, TimeUnit)}.
+	 */
+	private volatile int flushWaiters;
+
+	/**
+	 * Creates a {@link ObjectLogger} using a {@link LinkedLoggerQueue} with
 	 * the default capacity and a default {@link FileSystemDataSource}.
 	 */
 	public ObjectLogger() {
@@ -73,7 +168,7 @@ public abstract class ObjectLogger<T> implements IObjectLogger<T> {
 	}
 
 	/**
-	 * Creates a {@link ObjectLogger} using a {@link java.util.concurrent.LinkedBlockingQueue} with
+	 * Creates a {@link ObjectLogger} using a {@link LinkedLoggerQueue} with
 	 * the default capacity and the given {@link IDataSource}.
 	 */
 	public ObjectLogger(IDataSource dataSource) {
@@ -81,30 +176,57 @@ public abstract class ObjectLogger<T> implements IObjectLogger<T> {
 	}
 
 	/**
-	 * Creates a {@link ObjectLogger} using a {@link java.util.concurrent.LinkedBlockingQueue} with
+	 * Creates a {@link ObjectLogger} using a {@link LinkedLoggerQueue} with
 	 * the given capacity and a default {@link FileSystemDataSource}.
 	 */
 	@SuppressWarnings("unchecked")
 	public ObjectLogger(int capacity) {
-		queue = new LinkedBlockingQueue<TimestampedObject<T>>(capacity);
+		queue = new LinkedLoggerQueue<TimestampedObject<T>>(capacity);
 
 		String filename = ((Class<T>) GenericsUtil.getGenericType(this
                 .getClass())).getSimpleName();
 		this.dataSource = new FileSystemDataSource(filename);
 
-		worker.addLogger(this);
+		lane = writerScheduler.register(this);
+		ObjectLoggerShutdownHook.register(this);
 	}
 
 	/**
-	 * Creates a {@link ObjectLogger} using a {@link java.util.concurrent.LinkedBlockingQueue} with
+	 * Creates a {@link ObjectLogger} using a {@link LinkedLoggerQueue} with
 	 * the given capacity and {@link IDataSource}.
 	 */
 	public ObjectLogger(int capacity, IDataSource dataSource) {
-		queue = new LinkedBlockingQueue<TimestampedObject<T>>(capacity);
-		this.dataSource = dataSource;
+		this(new LinkedLoggerQueue<TimestampedObject<T>>(capacity), dataSource);
+	}
 
-		worker.addLogger(this);
+	/**
+	 * Creates a {@link ObjectLogger} using the given {@link ILoggerQueue} and
+	 * {@link IDataSource}. Use a {@link RingBufferLoggerQueue} when many
+	 * threads log to the same {@link ObjectLogger}.
+	 */
+	public ObjectLogger(ILoggerQueue<TimestampedObject<T>> queue,
+			IDataSource dataSource) {
+		this(queue, dataSource, defaultWriterScheduler);
+	}
 
+	/**
+	 * Creates a {@link ObjectLogger} using the given {@link ILoggerQueue} and
+	 * {@link IDataSource}, logged by the given {@link IWriterScheduler}.
+	 */
+	public ObjectLogger(ILoggerQueue<TimestampedObject<T>> queue,
+			IDataSource dataSource, IWriterScheduler writerScheduler) {
+		if (queue == null) {
+			throw new IllegalArgumentException("queue cannot be null");
+		}
+		if (writerScheduler == null) {
+			throw new IllegalArgumentException("writerScheduler cannot be null");
+		}
+		this.queue = queue;
+		this.dataSource = dataSource;
+		this.writerScheduler = writerScheduler;
+
+		lane = writerScheduler.register(this);
+		ObjectLoggerShutdownHook.register(this);
 	}
 
 	/**
@@ -117,10 +239,20 @@ public abstract class ObjectLogger<T> implements IObjectLogger<T> {
 		}
 	}
 
+	/**
+	 * Unregisters from the {@link IWriterScheduler}. Anything still in the
+	 * queue is no longer logged asynchronously, but is still logged by
+	 * {@link #flush(long, TimeUnit)} and on JVM shutdown.
+	 */
+	@PreDestroy
+	public synchronized void destroy() {
+		writerScheduler.unregister(this);
+	}
+
 	/**
 	 * Logs the &lt;T&gt; asynchronously unless <code>synchronous</code> is set
 	 * to true. If not, the method returns immediately and the &lt;T&gt; is
-	 * added to a {@link java.util.concurrent.BlockingQueue} which is read and logged in sequential
+	 * added to an {@link ILoggerQueue} which is read and logged in sequential
 	 * order.
 	 * 
 	 * @param object
@@ -140,14 +272,43 @@ public abstract class ObjectLogger<T> implements IObjectLogger<T> {
 			return;
 		}
 
-		log(new TimestampedObject<T>(object));
+		log(new TimestampedObject<T>(clock.currentTimeMillis(), object));
+	}
+
+	/**
+	 * Logs the &lt;T&gt; like {@link #log(Object)} and returns a
+	 * {@link PersistFuture} which completes once the &lt;T&gt; has been
+	 * persisted. It fails if the &lt;T&gt; could not be persisted, was
+	 * discarded because the queue was full, or this {@link ObjectLogger} is
+	 * disabled.
+	 * 
+	 * @param object
+	 *            The &lt;T&gt; to be logged.
+	 * @return the {@link PersistFuture} of the logged &lt;T&gt;.
+	 */
+	public PersistFuture logAndAck(T object) {
+		PersistFuture future = new PersistFuture();
+		if (!isEnabled()) {
+			future.fail(new IllegalStateException("ObjectLogger is disabled"));
+			return future;
+		}
+		if (object == null) {
+			future.fail(new IllegalArgumentException(
+					"Logger was passed a null object."));
+			return future;
+		}
+		log(new AckedTimestampedObject<T>(clock.currentTimeMillis(), object,
+				future));
+		return future;
 	}
 
 	/**
 	 * Logs the {@link TimestampedObject} asynchronously unless
 	 * <code>synchronous</code> is set to true. If not, the method returns
-	 * immediately and the {@link TimestampedObject} is added to a
-	 * {@link java.util.concurrent.BlockingQueue} which is read and logged in sequential order.
+	 * immediately and the {@link TimestampedObject} is added to an
+	 * {@link ILoggerQueue} which is read and logged in sequential order. If
+	 * the queue is full the {@link IBackpressurePolicy} decides what happens
+	 * to it.
 	 * 
 	 * @param object
 	 *            The {@link TimestampedObject} to be logged.
@@ -171,12 +332,13 @@ public abstract class ObjectLogger<T> implements IObjectLogger<T> {
 			doLog(object);
 		} else {
 			// if asynchronous add it to the queue.
-			try {
-				queue.add(object);
-			} catch (IllegalStateException e) {
+			if (!queue.offer(object)) {
 				// If capacity is too great.
-				logger.error("Could not log object as the Async Logger queue has reached capacity. Discarding.");
+				backpressurePolicy.onQueueFull(object, queue, dataSource,
+						discardListener);
 			}
+			// Wake the lane if it is waiting.
+			lane.signal();
 		}
 	}
 
@@ -199,27 +361,119 @@ public abstract class ObjectLogger<T> implements IObjectLogger<T> {
 			}
 
 			dataSource.persist(object);
+			AckedTimestampedObject.persisted(object);
 
 			if (logger.isDebugEnabled()) {
 				logger.debug("Finished logging object of type: "
 						+ object.getClass().getSimpleName());
 			}
 		} catch (DataSourceException e) {
+			AckedTimestampedObject.failed(object, e);
 			logger.error(
 					"Could not log data as an DataSourceException occured.", e);
+		} catch (RuntimeException e) {
+			AckedTimestampedObject.failed(object, e);
+			throw e;
 		}
 	}
 
 	/**
-	 * Logs all {@link TimestampedObject}s in the queue.
+	 * Logs the {@link TimestampedObject}s in the queue in batches of at most
+	 * <code>maxBatchSize</code>. Stops when the queue is empty or after
+	 * <code>maxBatchDelay</code> milliseconds, whichever comes first.
+	 * 
+	 * @return true if anything was taken from the queue, false if it was
+	 *         empty.
 	 */
-	void logAllInQueue() {
-		if (queue.isEmpty()) {
-			return;
+	boolean logAllInQueue() {
+		if (queue.isEmpty() || !drainLock.tryLock()) {
+			return false;
 		}
-		List<TimestampedObject<?>> readyToLog = new ArrayList<TimestampedObject<?>>();
-		queue.drainTo(readyToLog);
+		try {
+			long start = System.nanoTime();
+			long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelay);
+			boolean logged = false;
+			do {
+				IBatchSizer sizer = batchSizer;
+				int size = sizer == null ? maxBatchSize : Math.min(
+						sizer.nextBatchSize(), maxBatchSize);
+				queue.drainTo(batch, Math.max(size, 1));
+				if (batch.isEmpty()) {
+					break;
+				}
+				logged = true;
+				long persistStart = System.nanoTime();
+				try {
+					persistBatch(batch);
+					if (sizer != null) {
+						sizer.batchPersisted(batch.size(), System.nanoTime()
+								- persistStart);
+					}
+				} finally {
+					batch.clear();
+				}
+			} while (System.nanoTime() - start < maxDelayNanos);
+			return logged;
+		} finally {
+			drainLock.unlock();
+			if (flushWaiters > 0) {
+				synchronized (flushMonitor) {
+					flushMonitor.notifyAll();
+				}
+			}
+		}
+	}
 
+	/**
+	 * Waits until everything in the queue has been persisted, or the timeout
+	 * has passed. The calling thread logs the queue itself rather than wait
+	 * for the {@link IWriterScheduler}, so this works whether or not this
+	 * {@link ObjectLogger} is still registered. If other threads keep logging
+	 * it returns once the queue is empty at any one time.
+	 * 
+	 * @param timeout
+	 *            The longest time to wait
+	 * @param unit
+	 *            The {@link TimeUnit} of the timeout
+	 * @return true if the queue was emptied and persisted, false if the
+	 *         timeout passed first.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public boolean flush(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (flushMonitor) {
+			flushWaiters++;
+		}
+		try {
+			while (true) {
+				logAllInQueue();
+				synchronized (flushMonitor) {
+					if (queue.isEmpty() && !drainLock.isLocked()) {
+						return true;
+					}
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return false;
+					}
+					// Another thread is logging the queue
+					if (drainLock.isLocked()) {
+						TimeUnit.NANOSECONDS.timedWait(flushMonitor, remaining);
+					}
+				}
+			}
+		} finally {
+			synchronized (flushMonitor) {
+				flushWaiters--;
+			}
+		}
+	}
+
+	/**
+	 * Calls persist on the {@link IDataSource} with the given batch.
+	 */
+	private void persistBatch(List<TimestampedObject<?>> readyToLog) {
 		try {
 
 			if (logger.isDebugEnabled()) {
@@ -228,17 +482,66 @@ public abstract class ObjectLogger<T> implements IObjectLogger<T> {
 			}
 
 			dataSource.persist(readyToLog);
+			AckedTimestampedObject.persisted(readyToLog);
 
 			if (logger.isDebugEnabled()) {
 				logger.debug("Finished logging batch of type: "
 						+ readyToLog.get(0).getClass().getSimpleName());
 			}
 		} catch (DataSourceException e) {
+			AckedTimestampedObject.failed(readyToLog, e);
 			logger.error(
 					"Could not log batch as an DataSourceException occured.", e);
+		} catch (RuntimeException e) {
+			AckedTimestampedObject.failed(readyToLog, e);
+			throw e;
 		}
 	}
 
+	/**
+	 * Sets the {@link IWaitStrategy} used by the workers of the default
+	 * {@link IWriterScheduler} when there is nothing to log. Has no effect if
+	 * the default is a {@link PooledWriterScheduler}.
+	 * 
+	 * @param waitStrategy
+	 *            the waitStrategy to set
+	 */
+	public static void setWaitStrategy(IWaitStrategy waitStrategy) {
+		if (defaultWriterScheduler instanceof DedicatedThreadWriterScheduler) {
+			((DedicatedThreadWriterScheduler) defaultWriterScheduler)
+					.setWaitStrategy(waitStrategy);
+		}
+	}
+
+	/**
+	 * @return the {@link IWriterScheduler} used by new {@link ObjectLogger}s.
+	 */
+	public static IWriterScheduler getDefaultWriterScheduler() {
+		return defaultWriterScheduler;
+	}
+
+	/**
+	 * @return the {@link IWriterScheduler} that logs the queue.
+	 */
+	public IWriterScheduler getWriterScheduler() {
+		return writerScheduler;
+	}
+
+	/**
+	 * Moves this {@link ObjectLogger} to the given {@link IWriterScheduler}.
+	 * 
+	 * @param writerScheduler
+	 *            the {@link IWriterScheduler} to log the queue
+	 */
+	public synchronized void setWriterScheduler(IWriterScheduler writerScheduler) {
+		if (writerScheduler == null) {
+			throw new IllegalArgumentException("writerScheduler cannot be null");
+		}
+		this.writerScheduler.unregister(this);
+		this.writerScheduler = writerScheduler;
+		lane = writerScheduler.register(this);
+	}
+
 	public boolean isEnabled() {
 		return enabled;
 	}
@@ -270,17 +573,136 @@ public abstract class ObjectLogger<T> implements IObjectLogger<T> {
 	}
 
 	/**
+	 * Sets the {@link IDataSource} and moves this {@link ObjectLogger} to the
+	 * lane of the new {@link IDataSource}.
+	 * 
 	 * @param dataSource
 	 *            the dataSource to set
 	 */
-	public void setDataSource(IDataSource dataSource) {
+	public synchronized void setDataSource(IDataSource dataSource) {
+		writerScheduler.unregister(this);
 		this.dataSource = dataSource;
+		lane = writerScheduler.register(this);
 	}
 
 	public int getQueueSize() {
 		return queue.size();
 	}
 
+	/**
+	 * @return the {@link IBackpressurePolicy} used when the queue is full.
+	 */
+	public IBackpressurePolicy getBackpressurePolicy() {
+		return backpressurePolicy;
+	}
+
+	/**
+	 * @param backpressurePolicy
+	 *            the {@link IBackpressurePolicy} to use when the queue is full.
+	 */
+	public void setBackpressurePolicy(IBackpressurePolicy backpressurePolicy) {
+		if (backpressurePolicy == null) {
+			throw new IllegalArgumentException(
+					"backpressurePolicy cannot be null");
+		}
+		this.backpressurePolicy = backpressurePolicy;
+	}
+
+	/**
+	 * @return the number of objects discarded because the queue was full.
+	 */
+	public long getDiscardedCount() {
+		return discardedCount.get();
+	}
+
+	/**
+	 * @return true if there are objects in the queue waiting to be logged.
+	 */
+	boolean hasQueuedObjects() {
+		return !queue.isEmpty();
+	}
+
+	/**
+	 * @return the most {@link TimestampedObject}s persisted in one batch.
+	 */
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * @param maxBatchSize
+	 *            the most {@link TimestampedObject}s persisted in one batch.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be at least 1");
+		}
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @return the longest, in milliseconds, the queue is logged for before
+	 *         giving other loggers a turn.
+	 */
+	public long getMaxBatchDelay() {
+		return maxBatchDelay;
+	}
+
+	/**
+	 * @param maxBatchDelay
+	 *            the longest, in milliseconds, the queue is logged for before
+	 *            giving other loggers a turn.
+	 */
+	public void setMaxBatchDelay(long maxBatchDelay) {
+		if (maxBatchDelay < 0) {
+			throw new IllegalArgumentException(
+					"maxBatchDelay cannot be negative");
+		}
+		this.maxBatchDelay = maxBatchDelay;
+	}
+
+	/**
+	 * @return the {@link IBatchSizer}, or null if every batch is
+	 *         <code>maxBatchSize</code>.
+	 */
+	public IBatchSizer getBatchSizer() {
+		return batchSizer;
+	}
+
+	/**
+	 * Sets the {@link IBatchSizer} which picks the size of each batch, for
+	 * example an {@link AdaptiveBatchSizer}. Batches are still never more
+	 * than <code>maxBatchSize</code>. Set to null to always use
+	 * <code>maxBatchSize</code>.
+	 * 
+	 * @param batchSizer
+	 *            the batchSizer to set
+	 */
+	public void setBatchSizer(IBatchSizer batchSizer) {
+		this.batchSizer = batchSizer;
+	}
+
+	/**
+	 * @return the {@link IClock} giving the log time of each logged Object.
+	 */
+	public IClock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Sets the {@link IClock} giving the log time of each logged Object. Use
+	 * a {@link CachedClock} to trade precision for a cheaper timestamp.
+	 * 
+	 * @param clock
+	 *            the clock to set
+	 */
+	public void setClock(IClock clock) {
+		if (clock == null) {
+			throw new IllegalArgumentException("clock cannot be null");
+		}
+		this.clock = clock;
+	}
+
 	/**
 	 * @return the clean
 	 */
@@ -0,0 +1,160 @@
+package org.gw.objectlogger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JVM shutdown hook which logs what is left in the queues of all
+ * {@link ObjectLogger}s before closing the {@link IDataSource}s. Every
+ * {@link ObjectLogger} and {@link FileSystemDataSource} registers itself
+ * when created. On shutdown the queues are flushed until
+ * <code>-Dobject.logger.shutdown.timeout</code> milliseconds (default 5000)
+ * have passed, then the registered {@link Closeable}s are closed, so nothing
+ * is closed while it is still being written to.
+ * <p>
+ * The {@link ObjectLogger}s and {@link Closeable}s are only weakly
+ * referenced, so registering does not stop them being garbage collected.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public final class ObjectLoggerShutdownHook extends Thread {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(ObjectLoggerShutdownHook.class);
+
+	private static final Set<ObjectLogger<?>> objectLoggers = Collections
+			.newSetFromMap(new WeakHashMap<ObjectLogger<?>, Boolean>());
+
+	private static final Set<Closeable> closeables = Collections
+			.newSetFromMap(new WeakHashMap<Closeable, Boolean>());
+
+	private static volatile long timeoutMillis = Long.getLong(
+			"object.logger.shutdown.timeout", 5000);
+
+	private static boolean installed;
+
+	private ObjectLoggerShutdownHook() {
+		super("ObjectLoggers Shutdown Hook");
+	}
+
+	/**
+	 * Flushes all {@link ObjectLogger}s and then closes all
+	 * {@link Closeable}s.
+	 */
+	@Override
+	public void run() {
+		if (!flushAll(timeoutMillis, TimeUnit.MILLISECONDS)) {
+			logger.warn("Not all ObjectLoggers were flushed within "
+					+ timeoutMillis + "ms of shutdown.");
+		}
+		closeAll();
+	}
+
+	/**
+	 * Registers the given {@link ObjectLogger} to be flushed on shutdown.
+	 */
+	static void register(ObjectLogger<?> objLogger) {
+		synchronized (ObjectLoggerShutdownHook.class) {
+			install();
+			objectLoggers.add(objLogger);
+		}
+	}
+
+	/**
+	 * Registers the given {@link Closeable}, usually an {@link IDataSource},
+	 * to be closed on shutdown once the {@link ObjectLogger}s are flushed.
+	 */
+	static void register(Closeable closeable) {
+		synchronized (ObjectLoggerShutdownHook.class) {
+			install();
+			closeables.add(closeable);
+		}
+	}
+
+	static void unregister(Closeable closeable) {
+		synchronized (ObjectLoggerShutdownHook.class) {
+			closeables.remove(closeable);
+		}
+	}
+
+	private static void install() {
+		if (!installed) {
+			Runtime.getRuntime().addShutdownHook(new ObjectLoggerShutdownHook());
+			installed = true;
+		}
+	}
+
+	/**
+	 * Flushes all registered {@link ObjectLogger}s, sharing the given
+	 * timeout between them.
+	 * 
+	 * @return true if all were flushed in time.
+	 */
+	public static boolean flushAll(long timeout, TimeUnit unit) {
+		List<ObjectLogger<?>> toFlush;
+		synchronized (ObjectLoggerShutdownHook.class) {
+			toFlush = new ArrayList<ObjectLogger<?>>(objectLoggers);
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		boolean flushed = true;
+		for (ObjectLogger<?> objLogger : toFlush) {
+			try {
+				if (!objLogger.flush(
+						Math.max(0, deadline - System.nanoTime()),
+						TimeUnit.NANOSECONDS)) {
+					flushed = false;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return flushed;
+	}
+
+	/**
+	 * Closes all registered {@link Closeable}s.
+	 */
+	static void closeAll() {
+		List<Closeable> toClose;
+		synchronized (ObjectLoggerShutdownHook.class) {
+			toClose = new ArrayList<Closeable>(closeables);
+		}
+		for (Closeable closeable : toClose) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				logger.warn("Could not close " + closeable + ": "
+						+ e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * @return the longest time in milliseconds to flush for on shutdown.
+	 */
+	public static long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * @param timeoutMillis
+	 *            the longest time in milliseconds to flush for on shutdown.
+	 */
+	public static void setTimeoutMillis(long timeoutMillis) {
+		ObjectLoggerShutdownHook.timeoutMillis = timeoutMillis;
+	}
+
+}
@@ -3,12 +3,23 @@ package org.gw.objectlogger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
 
-public class ObjectLoggerWorkerThread implements Runnable {
+/**
+ * A {@link Thread} which logs the queues of a set of {@link ObjectLogger}s.
+ * The {@link DedicatedThreadWriterScheduler} runs one of these for each
+ * {@link IWriterLane}. The set of {@link ObjectLogger}s is copy on write, so
+ * adding and removing them never blocks the worker.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class ObjectLoggerWorkerThread implements Runnable, IWriterLane {
 
 	private static Logger logger = LoggerFactory
 			.getLogger(ObjectLoggerWorkerThread.class);
@@ -23,24 +34,64 @@ public class ObjectLoggerWorkerThread implements Runnable {
 	 * The {@link Thread} which runs this {@link Runnable} for asynchronous
 	 * logging. Will only be started when the first logAsync method is called.
 	 */
-	private Thread thread;
+	private volatile Thread thread;
 
-	private Set<ObjectLogger<?>> allObjectLoggers;
+	private volatile Set<ObjectLogger<?>> allObjectLoggers = new CopyOnWriteArraySet<ObjectLogger<?>>();
 
-	private ReentrantLock lock = new ReentrantLock();
+	/**
+	 * The {@link IWaitStrategy} used when there is nothing to log.
+	 */
+	private volatile IWaitStrategy waitStrategy;
+
+	/**
+	 * Set while the worker is about to wait, or is waiting, for work. The
+	 * first producer to clear it signals the worker, and the others do not.
+	 */
+	private final AtomicBoolean waiting = new AtomicBoolean();
 
 	/**
-	 * Starts the Thread
+	 * Starts the Thread using the {@link IWaitStrategy} named by
+	 * <code>-Dobject.logger.wait.strategy</code>. See
+	 * {@link #createWaitStrategy(String)}.
 	 */
 	public ObjectLoggerWorkerThread() {
+		this(createWaitStrategy(System.getProperty(
+				"object.logger.wait.strategy", "blocking")));
+	}
+
+	/**
+	 * Starts the Thread using the given {@link IWaitStrategy}.
+	 */
+	public ObjectLoggerWorkerThread(IWaitStrategy waitStrategy) {
+		this(waitStrategy, "ObjectLoggers Worker Thread");
+	}
 
-		thread = new Thread(this, "ObjectLoggers Worker Thread");
+	/**
+	 * Starts the Thread with the given name using the given
+	 * {@link IWaitStrategy}.
+	 */
+	public ObjectLoggerWorkerThread(IWaitStrategy waitStrategy, String name) {
+		setWaitStrategy(waitStrategy);
+		thread = new Thread(this, name);
 		thread.start();
 	}
 
 	/**
-	 * Loops through the <code>allObjectLoggers</code> {@link java.util.Set} and grabs the
-	 * next
+	 * Starts a Thread created by the given {@link ThreadFactory} using the
+	 * given {@link IWaitStrategy}. Use a {@link VirtualThreadFactory} to run
+	 * the worker on a virtual thread.
+	 */
+	public ObjectLoggerWorkerThread(IWaitStrategy waitStrategy,
+			ThreadFactory threadFactory) {
+		setWaitStrategy(waitStrategy);
+		thread = threadFactory.newThread(this);
+		thread.start();
+	}
+
+	/**
+	 * Loops through the <code>allObjectLoggers</code> {@link java.util.Set}
+	 * and logs everything in their queues. If none of them had anything to
+	 * log the {@link IWaitStrategy} decides how to wait for more.
 	 */
 	@Override
 	public void run() {
@@ -48,57 +99,148 @@ public class ObjectLoggerWorkerThread implements Runnable {
 			logger.info("allObjectLoggers is null. Shutting down ObjectLoggerWorkerThread.");
 			return;
 		}
-		running.set(true);
 
-		logger.info("ObjectLoggerWorkerThread running...");
+		logger.info(Thread.currentThread().getName() + " running...");
 
+		int idleCount = 0;
 		while (running.get()) {
-			lock.lock();
-			try {
-				for (ObjectLogger<?> objLogger : getAllObjectLoggers()) {
-					try {
-						objLogger.logAllInQueue();
-					} catch (Exception e) {
-						logger.error(
-								"An exception was caught in the ObjectLoggers Logger Thread: "
-										+ e.getMessage(), e);
+			boolean logged = false;
+			for (ObjectLogger<?> objLogger : getAllObjectLoggers()) {
+				try {
+					if (objLogger.logAllInQueue()) {
+						logged = true;
 					}
+				} catch (Exception e) {
+					logger.error(
+							"An exception was caught in the ObjectLoggers Logger Thread: "
+									+ e.getMessage(), e);
 				}
-			} finally {
-				lock.unlock();
 			}
+			if (logged) {
+				idleCount = 0;
+				continue;
+			}
+			if (idleCount < Integer.MAX_VALUE) {
+				idleCount++;
+			}
+
+			/*
+			 * Publish that we are waiting before checking the queues one last
+			 * time. A producer either sees the flag and signals, or added its
+			 * object before the check and we see it.
+			 */
+			waiting.set(true);
+			if (!hasQueuedObjects()) {
+				waitStrategy.waitForWork(idleCount);
+			}
+			waiting.set(false);
+		}
+
+		// One last pass so what was queued before shutdown is not lost
+		Thread.interrupted();
+		for (ObjectLogger<?> objLogger : getAllObjectLoggers()) {
 			try {
-				if (getAllObjectLoggers().size() > 0) {
-					Thread.sleep(100);
-				} else {
-					Thread.sleep(1000);
-				}
-			} catch (InterruptedException e) {
-				// Don't care
+				objLogger.logAllInQueue();
+			} catch (Exception e) {
+				logger.error(
+						"An exception was caught in the ObjectLoggers Logger Thread: "
+								+ e.getMessage(), e);
+			}
+		}
+
+		logger.info(Thread.currentThread().getName() + " stopped.");
+	}
+
+	/**
+	 * @return true if any {@link ObjectLogger} has objects in its queue.
+	 */
+	private boolean hasQueuedObjects() {
+		for (ObjectLogger<?> objLogger : getAllObjectLoggers()) {
+			if (objLogger.hasQueuedObjects()) {
+				return true;
 			}
 		}
+		return false;
+	}
 
-		logger.info("ObjectLoggerWorkerThread stopped.");
+	/**
+	 * Wakes the worker up if it is waiting for work. Called by the
+	 * {@link ObjectLogger}s after an object is added to their queue. Only
+	 * one producer signals each wait, so the others skip the wake up.
+	 */
+	@Override
+	public void signal() {
+		if (waiting.get() && waiting.compareAndSet(true, false)) {
+			waitStrategy.signal(thread);
+		}
 	}
 
 	/**
-	 * To shutdown the asynchronous logger.
+	 * To shutdown the asynchronous logger. The worker logs its queues once
+	 * more before it stops.
 	 */
 	public void shutdown() {
 		running.set(false);
-		if (thread != null) {
-			thread.interrupt();
+		Thread t = thread;
+		if (t != null) {
+			t.interrupt();
 		}
 		thread = null;
 	}
 
+	/**
+	 * Returns the {@link IWaitStrategy} for the given name. One of
+	 * <code>blocking</code>, <code>sleeping</code>, <code>yielding</code> or
+	 * <code>busyspin</code>.
+	 * 
+	 * @param name
+	 *            The name of the {@link IWaitStrategy}
+	 * @return the {@link IWaitStrategy} for the given name.
+	 */
+	public static IWaitStrategy createWaitStrategy(String name) {
+		if ("blocking".equalsIgnoreCase(name)) {
+			return new BlockingWaitStrategy();
+		} else if ("sleeping".equalsIgnoreCase(name)) {
+			return new SleepingWaitStrategy();
+		} else if ("yielding".equalsIgnoreCase(name)) {
+			return new YieldingWaitStrategy();
+		} else if ("busyspin".equalsIgnoreCase(name)) {
+			return new BusySpinWaitStrategy();
+		}
+		throw new IllegalArgumentException(
+				"Could not parse -Dobject.logger.wait.strategy. Expected one of blocking, sleeping, yielding or busyspin, found "
+						+ name);
+	}
+
+	/**
+	 * @return the waitStrategy
+	 */
+	public IWaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	/**
+	 * Sets the {@link IWaitStrategy} and wakes the worker so that it takes
+	 * effect straight away.
+	 * 
+	 * @param waitStrategy
+	 *            the waitStrategy to set
+	 */
+	public void setWaitStrategy(IWaitStrategy waitStrategy) {
+		if (waitStrategy == null) {
+			throw new IllegalArgumentException("waitStrategy cannot be null");
+		}
+		IWaitStrategy previous = this.waitStrategy;
+		this.waitStrategy = waitStrategy;
+		if (previous != null) {
+			previous.signal(thread);
+		}
+	}
+
 	/**
 	 * @return the allObjectLoggers
 	 */
 	public Set<ObjectLogger<?>> getAllObjectLoggers() {
-		if (allObjectLoggers == null) {
-			allObjectLoggers = new HashSet<ObjectLogger<?>>();
-		}
 		return allObjectLoggers;
 	}
 
@@ -107,7 +249,9 @@ public class ObjectLoggerWorkerThread implements Runnable {
 	 *            the allObjectLoggers to set
 	 */
 	public void setAllObjectLoggers(Set<ObjectLogger<?>> allObjectLoggers) {
-		this.allObjectLoggers = allObjectLoggers;
+		this.allObjectLoggers = new CopyOnWriteArraySet<ObjectLogger<?>>(
+				allObjectLoggers);
+		signal();
 	}
 
 	/**
@@ -116,12 +260,19 @@ public class ObjectLoggerWorkerThread implements Runnable {
 	 * @param objLogger
 	 */
 	public void addLogger(ObjectLogger<?> objLogger) {
-		lock.lock();
-		try {
-			getAllObjectLoggers().add(objLogger);
-		} finally {
-			lock.unlock();
-		}
+		getAllObjectLoggers().add(objLogger);
+		signal();
+	}
+
+	/**
+	 * Removes the {@link ObjectLogger} from the set of all
+	 * {@link ObjectLogger}s
+	 * 
+	 * @param objLogger
+	 * @return true if the {@link ObjectLogger} was in the set.
+	 */
+	public boolean removeLogger(ObjectLogger<?> objLogger) {
+		return getAllObjectLoggers().remove(objLogger);
 	}
 
 }
@@ -0,0 +1,24 @@
+package org.gw.objectlogger;
+
+/**
+ * {@link IDurabilityPolicy} which never syncs and leaves it to the operating
+ * system to write its page cache to the device. Everything persisted
+ * survives the JVM crashing, but not the machine. This is the fastest
+ * {@link IDurabilityPolicy} and the default.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class OsBufferedDurabilityPolicy implements IDurabilityPolicy {
+
+	@Override
+	public void afterWrite(ISyncableSerialiser serialiser) {
+	}
+
+	@Override
+	public void beforeClose(ISyncableSerialiser serialiser) {
+	}
+
+}
@@ -0,0 +1,247 @@
+package org.gw.objectlogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes a batch of {@link TimestampedObject}s with an
+ * {@link ITimestampedObjectEncoder} on an {@link ExecutorService}. The batch
+ * is split into chunks of at least <code>minChunkSize</code>, one per
+ * thread; the calling thread encodes the first chunk itself. The encoded
+ * objects are returned in the order of the batch, so the single writer
+ * appending them keeps the file in log order.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class ParallelEncoder {
+
+	/**
+	 * The shared {@link ParallelEncoder} for
+	 * <code>-Dobject.logger.encoding.threads</code>. Created on first use.
+	 */
+	private static ParallelEncoder shared;
+
+	private final ExecutorService executor;
+
+	private final int threads;
+
+	private final int minChunkSize;
+
+	/**
+	 * Creates a {@link ParallelEncoder} with its own pool of the given number
+	 * of daemon threads.
+	 * 
+	 * @param threads
+	 *            The number of threads to encode on
+	 * @param minChunkSize
+	 *            The fewest objects worth encoding on another thread
+	 */
+	public ParallelEncoder(int threads, int minChunkSize) {
+		this(Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ObjectLoggers Encoder Thread-"
+						+ count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), threads, minChunkSize);
+	}
+
+	/**
+	 * Creates a {@link ParallelEncoder} using the given
+	 * {@link ExecutorService}.
+	 * 
+	 * @param executor
+	 *            The {@link ExecutorService} to encode on
+	 * @param threads
+	 *            The number of threads of the {@link ExecutorService}
+	 * @param minChunkSize
+	 *            The fewest objects worth encoding on another thread
+	 */
+	public ParallelEncoder(ExecutorService executor, int threads,
+			int minChunkSize) {
+		if (threads < 1 || minChunkSize < 1) {
+			throw new IllegalArgumentException(
+					"threads and minChunkSize must be at least 1");
+		}
+		this.executor = executor;
+		this.threads = threads;
+		this.minChunkSize = minChunkSize;
+	}
+
+	/**
+	 * Encodes the batch with the given {@link ITimestampedObjectEncoder}.
+	 * 
+	 * @return the encoded objects in the order of the batch.
+	 * @throws SerialisationException
+	 *             If any object could not be encoded.
+	 */
+	public List<byte[]> encode(final ITimestampedObjectEncoder encoder,
+			final List<TimestampedObject<?>> batch)
+			throws SerialisationException {
+		int size = batch.size();
+		int chunks = Math.min(threads + 1, size / minChunkSize);
+		if (chunks <= 1) {
+			return encode(encoder, batch, 0, size);
+		}
+		int chunkSize = (size + chunks - 1) / chunks;
+
+		List<Future<List<byte[]>>> futures = new ArrayList<Future<List<byte[]>>>(
+				chunks - 1);
+		try {
+			for (int from = chunkSize; from < size; from += chunkSize) {
+				final int start = from;
+				final int end = Math.min(from + chunkSize, size);
+				try {
+					futures.add(executor.submit(new Callable<List<byte[]>>() {
+						@Override
+						public List<byte[]> call() throws SerialisationException {
+							return ParallelEncoder.encode(encoder, batch, start,
+									end);
+						}
+					}));
+				} catch (RejectedExecutionException e) {
+					futures.add(new EncodedFuture(encode(encoder, batch, start,
+							end)));
+				}
+			}
+
+			List<byte[]> encoded = new ArrayList<byte[]>(size);
+			encoded.addAll(encode(encoder, batch, 0, chunkSize));
+			for (Future<List<byte[]>> future : futures) {
+				encoded.addAll(getEncoded(future));
+			}
+			return encoded;
+		} finally {
+			for (Future<List<byte[]>> future : futures) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	private static List<byte[]> encode(ITimestampedObjectEncoder encoder,
+			List<TimestampedObject<?>> batch, int from, int to)
+			throws SerialisationException {
+		List<byte[]> encoded = new ArrayList<byte[]>(to - from);
+		for (int i = from; i < to; i++) {
+			encoded.add(encoder.encode(batch.get(i)));
+		}
+		return encoded;
+	}
+
+	private static List<byte[]> getEncoded(Future<List<byte[]>> future)
+			throws SerialisationException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					// Finish the batch, the writer depends on it
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof SerialisationException) {
+						throw (SerialisationException) e.getCause();
+					}
+					throw new SerialisationException(
+							"Could not encode the batch.", e.getCause());
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * A completed {@link Future} for a chunk encoded by the calling thread.
+	 */
+	private static class EncodedFuture implements Future<List<byte[]>> {
+		private final List<byte[]> encoded;
+
+		EncodedFuture(List<byte[]> encoded) {
+			this.encoded = encoded;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isDone() {
+			return true;
+		}
+
+		@Override
+		public List<byte[]> get() {
+			return encoded;
+		}
+
+		@Override
+		public List<byte[]> get(long timeout, TimeUnit unit) {
+			return encoded;
+		}
+	}
+
+	/**
+	 * Stops the threads of the {@link ExecutorService}.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the shared {@link ParallelEncoder} with
+	 * <code>-Dobject.logger.encoding.threads</code> threads (default 0) and
+	 * chunks of at least <code>-Dobject.logger.encoding.chunk.size</code>
+	 * objects (default 64), or null if there are no threads.
+	 */
+	public static synchronized ParallelEncoder fromSystemProperties() {
+		if (shared == null) {
+			int threads = Integer.getInteger("object.logger.encoding.threads",
+					0);
+			if (threads > 0) {
+				shared = new ParallelEncoder(threads, Integer.getInteger(
+						"object.logger.encoding.chunk.size", 64));
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * @return the number of threads encoding
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the fewest objects worth encoding on another thread
+	 */
+	public int getMinChunkSize() {
+		return minChunkSize;
+	}
+
+}
@@ -0,0 +1,349 @@
+package org.gw.objectlogger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the files of a range on an {@link ExecutorService}, several at a
+ * time, and merges their {@link TimestampedObject}s in log time order. Up to
+ * <code>readAhead</code> files are read ahead of the caller, so a range of
+ * many small files is read at the speed of all of the threads rather than
+ * one.
+ * <p>
+ * A file of at least twice <code>chunkSize</code> bytes can be split into
+ * parts of about <code>chunkSize</code> at record boundaries, which are read
+ * in parallel and returned in order, so a single large file is read at the
+ * speed of all of the threads as well.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class ParallelReader {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(ParallelReader.class);
+
+	/**
+	 * The default size of the parts a large file is split into
+	 */
+	public static final long defaultChunkSize = 16 * 1024 * 1024;
+
+	/**
+	 * Splits a large file into parts to be read in parallel.
+	 */
+	interface IFileSplitter<T> {
+
+		/**
+		 * @return the parts of the file in order, as
+		 *         <code>{start, end}</code>, or null to read it whole.
+		 */
+		List<long[]> split(File file, long chunkSize) throws IOException;
+
+		/**
+		 * Opens the cursor of a part of the file.
+		 */
+		ITimestampedObjectCursor<T> open(File file, long start, long end)
+				throws IOException;
+	}
+
+	/**
+	 * The shared {@link ParallelReader} for
+	 * <code>-Dobject.logger.reading.threads</code>. Created on first use.
+	 */
+	private static ParallelReader shared;
+
+	private final ExecutorService executor;
+
+	private final int threads;
+
+	private final int readAhead;
+
+	private final long chunkSize;
+
+	/**
+	 * Creates a {@link ParallelReader} with its own pool of the given number
+	 * of daemon threads, splitting files into parts of
+	 * {@link #defaultChunkSize}.
+	 *
+	 * @param threads
+	 *            The number of threads to read on
+	 * @param readAhead
+	 *            The most files read ahead of the caller
+	 */
+	public ParallelReader(int threads, int readAhead) {
+		this(threads, readAhead, defaultChunkSize);
+	}
+
+	/**
+	 * Creates a {@link ParallelReader} with its own pool of the given number
+	 * of daemon threads.
+	 *
+	 * @param threads
+	 *            The number of threads to read on
+	 * @param readAhead
+	 *            The most files or parts read ahead of the caller
+	 * @param chunkSize
+	 *            The size of the parts a large file is split into
+	 */
+	public ParallelReader(int threads, int readAhead, long chunkSize) {
+		this(Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ObjectLoggers Reader Thread-"
+						+ count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), threads, readAhead, chunkSize);
+	}
+
+	/**
+	 * Creates a {@link ParallelReader} using the given
+	 * {@link ExecutorService}.
+	 *
+	 * @param executor
+	 *            The {@link ExecutorService} to read on
+	 * @param threads
+	 *            The number of threads of the {@link ExecutorService}
+	 * @param readAhead
+	 *            The most files read ahead of the caller
+	 */
+	public ParallelReader(ExecutorService executor, int threads, int readAhead) {
+		this(executor, threads, readAhead, defaultChunkSize);
+	}
+
+	/**
+	 * Creates a {@link ParallelReader} using the given
+	 * {@link ExecutorService}.
+	 *
+	 * @param executor
+	 *            The {@link ExecutorService} to read on
+	 * @param threads
+	 *            The number of threads of the {@link ExecutorService}
+	 * @param readAhead
+	 *            The most files or parts read ahead of the caller
+	 * @param chunkSize
+	 *            The size of the parts a large file is split into
+	 */
+	public ParallelReader(ExecutorService executor, int threads,
+			int readAhead, long chunkSize) {
+		if (threads < 1 || readAhead < 1 || chunkSize < 1) {
+			throw new IllegalArgumentException(
+					"threads, readAhead and chunkSize must be at least 1");
+		}
+		this.executor = executor;
+		this.threads = threads;
+		this.readAhead = readAhead;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the objects of the given
+	 * files in log time order. Each file is read whole by the cursor the
+	 * opener returns for it. The caller must close it.
+	 *
+	 * @param files
+	 *            The files, in the order they were started
+	 * @param starts
+	 *            The time each file was started in milliseconds, -1 if it
+	 *            is not known
+	 * @param opener
+	 *            Opens the cursor of a file
+	 */
+	<T> ITimestampedObjectCursor<T> read(List<File> files, long[] starts,
+			ConcatenatedCursor.IFileOpener<T> opener) {
+		return read(files, starts, opener, null);
+	}
+
+	/**
+	 * Opens an {@link ITimestampedObjectCursor} over the objects of the given
+	 * files in log time order. A file the splitter splits is read in parts,
+	 * and any other file is read whole by the cursor the opener returns for
+	 * it. The caller must close it.
+	 *
+	 * @param files
+	 *            The files, in the order they were started
+	 * @param starts
+	 *            The time each file was started in milliseconds, -1 if it
+	 *            is not known
+	 * @param opener
+	 *            Opens the cursor of a file
+	 * @param splitter
+	 *            Splits a large file into parts, or null to read every file
+	 *            whole
+	 */
+	<T> ITimestampedObjectCursor<T> read(List<File> files, long[] starts,
+			ConcatenatedCursor.IFileOpener<T> opener, IFileSplitter<T> splitter) {
+		List<MergingCursor.Read<T>> reads = new ArrayList<MergingCursor.Read<T>>(
+				files.size());
+		for (int i = 0; i < files.size(); i++) {
+			File file = files.get(i);
+			List<long[]> parts = null;
+			if (splitter != null && file.length() >= 2 * chunkSize) {
+				try {
+					parts = splitter.split(file, chunkSize);
+				} catch (IOException e) {
+					logger.warn("Could not split " + file.getAbsolutePath()
+							+ ", reading it whole.", e);
+				}
+			}
+			if (parts == null) {
+				reads.add(new FileRead<T>(file, starts[i], opener));
+			} else {
+				for (int j = 0; j < parts.size(); j++) {
+					long[] part = parts.get(j);
+					reads.add(new PartRead<T>(file, part[0], part[1],
+							starts[i], j > 0, splitter));
+				}
+			}
+		}
+		return new MergingCursor<T>(reads, executor, readAhead);
+	}
+
+	/**
+	 * Drains the cursor into a list and closes it.
+	 */
+	private static <T> List<TimestampedObject<T>> drain(File file,
+			ITimestampedObjectCursor<T> cursor) {
+		try {
+			List<TimestampedObject<T>> objects = new ArrayList<TimestampedObject<T>>();
+			while (cursor.hasNext()) {
+				objects.add(cursor.next());
+			}
+			return objects;
+		} finally {
+			try {
+				cursor.close();
+			} catch (IOException e) {
+				logger.warn("Could not close " + file.getAbsolutePath(), e);
+			}
+		}
+	}
+
+	/**
+	 * Reads a whole file. A file which cannot be opened is logged and
+	 * skipped.
+	 */
+	private static class FileRead<T> extends MergingCursor.Read<T> {
+		private final File file;
+		private final ConcatenatedCursor.IFileOpener<T> opener;
+
+		FileRead(File file, long start, ConcatenatedCursor.IFileOpener<T> opener) {
+			super(start, false);
+			this.file = file;
+			this.opener = opener;
+		}
+
+		@Override
+		public List<TimestampedObject<T>> call() {
+			ITimestampedObjectCursor<T> cursor;
+			try {
+				cursor = opener.open(file);
+			} catch (IOException e) {
+				logger.error("Could not read " + file.getAbsolutePath(), e);
+				return Collections.emptyList();
+			}
+			return drain(file, cursor);
+		}
+
+		@Override
+		public String toString() {
+			return file.getAbsolutePath();
+		}
+	}
+
+	/**
+	 * Reads a part of a file.
+	 */
+	private static class PartRead<T> extends MergingCursor.Read<T> {
+		private final File file;
+		private final long partStart;
+		private final long partEnd;
+		private final IFileSplitter<T> splitter;
+
+		PartRead(File file, long partStart, long partEnd, long start,
+				boolean continues, IFileSplitter<T> splitter) {
+			super(start, continues);
+			this.file = file;
+			this.partStart = partStart;
+			this.partEnd = partEnd;
+			this.splitter = splitter;
+		}
+
+		@Override
+		public List<TimestampedObject<T>> call() throws IOException {
+			return drain(file, splitter.open(file, partStart, partEnd));
+		}
+
+		@Override
+		public String toString() {
+			return file.getAbsolutePath() + " from " + partStart + " to "
+					+ partEnd;
+		}
+	}
+
+	/**
+	 * Stops the threads of the {@link ExecutorService}.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the shared {@link ParallelReader} with
+	 * <code>-Dobject.logger.reading.threads</code> threads (default 0),
+	 * reading up to <code>-Dobject.logger.reading.ahead</code> files ahead
+	 * (default twice the threads) and splitting files into parts of
+	 * <code>-Dobject.logger.reading.chunk.size</code> bytes (default 16MB), or
+	 * null if there are no threads.
+	 */
+	public static synchronized ParallelReader fromSystemProperties() {
+		if (shared == null) {
+			int threads = Integer.getInteger("object.logger.reading.threads",
+					0);
+			if (threads > 0) {
+				shared = new ParallelReader(threads, Integer.getInteger(
+						"object.logger.reading.ahead", threads * 2),
+						Long.getLong("object.logger.reading.chunk.size",
+								defaultChunkSize));
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * @return the number of threads reading
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the most files or parts read ahead of the caller
+	 */
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * @return the size of the parts a large file is split into
+	 */
+	public long getChunkSize() {
+		return chunkSize;
+	}
+
+}
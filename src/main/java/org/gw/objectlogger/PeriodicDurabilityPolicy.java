@@ -0,0 +1,86 @@
+package org.gw.objectlogger;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IDurabilityPolicy} which syncs after a write once
+ * <code>intervalMillis</code> have passed or <code>intervalBytes</code> have
+ * been written since the last sync, and before the file is closed. At most
+ * that much is lost if the machine crashes, as long as objects keep being
+ * logged. Nothing is synced while nothing is written.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class PeriodicDurabilityPolicy implements IDurabilityPolicy {
+
+	private final long intervalNanos;
+
+	private final long intervalBytes;
+
+	private long lastSyncNanos = System.nanoTime();
+
+	private long lastSyncBytes;
+
+	/**
+	 * @param intervalMillis
+	 *            The longest time in milliseconds between syncs
+	 * @param intervalBytes
+	 *            The most bytes written between syncs
+	 */
+	public PeriodicDurabilityPolicy(long intervalMillis, long intervalBytes) {
+		if (intervalMillis <= 0 || intervalBytes <= 0) {
+			throw new IllegalArgumentException(
+					"intervalMillis and intervalBytes must be greater than 0");
+		}
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		this.intervalBytes = intervalBytes;
+	}
+
+	@Override
+	public void afterWrite(ISyncableSerialiser serialiser) throws IOException {
+		long bytes = serialiser.getBytesWritten();
+		if (bytes < lastSyncBytes) {
+			// A new file was opened
+			lastSyncBytes = 0;
+		}
+		if (bytes - lastSyncBytes >= intervalBytes
+				|| System.nanoTime() - lastSyncNanos >= intervalNanos) {
+			sync(serialiser, bytes);
+		}
+	}
+
+	@Override
+	public void beforeClose(ISyncableSerialiser serialiser) throws IOException {
+		long bytes = serialiser.getBytesWritten();
+		if (bytes != lastSyncBytes) {
+			sync(serialiser, bytes);
+		}
+		lastSyncBytes = 0;
+	}
+
+	private void sync(ISyncableSerialiser serialiser, long bytes)
+			throws IOException {
+		serialiser.sync();
+		lastSyncNanos = System.nanoTime();
+		lastSyncBytes = bytes;
+	}
+
+	/**
+	 * @return the longest time in milliseconds between syncs
+	 */
+	public long getIntervalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(intervalNanos);
+	}
+
+	/**
+	 * @return the most bytes written between syncs
+	 */
+	public long getIntervalBytes() {
+		return intervalBytes;
+	}
+
+}
@@ -0,0 +1,182 @@
+package org.gw.objectlogger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link Future} returned by {@link ObjectLogger#logAndAck(Object)} which
+ * completes when the logged Object has been persisted by the
+ * {@link IDataSource}, or fails if it could not be persisted or was
+ * discarded. It cannot be cancelled.
+ * <p>
+ * Listeners are run by the thread which completes the {@link PersistFuture},
+ * usually the worker logging the queue, so they should return quickly.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class PersistFuture implements Future<Void> {
+
+	private static Logger logger = LoggerFactory.getLogger(PersistFuture.class);
+
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	/**
+	 * Why the Object was not persisted. Null if it was.
+	 */
+	private volatile Exception failure;
+
+	/**
+	 * The listeners to run on completion. Null once completed.
+	 */
+	private List<Runnable> listeners = new ArrayList<Runnable>();
+
+	/**
+	 * Completes this {@link PersistFuture} as persisted.
+	 * 
+	 * @return true if this call completed it, false if it already was.
+	 */
+	boolean complete() {
+		return finish(null);
+	}
+
+	/**
+	 * Completes this {@link PersistFuture} as failed.
+	 * 
+	 * @param failure
+	 *            Why the Object was not persisted.
+	 * @return true if this call completed it, false if it already was.
+	 */
+	boolean fail(Exception failure) {
+		if (failure == null) {
+			throw new IllegalArgumentException("failure cannot be null");
+		}
+		return finish(failure);
+	}
+
+	private boolean finish(Exception failure) {
+		List<Runnable> toRun;
+		synchronized (this) {
+			if (listeners == null) {
+				return false;
+			}
+			this.failure = failure;
+			toRun = listeners;
+			listeners = null;
+			done.countDown();
+		}
+		for (Runnable listener : toRun) {
+			runListener(listener);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a listener to run when this {@link PersistFuture} completes,
+	 * whether persisted or failed. If it has already completed the listener
+	 * is run straight away by the calling thread.
+	 * 
+	 * @param listener
+	 *            The {@link Runnable} to run on completion
+	 */
+	public void addListener(Runnable listener) {
+		synchronized (this) {
+			if (listeners != null) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		runListener(listener);
+	}
+
+	private void runListener(Runnable listener) {
+		try {
+			listener.run();
+		} catch (RuntimeException e) {
+			logger.error("PersistFuture listener threw an exception: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return false as a {@link PersistFuture} cannot be cancelled.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	/**
+	 * @return true if the Object has been persisted.
+	 */
+	public boolean isPersisted() {
+		return isDone() && failure == null;
+	}
+
+	/**
+	 * @return why the Object was not persisted, or null if it was or has not
+	 *         completed yet.
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Waits for the Object to be persisted.
+	 * 
+	 * @throws ExecutionException
+	 *             if it was not persisted, caused by the failure.
+	 */
+	@Override
+	public Void get() throws InterruptedException, ExecutionException {
+		done.await();
+		return result();
+	}
+
+	/**
+	 * Waits up to the given time for the Object to be persisted.
+	 * 
+	 * @throws ExecutionException
+	 *             if it was not persisted, caused by the failure.
+	 * @throws TimeoutException
+	 *             if it did not complete in time.
+	 */
+	@Override
+	public Void get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException("Not persisted after " + timeout + " "
+					+ unit);
+		}
+		return result();
+	}
+
+	private Void result() throws ExecutionException {
+		Exception e = failure;
+		if (e != null) {
+			throw new ExecutionException(e);
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,592 @@
+package org.gw.objectlogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Encodes {@link TimestampedObject}s of one class field by field, without
+ * Jackson. The class is inspected once, when the codec is created, and each
+ * field gets an accessor for its type, so primitives are read and written
+ * without boxing. A record is the log time, a flag for a null object and
+ * then each field in name order, with no field names or type information.
+ * <p>
+ * Fields may be primitives, their wrappers, {@link String}, {@link Date},
+ * enums or byte arrays. The class needs a no argument constructor. Since the
+ * records hold no schema, the fields must not change while files written
+ * with them are kept.
+ * <p>
+ * A record may be decoded with only some of its fields, skipping the bytes
+ * of the others without building their values.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class PojoCodec<T> {
+
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	private final Class<T> type;
+
+	private final Constructor<T> constructor;
+
+	private final FieldCodec[] fields;
+
+	/**
+	 * Encodes every field of the class and its super classes which is not
+	 * static or transient.
+	 */
+	public PojoCodec(Class<T> type) {
+		this(type, fieldsOf(type));
+	}
+
+	/**
+	 * Encodes only the named fields of the class and its super classes.
+	 */
+	public PojoCodec(Class<T> type, String... fieldNames) {
+		this(type, namedFields(type, fieldNames));
+	}
+
+	private PojoCodec(Class<T> type, List<Field> fields) {
+		this.type = type;
+		try {
+			constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(type.getName()
+					+ " has no no argument constructor.", e);
+		}
+		Field[] sorted = fields.toArray(new Field[fields.size()]);
+		Arrays.sort(sorted, new Comparator<Field>() {
+			@Override
+			public int compare(Field f1, Field f2) {
+				return f1.getName().compareTo(f2.getName());
+			}
+		});
+		this.fields = new FieldCodec[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i].setAccessible(true);
+			this.fields[i] = codecFor(sorted[i]);
+		}
+	}
+
+	private static List<Field> fieldsOf(Class<?> type) {
+		List<Field> fields = new ArrayList<Field>();
+		for (Class<?> c = type; c != null && c != Object.class; c = c
+				.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (!Modifier.isStatic(modifiers)
+						&& !Modifier.isTransient(modifiers)
+						&& !field.isSynthetic()) {
+					fields.add(field);
+				}
+			}
+		}
+		return fields;
+	}
+
+	private static List<Field> namedFields(Class<?> type, String... names) {
+		List<Field> all = fieldsOf(type);
+		List<Field> fields = new ArrayList<Field>(names.length);
+		for (String name : names) {
+			Field found = null;
+			for (Field field : all) {
+				if (field.getName().equals(name)) {
+					found = field;
+					break;
+				}
+			}
+			if (found == null) {
+				throw new IllegalArgumentException(type.getName()
+						+ " has no field " + name);
+			}
+			fields.add(found);
+		}
+		return fields;
+	}
+
+	/**
+	 * @return the class this codec encodes.
+	 */
+	public Class<T> getType() {
+		return type;
+	}
+
+	/**
+	 * Writes the object to the given {@link OutputStream}, which is not
+	 * closed.
+	 */
+	public void encode(TimestampedObject<?> object, OutputStream out)
+			throws SerialisationException {
+		Object obj = object.getObj();
+		if (obj != null && obj.getClass() != type) {
+			throw new SerialisationException("Expected " + type.getName()
+					+ ", but got " + obj.getClass().getName());
+		}
+		DataOutputStream output = new DataOutputStream(out);
+		try {
+			output.writeLong(object.getLogTimeMillis());
+			output.writeBoolean(obj != null);
+			if (obj != null) {
+				for (FieldCodec field : fields) {
+					field.write(obj, output);
+				}
+			}
+			output.flush();
+		} catch (IOException e) {
+			throw new SerialisationException("Could not encode "
+					+ type.getName(), e);
+		} catch (IllegalAccessException e) {
+			throw new SerialisationException("Could not encode "
+					+ type.getName(), e);
+		}
+	}
+
+	/**
+	 * Reads one record written by
+	 * {@link #encode(TimestampedObject, OutputStream)}.
+	 */
+	public TimestampedObject<T> decode(byte[] data, int offset, int length)
+			throws IOException {
+		return decode(data, offset, length, null);
+	}
+
+	/**
+	 * Reads one record written by
+	 * {@link #encode(TimestampedObject, OutputStream)}, setting only the
+	 * named fields of the object. The others are skipped and left as the
+	 * constructor sets them.
+	 *
+	 * @param fieldNames
+	 *            The names of the fields to read, or null to read them all
+	 */
+	public TimestampedObject<T> decode(byte[] data, int offset, int length,
+			Set<String> fieldNames) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(
+				data, offset, length));
+		TimestampedObject<T> object = new TimestampedObject<T>();
+		object.setLogTimeMillis(input.readLong());
+		if (input.readBoolean()) {
+			try {
+				T obj = constructor.newInstance();
+				for (FieldCodec field : fields) {
+					if (fieldNames == null
+							|| fieldNames.contains(field.field.getName())) {
+						field.read(obj, input);
+					} else {
+						field.skip(input);
+					}
+				}
+				object.setObj(obj);
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException("Could not decode " + type.getName(), e);
+			}
+		}
+		return object;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static FieldCodec codecFor(final Field field) {
+		Class<?> fieldType = field.getType();
+		if (fieldType == int.class) {
+			return new FieldCodec(field) {
+				void write(Object obj, DataOutput out) throws IOException,
+						IllegalAccessException {
+					out.writeInt(field.getInt(obj));
+				}
+
+				void read(Object obj, DataInput in) throws IOException,
+						IllegalAccessException {
+					field.setInt(obj, in.readInt());
+				}
+			};
+		}
+		if (fieldType == long.class) {
+			return new FieldCodec(field) {
+				void write(Object obj, DataOutput out) throws IOException,
+						IllegalAccessException {
+					out.writeLong(field.getLong(obj));
+				}
+
+				void read(Object obj, DataInput in) throws IOException,
+						IllegalAccessException {
+					field.setLong(obj, in.readLong());
+				}
+			};
+		}
+		if (fieldType == double.class) {
+			return new FieldCodec(field) {
+				void write(Object obj, DataOutput out) throws IOException,
+						IllegalAccessException {
+					out.writeDouble(field.getDouble(obj));
+				}
+
+				void read(Object obj, DataInput in) throws IOException,
+						IllegalAccessException {
+					field.setDouble(obj, in.readDouble());
+				}
+			};
+		}
+		if (fieldType == float.class) {
+			return new FieldCodec(field) {
+				void write(Object obj, DataOutput out) throws IOException,
+						IllegalAccessException {
+					out.writeFloat(field.getFloat(obj));
+				}
+
+				void read(Object obj, DataInput in) throws IOException,
+						IllegalAccessException {
+					field.setFloat(obj, in.readFloat());
+				}
+			};
+		}
+		if (fieldType == boolean.class) {
+			return new FieldCodec(field) {
+				void write(Object obj, DataOutput out) throws IOException,
+						IllegalAccessException {
+					out.writeBoolean(field.getBoolean(obj));
+				}
+
+				void read(Object obj, DataInput in) throws IOException,
+						IllegalAccessException {
+					field.setBoolean(obj, in.readBoolean());
+				}
+			};
+		}
+		if (fieldType == byte.class) {
+			return new FieldCodec(field) {
+				void write(Object obj, DataOutput out) throws IOException,
+						IllegalAccessException {
+					out.writeByte(field.getByte(obj));
+				}
+
+				void read(Object obj, DataInput in) throws IOException,
+						IllegalAccessException {
+					field.setByte(obj, in.readByte());
+				}
+			};
+		}
+		if (fieldType == short.class) {
+			return new FieldCodec(field) {
+				void write(Object obj, DataOutput out) throws IOException,
+						IllegalAccessException {
+					out.writeShort(field.getShort(obj));
+				}
+
+				void read(Object obj, DataInput in) throws IOException,
+						IllegalAccessException {
+					field.setShort(obj, in.readShort());
+				}
+			};
+		}
+		if (fieldType == char.class) {
+			return new FieldCodec(field) {
+				void write(Object obj, DataOutput out) throws IOException,
+						IllegalAccessException {
+					out.writeChar(field.getChar(obj));
+				}
+
+				void read(Object obj, DataInput in) throws IOException,
+						IllegalAccessException {
+					field.setChar(obj, in.readChar());
+				}
+			};
+		}
+		if (fieldType == String.class) {
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					writeBytes(((String) value).getBytes(utf8), out);
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return new String(readBytes(in), utf8);
+				}
+
+				void skipValue(DataInput in) throws IOException {
+					skipBytes(in.readInt(), in);
+				}
+			};
+		}
+		if (fieldType == byte[].class) {
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					writeBytes((byte[]) value, out);
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return readBytes(in);
+				}
+
+				void skipValue(DataInput in) throws IOException {
+					skipBytes(in.readInt(), in);
+				}
+			};
+		}
+		if (fieldType == Date.class) {
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					out.writeLong(((Date) value).getTime());
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return new Date(in.readLong());
+				}
+			};
+		}
+		if (fieldType.isEnum()) {
+			final Class<? extends Enum> enumType = (Class<? extends Enum>) fieldType;
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					out.writeUTF(((Enum<?>) value).name());
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return Enum.valueOf(enumType, in.readUTF());
+				}
+
+				void skipValue(DataInput in) throws IOException {
+					skipBytes(in.readUnsignedShort(), in);
+				}
+			};
+		}
+		if (fieldType == Integer.class) {
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					out.writeInt((Integer) value);
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return in.readInt();
+				}
+			};
+		}
+		if (fieldType == Long.class) {
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					out.writeLong((Long) value);
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return in.readLong();
+				}
+			};
+		}
+		if (fieldType == Double.class) {
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					out.writeDouble((Double) value);
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return in.readDouble();
+				}
+			};
+		}
+		if (fieldType == Float.class) {
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					out.writeFloat((Float) value);
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return in.readFloat();
+				}
+			};
+		}
+		if (fieldType == Boolean.class) {
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					out.writeBoolean((Boolean) value);
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return in.readBoolean();
+				}
+			};
+		}
+		if (fieldType == Short.class) {
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					out.writeShort((Short) value);
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return in.readShort();
+				}
+			};
+		}
+		if (fieldType == Byte.class) {
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					out.writeByte((Byte) value);
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return in.readByte();
+				}
+			};
+		}
+		if (fieldType == Character.class) {
+			return new NullableFieldCodec(field) {
+				void writeValue(Object value, DataOutput out)
+						throws IOException {
+					out.writeChar((Character) value);
+				}
+
+				Object readValue(DataInput in) throws IOException {
+					return in.readChar();
+				}
+			};
+		}
+		throw new IllegalArgumentException("Cannot encode field "
+				+ field.getName() + " of type " + fieldType.getName()
+				+ " in " + field.getDeclaringClass().getName());
+	}
+
+	/**
+	 * @return the number of bytes a value of the type is written in, or -1
+	 *         if it varies.
+	 */
+	private static int widthOf(Class<?> type) {
+		if (type == long.class || type == double.class || type == Long.class
+				|| type == Double.class || type == Date.class) {
+			return 8;
+		}
+		if (type == int.class || type == float.class || type == Integer.class
+				|| type == Float.class) {
+			return 4;
+		}
+		if (type == short.class || type == char.class || type == Short.class
+				|| type == Character.class) {
+			return 2;
+		}
+		if (type == boolean.class || type == byte.class
+				|| type == Boolean.class || type == Byte.class) {
+			return 1;
+		}
+		return -1;
+	}
+
+	private static void skipBytes(int length, DataInput in) throws IOException {
+		if (in.skipBytes(length) != length) {
+			throw new EOFException();
+		}
+	}
+
+	/**
+	 * Reads and writes one field.
+	 */
+	private static abstract class FieldCodec {
+
+		protected final Field field;
+
+		FieldCodec(Field field) {
+			this.field = field;
+		}
+
+		abstract void write(Object obj, DataOutput out) throws IOException,
+				IllegalAccessException;
+
+		abstract void read(Object obj, DataInput in) throws IOException,
+				IllegalAccessException;
+
+		/**
+		 * Skips the field without reading its value.
+		 */
+		void skip(DataInput in) throws IOException {
+			skipBytes(widthOf(field.getType()), in);
+		}
+	}
+
+	/**
+	 * Reads and writes a field which may be null, as a flag followed by the
+	 * value.
+	 */
+	private static abstract class NullableFieldCodec extends FieldCodec {
+
+		NullableFieldCodec(Field field) {
+			super(field);
+		}
+
+		@Override
+		void write(Object obj, DataOutput out) throws IOException,
+				IllegalAccessException {
+			Object value = field.get(obj);
+			out.writeBoolean(value != null);
+			if (value != null) {
+				writeValue(value, out);
+			}
+		}
+
+		@Override
+		void read(Object obj, DataInput in) throws IOException,
+				IllegalAccessException {
+			field.set(obj, in.readBoolean() ? readValue(in) : null);
+		}
+
+		abstract void writeValue(Object value, DataOutput out)
+				throws IOException;
+
+		abstract Object readValue(DataInput in) throws IOException;
+
+		@Override
+		void skip(DataInput in) throws IOException {
+			if (in.readBoolean()) {
+				skipValue(in);
+			}
+		}
+
+		/**
+		 * Skips the value without reading it, by the width of its type.
+		 */
+		void skipValue(DataInput in) throws IOException {
+			skipBytes(widthOf(field.getType()), in);
+		}
+
+		static void writeBytes(byte[] bytes, DataOutput out)
+				throws IOException {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		static byte[] readBytes(DataInput in) throws IOException {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return bytes;
+		}
+	}
+
+}
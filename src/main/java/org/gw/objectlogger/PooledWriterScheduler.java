@@ -0,0 +1,169 @@
+package org.gw.objectlogger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link IWriterScheduler} which logs the lanes on a bounded pool of threads.
+ * A lane is submitted to the pool when it is signalled and is never run by
+ * two threads at once, so each {@link IDataSource} is still written serially.
+ * A lane logs each of its {@link ObjectLogger}s once per run and is then
+ * resubmitted if there is more to log, so busy lanes take turns with the
+ * others.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class PooledWriterScheduler implements IWriterScheduler {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(PooledWriterScheduler.class);
+
+	/**
+	 * A lane which runs on the pool.
+	 */
+	private class PooledWriterLane implements IWriterLane, Runnable {
+
+		private final Set<ObjectLogger<?>> objectLoggers = new CopyOnWriteArraySet<ObjectLogger<?>>();
+
+		/**
+		 * Set while the lane is submitted to or running on the pool.
+		 */
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		@Override
+		public void signal() {
+			if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					// Shut down
+					scheduled.set(false);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (ObjectLogger<?> objLogger : objectLoggers) {
+					try {
+						objLogger.logAllInQueue();
+					} catch (Exception e) {
+						logger.error(
+								"An exception was caught in the ObjectLoggers Logger Thread: "
+										+ e.getMessage(), e);
+					}
+				}
+			} finally {
+				/*
+				 * Clear the flag before checking the queues again. A producer
+				 * either sees it cleared and resubmits, or added its object
+				 * before the check and we resubmit.
+				 */
+				scheduled.set(false);
+				if (hasQueuedObjects()) {
+					signal();
+				}
+			}
+		}
+
+		private boolean hasQueuedObjects() {
+			for (ObjectLogger<?> objLogger : objectLoggers) {
+				if (objLogger.hasQueuedObjects()) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The lanes keyed by {@link IDataSource}.
+	 */
+	private final Map<IDataSource, PooledWriterLane> lanes = new ConcurrentHashMap<IDataSource, PooledWriterLane>();
+
+	private final ExecutorService executor;
+
+	/**
+	 * Creates a {@link PooledWriterScheduler} with one thread per available
+	 * processor.
+	 */
+	public PooledWriterScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a {@link PooledWriterScheduler} with the given number of
+	 * threads.
+	 */
+	public PooledWriterScheduler(int threads) {
+		this(Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ObjectLoggers Pool Thread-"
+						+ count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}));
+	}
+
+	/**
+	 * Creates a {@link PooledWriterScheduler} which runs the lanes on the
+	 * given {@link ExecutorService}.
+	 */
+	public PooledWriterScheduler(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public synchronized IWriterLane register(ObjectLogger<?> objLogger) {
+		PooledWriterLane lane = lanes.get(objLogger.getDataSource());
+		if (lane == null) {
+			lane = new PooledWriterLane();
+			lanes.put(objLogger.getDataSource(), lane);
+		}
+		lane.objectLoggers.add(objLogger);
+		lane.signal();
+		return lane;
+	}
+
+	@Override
+	public synchronized void unregister(ObjectLogger<?> objLogger) {
+		PooledWriterLane lane = lanes.get(objLogger.getDataSource());
+		if (lane != null && lane.objectLoggers.remove(objLogger)
+				&& lane.objectLoggers.isEmpty()) {
+			lanes.remove(objLogger.getDataSource());
+		}
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		lanes.clear();
+		executor.shutdown();
+	}
+
+	/**
+	 * @return the number of lanes.
+	 */
+	public int getLaneCount() {
+		return lanes.size();
+	}
+
+}
@@ -0,0 +1,422 @@
+package org.gw.objectlogger;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Keeps the {@link TimestampedObject}s logged from <code>from</code>
+ * (inclusive) to <code>to</code> (exclusive) whose Object is accepted by
+ * every one of the given {@link IFieldPredicate}s.
+ * <p>
+ * A serialiser reading json or Smile tests a record on its tokens, before
+ * anything is built: the log time is read first, and the Object of a record
+ * outside the range is skipped without being parsed into fields. Only the
+ * fields the predicates test are read from the Object, and only the records
+ * kept are deserialised. Any other serialiser tests each object once it is
+ * read.
+ * <p>
+ * A filter {@link #withFields(String...) with fields} also projects the
+ * Object onto only the named fields: the json and Smile serialisers skip the
+ * others on their tokens without building their strings or nested objects,
+ * and the Object is built from the fields kept, so it may be read into a
+ * smaller view class holding only them. The POJO serialiser skips the bytes
+ * of the other fields. Any other serialiser returns the whole Object.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public final class RecordFilter {
+
+	/**
+	 * The name of the log time written by a {@link TimestampedObject}
+	 */
+	private static final String logTimeField = "logTime";
+
+	/**
+	 * The name of the Object written by a {@link TimestampedObject}
+	 */
+	private static final String objField = "obj";
+
+	/**
+	 * Writes the Object read by a serialiser which is not json as tokens for
+	 * the predicates.
+	 */
+	private static final ObjectMapper mapper = new ObjectMapper()
+			.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+
+	private final long from;
+
+	private final long to;
+
+	private final IFieldPredicate[] predicates;
+
+	/**
+	 * The fields of the Object to read, or null to read them all.
+	 */
+	private final Set<String> fields;
+
+	/**
+	 * @param from
+	 *            The earliest log time in milliseconds (inclusive)
+	 * @param to
+	 *            The latest log time in milliseconds (exclusive)
+	 * @param predicates
+	 *            The predicates every Object kept must be accepted by
+	 */
+	public RecordFilter(long from, long to, IFieldPredicate... predicates) {
+		this(from, to, predicates == null ? new IFieldPredicate[0]
+				: predicates.clone(), null);
+		for (IFieldPredicate predicate : this.predicates) {
+			if (predicate == null || predicate.getField() == null) {
+				throw new IllegalArgumentException(
+						"predicates cannot be null or have a null field");
+			}
+		}
+	}
+
+	private RecordFilter(long from, long to, IFieldPredicate[] predicates,
+			Set<String> fields) {
+		this.from = from;
+		this.to = to;
+		this.predicates = predicates;
+		this.fields = fields;
+	}
+
+	/**
+	 * Returns a {@link RecordFilter} keeping the same records which reads
+	 * only the named fields of the Object. The others are left as the
+	 * Object's constructor sets them.
+	 *
+	 * @param fields
+	 *            The names of the fields at the top level of the Object, as
+	 *            they are written in json
+	 */
+	public RecordFilter withFields(String... fields) {
+		Set<String> set = new LinkedHashSet<String>(Arrays.asList(fields));
+		if (set.contains(null)) {
+			throw new IllegalArgumentException("fields cannot be null");
+		}
+		return new RecordFilter(from, to, predicates,
+				Collections.unmodifiableSet(set));
+	}
+
+	/**
+	 * @return the fields of the Object read, or null if they are all read.
+	 */
+	public Set<String> getFields() {
+		return fields;
+	}
+
+	/**
+	 * @return the fields of the Object which must be read to test and
+	 *         return it, or null if they are all read.
+	 */
+	Set<String> getFieldsRead() {
+		if (fields == null || predicates.length == 0) {
+			return fields;
+		}
+		Set<String> read = new LinkedHashSet<String>(fields);
+		for (IFieldPredicate predicate : predicates) {
+			read.add(predicate.getField());
+		}
+		return read;
+	}
+
+	/**
+	 * @return the earliest log time in milliseconds (inclusive)
+	 */
+	public long getFrom() {
+		return from;
+	}
+
+	/**
+	 * @return the latest log time in milliseconds (exclusive)
+	 */
+	public long getTo() {
+		return to;
+	}
+
+	/**
+	 * @return true if any fields of the Object are tested, rather than only
+	 *         the log time.
+	 */
+	public boolean hasPredicates() {
+		return predicates.length > 0;
+	}
+
+	/**
+	 * @return true if the log time is in the range.
+	 */
+	public boolean accept(long logTime) {
+		return logTime >= from && logTime < to;
+	}
+
+	/**
+	 * Tests an object which has already been read. The predicates are given
+	 * the fields json would write for its Object.
+	 *
+	 * @return true to keep the object.
+	 */
+	public boolean accept(TimestampedObject<?> object) {
+		if (!accept(object.getLogTimeMillis())) {
+			return false;
+		}
+		if (predicates.length == 0) {
+			return true;
+		}
+		try {
+			TokenBuffer buffer = new TokenBuffer(mapper);
+			mapper.writeValue(buffer, object.getObj());
+			JsonParser parser = buffer.asParser(mapper);
+			try {
+				return acceptObj(parser, parser.nextToken());
+			} finally {
+				parser.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not test " + object, e);
+		}
+	}
+
+	/**
+	 * Tests a record on its tokens without building it. The parser must be
+	 * at the start of the {@link TimestampedObject}, and is left at its end
+	 * if it is kept. It may be anywhere in the record if it is not.
+	 *
+	 * @return true to keep the record.
+	 */
+	public boolean accept(JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+			return false;
+		}
+		boolean hasLogTime = false;
+		boolean hasObj = false;
+		JsonToken token;
+		while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			token = parser.nextToken();
+			if (logTimeField.equals(field)) {
+				hasLogTime = true;
+				if (!accept(parser.getLongValue())) {
+					return false;
+				}
+			} else if (objField.equals(field)) {
+				hasObj = true;
+				if (!acceptObj(parser, token)) {
+					return false;
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+		if (token != JsonToken.END_OBJECT) {
+			throw new IOException("Truncated record");
+		}
+		return (hasLogTime || accept(0)) && (hasObj || acceptObj(null, null));
+	}
+
+	/**
+	 * Reads a record if it is kept. The parser must be at the start of the
+	 * {@link TimestampedObject}, and is left at its end. The log time is
+	 * tested first, as it is written first, and the Object of a record
+	 * outside the range is skipped. The Object of a record in the range is
+	 * tested and buffered as tokens, without any field not read, and only
+	 * deserialised once it is kept.
+	 *
+	 * @param parser
+	 *            The parser at the start of the record
+	 * @param reader
+	 *            The {@link ObjectReader} of the Object, not of the
+	 *            {@link TimestampedObject}
+	 * @return the object, or null if it is not kept.
+	 */
+	public <T> TimestampedObject<T> read(JsonParser parser, ObjectReader reader)
+			throws IOException {
+		long logTime = 0;
+		T obj = null;
+		boolean accepted = true;
+		JsonToken token;
+		while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			token = parser.nextToken();
+			if (!accepted) {
+				parser.skipChildren();
+			} else if (logTimeField.equals(field)) {
+				logTime = parser.getLongValue();
+				accepted = accept(logTime);
+			} else if (!objField.equals(field)) {
+				parser.skipChildren();
+			} else if (predicates.length == 0 && fields == null) {
+				obj = reader.readValue(parser);
+			} else {
+				TokenBuffer buffer = new TokenBuffer(parser.getCodec());
+				accepted = readObj(parser, token, buffer);
+				if (accepted) {
+					JsonParser tokens = buffer.asParser();
+					tokens.nextToken();
+					obj = reader.readValue(tokens);
+				}
+			}
+		}
+		if (token != JsonToken.END_OBJECT) {
+			throw new IOException("Truncated record");
+		}
+		// Tested again in case the Object was written first
+		if (!accepted || !accept(logTime)) {
+			return null;
+		}
+		return new TimestampedObject<T>(logTime, obj);
+	}
+
+	/**
+	 * Tests the fields of an Object, skipping any not tested. The parser is
+	 * left at the end of the Object if it is kept.
+	 *
+	 * @param parser
+	 *            The parser at the start of the Object, or null if the
+	 *            record has none
+	 * @param token
+	 *            The current token of the parser
+	 */
+	private boolean acceptObj(JsonParser parser, JsonToken token)
+			throws IOException {
+		if (predicates.length == 0) {
+			if (parser != null) {
+				parser.skipChildren();
+			}
+			return true;
+		}
+		return readObj(parser, token, null);
+	}
+
+	/**
+	 * Tests the fields of an Object and copies the fields read into the
+	 * buffer, skipping the others. With a buffer the parser is always left
+	 * at the end of the Object; without one it is left where the Object is
+	 * rejected.
+	 *
+	 * @param parser
+	 *            The parser at the start of the Object, or null if the
+	 *            record has none
+	 * @param token
+	 *            The current token of the parser
+	 * @param buffer
+	 *            The buffer to copy the fields read into, or null to only
+	 *            test them
+	 */
+	private boolean readObj(JsonParser parser, JsonToken token,
+			TokenBuffer buffer) throws IOException {
+		boolean accepted = true;
+		boolean[] tested = new boolean[predicates.length];
+		if (token == JsonToken.START_OBJECT) {
+			if (buffer != null) {
+				buffer.writeStartObject();
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken valueToken = parser.nextToken();
+				if (accepted) {
+					accepted = test(field, parser, valueToken, tested);
+				}
+				if (accepted && buffer != null
+						&& (fields == null || fields.contains(field))) {
+					buffer.writeFieldName(field);
+					buffer.copyCurrentStructure(parser);
+				} else if (accepted || buffer != null) {
+					// Does nothing for a value which has been read
+					parser.skipChildren();
+				} else {
+					return false;
+				}
+			}
+			if (buffer != null) {
+				buffer.writeEndObject();
+			}
+		} else if (parser != null) {
+			if (buffer != null) {
+				buffer.copyCurrentStructure(parser);
+			} else {
+				parser.skipChildren();
+			}
+		}
+		if (!accepted) {
+			return false;
+		}
+		// Fields which are missing are null
+		for (int i = 0; i < predicates.length; i++) {
+			if (!tested[i] && !predicates[i].accept(null)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tests the value of a field with every predicate of the field.
+	 */
+	private boolean test(String field, JsonParser parser, JsonToken token,
+			boolean[] tested) throws IOException {
+		Object value = null;
+		boolean read = false;
+		for (int i = 0; i < predicates.length; i++) {
+			if (!tested[i] && field.equals(predicates[i].getField())) {
+				if (!read) {
+					value = valueOf(parser, token);
+					read = true;
+				}
+				tested[i] = true;
+				if (!predicates[i].accept(value)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the value of a scalar token, or null for any other.
+	 */
+	private static Object valueOf(JsonParser parser, JsonToken token)
+			throws IOException {
+		switch (token) {
+		case VALUE_STRING:
+			return parser.getText();
+		case VALUE_NUMBER_INT:
+			if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+				return parser.getBigIntegerValue();
+			}
+			return parser.getLongValue();
+		case VALUE_NUMBER_FLOAT:
+			return parser.getDoubleValue();
+		case VALUE_TRUE:
+			return Boolean.TRUE;
+		case VALUE_FALSE:
+			return Boolean.FALSE;
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "from " + from + " to " + to
+				+ (predicates.length == 0 ? "" : " where "
+						+ Arrays.toString(predicates))
+				+ (fields == null ? "" : " reading " + fields);
+	}
+
+}
@@ -0,0 +1,201 @@
+package org.gw.objectlogger;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free {@link ILoggerQueue} for many producers and a single
+ * consumer, in the style of the LMAX Disruptor. The slots of the ring are
+ * allocated once and reused, so adding an element allocates nothing.
+ * <p>
+ * Each slot carries a sequence number. A producer claims the next position
+ * with a CAS on the tail, writes the element into the slot and then publishes
+ * it by advancing the slot's sequence. The consumer takes a run of published
+ * slots with a CAS on the head and hands each slot back by advancing its
+ * sequence by a lap. The head is also claimed with a CAS so that a producer
+ * may evict the oldest element when the queue is full, but in the common case
+ * only the worker takes from the queue and that CAS is uncontended.
+ * <p>
+ * The capacity is always a power of two. A requested capacity is rounded up
+ * to the next power of two.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ * @param <E>
+ *            The type of element held in the queue
+ */
+public class RingBufferLoggerQueue<E> implements ILoggerQueue<E> {
+
+	/**
+	 * The largest capacity that is a power of two.
+	 */
+	private static final int maxCapacity = 1 << 30;
+
+	/**
+	 * A preallocated slot in the ring.
+	 */
+	private static final class Slot<E> {
+		/**
+		 * Equals the position the slot is free for, or that position + 1 once
+		 * the element has been published.
+		 */
+		volatile long sequence;
+		E value;
+
+		Slot(long sequence) {
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * An {@link java.util.concurrent.atomic.AtomicLong} padded so that the
+	 * head and the tail do not share a cache line.
+	 */
+	@SuppressWarnings("unused")
+	private static final class PaddedAtomicLong extends AtomicLong {
+		private static final long serialVersionUID = 1L;
+		long p1, p2, p3, p4, p5, p6, p7;
+	}
+
+	private final Slot<E>[] slots;
+
+	private final int capacity;
+
+	private final int mask;
+
+	/**
+	 * The next position to publish to.
+	 */
+	private final PaddedAtomicLong tail = new PaddedAtomicLong();
+
+	/**
+	 * The next position to take from.
+	 */
+	private final PaddedAtomicLong head = new PaddedAtomicLong();
+
+	/**
+	 * @param capacity
+	 *            The minimum number of elements the queue can hold. Rounded up
+	 *            to the next power of two.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public RingBufferLoggerQueue(int capacity) {
+		if (capacity <= 0 || capacity > maxCapacity) {
+			throw new IllegalArgumentException("Expected 0 < capacity <= "
+					+ maxCapacity + ", found " + capacity);
+		}
+		this.capacity = capacity == 1 ? 1 : Integer
+				.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.slots = new Slot[this.capacity];
+		for (int i = 0; i < this.capacity; i++) {
+			slots[i] = new Slot<E>(i);
+		}
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if (e == null) {
+			throw new NullPointerException("Cannot add null to the queue");
+		}
+		long pos;
+		Slot<E> slot;
+		while (true) {
+			pos = tail.get();
+			slot = slots[(int) (pos & mask)];
+			long diff = slot.sequence - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+			} else if (diff < 0) {
+				// The slot still holds the element from the previous lap.
+				return false;
+			}
+			// Another producer claimed pos. Try the next one.
+		}
+		slot.value = e;
+		slot.sequence = pos + 1;
+		return true;
+	}
+
+	@Override
+	public E poll() {
+		while (true) {
+			long pos = head.get();
+			Slot<E> slot = slots[(int) (pos & mask)];
+			if (slot.sequence != pos + 1) {
+				return null;
+			}
+			if (head.compareAndSet(pos, pos + 1)) {
+				return take(slot, pos);
+			}
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		int drained = 0;
+		while (drained < maxElements) {
+			long pos = head.get();
+
+			// Count the run of published slots from the head
+			int run = 0;
+			int maxRun = Math.min(maxElements - drained, capacity);
+			while (run < maxRun
+					&& slots[(int) ((pos + run) & mask)].sequence == pos + run
+							+ 1) {
+				run++;
+			}
+			if (run == 0) {
+				break;
+			}
+			if (!head.compareAndSet(pos, pos + run)) {
+				continue;
+			}
+			for (int i = 0; i < run; i++) {
+				c.add(take(slots[(int) ((pos + i) & mask)], pos + i));
+			}
+			drained += run;
+		}
+		return drained;
+	}
+
+	/**
+	 * Takes the element out of the claimed slot and hands the slot back to
+	 * the producers for the next lap.
+	 */
+	private E take(Slot<E> slot, long pos) {
+		E e = slot.value;
+		slot.value = null;
+		slot.sequence = pos + capacity;
+		return e;
+	}
+
+	/**
+	 * Returns the number of claimed positions, which may include elements
+	 * that are still being published.
+	 */
+	@Override
+	public int size() {
+		long size = tail.get() - head.get();
+		if (size < 0) {
+			return 0;
+		}
+		return size > capacity ? capacity : (int) size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		long pos = head.get();
+		return slots[(int) (pos & mask)].sequence != pos + 1;
+	}
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+
+}
@@ -0,0 +1,63 @@
+package org.gw.objectlogger;
+
+import java.util.Random;
+
+/**
+ * {@link IBackpressurePolicy} which keeps a random sample of the objects
+ * logged while the queue is full. Each new object replaces the oldest object
+ * in the queue with the given <code>probability</code> and is discarded
+ * otherwise.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class SamplingBackpressurePolicy implements IBackpressurePolicy {
+
+	private final double probability;
+
+	/**
+	 * A {@link Random} per producer, so producers which find the queue full
+	 * at once do not contend on the seed of a shared one.
+	 */
+	private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new Random();
+		}
+	};
+
+	private final DropOldestBackpressurePolicy dropOldest = new DropOldestBackpressurePolicy();
+
+	/**
+	 * @param probability
+	 *            The probability, between 0 and 1, of keeping an object.
+	 */
+	public SamplingBackpressurePolicy(double probability) {
+		if (probability < 0 || probability > 1) {
+			throw new IllegalArgumentException(
+					"Expected 0 <= probability <= 1, found " + probability);
+		}
+		this.probability = probability;
+	}
+
+	@Override
+	public <T> void onQueueFull(TimestampedObject<T> object,
+			ILoggerQueue<TimestampedObject<T>> queue, IDataSource dataSource,
+			IDiscardListener<T> listener) {
+		if (random.get().nextDouble() < probability) {
+			dropOldest.onQueueFull(object, queue, dataSource, listener);
+		} else {
+			listener.discarded(object);
+		}
+	}
+
+	/**
+	 * @return the probability
+	 */
+	public double getProbability() {
+		return probability;
+	}
+
+}
@@ -0,0 +1,358 @@
+package org.gw.objectlogger;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the decoded {@link TimestampedObject}s of the files read most
+ * recently, so a range which is queried again is read from memory rather
+ * than from the disk. A file is cached by its path and the type of its
+ * Objects, along with its length and last modified time when it was read: a
+ * file whose length or time has changed is read again. A compressed file is
+ * cached under the path it had before it was compressed, so it replaces
+ * itself: the lengths of the two are never compared, and a read of one
+ * always replaces the other.
+ * <p>
+ * The objects of the file being written to are never written over, so once
+ * it is cached only the records written since are read, and added to a copy
+ * of what is cached.
+ * <p>
+ * The cache is bounded by weight rather than by the number of files. Each
+ * file weighs the number of bytes it holds, decompressed, and the files
+ * least recently read are dropped once the total weight is over
+ * <code>maxWeight</code>. A file heavier than <code>maxWeight</code> is never
+ * cached.
+ * <p>
+ * The lists returned are shared and cannot be modified, and neither should
+ * the Objects in them. This class is thread safe.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class SegmentCache {
+
+	/**
+	 * Reads the objects of a file, or of a part of one.
+	 */
+	interface ISegmentReader<T> {
+
+		/**
+		 * Reads the objects from <code>start</code> (inclusive) to
+		 * <code>end</code> (exclusive), in the order they were written. The
+		 * start is 0 or the length the file was cached at, the end of a
+		 * write. A reader which cannot read part of a file is only
+		 * asked for the whole file.
+		 */
+		List<TimestampedObject<T>> read(File file, long start, long end)
+				throws IOException;
+	}
+
+	/**
+	 * The shared {@link SegmentCache} for
+	 * <code>-Dobject.logger.cache.bytes</code>. Created on first use.
+	 */
+	private static SegmentCache shared;
+
+	private final long maxWeight;
+
+	/**
+	 * The cached files, least recently read first
+	 */
+	private final LinkedHashMap<Key, Segment> segments = new LinkedHashMap<Key, Segment>(
+			16, 0.75f, true);
+
+	private long weight;
+
+	private long hitCount;
+
+	private long missCount;
+
+	private long tailReadCount;
+
+	private long evictionCount;
+
+	/**
+	 * @param maxWeight
+	 *            The most bytes of files to keep
+	 */
+	public SegmentCache(long maxWeight) {
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("maxWeight must be at least 1");
+		}
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Returns the objects of the file, from the cache if it has not changed
+	 * since it was read. Otherwise the file is read by the reader, outside of
+	 * any lock, and cached.
+	 *
+	 * @param file
+	 *            The file
+	 * @param type
+	 *            The type of Object in the file
+	 * @param length
+	 *            The length of the file to read up to, at a record boundary
+	 * @param appendable
+	 *            True if what the file held when it was cached is never
+	 *            written over, and the reader can read what has been written
+	 *            to it since, so only that needs to be read
+	 * @param reader
+	 *            Reads the file
+	 * @return the objects, in the order they were written, or null if the
+	 *         file is heavier than the maximum, in which case it is not read.
+	 * @throws FileNotFoundException
+	 *             If the file does not exist, in which case it is dropped
+	 *             from the cache.
+	 */
+	@SuppressWarnings("unchecked")
+	<T> List<TimestampedObject<T>> get(File file, Class<T> type, long length,
+			boolean appendable, ISegmentReader<T> reader) throws IOException {
+		long lastModified = file.lastModified();
+		if (lastModified == 0 && !file.exists()) {
+			invalidate(file);
+			throw new FileNotFoundException(file.getAbsolutePath());
+		}
+		Key key = new Key(getSegmentPath(file), type);
+		boolean compressed = SegmentCompressor.isCompressed(file);
+		Segment cached;
+		synchronized (this) {
+			cached = segments.get(key);
+			if (cached != null && cached.compressed == compressed
+					&& cached.length == length
+					&& cached.lastModified == lastModified) {
+				hitCount++;
+				return (List<TimestampedObject<T>>) cached.objects;
+			}
+		}
+
+		// Only a compressed file is opened to weigh it
+		long segmentWeight = appendable ? length : SegmentCompressor
+				.getUncompressedLength(file);
+		if (segmentWeight > maxWeight) {
+			invalidate(file);
+			return null;
+		}
+		List<TimestampedObject<T>> objects;
+		if (appendable && cached != null && !cached.compressed
+				&& cached.length < length) {
+			List<TimestampedObject<T>> tail = reader.read(file, cached.length,
+					length);
+			objects = new ArrayList<TimestampedObject<T>>(cached.objects.size()
+					+ tail.size());
+			objects.addAll((List<TimestampedObject<T>>) cached.objects);
+			objects.addAll(tail);
+			synchronized (this) {
+				tailReadCount++;
+			}
+		} else {
+			objects = reader.read(file, 0, length);
+			synchronized (this) {
+				missCount++;
+			}
+		}
+		objects = Collections.unmodifiableList(objects);
+		put(key, new Segment(objects, length, lastModified, segmentWeight,
+				compressed));
+		return objects;
+	}
+
+	/**
+	 * Caches the segment unless a later read of the same form of the file,
+	 * compressed or not, is already cached, and drops the least recently read
+	 * until the weight is within the maximum.
+	 */
+	private synchronized void put(Key key, Segment segment) {
+		Segment previous = segments.get(key);
+		if (previous != null) {
+			if (previous.compressed == segment.compressed
+					&& (previous.lastModified > segment.lastModified
+							|| previous.length > segment.length
+							&& previous.lastModified == segment.lastModified)) {
+				return;
+			}
+			weight -= previous.weight;
+		}
+		segments.put(key, segment);
+		weight += segment.weight;
+		Iterator<Segment> iterator = segments.values().iterator();
+		while (weight > maxWeight && iterator.hasNext()) {
+			Segment eldest = iterator.next();
+			iterator.remove();
+			weight -= eldest.weight;
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * Drops every type of Object cached for the file, whether it is
+	 * compressed or not.
+	 */
+	public synchronized void invalidate(File file) {
+		String path = getSegmentPath(file);
+		Iterator<Map.Entry<Key, Segment>> iterator = segments.entrySet()
+				.iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Key, Segment> entry = iterator.next();
+			if (entry.getKey().path.equals(path)) {
+				iterator.remove();
+				weight -= entry.getValue().weight;
+			}
+		}
+	}
+
+	/**
+	 * @return the path of the file before it was compressed, so a file which
+	 *         is compressed replaces itself in the cache.
+	 */
+	private static String getSegmentPath(File file) {
+		String path = file.getAbsolutePath();
+		if (SegmentCompressor.isCompressed(file)) {
+			return path.substring(0, path.length()
+					- SegmentCompressor.compressedExtension.length());
+		}
+		return path;
+	}
+
+	/**
+	 * Drops every file.
+	 */
+	public synchronized void clear() {
+		segments.clear();
+		weight = 0;
+	}
+
+	/**
+	 * Returns the shared {@link SegmentCache} holding up to
+	 * <code>-Dobject.logger.cache.bytes</code> bytes of files (default 0), or
+	 * null if it is 0.
+	 */
+	public static synchronized SegmentCache fromSystemProperties() {
+		if (shared == null) {
+			long maxWeight = Long.getLong("object.logger.cache.bytes", 0);
+			if (maxWeight > 0) {
+				shared = new SegmentCache(maxWeight);
+			}
+		}
+		return shared;
+	}
+
+	/**
+	 * @return the most bytes of files kept
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * @return the bytes of the files cached
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @return the number of files cached
+	 */
+	public synchronized int size() {
+		return segments.size();
+	}
+
+	/**
+	 * @return the number of reads answered from the cache
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return the number of reads which read the whole file
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of reads which only read what was appended to a
+	 *         cached file
+	 */
+	public synchronized long getTailReadCount() {
+		return tailReadCount;
+	}
+
+	/**
+	 * @return the number of files dropped to stay within the maximum weight
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SegmentCache [files=" + segments.size() + ", weight=" + weight
+				+ "/" + maxWeight + ", hits=" + hitCount + ", misses="
+				+ missCount + ", tailReads=" + tailReadCount + ", evictions="
+				+ evictionCount + "]";
+	}
+
+	/**
+	 * The path of a file and the type of its Objects
+	 */
+	private static class Key {
+		private final String path;
+		private final Class<?> type;
+
+		Key(String path, Class<?> type) {
+			this.path = path;
+			this.type = type;
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode() * 31 + type.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return path.equals(other.path) && type == other.type;
+		}
+	}
+
+	/**
+	 * The objects of a file read up to <code>length</code>
+	 */
+	private static class Segment {
+		private final List<?> objects;
+		private final long length;
+		private final long lastModified;
+		private final long weight;
+
+		/**
+		 * True if the file read was the compressed file
+		 */
+		private final boolean compressed;
+
+		Segment(List<?> objects, long length,
+				long lastModified, long weight, boolean compressed) {
+			this.objects = objects;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.weight = weight;
+			this.compressed = compressed;
+		}
+	}
+
+}
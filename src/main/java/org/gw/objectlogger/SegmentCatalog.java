@@ -0,0 +1,498 @@
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * A persistent list of the files, or segments, written by a
+ * {@link FileSystemDataSource}, so range queries find their files without
+ * probing the file system. Each {@link Segment} records its file, the time it
+ * starts, the first and last log time written to it, its number of records
+ * and its size. Segments are kept in start order, so the segments of a range
+ * are found in O(log n).
+ * <p>
+ * The catalog file is a journal: a line is appended when a segment is opened
+ * and when it is closed, and the last line for a file wins. Lines appended by
+ * other processes are read in before each query. If the catalog file does not
+ * exist it is rebuilt from the {@link ISegmentScanner}. Once more than half
+ * of its lines, and at least {@link #minStaleLines}, have been replaced by
+ * later ones, it is compacted to a line per segment.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class SegmentCatalog {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(SegmentCatalog.class);
+
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	private static final char separator = '\t';
+
+	/**
+	 * The least number of lines replaced by later ones before the catalog
+	 * file is compacted.
+	 */
+	static final int minStaleLines = 1024;
+
+	private final File catalogFile;
+
+	private final ISegmentScanner scanner;
+
+	/**
+	 * The segments in start order.
+	 */
+	private final NavigableSet<Segment> segments = new TreeSet<Segment>(
+			new Comparator<Segment>() {
+				@Override
+				public int compare(Segment s1, Segment s2) {
+					if (s1.start != s2.start) {
+						return s1.start < s2.start ? -1 : 1;
+					}
+					return s1.path.compareTo(s2.path);
+				}
+			});
+
+	private final Map<String, Segment> segmentsByPath = new HashMap<String, Segment>();
+
+	/**
+	 * The length of the catalog file read so far, or -1 if it has not been
+	 * read.
+	 */
+	private long readLength = -1;
+
+	/**
+	 * The number of lines in the catalog file read so far.
+	 */
+	private long lines;
+
+	/**
+	 * The segment being written to, if any.
+	 */
+	private Segment open;
+
+	/**
+	 * Finds the segments on the file system when there is no catalog file.
+	 */
+	public interface ISegmentScanner {
+
+		/**
+		 * @return the segments found, with unknown log times, records and
+		 *         size.
+		 */
+		List<Segment> scan();
+	}
+
+	public SegmentCatalog(File catalogFile, ISegmentScanner scanner) {
+		this.catalogFile = catalogFile;
+		this.scanner = scanner;
+	}
+
+	/**
+	 * Records that the given file has been opened for writing. A file already
+	 * in the catalog keeps its counts, unless it is empty.
+	 *
+	 * @param start
+	 *            The time the file starts, e.g. the minute in its name.
+	 */
+	public synchronized void opened(File file, long start) throws IOException {
+		refresh();
+		Segment segment = segmentsByPath.get(file.getPath());
+		if (segment == null || file.length() == 0) {
+			segment = new Segment(file.getPath(), start);
+			add(segment);
+		}
+		segment.closed = false;
+		open = segment;
+		append(segment);
+	}
+
+	/**
+	 * Records objects written to the open file. Only kept in memory until the
+	 * file is closed.
+	 *
+	 * @param firstLogTime
+	 *            The earliest log time written
+	 * @param lastLogTime
+	 *            The latest log time written
+	 */
+	public synchronized void written(int records, long firstLogTime,
+			long lastLogTime) {
+		if (open == null) {
+			return;
+		}
+		if (open.records != -1) {
+			open.records += records;
+		}
+		open.firstLogTime = Math.min(open.firstLogTime, firstLogTime);
+		open.lastLogTime = Math.max(open.lastLogTime, lastLogTime);
+	}
+
+	/**
+	 * Records that the open file has been closed, with its size.
+	 */
+	public synchronized void closed(long bytes) throws IOException {
+		if (open == null) {
+			return;
+		}
+		open.bytes = bytes;
+		open.closed = true;
+		append(open);
+		open = null;
+	}
+
+	/**
+	 * Returns the segments holding objects from <code>from</code>
+	 * (inclusive) to <code>to</code> (exclusive): those starting in the range
+	 * and the one before it, if its last log time is in the range or another
+	 * process is still writing to it. Segments are expected to follow one another, so no earlier
+	 * segment is looked at.
+	 *
+	 * @return the segments in start order.
+	 */
+	public synchronized List<Segment> find(long from, long to)
+			throws IOException {
+		refresh();
+		List<Segment> found = new ArrayList<Segment>();
+		Segment before = segments.lower(probe(from));
+		if (before != null && before.lastLogTime < from && !before.closed
+				&& before != open) {
+			// Still being written by another process
+			found.add(before);
+		} else if (before != null && before.lastLogTime >= from) {
+			found.add(before);
+		}
+		for (Segment segment : segments.subSet(probe(from), true, probe(to),
+				false)) {
+			found.add(segment);
+		}
+		return found;
+	}
+
+	/**
+	 * @return a segment which sorts before every segment starting at the
+	 *         given time.
+	 */
+	private static Segment probe(long start) {
+		return new Segment("", start);
+	}
+
+	/**
+	 * @return every segment in start order.
+	 */
+	public synchronized List<Segment> getSegments() throws IOException {
+		refresh();
+		return new ArrayList<Segment>(segments);
+	}
+
+	/**
+	 * Replaces the catalog with the segments found by the
+	 * {@link ISegmentScanner}.
+	 */
+	public synchronized void rebuild() throws IOException {
+		segments.clear();
+		segmentsByPath.clear();
+		List<Segment> scanned = scanner.scan();
+		for (Segment segment : scanned) {
+			add(segment);
+		}
+		if (open != null) {
+			Segment scannedOpen = segmentsByPath.get(open.path);
+			if (scannedOpen == null) {
+				add(open);
+			} else {
+				open = scannedOpen;
+				open.closed = false;
+			}
+		}
+		write(segments);
+	}
+
+	private void add(Segment segment) {
+		Segment replaced = segmentsByPath.put(segment.path, segment);
+		if (replaced != null) {
+			segments.remove(replaced);
+		}
+		segments.add(segment);
+	}
+
+	/**
+	 * Reads the lines appended to the catalog file since it was last read,
+	 * rebuilding it if it does not exist.
+	 */
+	private void refresh() throws IOException {
+		long length = catalogFile.length();
+		if (!catalogFile.exists()) {
+			logger.info("Building " + catalogFile.getAbsolutePath()
+					+ " from the files found.");
+			rebuild();
+			return;
+		}
+		if (length == readLength) {
+			return;
+		}
+		if (length < readLength) {
+			// Rewritten by another catalog, read it again
+			segments.clear();
+			segmentsByPath.clear();
+			readLength = 0;
+			lines = 0;
+		}
+		FileInputStream input = new FileInputStream(catalogFile);
+		try {
+			long skip = Math.max(readLength, 0);
+			while (skip > 0) {
+				long skipped = input.skip(skip);
+				if (skipped <= 0) {
+					break;
+				}
+				skip -= skipped;
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					input, utf8));
+			long read = Math.max(readLength, 0);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				read += line.getBytes(utf8).length + 1;
+				if (read > length) {
+					// A line being appended, read it next time
+					read -= line.getBytes(utf8).length + 1;
+					break;
+				}
+				lines++;
+				Segment segment = parse(line);
+				if (segment == null) {
+					logger.warn("Skipping a line of "
+							+ catalogFile.getAbsolutePath()
+							+ " which could not be read: " + line);
+				} else if (open != null && open.path.equals(segment.path)) {
+					// Our own line, keep the counts held in memory
+					continue;
+				} else {
+					add(segment);
+				}
+			}
+			readLength = read;
+		} finally {
+			IOUtils.closeQuietly(input);
+		}
+	}
+
+	/**
+	 * Appends the line of the segment, and compacts the catalog file once
+	 * enough of its lines have been replaced.
+	 */
+	private void append(Segment segment) throws IOException {
+		refresh();
+		List<Segment> one = new ArrayList<Segment>(1);
+		one.add(segment);
+		byte[] line = format(one);
+		FileOutputStream output = new FileOutputStream(catalogFile, true);
+		long end;
+		try {
+			// One write, so lines appended by other processes never interleave
+			output.write(line);
+			end = output.getChannel().position();
+		} finally {
+			output.close();
+		}
+		if (end == readLength + line.length) {
+			readLength = end;
+			lines++;
+		}
+		// Otherwise another process appended first, read both next time
+
+		long stale = lines - segmentsByPath.size();
+		if (stale >= minStaleLines && stale > segmentsByPath.size()) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Compacting " + catalogFile.getAbsolutePath()
+						+ " from " + lines + " lines to "
+						+ segmentsByPath.size());
+			}
+			refresh();
+			write(segments);
+		}
+	}
+
+	/**
+	 * Writes the given segments to a new catalog file, replacing the old one
+	 * with a rename, so a reader sees either of them whole. Where a rename
+	 * cannot replace a file, as on Windows, the old one is deleted first.
+	 */
+	private void write(Collection<Segment> all) throws IOException {
+		File temp = new File(catalogFile.getPath() + ".tmp");
+		byte[] data = format(all);
+		OutputStream output = FileUtils.openOutputStream(temp);
+		try {
+			output.write(data);
+		} finally {
+			output.close();
+		}
+		if (!temp.renameTo(catalogFile)
+				&& !(catalogFile.delete() && temp.renameTo(catalogFile))) {
+			throw new IOException("Could not rename " + temp.getAbsolutePath()
+					+ " to " + catalogFile.getAbsolutePath());
+		}
+		readLength = data.length;
+		lines = all.size();
+	}
+
+	private static byte[] format(Collection<Segment> all) {
+		StringBuilder builder = new StringBuilder();
+		for (Segment segment : all) {
+			builder.append(segment.start).append(separator)
+					.append(segment.firstLogTime).append(separator)
+					.append(segment.lastLogTime).append(separator)
+					.append(segment.records).append(separator)
+					.append(segment.bytes).append(separator)
+					.append(segment.closed ? 1 : 0).append(separator)
+					.append(segment.path).append('\n');
+		}
+		return builder.toString().getBytes(utf8);
+	}
+
+	/**
+	 * @return the segment of a catalog line, or null if it is not one.
+	 */
+	private static Segment parse(String line) {
+		String[] fields = line.split(String.valueOf(separator), 7);
+		if (fields.length != 7) {
+			return null;
+		}
+		try {
+			Segment segment = new Segment(fields[6], Long.parseLong(fields[0]));
+			segment.firstLogTime = Long.parseLong(fields[1]);
+			segment.lastLogTime = Long.parseLong(fields[2]);
+			segment.records = Long.parseLong(fields[3]);
+			segment.bytes = Long.parseLong(fields[4]);
+			segment.closed = "1".equals(fields[5]);
+			return segment;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the catalog file
+	 */
+	public File getCatalogFile() {
+		return catalogFile;
+	}
+
+	/**
+	 * One file written by a {@link FileSystemDataSource}.
+	 */
+	public static class Segment {
+
+		private final String path;
+
+		private final long start;
+
+		/**
+		 * The earliest log time, Long.MAX_VALUE if none is known.
+		 */
+		private long firstLogTime = Long.MAX_VALUE;
+
+		/**
+		 * The latest log time, Long.MIN_VALUE if none is known.
+		 */
+		private long lastLogTime = Long.MIN_VALUE;
+
+		/**
+		 * The number of records, -1 if it is not known.
+		 */
+		private long records;
+
+		/**
+		 * The size in bytes, -1 if it is not known.
+		 */
+		private long bytes;
+
+		private boolean closed;
+
+		public Segment(String path, long start) {
+			this.path = path;
+			this.start = start;
+		}
+
+		/**
+		 * Creates a segment found by an {@link ISegmentScanner}.
+		 *
+		 * @param lastLogTime
+		 *            The latest log time it may hold, e.g. the start of the
+		 *            next segment, or Long.MAX_VALUE if it is not known.
+		 */
+		public static Segment scanned(File file, long start, long lastLogTime) {
+			Segment segment = new Segment(file.getPath(), start);
+			segment.lastLogTime = lastLogTime;
+			segment.records = -1;
+			segment.bytes = -1;
+			segment.closed = true;
+			return segment;
+		}
+
+		public File getFile() {
+			return new File(path);
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getFirstLogTime() {
+			return firstLogTime;
+		}
+
+		public long getLastLogTime() {
+			return lastLogTime;
+		}
+
+		public long getRecords() {
+			return records;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return false if the file is being written, or was when its writer
+		 *         stopped.
+		 */
+		public boolean isClosed() {
+			return closed;
+		}
+
+		@Override
+		public String toString() {
+			return path + " [" + start + ", " + firstLogTime + "-"
+					+ lastLogTime + ", " + records + " records, " + bytes
+					+ " bytes]";
+		}
+	}
+
+}
@@ -0,0 +1,273 @@
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips log files which have been rolled, on a single low priority daemon
+ * thread, so the write path never waits for it. A file is compressed to
+ * <code>name.gz.tmp</code>, synced, renamed to <code>name.gz</code> and only
+ * then deleted, along with its {@link TimeIndex}, so there is always a
+ * complete copy of it. Reading is throttled to <code>bytesPerSecond</code>
+ * so the compressor does not compete with live logging for the disk.
+ * <p>
+ * {@link #openInputStream(File)} reads either kind of file, so serialisers
+ * which read through it read compressed files transparently.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class SegmentCompressor {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(SegmentCompressor.class);
+
+	/**
+	 * The extension added to a compressed file
+	 */
+	public static final String compressedExtension = ".gz";
+
+	private static final String tempExtension = ".tmp";
+
+	private static final int chunkSize = 64 * 1024;
+
+	/**
+	 * The shared {@link SegmentCompressor} for
+	 * <code>-Dobject.logger.compress.rolled</code>. Created on first use.
+	 */
+	private static SegmentCompressor shared;
+
+	private final ExecutorService executor;
+
+	/**
+	 * The most bytes read per second, 0 for no limit.
+	 */
+	private final long bytesPerSecond;
+
+	/**
+	 * Creates a {@link SegmentCompressor} with its own daemon thread.
+	 *
+	 * @param bytesPerSecond
+	 *            The most bytes to read per second, 0 for no limit.
+	 */
+	public SegmentCompressor(long bytesPerSecond) {
+		if (bytesPerSecond < 0) {
+			throw new IllegalArgumentException(
+					"bytesPerSecond cannot be negative");
+		}
+		this.bytesPerSecond = bytesPerSecond;
+		this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r,
+								"ObjectLoggers Compressor Thread");
+						thread.setDaemon(true);
+						thread.setPriority(Thread.MIN_PRIORITY);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Queues the file to be compressed. Returns straight away.
+	 */
+	public void submit(final File file) {
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						compress(file);
+					} catch (IOException e) {
+						logger.warn("Could not compress "
+								+ file.getAbsolutePath(), e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			logger.debug("Not compressing " + file.getAbsolutePath()
+					+ " as the compressor is shut down.");
+		}
+	}
+
+	/**
+	 * Compresses the file on the calling thread, replacing it with
+	 * <code>name.gz</code>.
+	 *
+	 * @return the compressed file, or null if the file does not exist.
+	 */
+	public File compress(File file) throws IOException {
+		if (!file.exists() || isCompressed(file)) {
+			return null;
+		}
+		File compressed = getCompressedFile(file);
+		File temp = new File(compressed.getPath() + tempExtension);
+		InputStream input = FileUtils.openInputStream(file);
+		FileOutputStream fileOutput = FileUtils.openOutputStream(temp);
+		try {
+			GZIPOutputStream output = new GZIPOutputStream(fileOutput,
+					chunkSize);
+			byte[] buffer = new byte[chunkSize];
+			long start = System.nanoTime();
+			long read = 0;
+			int n;
+			while ((n = input.read(buffer)) != -1) {
+				output.write(buffer, 0, n);
+				read += n;
+				throttle(read, start);
+			}
+			output.finish();
+			fileOutput.getFD().sync();
+		} finally {
+			IOUtils.closeQuietly(input);
+			IOUtils.closeQuietly(fileOutput);
+		}
+		if (!temp.renameTo(compressed)) {
+			FileUtils.deleteQuietly(temp);
+			throw new IOException("Could not rename " + temp.getAbsolutePath()
+					+ " to " + compressed.getAbsolutePath());
+		}
+		if (!file.delete()) {
+			logger.warn("Could not delete " + file.getAbsolutePath()
+					+ " after compressing it.");
+		}
+		// Its offsets do not apply to the compressed file
+		FileUtils.deleteQuietly(TimeIndex.getIndexFile(file));
+		if (logger.isDebugEnabled()) {
+			logger.debug("Compressed " + file.getAbsolutePath());
+		}
+		return compressed;
+	}
+
+	/**
+	 * Sleeps until reading the given number of bytes since start is within
+	 * the rate.
+	 */
+	private void throttle(long read, long start) {
+		if (bytesPerSecond == 0) {
+			return;
+		}
+		long due = start + read * 1000000000L / bytesPerSecond;
+		long wait = due - System.nanoTime();
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Stops the thread once the files already queued are compressed.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Waits for the files queued before {@link #shutdown()} to be
+	 * compressed.
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * @return the most bytes read per second, 0 for no limit.
+	 */
+	public long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * @return true if the file is a compressed file.
+	 */
+	public static boolean isCompressed(File file) {
+		return file.getName().endsWith(compressedExtension);
+	}
+
+	/**
+	 * @return the compressed file for the given file.
+	 */
+	public static File getCompressedFile(File file) {
+		return new File(file.getPath() + compressedExtension);
+	}
+
+	/**
+	 * Returns the length of the file once it is decompressed, from the size
+	 * gzip writes at its end, or the length of the file if it is not
+	 * compressed. The size is only kept modulo 4GB.
+	 */
+	public static long getUncompressedLength(File file) throws IOException {
+		long length = file.length();
+		if (!isCompressed(file) || length < 4) {
+			return length;
+		}
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			input.seek(length - 4);
+			// Little endian
+			return Integer.reverseBytes(input.readInt()) & 0xffffffffL;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Opens the file for reading, decompressing it if it is a compressed
+	 * file.
+	 */
+	public static InputStream openInputStream(File file) throws IOException {
+		InputStream input = new FileInputStream(file);
+		if (!isCompressed(file)) {
+			return input;
+		}
+		try {
+			return new GZIPInputStream(new BufferedInputStream(input,
+					chunkSize), chunkSize);
+		} catch (IOException e) {
+			IOUtils.closeQuietly(input);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the shared {@link SegmentCompressor} if
+	 * <code>-Dobject.logger.compress.rolled</code> is true (default false),
+	 * reading at most <code>-Dobject.logger.compress.bytes.per.second</code>
+	 * (default 8MB, 0 for no limit), or null.
+	 */
+	public static synchronized SegmentCompressor fromSystemProperties() {
+		if (shared == null
+				&& Boolean.getBoolean("object.logger.compress.rolled")) {
+			shared = new SegmentCompressor(Long.getLong(
+					"object.logger.compress.bytes.per.second",
+					8 * 1024 * 1024));
+		}
+		return shared;
+	}
+
+}
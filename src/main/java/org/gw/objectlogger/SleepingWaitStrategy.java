@@ -0,0 +1,63 @@
+package org.gw.objectlogger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link IWaitStrategy} which polls the queues, sleeping between idle passes.
+ * The sleep starts at <code>minSleepMillis</code> and doubles with every
+ * idle pass up to <code>maxSleepMillis</code>. Producers never signal the
+ * worker, so the worst case latency is <code>maxSleepMillis</code>.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class SleepingWaitStrategy implements IWaitStrategy {
+
+	private static final long defaultMinSleepMillis = 1;
+
+	private static final long defaultMaxSleepMillis = 100;
+
+	private final long minSleepNanos;
+
+	private final long maxSleepNanos;
+
+	public SleepingWaitStrategy() {
+		this(defaultMinSleepMillis, defaultMaxSleepMillis);
+	}
+
+	/**
+	 * @param minSleepMillis
+	 *            The sleep after the first idle pass
+	 * @param maxSleepMillis
+	 *            The maximum sleep between idle passes
+	 */
+	public SleepingWaitStrategy(long minSleepMillis, long maxSleepMillis) {
+		if (minSleepMillis <= 0 || maxSleepMillis < minSleepMillis) {
+			throw new IllegalArgumentException(
+					"Expected 0 < minSleepMillis <= maxSleepMillis, found "
+							+ minSleepMillis + " and " + maxSleepMillis);
+		}
+		this.minSleepNanos = TimeUnit.MILLISECONDS.toNanos(minSleepMillis);
+		this.maxSleepNanos = TimeUnit.MILLISECONDS.toNanos(maxSleepMillis);
+	}
+
+	@Override
+	public void waitForWork(int idleCount) {
+		long sleep = minSleepNanos;
+		for (int i = 1; i < idleCount && sleep < maxSleepNanos; i++) {
+			sleep <<= 1;
+		}
+		LockSupport.parkNanos(this, Math.min(sleep, maxSleepNanos));
+	}
+
+	/**
+	 * Does nothing. The worker will find the object on its next pass.
+	 */
+	@Override
+	public void signal(Thread worker) {
+	}
+
+}
@@ -0,0 +1,18 @@
+package org.gw.objectlogger;
+
+/**
+ * An {@link IClock} which returns {@link System#currentTimeMillis()}.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class SystemClock implements IClock {
+
+	@Override
+	public long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.gw.objectlogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An {@link ITimestampedObjectCursor} over the {@link TimestampedObject}s of
+ * another {@link Iterator} logged from <code>from</code> (inclusive) to
+ * <code>to</code> (exclusive), or kept by a {@link RecordFilter}. Closing it
+ * closes the {@link Iterator} if it is {@link Closeable}.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ * @param <T>
+ *            The underlying type of {@link TimestampedObject}
+ */
+class TimeFilteredCursor<T> implements ITimestampedObjectCursor<T> {
+
+	private final Iterator<TimestampedObject<T>> iterator;
+	private final RecordFilter filter;
+	private TimestampedObject<T> next;
+
+	TimeFilteredCursor(Iterator<TimestampedObject<T>> iterator, long from,
+			long to) {
+		this(iterator, new RecordFilter(from, to));
+	}
+
+	TimeFilteredCursor(Iterator<TimestampedObject<T>> iterator,
+			RecordFilter filter) {
+		this.iterator = iterator;
+		this.filter = filter;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (next == null && iterator.hasNext()) {
+			TimestampedObject<T> object = iterator.next();
+			if (filter.accept(object)) {
+				next = object;
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public TimestampedObject<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		TimestampedObject<T> result = next;
+		next = null;
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (iterator instanceof Closeable) {
+			((Closeable) iterator).close();
+		}
+	}
+
+}
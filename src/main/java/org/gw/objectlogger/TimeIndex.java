@@ -0,0 +1,385 @@
+package org.gw.objectlogger;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sparse index of the log times in a file, kept beside it in
+ * <code>name.idx</code>. Each {@link Entry} covers a run of whole records:
+ * its byte offsets in the file, and the earliest and latest log time in it.
+ * An entry is ended every <code>recordsPerEntry</code> records or
+ * <code>bytesPerEntry</code> bytes, whichever comes first, so a range of log
+ * times is read by seeking to the entries which may hold it and skipping the
+ * rest. Log times need not be in order.
+ * <p>
+ * Entries are appended once the records they cover have been flushed to the
+ * file. The index may lag the file, or miss the part of it written before
+ * there was an index; {@link #getParts(List, long, long, long)} reads any
+ * part of the file which is not covered. An entry beyond the end of the
+ * file is dropped.
+ * <p>
+ * The default interval is given by <code>-Dobject.logger.index.records</code>
+ * (default 1024) and <code>-Dobject.logger.index.bytes</code> (default 64KB).
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class TimeIndex {
+
+	private static Logger logger = LoggerFactory.getLogger(TimeIndex.class);
+
+	/**
+	 * The extension added to a file for its index
+	 */
+	public static final String indexExtension = ".idx";
+
+	/**
+	 * The size of an entry: start, end, first and last log time and records.
+	 */
+	static final int entryLength = 36;
+
+	private static final int defaultRecordsPerEntry = Integer.getInteger(
+			"object.logger.index.records", 1024);
+
+	private static final long defaultBytesPerEntry = Long.getLong(
+			"object.logger.index.bytes", 64 * 1024);
+
+	private final File file;
+
+	private final File indexFile;
+
+	private final int recordsPerEntry;
+
+	private final long bytesPerEntry;
+
+	/**
+	 * The entries ended but not yet written to the index file.
+	 */
+	private final ByteBuffer pending = ByteBuffer.allocate(entryLength * 16);
+
+	private FileOutputStream output;
+
+	/**
+	 * The entry being gathered.
+	 */
+	private long start;
+	private long end;
+	private long firstLogTime;
+	private long lastLogTime;
+	private int records;
+
+	/**
+	 * Creates an index for the given file with the default interval.
+	 */
+	public TimeIndex(File file) {
+		this(file, defaultRecordsPerEntry, defaultBytesPerEntry);
+	}
+
+	/**
+	 * @param file
+	 *            The file to index
+	 * @param recordsPerEntry
+	 *            The most records in an entry
+	 * @param bytesPerEntry
+	 *            The size at which an entry is ended
+	 */
+	public TimeIndex(File file, int recordsPerEntry, long bytesPerEntry) {
+		if (recordsPerEntry <= 0 || bytesPerEntry <= 0) {
+			throw new IllegalArgumentException(
+					"recordsPerEntry and bytesPerEntry must be positive");
+		}
+		this.file = file;
+		this.indexFile = getIndexFile(file);
+		this.recordsPerEntry = recordsPerEntry;
+		this.bytesPerEntry = bytesPerEntry;
+	}
+
+	/**
+	 * Opens the index for appending to a file of the given length. Entries
+	 * beyond it, left by a crash or a truncated record, are dropped.
+	 */
+	public void open(long length) throws IOException {
+		long valid = (long) read(file, length).size() * entryLength;
+		if (valid < indexFile.length()) {
+			logger.warn("Dropping " + (indexFile.length() - valid)
+					+ " bytes of " + indexFile.getAbsolutePath()
+					+ " which do not match the file.");
+			RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+			try {
+				raf.setLength(valid);
+			} finally {
+				raf.close();
+			}
+		}
+		output = new FileOutputStream(indexFile, true);
+		pending.clear();
+		startEntry(length);
+	}
+
+	/**
+	 * Adds a record which ends at the given offset.
+	 */
+	public void add(long logTime, long end) {
+		add(logTime, logTime, 1, end);
+	}
+
+	/**
+	 * Adds records, such as a compressed block, which end at the given
+	 * offset. An entry only ever ends at the end of an add.
+	 */
+	public void add(long firstLogTime, long lastLogTime, int records,
+			long end) {
+		this.firstLogTime = Math.min(this.firstLogTime, firstLogTime);
+		this.lastLogTime = Math.max(this.lastLogTime, lastLogTime);
+		this.records += records;
+		this.end = end;
+		if (this.records >= recordsPerEntry
+				|| end - start >= bytesPerEntry) {
+			endEntry();
+		}
+	}
+
+	private void endEntry() {
+		if (records == 0) {
+			return;
+		}
+		if (pending.remaining() < entryLength) {
+			flush();
+		}
+		pending.putLong(start).putLong(end).putLong(firstLogTime)
+				.putLong(lastLogTime).putInt(records);
+		startEntry(end);
+	}
+
+	private void startEntry(long start) {
+		this.start = start;
+		this.end = start;
+		this.firstLogTime = Long.MAX_VALUE;
+		this.lastLogTime = Long.MIN_VALUE;
+		this.records = 0;
+	}
+
+	/**
+	 * Writes the entries ended so far. Call once the records they cover have
+	 * been flushed to the file. The index is only an aid to reading, so a
+	 * failure is logged and indexing stops rather than failing the write.
+	 */
+	public void flush() {
+		if (output == null || pending.position() == 0) {
+			pending.clear();
+			return;
+		}
+		try {
+			// One write, so a crash leaves whole entries
+			output.write(pending.array(), 0, pending.position());
+		} catch (IOException e) {
+			logger.warn("Could not write " + indexFile.getAbsolutePath()
+					+ ", no longer indexing it.", e);
+			IOUtils.closeQuietly(output);
+			output = null;
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Drops the entries not yet written and the one being gathered, and
+	 * starts again at the given offset. Call when a write fails part way, so
+	 * no entry covers records which were not written. The records before the
+	 * offset which are no longer covered are read whole.
+	 */
+	public void reset(long start) {
+		pending.clear();
+		startEntry(start);
+	}
+
+	/**
+	 * Ends the last entry and closes the index file.
+	 */
+	public void close() {
+		endEntry();
+		flush();
+		IOUtils.closeQuietly(output);
+		output = null;
+	}
+
+	/**
+	 * @return the index file
+	 */
+	public File getIndexFile() {
+		return indexFile;
+	}
+
+	/**
+	 * @return the index file of the given file.
+	 */
+	public static File getIndexFile(File file) {
+		return new File(file.getPath() + indexExtension);
+	}
+
+	/**
+	 * Reads the index of the given file, up to its first entry which is out
+	 * of order or beyond the end of the file.
+	 *
+	 * @param length
+	 *            The length of the file
+	 * @return the entries in file order, empty if there is no index.
+	 */
+	public static List<Entry> read(File file, long length) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		DataInputStream input;
+		try {
+			input = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(getIndexFile(file))));
+		} catch (FileNotFoundException e) {
+			return entries;
+		}
+		try {
+			long position = 0;
+			while (true) {
+				Entry entry = new Entry();
+				try {
+					entry.start = input.readLong();
+					entry.end = input.readLong();
+					entry.firstLogTime = input.readLong();
+					entry.lastLogTime = input.readLong();
+					entry.records = input.readInt();
+				} catch (EOFException e) {
+					return entries;
+				}
+				if (entry.start < position || entry.end <= entry.start
+						|| entry.end > length) {
+					return entries;
+				}
+				position = entry.end;
+				entries.add(entry);
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Returns the parts of a file which hold every record logged from
+	 * <code>from</code> (inclusive) to <code>to</code> (exclusive): the
+	 * entries whose log times overlap the range and anything not covered by
+	 * an entry, with adjacent parts joined.
+	 *
+	 * @param entries
+	 *            The entries of the file, in file order
+	 * @param length
+	 *            The length of the file
+	 * @return the start (inclusive) and end (exclusive) offset of each part.
+	 */
+	public static List<long[]> getParts(List<Entry> entries, long length,
+			long from, long to) {
+		return getParts(entries, length, from, to, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the parts of a file which hold every record logged from
+	 * <code>from</code> (inclusive) to <code>to</code> (exclusive), as
+	 * {@link #getParts(List, long, long, long)}, but only joining adjacent
+	 * parts up to <code>maxPartLength</code> bytes. Every part starts at a
+	 * record, so the parts can be read in parallel. A part not covered by an
+	 * entry may still be longer.
+	 *
+	 * @param entries
+	 *            The entries of the file, in file order
+	 * @param length
+	 *            The length of the file
+	 * @param maxPartLength
+	 *            The most bytes to join parts up to
+	 * @return the start (inclusive) and end (exclusive) offset of each part.
+	 */
+	public static List<long[]> getParts(List<Entry> entries, long length,
+			long from, long to, long maxPartLength) {
+		List<long[]> parts = new ArrayList<long[]>();
+		long position = 0;
+		for (Entry entry : entries) {
+			if (entry.start > position) {
+				addPart(parts, position, entry.start, maxPartLength);
+			}
+			if (entry.lastLogTime >= from && entry.firstLogTime < to) {
+				addPart(parts, entry.start, entry.end, maxPartLength);
+			}
+			position = entry.end;
+		}
+		if (position < length) {
+			addPart(parts, position, length, maxPartLength);
+		}
+		return parts;
+	}
+
+	private static void addPart(List<long[]> parts, long start, long end,
+			long maxPartLength) {
+		if (!parts.isEmpty()) {
+			long[] last = parts.get(parts.size() - 1);
+			if (last[1] == start && end - last[0] <= maxPartLength) {
+				last[1] = end;
+				return;
+			}
+		}
+		parts.add(new long[] { start, end });
+	}
+
+	/**
+	 * A run of whole records in a file.
+	 */
+	public static class Entry {
+
+		private long start;
+		private long end;
+		private long firstLogTime;
+		private long lastLogTime;
+		private int records;
+
+		/**
+		 * @return the offset of the first record
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * @return the offset after the last record
+		 */
+		public long getEnd() {
+			return end;
+		}
+
+		public long getFirstLogTime() {
+			return firstLogTime;
+		}
+
+		public long getLastLogTime() {
+			return lastLogTime;
+		}
+
+		public int getRecords() {
+			return records;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + start + "-" + end + ", " + firstLogTime + "-"
+					+ lastLogTime + ", " + records + " records]";
+		}
+	}
+
+}
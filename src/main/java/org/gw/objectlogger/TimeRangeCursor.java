@@ -0,0 +1,152 @@
+package org.gw.objectlogger;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An {@link ITimestampedObjectCursor} over the {@link TimestampedObject}s of
+ * a file logged from <code>from</code> (inclusive) to <code>to</code>
+ * (exclusive). Only the parts of the file its {@link TimeIndex} says may hold
+ * them are read, each by a cursor of the serialiser which wrote it. A
+ * compressed file cannot be seeked, so it is read from the start.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ * @param <T>
+ *            The underlying type of {@link TimestampedObject}
+ */
+class TimeRangeCursor<T> implements ITimestampedObjectCursor<T> {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(TimeRangeCursor.class);
+
+	/**
+	 * Opens a cursor of a serialiser over part of a file.
+	 */
+	interface IPartReader<T> {
+
+		/**
+		 * @param input
+		 *            The part, starting at a record
+		 * @param length
+		 *            The length of the part, Long.MAX_VALUE if it is not
+		 *            known
+		 */
+		ITimestampedObjectCursor<T> open(InputStream input, long length)
+				throws IOException;
+	}
+
+	private final File file;
+	private final long from;
+	private final long to;
+	private final IPartReader<T> reader;
+	private final List<long[]> parts;
+	private int part;
+	private FileInputStream fileInput;
+	private ITimestampedObjectCursor<T> cursor;
+	private TimestampedObject<T> next;
+	private boolean closed;
+
+	TimeRangeCursor(File file, long from, long to, IPartReader<T> reader)
+			throws IOException {
+		this.file = file;
+		this.from = from;
+		this.to = to;
+		this.reader = reader;
+		if (SegmentCompressor.isCompressed(file)) {
+			this.parts = Collections.emptyList();
+			this.cursor = reader.open(SegmentCompressor.openInputStream(file),
+					Long.MAX_VALUE);
+		} else {
+			long length = file.length();
+			this.fileInput = new FileInputStream(file);
+			this.parts = TimeIndex.getParts(TimeIndex.read(file, length),
+					length, from, to);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		try {
+			while (next == null && !closed) {
+				if (cursor != null && cursor.hasNext()) {
+					TimestampedObject<T> object = cursor.next();
+					long logTime = object.getLogTimeMillis();
+					if (logTime >= from && logTime < to) {
+						next = object;
+					}
+				} else if (part < parts.size()) {
+					if (cursor != null) {
+						cursor.close();
+					}
+					long[] range = parts.get(part++);
+					fileInput.getChannel().position(range[0]);
+					BoundedInputStream bounded = new BoundedInputStream(
+							fileInput, range[1] - range[0]);
+					// The file stays open for the next part
+					bounded.setPropagateClose(false);
+					cursor = reader.open(bounded, range[1] - range[0]);
+				} else {
+					close();
+				}
+			}
+			return next != null;
+		} catch (IOException e) {
+			closeQuietly();
+			throw new IllegalStateException("Could not read "
+					+ file.getAbsolutePath(), e);
+		}
+	}
+
+	@Override
+	public TimestampedObject<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		TimestampedObject<T> result = next;
+		next = null;
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (cursor != null) {
+				cursor.close();
+			}
+		} finally {
+			if (fileInput != null) {
+				fileInput.close();
+			}
+		}
+	}
+
+	private void closeQuietly() {
+		try {
+			close();
+		} catch (IOException e) {
+			logger.warn("Could not close " + file.getAbsolutePath(), e);
+		}
+	}
+
+}
@@ -30,6 +30,15 @@ public final class TimestampedByteArray extends TimestampedObject<byte[]> {
 		super(obj);
 	}
 
+	/**
+	 * @param logTime
+	 *            the log time in milliseconds since the epoch
+	 * @param obj
+	 */
+	public TimestampedByteArray(long logTime, byte[] obj) {
+		super(logTime, obj);
+	}
+
 	/**
 	 * @param logTime
 	 * @param obj
@@ -1,13 +1,16 @@
 package org.gw.objectlogger;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Date;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -16,21 +19,47 @@ import org.slf4j.LoggerFactory;
 
 /**
  * An {@link ITimestampedObjectSerialiser} that de/serialises a byte array.
+ * Files can be read one byte array at a time by an
+ * {@link ITimestampedObjectCursor}.
  * 
  * @author Gman
  * 
  */
 public class TimestampedByteArraySerialiser
 		implements
-			ITimestampedObjectSerialiser {
+			ISyncableSerialiser,
+			IEncodingSerialiser,
+			IStreamingSerialiser {
 
 	private static Logger logger = LoggerFactory
 			.getLogger(TimestampedByteArraySerialiser.class);
 
 	private DataOutputStream output;
 
+	/**
+	 * The file being written, kept to sync it.
+	 */
+	private FileOutputStream fileOutput;
+
+	/**
+	 * The number of bytes written since the file was opened.
+	 */
+	private long bytesWritten;
+
 	private static final String extension = "data";
 
+	/**
+	 * Encodes the {@link TimestampedObject}s as their log time followed by
+	 * the byte array.
+	 */
+	private final ITimestampedObjectEncoder encoder = new ITimestampedObjectEncoder() {
+		@Override
+		public byte[] encode(TimestampedObject<?> object)
+				throws SerialisationException {
+			return serialise(object);
+		}
+	};
+
 	public TimestampedByteArraySerialiser() {
 	}
 
@@ -45,7 +74,7 @@ public class TimestampedByteArraySerialiser
 		try {
 			byte[] data = (byte[]) serialisable.getObj();
 			ByteBuffer buffer = ByteBuffer.allocate(data.length + 8);
-			buffer.putLong(serialisable.getLogTime().getTime());
+			buffer.putLong(serialisable.getLogTimeMillis());
 			buffer.put(data, 0, data.length);
 			return buffer.array();
 		} catch (ClassCastException e) {
@@ -70,7 +99,7 @@ public class TimestampedByteArraySerialiser
 		}
 		TimestampedObject<byte[]> serialisable = new TimestampedObject<byte[]>();
 		ByteBuffer buffer = ByteBuffer.wrap(bytes);
-		serialisable.setLogTime(new Date(buffer.getLong()));
+		serialisable.setLogTimeMillis(buffer.getLong());
 		byte[] data = new byte[bytes.length - 8];
 		buffer.get(data, 0, data.length);
 		serialisable.setObj(data);
@@ -80,19 +109,46 @@ public class TimestampedByteArraySerialiser
 	@Override
 	public void write(TimestampedObject<?> object) throws IOException,
 			SerialisationException {
-		byte[] data = serialise(object);
+		doWrite(object);
+		output.flush();
+	}
+
+	private void doWrite(TimestampedObject<?> object) throws IOException,
+			SerialisationException {
+		writeData(serialise(object));
+	}
+
+	private void writeData(byte[] data) throws IOException {
 		output.writeInt(data.length);
 		output.write(data);
+		bytesWritten += 4 + data.length;
+	}
+
+	/**
+	 * Writes the given objects encoded by {@link #getEncoder()}, flushing to
+	 * the file once at the end.
+	 */
+	@Override
+	public void writeEncoded(List<TimestampedObject<?>> batch,
+			List<byte[]> encoded) throws IOException {
+		for (byte[] data : encoded) {
+			writeData(data);
+		}
 		output.flush();
 	}
 
+	@Override
+	public ITimestampedObjectEncoder getEncoder() {
+		return encoder;
+	}
+
 	@Override
 	public <T> TimestampedObjectSet<T> readAll(File file, Class<T> type)
 			throws IOException, DeserialisationException {
 
 		TimestampedObjectSet<T> set = new TimestampedObjectSet<T>();
-		DataInputStream input = new DataInputStream(
-				FileUtils.openInputStream(file));
+		DataInputStream input = new DataInputStream(new BufferedInputStream(
+				SegmentCompressor.openInputStream(file)));
 		int length;
 		try {
 			while ((length = input.readInt()) > 0) {
@@ -116,9 +172,22 @@ public class TimestampedByteArraySerialiser
 		return set;
 	}
 
+	@Override
+	public <T> ITimestampedObjectCursor<T> openCursor(File file, Class<T> type)
+			throws IOException {
+		if (!type.equals(byte[].class)) {
+			throw new IllegalStateException("Expected byte array, but got "
+					+ type.getSimpleName());
+		}
+		return new ByteArrayCursor<T>(file, new DataInputStream(
+				new BufferedInputStream(SegmentCompressor.openInputStream(file))));
+	}
+
 	@Override
 	public void open(File file) throws IOException {
-		output = new DataOutputStream(FileUtils.openOutputStream(file));
+		fileOutput = FileUtils.openOutputStream(file);
+		output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+		bytesWritten = 0;
 	}
 
 	@Override
@@ -128,10 +197,28 @@ public class TimestampedByteArraySerialiser
 				output.close();
 			} finally {
 				output = null;
+				fileOutput = null;
 			}
 		}
 	}
 
+	/**
+	 * Forces the content of the file to the device. Everything written has
+	 * already been flushed to the file by each write.
+	 */
+	@Override
+	public void sync() throws IOException {
+		if (fileOutput == null) {
+			throw new IllegalStateException("Please call open(File) first");
+		}
+		fileOutput.getChannel().force(false);
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
 	@Override
 	public String getExtension() {
 		return extension;
@@ -144,13 +231,100 @@ public class TimestampedByteArraySerialiser
 
 	/**
 	 * Writes the batch synchronously by looping through each
-	 * {@link TimestampedObject} and calling write(TimestampedObject)
+	 * {@link TimestampedObject}, flushing to the file once at the end.
 	 */
 	@Override
 	public void write(List<TimestampedObject<?>> batch) throws IOException,
 			SerialisationException {
 		for (TimestampedObject<?> obj : batch) {
-			write(obj);
+			doWrite(obj);
+		}
+		output.flush();
+	}
+
+	/**
+	 * Reads a file one byte array at a time.
+	 */
+	private class ByteArrayCursor<T> implements ITimestampedObjectCursor<T> {
+
+		private final File file;
+		private DataInputStream input;
+		private TimestampedObject<T> next;
+
+		ByteArrayCursor(File file, DataInputStream input) {
+			this.file = file;
+			this.input = input;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null && input != null) {
+				next = readNext();
+			}
+			return next != null;
+		}
+
+		@Override
+		public TimestampedObject<T> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			TimestampedObject<T> result = next;
+			next = null;
+			return result;
+		}
+
+		/**
+		 * @return the next byte array, or null at the end of the file or a
+		 *         truncated one.
+		 */
+		@SuppressWarnings("unchecked")
+		private TimestampedObject<T> readNext() {
+			try {
+				int length = input.readInt();
+				if (length <= 0) {
+					close();
+					return null;
+				}
+				byte[] bytes = new byte[length];
+				input.readFully(bytes);
+				return (TimestampedObject<T>) deserialise(byte[].class, bytes);
+			} catch (EOFException e) {
+				closeQuietly();
+				return null;
+			} catch (IOException e) {
+				closeQuietly();
+				throw new IllegalStateException("Could not read "
+						+ file.getAbsolutePath(), e);
+			} catch (DeserialisationException e) {
+				closeQuietly();
+				throw new IllegalStateException("Could not read "
+						+ file.getAbsolutePath(), e);
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (input != null) {
+				try {
+					input.close();
+				} finally {
+					input = null;
+				}
+			}
+		}
+
+		private void closeQuietly() {
+			try {
+				close();
+			} catch (IOException e) {
+				logger.warn("Could not close " + file.getAbsolutePath(), e);
+			}
 		}
 	}
 
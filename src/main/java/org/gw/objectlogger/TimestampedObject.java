@@ -3,37 +3,75 @@
  */
 package org.gw.objectlogger;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
 import java.util.Date;
 
 /**
  * An Object used by the {@link ObjectLogger} to log {@link Object}s with a
- * timestamp.
+ * timestamp. The timestamp is kept as milliseconds since the epoch so that
+ * logging does not allocate a {@link Date}.
  * 
  * @author gman
  * @since 1.0
  * @version 1.0
  * 
  */
+@JsonPropertyOrder({ "logTime", "obj" })
 public class TimestampedObject<T> {
 
-	private Date logTime;
+	/**
+	 * The log time in milliseconds since the epoch.
+	 */
+	private long logTime;
 	private T obj;
 
 	public TimestampedObject() {
 	}
 	public TimestampedObject(T obj) {
-		this.logTime = new Date();
+		this(System.currentTimeMillis(), obj);
+	}
+	public TimestampedObject(long logTime, T obj) {
+		this.logTime = logTime;
 		this.obj = obj;
 	}
 	public TimestampedObject(Date logTime, T obj) {
+		this(logTime.getTime(), obj);
+	}
+
+	/**
+	 * @return the log time in milliseconds since the epoch. Serialised as
+	 *         <code>logTime</code>.
+	 */
+	@JsonProperty("logTime")
+	public long getLogTimeMillis() {
+		return logTime;
+	}
+
+	/**
+	 * @param logTime
+	 *            the log time in milliseconds since the epoch.
+	 */
+	@JsonProperty("logTime")
+	public void setLogTimeMillis(long logTime) {
 		this.logTime = logTime;
-		this.obj = obj;
 	}
+
+	/**
+	 * @return a new {@link Date} for the log time. Use
+	 *         {@link #getLogTimeMillis()} where allocating a {@link Date}
+	 *         matters.
+	 */
+	@JsonIgnore
 	public Date getLogTime() {
-		return logTime;
+		return new Date(logTime);
 	}
+
+	@JsonIgnore
 	public void setLogTime(Date logTime) {
-		this.logTime = logTime;
+		this.logTime = logTime.getTime();
 	}
 	public T getObj() {
 		return obj;
@@ -49,7 +87,7 @@ public class TimestampedObject<T> {
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
 		builder.append("TimestampedObject [logTime=");
-		builder.append(logTime);
+		builder.append(new Date(logTime));
 		builder.append(", obj=");
 		builder.append(obj);
 		builder.append("]");
@@ -0,0 +1,350 @@
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link TimestampedObjectJsonSerialiser} which writes through a
+ * {@link FileChannel}. It keeps the position of the closing bracket in
+ * memory, so it never stats or seeks the file. Each batch is gathered into a
+ * reusable direct {@link ByteBuffer}, closing bracket included, and written
+ * with one positional write, overwriting the previous closing bracket. A
+ * batch larger than the buffer is written in more than one write, each
+ * ending with a closing bracket after a whole object. The file is the same
+ * JSON array, with the same {@link TimeIndex}, as written by
+ * {@link TimestampedObjectJsonSerialiser}, so it is read the same way.
+ * <p>
+ * Opening a file which already holds a JSON array carries on appending to
+ * it, after the last object written whole.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class TimestampedObjectJsonChannelSerialiser extends
+		TimestampedObjectJsonSerialiser {
+
+	private static final byte[] separatorData = new byte[] { ',', '\n' };
+	private static final byte[] openData = new byte[] { '[', '\n' };
+	private static final byte[] closeData = new byte[] { '\n', ']', '\n' };
+
+	/**
+	 * The default size of the write buffer
+	 */
+	private static final int defaultBufferSize = 64 * 1024;
+
+	private final ByteBuffer buffer;
+
+	private FileChannel channel;
+
+	/**
+	 * The index of the open file.
+	 */
+	private TimeIndex index;
+
+	/**
+	 * The position of the closing bracket, where the next object is written.
+	 */
+	private long endPosition;
+
+	/**
+	 * True until the first object is written to the file.
+	 */
+	private boolean empty;
+
+	/**
+	 * The position the buffer is written at.
+	 */
+	private long position;
+
+	/**
+	 * True until the first object of the file is put in the buffer.
+	 */
+	private boolean first;
+
+	/**
+	 * The number of bytes written since the file was opened.
+	 */
+	private long bytesWritten;
+
+	public TimestampedObjectJsonChannelSerialiser() {
+		this(defaultBufferSize);
+	}
+
+	/**
+	 * @param bufferSize
+	 *            The size of the write buffer. Larger batches are written in
+	 *            more than one write.
+	 */
+	public TimestampedObjectJsonChannelSerialiser(int bufferSize) {
+		if (bufferSize < closeData.length) {
+			throw new IllegalArgumentException("bufferSize is too small");
+		}
+		buffer = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * Opens the file. An empty file is started with an empty JSON array. A
+	 * file which already holds a JSON array is appended to, cut back to the
+	 * last object written whole if it was not closed, see
+	 * {@link TimestampedObjectJsonSerialiser#recover(FileChannel, File)}.
+	 * 
+	 * @throws IOException
+	 *             if the file does not start with an opening bracket.
+	 */
+	@Override
+	public void open(File file) throws IOException {
+		FileUtils.touch(file);
+		FileChannel opened = new RandomAccessFile(file, "rw").getChannel();
+		TimeIndex openedIndex = new TimeIndex(file);
+		try {
+			if (opened.size() == 0) {
+				buffer.clear();
+				buffer.put(openData).put(closeData).flip();
+				bytesWritten = writeFully(opened, 0);
+				endPosition = openData.length;
+			} else {
+				endPosition = recover(opened, file);
+				bytesWritten = 0;
+			}
+			empty = endPosition <= openData.length;
+			openedIndex.open(endPosition);
+		} catch (IOException e) {
+			opened.close();
+			throw e;
+		}
+		channel = opened;
+		index = openedIndex;
+	}
+
+	@Override
+	public void write(TimestampedObject<?> object)
+			throws SerialisationException, IOException {
+		if (object == null) {
+			return;
+		}
+		writeEncoded(Collections.<TimestampedObject<?>> singletonList(object),
+				Collections.singletonList(getEncoder().encode(object)));
+	}
+
+	@Override
+	public void write(List<TimestampedObject<?>> batch)
+			throws SerialisationException, IOException {
+		checkOpen();
+		if (batch == null || batch.isEmpty()) {
+			return;
+		}
+		TimestampedObjectJsonCodec codec = getCodec();
+		begin();
+		boolean written = false;
+		try {
+			for (TimestampedObject<?> object : batch) {
+				if (object != null) {
+					// Copied from the codec's buffer straight into ours
+					ByteArrayBuffer encoded = codec.encodeToBuffer(object);
+					put(encoded.array(), encoded.size(),
+							object.getLogTimeMillis());
+				}
+			}
+			finish();
+			written = true;
+		} finally {
+			if (!written) {
+				index.reset(endPosition);
+			}
+		}
+	}
+
+	/**
+	 * Writes the encoded json objects and the closing bracket with one
+	 * positional write, unless they do not fit in the buffer.
+	 */
+	@Override
+	public void writeEncoded(List<TimestampedObject<?>> batch,
+			List<byte[]> encoded) throws IOException {
+		checkOpen();
+		if (encoded == null || encoded.isEmpty()) {
+			return;
+		}
+		begin();
+		boolean written = false;
+		try {
+			for (int i = 0; i < encoded.size(); i++) {
+				byte[] data = encoded.get(i);
+				if (data != null) {
+					put(data, data.length, batch.get(i).getLogTimeMillis());
+				}
+			}
+			finish();
+			written = true;
+		} finally {
+			if (!written) {
+				index.reset(endPosition);
+			}
+		}
+	}
+
+	/**
+	 * Starts putting a batch in the buffer, to be written over the closing
+	 * bracket.
+	 */
+	private void begin() {
+		buffer.clear();
+		position = endPosition;
+		first = empty;
+	}
+
+	/**
+	 * Puts the separator, unless it is the first object, and the object in
+	 * the buffer. If they do not fit along with a closing bracket, the
+	 * objects already in the buffer are written out first, closed by a
+	 * bracket, so the file is a JSON array of whole objects after every
+	 * write. Only an object larger than the buffer is written in pieces.
+	 * The end of the object is added to the {@link TimeIndex}.
+	 */
+	private void put(byte[] data, int length, long logTime)
+			throws IOException {
+		if (length == 0) {
+			return;
+		}
+		int separatorLength = first ? 0 : separatorData.length;
+		if (separatorLength + length + closeData.length > buffer.remaining()
+				&& buffer.position() > 0) {
+			flush();
+		}
+		if (!first) {
+			put(separatorData, 0, separatorData.length);
+		}
+		first = false;
+		put(data, 0, length);
+		index.add(logTime, position + buffer.position());
+	}
+
+	/**
+	 * Puts the data in the buffer, writing the buffer out whenever it is
+	 * full.
+	 */
+	private void put(byte[] data, int offset, int length) throws IOException {
+		while (length > buffer.remaining()) {
+			int chunk = buffer.remaining();
+			buffer.put(data, offset, chunk);
+			offset += chunk;
+			length -= chunk;
+			buffer.flip();
+			position += write();
+			buffer.clear();
+		}
+		buffer.put(data, offset, length);
+	}
+
+	/**
+	 * Writes the whole objects in the buffer out followed by a closing
+	 * bracket, which the rest of the batch is written over.
+	 */
+	private void flush() throws IOException {
+		if (buffer.remaining() < closeData.length) {
+			// Only after an object larger than the buffer
+			buffer.flip();
+			position += write();
+			buffer.clear();
+			return;
+		}
+		long end = position + buffer.position();
+		buffer.put(closeData).flip();
+		write();
+		buffer.clear();
+		position = end;
+		written(end);
+	}
+
+	/**
+	 * Puts the closing bracket and writes the buffer out.
+	 */
+	private void finish() throws IOException {
+		put(closeData, 0, closeData.length);
+		long end = position + buffer.position() - closeData.length;
+		buffer.flip();
+		write();
+		written(end);
+	}
+
+	/**
+	 * Moves on to the closing bracket written at the end of the objects,
+	 * once they are written, and writes the {@link TimeIndex} entries ended.
+	 */
+	private void written(long end) {
+		endPosition = end;
+		empty = first;
+		index.flush();
+	}
+
+	/**
+	 * Writes what is left in the buffer at the position, counting the bytes
+	 * written.
+	 * 
+	 * @return the number of bytes written.
+	 */
+	private int write() throws IOException {
+		int written = writeFully(channel, position);
+		bytesWritten += written;
+		return written;
+	}
+
+	/**
+	 * Writes what is left in the buffer at the given position.
+	 * 
+	 * @return the number of bytes written.
+	 */
+	private int writeFully(FileChannel fileChannel, long position)
+			throws IOException {
+		int written = 0;
+		while (buffer.hasRemaining()) {
+			written += fileChannel.write(buffer, position + written);
+		}
+		return written;
+	}
+
+	private void checkOpen() {
+		if (channel == null) {
+			throw new IllegalStateException("Please call open(File) first");
+		}
+	}
+
+	@Override
+	public void sync() throws IOException {
+		checkOpen();
+		channel.force(false);
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			try {
+				channel.close();
+			} finally {
+				channel = null;
+				index.close();
+				index = null;
+			}
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return channel != null && channel.isOpen();
+	}
+
+}
@@ -0,0 +1,234 @@
+package org.gw.objectlogger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads and writes {@link TimestampedObject}s as json for the json
+ * serialisers. Given an {@link ObjectMapper} with another
+ * {@link com.fasterxml.jackson.core.JsonFactory}, such as Smile, it reads and
+ * writes that format instead.
+ * <p>
+ * The typed {@link ObjectWriter}s and {@link ObjectReader}s are resolved once
+ * per {@link Class} and reused, and objects are written by a
+ * {@link JsonGenerator} straight into a buffer kept per thread, so encoding
+ * an object allocates nothing more than Jackson itself needs.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class TimestampedObjectJsonCodec {
+
+	/**
+	 * The initial size of the per thread buffer
+	 */
+	private static final int initialBufferSize = 512;
+
+	/**
+	 * A buffer grown beyond this by a large object is dropped after use
+	 * rather than kept by the thread.
+	 */
+	private static final int maxRetainedBufferSize = 1024 * 1024;
+
+	private final ObjectMapper mapper;
+
+	private final TypeFactory typeFactory;
+
+	private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+	private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+	private final ConcurrentMap<Class<?>, ObjectReader> valueReaders = new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+	private final ConcurrentMap<Class<?>, ObjectReader> listReaders = new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+	private final ThreadLocal<ByteArrayBuffer> buffers = new ThreadLocal<ByteArrayBuffer>() {
+		@Override
+		protected ByteArrayBuffer initialValue() {
+			return new ByteArrayBuffer(initialBufferSize);
+		}
+	};
+
+	public TimestampedObjectJsonCodec() {
+		this(new ObjectMapper());
+	}
+
+	public TimestampedObjectJsonCodec(ObjectMapper mapper) {
+		this.mapper = mapper;
+		this.typeFactory = mapper.getTypeFactory();
+	}
+
+	/**
+	 * Writes the object into this thread's buffer. The buffer is reused by
+	 * the next call on the same thread, so its content must be used or copied
+	 * before then.
+	 *
+	 * @return this thread's buffer holding the json object.
+	 */
+	public ByteArrayBuffer encodeToBuffer(TimestampedObject<?> object)
+			throws SerialisationException {
+		ByteArrayBuffer buffer = buffers.get();
+		if (buffer.capacity() > maxRetainedBufferSize) {
+			buffer = new ByteArrayBuffer(initialBufferSize);
+			buffers.set(buffer);
+		}
+		buffer.reset();
+		encode(object, buffer);
+		return buffer;
+	}
+
+	/**
+	 * Writes the object to the given {@link OutputStream}, which is not
+	 * closed.
+	 */
+	public void encode(TimestampedObject<?> object, OutputStream out)
+			throws SerialisationException {
+		try {
+			JsonGenerator generator = mapper.getFactory().createGenerator(out);
+			try {
+				writerFor(object.getClass()).writeValue(generator, object);
+			} finally {
+				generator.close();
+			}
+		} catch (Exception e) {
+			throw new SerialisationException("Could not serialise to json.", e);
+		}
+	}
+
+	/**
+	 * @return the json object as a new array of bytes.
+	 */
+	public byte[] encode(TimestampedObject<?> object)
+			throws SerialisationException {
+		return encodeToBuffer(object).toByteArray();
+	}
+
+	private ObjectWriter writerFor(Class<?> type) {
+		ObjectWriter writer = writers.get(type);
+		if (writer == null) {
+			writer = mapper.writerWithType(type);
+			ObjectWriter existing = writers.putIfAbsent(type, writer);
+			if (existing != null) {
+				writer = existing;
+			}
+		}
+		return writer;
+	}
+
+	/**
+	 * @return the {@link ObjectReader} of a single json
+	 *         {@link TimestampedObject} of the given type.
+	 */
+	public ObjectReader readerFor(Class<?> type) {
+		ObjectReader reader = readers.get(type);
+		if (reader == null) {
+			reader = mapper.reader(typeFactory.constructParametricType(
+					TimestampedObject.class, type));
+			ObjectReader existing = readers.putIfAbsent(type, reader);
+			if (existing != null) {
+				reader = existing;
+			}
+		}
+		return reader;
+	}
+
+	/**
+	 * @return the {@link ObjectReader} of the json Object of a
+	 *         {@link TimestampedObject}, for a {@link RecordFilter}.
+	 */
+	public ObjectReader valueReaderFor(Class<?> type) {
+		ObjectReader reader = valueReaders.get(type);
+		if (reader == null) {
+			reader = mapper.reader(type);
+			ObjectReader existing = valueReaders.putIfAbsent(type, reader);
+			if (existing != null) {
+				reader = existing;
+			}
+		}
+		return reader;
+	}
+
+	/**
+	 * Reads a single json {@link TimestampedObject} if the filter keeps it.
+	 * If the filter tests any fields the record is tested on its tokens
+	 * first, so a record it does not keep is never deserialised. If it reads
+	 * only some fields, the Object is built from those fields alone.
+	 *
+	 * @return the object, or null if it is not kept.
+	 */
+	public <T> TimestampedObject<T> decode(Class<T> type, byte[] data,
+			int offset, int length, RecordFilter filter) throws IOException {
+		if (filter.getFields() != null) {
+			JsonParser parser = mapper.getFactory().createParser(data, offset,
+					length);
+			try {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					throw new JsonParseException("Expected a json object",
+							parser.getCurrentLocation());
+				}
+				return filter.read(parser, valueReaderFor(type));
+			} finally {
+				parser.close();
+			}
+		}
+		if (filter.hasPredicates()) {
+			JsonParser parser = mapper.getFactory().createParser(data, offset,
+					length);
+			try {
+				parser.nextToken();
+				if (!filter.accept(parser)) {
+					return null;
+				}
+			} finally {
+				parser.close();
+			}
+		}
+		TimestampedObject<T> object = readerFor(type).readValue(data, offset,
+				length);
+		return filter.accept(object.getLogTimeMillis()) ? object : null;
+	}
+
+	/**
+	 * Creates a {@link JsonParser} over the given {@link InputStream}, to read
+	 * the values in it one at a time.
+	 */
+	public JsonParser createParser(InputStream in) throws IOException {
+		return mapper.getFactory().createParser(in);
+	}
+
+	/**
+	 * @return the {@link ObjectReader} of a json array of
+	 *         {@link TimestampedObject}s of the given type.
+	 */
+	public ObjectReader listReaderFor(Class<?> type) {
+		ObjectReader reader = listReaders.get(type);
+		if (reader == null) {
+			reader = mapper.reader(typeFactory.constructCollectionType(
+					List.class, typeFactory.constructParametricType(
+							TimestampedObject.class, type)));
+			ObjectReader existing = listReaders.putIfAbsent(type, reader);
+			if (existing != null) {
+				reader = existing;
+			}
+		}
+		return reader;
+	}
+
+}
@@ -1,43 +1,79 @@
 package org.gw.objectlogger;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * An {@link ITimestampedObjectSerialiser} which uses
  * <code>com.fasterxml.jackson.databind.ObjectMapper</code> to serialis the
  * {@link TimestampedObject} to a json string.
+ * <p>
+ * A file can be read an object at a time by an
+ * {@link ITimestampedObjectCursor}, which parses the json array
+ * incrementally rather than building a list of the whole file. A large file
+ * is split for parallel reads at the ",\n" written between objects. With a
+ * {@link RecordFilter} the log time of each object is read first, and an
+ * object which is not kept is skipped over without being deserialised.
+ * <p>
+ * A {@link TimeIndex} of the objects is kept beside each file. Each entry
+ * runs from the end of an object to the end of a later one, so it starts
+ * with the ",\n" before its first object, which is dropped when the part is
+ * read as a json array.
  *
  * @param <T> The underlying {@link TimestampedObject} type.
  * @author Gman
  */
 public class TimestampedObjectJsonSerialiser
         implements
-        ITimestampedObjectSerialiser {
+        ISyncableSerialiser, IEncodingSerialiser, ISplittableSerialiser,
+        IFilteringSerialiser, ITimeIndexedSerialiser {
 
     private static Logger logger = LoggerFactory
             .getLogger(TimestampedObjectJsonSerialiser.class);
 
     /**
-     * The {@link TypeFactory} to use when reading the Json objects.
+     * The {@link TimestampedObjectJsonCodec} to use when reading/writing Json
+     * objects.
      */
-    private TypeFactory typeFactory = TypeFactory.defaultInstance();
+    private final TimestampedObjectJsonCodec codec = new TimestampedObjectJsonCodec();
+
+    private RandomAccessFile raf;
 
     /**
-     * The {@link ObjectMapper} to use when reading/writing Json objects.
+     * The index of the open file.
      */
-    private ObjectMapper mapper = new ObjectMapper();
+    private TimeIndex index;
 
-    private RandomAccessFile raf;
+    /**
+     * The position the next object is written at.
+     */
+    private long position;
+
+    /**
+     * The number of bytes written since the file was opened.
+     */
+    private long bytesWritten;
 
     private static final byte openBracket = '[';
     private static final byte closeBracket = ']';
@@ -57,23 +93,22 @@ public class TimestampedObjectJsonSerialiser
 //    private static final int lengthAtStart = 4;
 
     /**
-     * Serialises the given Object to an array of bytes.
+     * Encodes the {@link TimestampedObject}s with the thread safe
+     * {@link TimestampedObjectJsonCodec}.
      */
-    private byte[] serialise(Object object) throws SerialisationException {
-
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            mapper.writeValue(out, object);
-        } catch (Exception e) {
-            throw new SerialisationException("Could not serialise to json.", e);
+    private final ITimestampedObjectEncoder encoder = new ITimestampedObjectEncoder() {
+        @Override
+        public byte[] encode(TimestampedObject<?> object) throws SerialisationException {
+            return codec.encode(object);
         }
-        byte[] bytes = out.toByteArray();
-        try {
-            out.close();
-        } catch (IOException e) {
-            // Dont care.
-        }
-        return bytes;
+    };
+
+    /**
+     * @return the {@link TimestampedObjectJsonCodec} used to read and write
+     *         the json objects.
+     */
+    protected TimestampedObjectJsonCodec getCodec() {
+        return codec;
     }
 
     /**
@@ -82,18 +117,17 @@ public class TimestampedObjectJsonSerialiser
      */
     @SuppressWarnings("unchecked")
     private <T> List<TimestampedObject<T>> deserialise(Class<T> type, File file)
-            throws DeserialisationException {
+            throws IOException, DeserialisationException {
 
+        InputStream input = SegmentCompressor.openInputStream(file);
         try {
-
-            List<TimestampedObject<T>> result = (List<TimestampedObject<T>>) mapper
-                    .readValue(file, typeFactory.constructCollectionType(
-                            List.class, typeFactory.constructParametricType(
-                                    TimestampedObject.class, type)));
-            return result;
+            return (List<TimestampedObject<T>>) codec.listReaderFor(type)
+                    .readValue(input);
         } catch (Exception e) {
             throw new DeserialisationException(
                     "Could not deserialise to json.", e);
+        } finally {
+            input.close();
         }
 
     }
@@ -108,13 +142,18 @@ public class TimestampedObjectJsonSerialiser
             throws SerialisationException, IOException {
 
         // Set the offset at which to write the data
-        setOffset();
-
-        // Write the object
-        doWrite(object);
+        long start = setOffset();
+        boolean written = false;
+        try {
+            // Write the object
+            doWrite(object);
 
-        // Write the closing bracket
-        writeClosing();
+            // Write the closing bracket
+            writeClosing();
+            written = true;
+        } finally {
+            indexWritten(written, start);
+        }
     }
 
     private void doWrite(TimestampedObject<?> object)
@@ -129,30 +168,63 @@ public class TimestampedObjectJsonSerialiser
             return;
         }
 
-        byte[] data = serialise(object);
-        if (data != null && data.length > 0) {
+        // Written straight from the codec's buffer, without copying it
+        ByteArrayBuffer buffer = codec.encodeToBuffer(object);
+        writeData(buffer.array(), buffer.size(), object);
+    }
+
+    private void writeData(byte[] data, TimestampedObject<?> object)
+            throws IOException {
+        if (data != null) {
+            writeData(data, data.length, object);
+        }
+    }
+
+    private void writeData(byte[] data, int length, TimestampedObject<?> object)
+            throws IOException {
+        if (length > 0) {
             // If the size is greater than the initial file size
             if (raf.length() > openData.length + closeData.length) {
                 // Next write the separator data (",\n")
                 raf.write(separatorData);
+                bytesWritten += separatorData.length;
+                position += separatorData.length;
             }
             // First write the json object
-            raf.write(data);
+            raf.write(data, 0, length);
+            bytesWritten += length;
+            position += length;
+            index.add(object.getLogTimeMillis(), position);
         }
     }
 
     private void writeClosing() throws IOException {
 //        raf.seek(raf.length() - separatorData.length);
         raf.write(closeData);
+        bytesWritten += closeData.length;
     }
 
     /**
      * @return the offset at which to write the next object.
      * @throws java.io.IOException
      */
-    private void setOffset() throws IOException {
+    private long setOffset() throws IOException {
         long offset = raf.length() - closeData.length;
         raf.seek(offset);
+        position = offset;
+        return offset;
+    }
+
+    /**
+     * Writes the {@link TimeIndex} entries of a write once its closing
+     * bracket is written, or drops them if it failed part way.
+     */
+    private void indexWritten(boolean written, long start) {
+        if (written) {
+            index.flush();
+        } else {
+            index.reset(start);
+        }
     }
 
     /**
@@ -172,13 +244,51 @@ public class TimestampedObjectJsonSerialiser
             return;
         }
 
-        setOffset();
+        long start = setOffset();
+        boolean written = false;
+        try {
+            for (TimestampedObject<?> object : batch) {
+                doWrite(object);
+            }
 
-        for (TimestampedObject<?> object : batch) {
-            doWrite(object);
+            writeClosing();
+            written = true;
+        } finally {
+            indexWritten(written, start);
         }
+    }
 
-        writeClosing();
+    /**
+     * Writes the given json objects encoded by {@link #getEncoder()} to the
+     * {@link java.io.RandomAccessFile}.
+     */
+    @Override
+    public void writeEncoded(List<TimestampedObject<?>> batch,
+            List<byte[]> encoded) throws IOException {
+        if (raf == null) {
+            throw new IllegalStateException("Please call open(File) first");
+        }
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+
+        long start = setOffset();
+        boolean written = false;
+        try {
+            for (int i = 0; i < encoded.size(); i++) {
+                writeData(encoded.get(i), batch.get(i));
+            }
+
+            writeClosing();
+            written = true;
+        } finally {
+            indexWritten(written, start);
+        }
+    }
+
+    @Override
+    public ITimestampedObjectEncoder getEncoder() {
+        return encoder;
     }
 
     /**
@@ -187,7 +297,7 @@ public class TimestampedObjectJsonSerialiser
      */
     @Override
     public <T> TimestampedObjectSet<T> readAll(File file, Class<T> type)
-            throws DeserialisationException {
+            throws IOException, DeserialisationException {
         List<TimestampedObject<T>> result = deserialise(type, file);
         TimestampedObjectSet<T> set = new TimestampedObjectSet<T>();
         if (result != null) {
@@ -198,25 +308,296 @@ public class TimestampedObjectJsonSerialiser
         return set;
     }
 
+    @Override
+    public <T> ITimestampedObjectCursor<T> openCursor(File file, Class<T> type)
+            throws IOException {
+        return openCursor(file, type, (RecordFilter) null);
+    }
+
+    /**
+     * Reads only the parts of the file its {@link TimeIndex} says may be in
+     * the range of the filter.
+     */
+    @Override
+    public <T> ITimestampedObjectCursor<T> openCursor(File file,
+            Class<T> type, RecordFilter filter) throws IOException {
+        if (filter != null) {
+            return openCursor(file, type, filter.getFrom(), filter.getTo(),
+                    filter);
+        }
+        InputStream input = SegmentCompressor.openInputStream(file);
+        try {
+            return newCursor(file, type, filter, input);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
     /**
-     * Assumes the file is empty, and writes '[\n\n]' char to the file. This is the
-     * opening bracket of a JSON array.
+     * Reads only the parts of the file its {@link TimeIndex} says may be in
+     * the range.
+     */
+    @Override
+    public <T> ITimestampedObjectCursor<T> openCursor(File file,
+            Class<T> type, long from, long to) throws IOException {
+        return openCursor(file, type, from, to, null);
+    }
+
+    private <T> ITimestampedObjectCursor<T> openCursor(final File file,
+            final Class<T> type, long from, long to, final RecordFilter filter)
+            throws IOException {
+        return new TimeRangeCursor<T>(file, from, to,
+                new TimeRangeCursor.IPartReader<T>() {
+                    @Override
+                    public ITimestampedObjectCursor<T> open(InputStream input,
+                            long length) throws IOException {
+                        return newCursor(file, type, filter, bracket(input));
+                    }
+                });
+    }
+
+    /**
+     * Puts a part of a file between brackets, as a json array. A part starts
+     * at an object, at the ",\n" before one or at the opening bracket of the
+     * file, which is dropped. Anything after the closing bracket of a part
+     * which runs to the end of the file is not read.
+     */
+    private static InputStream bracket(InputStream input) throws IOException {
+        PushbackInputStream part = new PushbackInputStream(input, 1);
+        int first = part.read();
+        if (first != -1 && first != openBracket && first != separator) {
+            part.unread(first);
+        }
+        return new SequenceInputStream(new SequenceInputStream(
+                new ByteArrayInputStream(new byte[]{openBracket}), part),
+                new ByteArrayInputStream(new byte[]{closeBracket}));
+    }
+
+    private <T> JsonArrayCursor<T> newCursor(File file, Class<T> type,
+            RecordFilter filter, InputStream input) throws IOException {
+        return new JsonArrayCursor<T>(file, codec.createParser(input),
+                codec.readerFor(type), filter,
+                filter == null ? null : codec.valueReaderFor(type));
+    }
+
+    /**
+     * Splits the objects between the brackets at the first ",\n" after every
+     * <code>chunkSize</code> bytes. An object is written on one line, so the
+     * separator is only ever between objects. A file which is not closed by a
+     * bracket, such as one being written over, is not split.
+     */
+    @Override
+    public List<long[]> split(File file, long start, long end, long chunkSize)
+            throws IOException {
+        if (!isBracketed(file, end)) {
+            return Collections.singletonList(new long[]{start, end});
+        }
+        long first = Math.max(start, openData.length);
+        long last = end - closeData.length;
+        if (first >= last) {
+            return Collections.emptyList();
+        }
+        return FileSplitter.atSeparator(file, first, last, chunkSize,
+                separatorData);
+    }
+
+    /**
+     * @return true if the file up to <code>end</code> is a json array
+     *         starting and ending with the brackets written by this
+     *         serialiser.
+     */
+    private boolean isBracketed(File file, long end) throws IOException {
+        if (end < openData.length + closeData.length) {
+            return false;
+        }
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            byte[] open = new byte[openData.length];
+            input.readFully(open);
+            byte[] close = new byte[closeData.length];
+            input.seek(end - closeData.length);
+            input.readFully(close);
+            return Arrays.equals(open, openData)
+                    && Arrays.equals(close, closeData);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Reads a part from {@link #split(File, long, long, long)} or the
+     * {@link TimeIndex} as a json array by putting it between brackets.
+     */
+    @Override
+    public <T> ITimestampedObjectCursor<T> openPartCursor(File file,
+            Class<T> type, long start, long end) throws IOException {
+        return openPartCursor(file, type, start, end, null);
+    }
+
+    @Override
+    public <T> ITimestampedObjectCursor<T> openPartCursor(File file,
+            Class<T> type, long start, long end, RecordFilter filter)
+            throws IOException {
+        return newCursor(file, type, filter,
+                bracket(FileSplitter.openPart(file, start, end)));
+    }
+
+    /**
+     * Returns the position of the closing bracket, which the next write is
+     * written over, starting with the ",\n" before its first object.
+     */
+    @Override
+    public long getAppendOffset(long length) {
+        if (length < openData.length + closeData.length) {
+            return 0;
+        }
+        return length - closeData.length;
+    }
+
+    /**
+     * Writes '[\n\n]' to an empty file, an empty JSON array. A file which
+     * already holds a JSON array, such as one closed and opened again, is
+     * appended to, see {@link #recover(FileChannel, File)}. The file is not
+     * opened for synchronous writes, see {@link #sync()}.
+     *
+     * @throws IOException
+     *             if the file does not hold a JSON array.
      */
     @Override
     public void open(File file) throws IOException {
         FileUtils.touch(file);
-        raf = new RandomAccessFile(file, "rwd");
-        raf.write(openData);
-        raf.write(closeData);
+        RandomAccessFile opened = new RandomAccessFile(file, "rw");
+        TimeIndex openedIndex = new TimeIndex(file);
+        try {
+            if (opened.length() == 0) {
+                opened.write(openData);
+                opened.write(closeData);
+                bytesWritten = openData.length + closeData.length;
+                openedIndex.open(openData.length);
+            } else {
+                openedIndex.open(recover(opened.getChannel(), file));
+                bytesWritten = 0;
+            }
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        raf = opened;
+        index = openedIndex;
+    }
+
+    /**
+     * Finds where the next object is written in a file which already holds
+     * a JSON array: its closing bracket. A file which was not closed by a
+     * bracket, such as by a crash during a write, is cut back to the end of
+     * the last object written whole, at its ",\n" or the new line starting
+     * the closing bracket, and the closing bracket is written there. An
+     * object is written on one line, so a new line is only ever after a
+     * whole object.
+     *
+     * @return the position of the closing bracket.
+     * @throws IOException
+     *             if the file does not start with an opening bracket.
+     */
+    static long recover(FileChannel channel, File file) throws IOException {
+        long size = channel.size();
+        if (size < openData.length
+                || !Arrays.equals(read(channel, 0, openData.length), openData)) {
+            throw new IOException("Cannot append to " + file.getAbsolutePath()
+                    + " as it does not start with a JSON array opening bracket.");
+        }
+        if (size >= openData.length + closeData.length
+                && Arrays.equals(read(channel, size - closeData.length,
+                        closeData.length), closeData)) {
+            return size - closeData.length;
+        }
+        long lastNewLine = lastNewLine(channel, size);
+        long end;
+        if (lastNewLine < openData.length) {
+            end = openData.length;
+        } else {
+            byte before = read(channel, lastNewLine - 1, 1)[0];
+            if (before == separator) {
+                end = lastNewLine - 1;
+            } else if (before == closeBracket) {
+                end = lastNewLine - 2;
+            } else {
+                end = lastNewLine;
+            }
+        }
+        logger.warn("Cutting " + file.getAbsolutePath() + " back from " + size
+                + " to " + end + " bytes as it was not closed.");
+        channel.truncate(end);
+        ByteBuffer close = ByteBuffer.wrap(closeData);
+        while (close.hasRemaining()) {
+            channel.write(close, end + close.position());
+        }
+        return end;
+    }
+
+    /**
+     * @return the position of the last new line, at least the one of the
+     *         opening bracket.
+     */
+    private static long lastNewLine(FileChannel channel, long size)
+            throws IOException {
+        long position = size;
+        while (position > openData.length) {
+            int length = (int) Math.min(8192, position - openData.length);
+            position -= length;
+            byte[] data = read(channel, position, length);
+            for (int i = length - 1; i >= 0; i--) {
+                if (data[i] == newLine) {
+                    return position + i;
+                }
+            }
+        }
+        return openData.length - 1;
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(length);
+        while (data.hasRemaining()) {
+            if (channel.read(data, position + data.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return data.array();
     }
 
     /**
-     * Closes the file by replacing the last ',' with a ']', therefore closing
-     * the JSON array of objects.
+     * Forces the content of the file to the device, like opening it with
+     * "rwd" but once per call rather than once per write.
+     */
+    @Override
+    public void sync() throws IOException {
+        if (raf == null) {
+            throw new IllegalStateException("Please call open(File) first");
+        }
+        raf.getChannel().force(false);
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Closes the file, which always ends with the closing bracket of the
+     * JSON array, and its {@link TimeIndex}.
      */
     @Override
     public void close() throws IOException {
-        raf.close();
+        try {
+            raf.close();
+        } finally {
+            if (index != null) {
+                index.close();
+                index = null;
+            }
+        }
     }
 
     /**
@@ -232,4 +613,123 @@ public class TimestampedObjectJsonSerialiser
         return raf != null && raf.getChannel().isOpen();
     }
 
+    /**
+     * Reads the json array of a file one object at a time with a
+     * {@link JsonParser}. The objects before anything which cannot be parsed,
+     * such as a write in progress, are read. With a {@link RecordFilter} the
+     * objects it does not keep are skipped.
+     */
+    private static class JsonArrayCursor<T> implements
+            ITimestampedObjectCursor<T> {
+
+        private final File file;
+        private final ObjectReader reader;
+        private final RecordFilter filter;
+        private final ObjectReader valueReader;
+        private JsonParser parser;
+        private boolean started;
+        private TimestampedObject<T> next;
+
+        /**
+         * @param filter
+         *            The {@link RecordFilter} to keep the objects of, or null
+         *            to keep them all
+         * @param valueReader
+         *            The {@link ObjectReader} of the Object of each
+         *            {@link TimestampedObject}, for the filter
+         */
+        JsonArrayCursor(File file, JsonParser parser, ObjectReader reader,
+                RecordFilter filter, ObjectReader valueReader) {
+            this.file = file;
+            this.parser = parser;
+            this.reader = reader;
+            this.filter = filter;
+            this.valueReader = valueReader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && parser != null) {
+                next = readNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public TimestampedObject<T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TimestampedObject<T> result = next;
+            next = null;
+            return result;
+        }
+
+        /**
+         * @return the next object kept, or null at the end of the array.
+         */
+        private TimestampedObject<T> readNext() {
+            try {
+                if (!started) {
+                    started = true;
+                    JsonToken token = parser.nextToken();
+                    if (token == null) {
+                        // An empty file
+                        close();
+                        return null;
+                    }
+                    if (token != JsonToken.START_ARRAY) {
+                        throw new JsonParseException("Expected a json array",
+                                parser.getCurrentLocation());
+                    }
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    if (filter == null) {
+                        return reader.readValue(parser);
+                    }
+                    TimestampedObject<T> object = filter.read(parser,
+                            valueReader);
+                    if (object != null) {
+                        return object;
+                    }
+                }
+                close();
+                return null;
+            } catch (JsonProcessingException e) {
+                logger.warn("Stopping at json which could not be read in "
+                        + file.getAbsolutePath() + ": " + e.getMessage());
+                closeQuietly();
+                return null;
+            } catch (IOException e) {
+                closeQuietly();
+                throw new IllegalStateException("Could not read "
+                        + file.getAbsolutePath(), e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } finally {
+                    parser = null;
+                }
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                close();
+            } catch (IOException e) {
+                logger.warn("Could not close " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,445 @@
+package org.gw.objectlogger;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An {@link ITimestampedObjectSerialiser} which writes JSON Lines: one json
+ * {@link TimestampedObject} per line. Objects are only ever appended, so a
+ * file can be tailed while it is written, and a process dying mid-write
+ * leaves every complete line readable.
+ * <p>
+ * Files are read a line at a time by an {@link ITimestampedObjectCursor}, so
+ * reading needs memory for one object rather than the whole file. A line
+ * which cannot be parsed, such as a truncated last line, is skipped. Opening
+ * a file whose last line is truncated starts a new line, so the objects
+ * written next are not joined to it.
+ * <p>
+ * A {@link TimeIndex} of the line offsets is kept beside each file, so a
+ * range of log times is read by seeking to the lines which may hold it. A
+ * large file is split for parallel reads at new lines. A {@link RecordFilter}
+ * tests each line on its tokens before the object is built.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class TimestampedObjectNdjsonSerialiser implements ISyncableSerialiser,
+		IEncodingSerialiser, ITimeIndexedSerialiser, ISplittableSerialiser,
+		IFilteringSerialiser {
+
+	private static Logger logger = LoggerFactory
+			.getLogger(TimestampedObjectNdjsonSerialiser.class);
+
+	private static final byte newLine = '\n';
+
+	private static final String extension = "ndjson";
+
+	/**
+	 * The {@link TimestampedObjectJsonCodec} to use when reading/writing Json
+	 * objects.
+	 */
+	private final TimestampedObjectJsonCodec codec = new TimestampedObjectJsonCodec();
+
+	/**
+	 * Encodes a {@link TimestampedObject} as a json object without the new
+	 * line.
+	 */
+	private final ITimestampedObjectEncoder encoder = new ITimestampedObjectEncoder() {
+		@Override
+		public byte[] encode(TimestampedObject<?> object)
+				throws SerialisationException {
+			return codec.encode(object);
+		}
+	};
+
+	private FileOutputStream fileOutput;
+
+	private BufferedOutputStream output;
+
+	/**
+	 * The index of the open file.
+	 */
+	private TimeIndex index;
+
+	/**
+	 * The length of the open file when it was opened.
+	 */
+	private long openedLength;
+
+	/**
+	 * The number of bytes written since the file was opened.
+	 */
+	private long bytesWritten;
+
+	@Override
+	public void write(TimestampedObject<?> object) throws IOException,
+			SerialisationException {
+		checkOpen();
+		if (object == null) {
+			return;
+		}
+		writeLine(codec.encodeToBuffer(object), object);
+		output.flush();
+		index.flush();
+	}
+
+	@Override
+	public void write(List<TimestampedObject<?>> batch) throws IOException,
+			SerialisationException {
+		checkOpen();
+		if (batch == null || batch.isEmpty()) {
+			return;
+		}
+		for (TimestampedObject<?> object : batch) {
+			if (object != null) {
+				writeLine(codec.encodeToBuffer(object), object);
+			}
+		}
+		output.flush();
+		index.flush();
+	}
+
+	@Override
+	public void writeEncoded(List<TimestampedObject<?>> batch,
+			List<byte[]> encoded) throws IOException {
+		checkOpen();
+		for (int i = 0; i < encoded.size(); i++) {
+			byte[] data = encoded.get(i);
+			writeLine(data, data.length, batch.get(i));
+		}
+		output.flush();
+		index.flush();
+	}
+
+	private void writeLine(ByteArrayBuffer buffer, TimestampedObject<?> object)
+			throws IOException {
+		writeLine(buffer.array(), buffer.size(), object);
+	}
+
+	private void writeLine(byte[] data, int length, TimestampedObject<?> object)
+			throws IOException {
+		output.write(data, 0, length);
+		output.write(newLine);
+		bytesWritten += length + 1;
+		index.add(object.getLogTimeMillis(), openedLength + bytesWritten);
+	}
+
+	private void checkOpen() {
+		if (output == null) {
+			throw new IllegalStateException("Please call open(File) first");
+		}
+	}
+
+	@Override
+	public ITimestampedObjectEncoder getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * Reads the whole file with an {@link ITimestampedObjectCursor}.
+	 */
+	@Override
+	public <T> TimestampedObjectSet<T> readAll(File file, Class<T> type)
+			throws IOException {
+		TimestampedObjectSet<T> set = new TimestampedObjectSet<T>();
+		ITimestampedObjectCursor<T> cursor = openCursor(file, type);
+		try {
+			while (cursor.hasNext()) {
+				set.add(cursor.next());
+			}
+		} finally {
+			cursor.close();
+		}
+		return set;
+	}
+
+	@Override
+	public <T> ITimestampedObjectCursor<T> openCursor(File file, Class<T> type)
+			throws IOException {
+		return new NdjsonCursor<T>(file, type, null,
+				SegmentCompressor.openInputStream(file));
+	}
+
+	/**
+	 * Reads only the lines its {@link TimeIndex} says may be in the range of
+	 * the filter.
+	 */
+	@Override
+	public <T> ITimestampedObjectCursor<T> openCursor(File file,
+			Class<T> type, RecordFilter filter) throws IOException {
+		return openCursor(file, type, filter.getFrom(), filter.getTo(), filter);
+	}
+
+	/**
+	 * Reads only the lines its {@link TimeIndex} says may be in the range.
+	 */
+	@Override
+	public <T> ITimestampedObjectCursor<T> openCursor(File file,
+			Class<T> type, long from, long to) throws IOException {
+		return openCursor(file, type, from, to, null);
+	}
+
+	private <T> ITimestampedObjectCursor<T> openCursor(final File file,
+			final Class<T> type, long from, long to, final RecordFilter filter)
+			throws IOException {
+		return new TimeRangeCursor<T>(file, from, to,
+				new TimeRangeCursor.IPartReader<T>() {
+					@Override
+					public ITimestampedObjectCursor<T> open(InputStream input,
+							long length) {
+						return new NdjsonCursor<T>(file, type, filter, input);
+					}
+				});
+	}
+
+	/**
+	 * Splits at the first new line after every <code>chunkSize</code> bytes.
+	 * A json object never holds a new line.
+	 */
+	@Override
+	public List<long[]> split(File file, long start, long end, long chunkSize)
+			throws IOException {
+		return FileSplitter.atSeparator(file, start, end, chunkSize,
+				new byte[] { newLine });
+	}
+
+	@Override
+	public <T> ITimestampedObjectCursor<T> openPartCursor(File file,
+			Class<T> type, long start, long end) throws IOException {
+		return openPartCursor(file, type, start, end, null);
+	}
+
+	@Override
+	public <T> ITimestampedObjectCursor<T> openPartCursor(File file,
+			Class<T> type, long start, long end, RecordFilter filter)
+			throws IOException {
+		return new NdjsonCursor<T>(file, type, filter, FileSplitter.openPart(
+				file, start, end));
+	}
+
+	/**
+	 * Lines are only appended, so returns the length.
+	 */
+	@Override
+	public long getAppendOffset(long length) {
+		return length;
+	}
+
+	/**
+	 * Opens the file for appending. If its last line is truncated a new line
+	 * is started.
+	 */
+	@Override
+	public void open(File file) throws IOException {
+		FileUtils.touch(file);
+		boolean truncated = endsWithPartialLine(file);
+		openedLength = file.length();
+		index = new TimeIndex(file);
+		index.open(openedLength);
+		fileOutput = new FileOutputStream(file, true);
+		output = new BufferedOutputStream(fileOutput);
+		bytesWritten = 0;
+		if (truncated) {
+			logger.warn("The last line of " + file.getAbsolutePath()
+					+ " is truncated and will be skipped when read.");
+			output.write(newLine);
+			output.flush();
+			bytesWritten++;
+		}
+	}
+
+	private boolean endsWithPartialLine(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = raf.length();
+			if (length == 0) {
+				return false;
+			}
+			raf.seek(length - 1);
+			return raf.read() != newLine;
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (output != null) {
+			try {
+				output.close();
+			} finally {
+				output = null;
+				fileOutput = null;
+				index.close();
+			}
+		}
+	}
+
+	@Override
+	public void sync() throws IOException {
+		checkOpen();
+		fileOutput.getChannel().force(false);
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * Returns the "ndjson" extension.
+	 */
+	@Override
+	public String getExtension() {
+		return extension;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return output != null;
+	}
+
+	/**
+	 * Reads a JSON Lines file a line at a time into a reused buffer. With a
+	 * {@link RecordFilter} the lines it does not keep are skipped.
+	 */
+	private class NdjsonCursor<T> implements ITimestampedObjectCursor<T> {
+
+		private final File file;
+		private final Class<T> type;
+		private final ObjectReader reader;
+		private final RecordFilter filter;
+		private InputStream input;
+		private byte[] line = new byte[256];
+		private TimestampedObject<T> next;
+
+		/**
+		 * @param filter
+		 *            The {@link RecordFilter} to keep the lines of, or null
+		 *            to keep them all
+		 */
+		NdjsonCursor(File file, Class<T> type, RecordFilter filter,
+				InputStream input) {
+			this.file = file;
+			this.type = type;
+			this.reader = codec.readerFor(type);
+			this.filter = filter;
+			this.input = new BufferedInputStream(input, 64 * 1024);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null && input != null) {
+				next = readNext();
+			}
+			return next != null;
+		}
+
+		@Override
+		public TimestampedObject<T> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			TimestampedObject<T> result = next;
+			next = null;
+			return result;
+		}
+
+		/**
+		 * @return the next object which could be read and is kept, or null
+		 *         at the end of the file.
+		 */
+		private TimestampedObject<T> readNext() {
+			try {
+				int length;
+				while ((length = readLine()) >= 0) {
+					if (length == 0) {
+						continue;
+					}
+					try {
+						if (filter == null) {
+							return reader.readValue(line, 0, length);
+						}
+						TimestampedObject<T> object = codec.decode(type, line,
+								0, length, filter);
+						if (object != null) {
+							return object;
+						}
+					} catch (IOException e) {
+						logger.warn("Skipping a line of "
+								+ file.getAbsolutePath()
+								+ " which could not be read: "
+								+ e.getMessage());
+					}
+				}
+				close();
+				return null;
+			} catch (IOException e) {
+				closeQuietly();
+				throw new IllegalStateException("Could not read "
+						+ file.getAbsolutePath(), e);
+			}
+		}
+
+		/**
+		 * Reads the next line into the buffer without the new line.
+		 * 
+		 * @return the length of the line, or -1 at the end of the file.
+		 */
+		private int readLine() throws IOException {
+			int length = 0;
+			int b;
+			while ((b = input.read()) != -1) {
+				if (b == newLine) {
+					return length;
+				}
+				if (length == line.length) {
+					line = Arrays.copyOf(line, line.length * 2);
+				}
+				line[length++] = (byte) b;
+			}
+			// The last line may have no new line
+			return length == 0 ? -1 : length;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (input != null) {
+				try {
+					input.close();
+				} finally {
+					input = null;
+				}
+			}
+		}
+
+		private void closeQuietly() {
+			try {
+				close();
+			} catch (IOException e) {
+				logger.warn("Could not close " + file.getAbsolutePath(), e);
+			}
+		}
+	}
+
+}
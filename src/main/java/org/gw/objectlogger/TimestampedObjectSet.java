@@ -23,6 +23,8 @@ import java.util.*;
  */
 public class TimestampedObjectSet<T> {
 
+	private static final long MILLIS_PER_MINUTE = 60000;
+
 	/**
 	 * A {@link java.util.TreeMap} holding the {@link TimestampedObject}s using the log
 	 * {@link java.util.Date} of the {@link TimestampedObject} rounded down to the nearest
@@ -30,6 +32,13 @@ public class TimestampedObjectSet<T> {
 	 */
 	private TreeMap<Date, List<TimestampedObject<T>>> map = new TreeMap<Date, List<TimestampedObject<T>>>();
 
+	/**
+	 * A reusable key to look up the minute of an added
+	 * {@link TimestampedObject}, so a {@link java.util.Date} is only created
+	 * for a new minute.
+	 */
+	private final Date probe = new Date(0);
+
 	/**
 	 * Instance variable holding the size of the set.
 	 */
@@ -294,17 +303,22 @@ public class TimestampedObjectSet<T> {
 		if (obj == null || obj.getObj() == null) {
 			return;
 		}
-		Date logDate = obj.getLogTime();
-		Date roundedDate = DateUtil.roundDownToMinute(logDate);
-		List<TimestampedObject<T>> set = map.get(roundedDate);
+		long logTime = obj.getLogTimeMillis();
+		probe.setTime(logTime - floorMod(logTime, MILLIS_PER_MINUTE));
+		List<TimestampedObject<T>> set = map.get(probe);
 		if (set == null) {
 			set = new ArrayList<TimestampedObject<T>>();
-			map.put(roundedDate, set);
+			map.put(new Date(probe.getTime()), set);
 		}
 		set.add(obj);
 		size++;
 	}
 
+	private static long floorMod(long x, long y) {
+		long mod = x % y;
+		return mod < 0 ? mod + y : mod;
+	}
+
 	/**
 	 * Adds all given {@link TimestampedObject}s to the
 	 * {@link TimestampedObjectSet}.
@@ -0,0 +1,68 @@
+package org.gw.objectlogger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileParser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link LengthPrefixedRecordSerialiser} which encodes each
+ * {@link TimestampedObject} as Smile, Jackson's binary json. The objects are
+ * mapped as they are for json, so any type which can be logged as json can be
+ * logged as Smile, but records are smaller and quicker to parse.
+ * <p>
+ * Each record is its own Smile document without the 4 byte Smile header.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class TimestampedObjectSmileSerialiser extends
+		LengthPrefixedRecordSerialiser {
+
+	private static final String extension = "smile";
+
+	private final TimestampedObjectJsonCodec codec;
+
+	public TimestampedObjectSmileSerialiser() {
+		SmileFactory factory = new SmileFactory();
+		factory.disable(SmileGenerator.Feature.WRITE_HEADER);
+		factory.disable(SmileParser.Feature.REQUIRE_HEADER);
+		codec = new TimestampedObjectJsonCodec(new ObjectMapper(factory));
+	}
+
+	@Override
+	protected void encode(TimestampedObject<?> object, OutputStream out)
+			throws SerialisationException {
+		codec.encode(object, out);
+	}
+
+	@Override
+	protected <T> TimestampedObject<T> decode(Class<T> type, byte[] data,
+			int offset, int length) throws IOException {
+		return codec.readerFor(type).readValue(data, offset, length);
+	}
+
+	/**
+	 * Tests the record on its tokens, so a record which is not kept is never
+	 * deserialised.
+	 */
+	@Override
+	protected <T> TimestampedObject<T> decode(Class<T> type, byte[] data,
+			int offset, int length, RecordFilter filter) throws IOException {
+		return codec.decode(type, data, offset, length, filter);
+	}
+
+	/**
+	 * Returns the "smile" extension.
+	 */
+	@Override
+	public String getExtension() {
+		return extension;
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.gw.objectlogger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link ThreadFactory} which creates virtual threads. Virtual threads need a
+ * JDK 21 or later runtime. They are looked up reflectively so that this
+ * library still runs on older JDKs, where {@link #isSupported()} returns
+ * false.
+ * <p>
+ * A parked virtual thread does not hold on to a platform thread, so a
+ * {@link DedicatedThreadWriterScheduler} using this factory and the
+ * {@link BlockingWaitStrategy} can run thousands of lanes on a handful of
+ * platform threads. Do not combine it with a spinning {@link IWaitStrategy}.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class VirtualThreadFactory implements ThreadFactory {
+
+	private final ThreadFactory factory;
+
+	/**
+	 * Creates a {@link VirtualThreadFactory} naming its threads with the
+	 * given prefix followed by a number.
+	 * 
+	 * @param prefix
+	 *            The prefix of the thread names
+	 * @throws UnsupportedOperationException
+	 *             If the JDK does not support virtual threads.
+	 */
+	public VirtualThreadFactory(String prefix) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method name = builderClass.getMethod("name", String.class,
+					long.class);
+			builder = name.invoke(builder, prefix, 0L);
+			factory = (ThreadFactory) builderClass.getMethod("factory")
+					.invoke(builder);
+		} catch (Exception e) {
+			throw new UnsupportedOperationException(
+					"Virtual threads are not supported by this JDK ("
+							+ System.getProperty("java.version") + ").", e);
+		}
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		return factory.newThread(r);
+	}
+
+	/**
+	 * @return true if the JDK supports virtual threads.
+	 */
+	public static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+}
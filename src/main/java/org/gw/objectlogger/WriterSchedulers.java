@@ -0,0 +1,90 @@
+package org.gw.objectlogger;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the {@link IWriterScheduler}s for the supported execution modes:
+ * <ul>
+ * <li><code>platform</code>: a platform thread per {@link IDataSource}</li>
+ * <li><code>pool</code>: a fixed pool of platform threads shared by all
+ * {@link IDataSource}s</li>
+ * <li><code>virtual</code>: a virtual thread per {@link IDataSource}</li>
+ * </ul>
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public final class WriterSchedulers {
+
+	private WriterSchedulers() {
+	}
+
+	/**
+	 * @return a {@link DedicatedThreadWriterScheduler} running each lane on
+	 *         its own platform thread.
+	 */
+	public static IWriterScheduler platformThreads(IWaitStrategy waitStrategy) {
+		return new DedicatedThreadWriterScheduler(waitStrategy);
+	}
+
+	/**
+	 * @return a {@link PooledWriterScheduler} running the lanes on the given
+	 *         number of platform threads.
+	 */
+	public static IWriterScheduler fixedPool(int threads) {
+		return new PooledWriterScheduler(threads);
+	}
+
+	/**
+	 * @return a {@link DedicatedThreadWriterScheduler} running each lane on
+	 *         its own virtual thread.
+	 * @throws UnsupportedOperationException
+	 *             If the JDK does not support virtual threads.
+	 */
+	public static IWriterScheduler virtualThreads(IWaitStrategy waitStrategy) {
+		ThreadFactory factory = new VirtualThreadFactory(
+				"ObjectLoggers Virtual Thread-");
+		return new DedicatedThreadWriterScheduler(waitStrategy, factory);
+	}
+
+	/**
+	 * Creates the {@link IWriterScheduler} for the execution mode named by
+	 * <code>-Dobject.logger.execution.mode</code> (default
+	 * <code>platform</code>). The pool size is given by
+	 * <code>-Dobject.logger.pool.threads</code> (default the number of
+	 * processors) and the {@link IWaitStrategy} of the dedicated modes by
+	 * <code>-Dobject.logger.wait.strategy</code>.
+	 */
+	public static IWriterScheduler fromSystemProperties() {
+		String mode = System.getProperty("object.logger.execution.mode",
+				"platform");
+		if ("pool".equalsIgnoreCase(mode)) {
+			String threads = System.getProperty("object.logger.pool.threads");
+			if (threads == null) {
+				return fixedPool(Runtime.getRuntime().availableProcessors());
+			}
+			try {
+				return fixedPool(Integer.parseInt(threads));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(
+						"Could not parse -Dobject.logger.pool.threads. Expected number > 0, found "
+								+ threads);
+			}
+		}
+
+		IWaitStrategy waitStrategy = ObjectLoggerWorkerThread
+				.createWaitStrategy(System.getProperty(
+						"object.logger.wait.strategy", "blocking"));
+		if ("platform".equalsIgnoreCase(mode)) {
+			return platformThreads(waitStrategy);
+		} else if ("virtual".equalsIgnoreCase(mode)) {
+			return virtualThreads(waitStrategy);
+		}
+		throw new IllegalArgumentException(
+				"Could not parse -Dobject.logger.execution.mode. Expected one of platform, pool or virtual, found "
+						+ mode);
+	}
+
+}
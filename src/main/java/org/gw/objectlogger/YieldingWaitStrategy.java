@@ -0,0 +1,27 @@
+package org.gw.objectlogger;
+
+/**
+ * {@link IWaitStrategy} which yields the worker's CPU between idle passes.
+ * Gives low latency at the cost of keeping a core busy whenever nothing else
+ * wants it.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class YieldingWaitStrategy implements IWaitStrategy {
+
+	@Override
+	public void waitForWork(int idleCount) {
+		Thread.yield();
+	}
+
+	/**
+	 * Does nothing. The worker never stops polling.
+	 */
+	@Override
+	public void signal(Thread worker) {
+	}
+
+}
@@ -0,0 +1,209 @@
+/**
+ * BackpressurePolicyTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class BackpressurePolicyTest {
+
+	private static final int capacity = 4;
+
+	private StallingDataSource source;
+	private ObjectLogger<TestObject> logger;
+
+	/**
+	 * An {@link InMemoryDataSource} which stalls the worker in
+	 * persist(List) until it is released. persist(TimestampedObject) is not
+	 * stalled.
+	 */
+	private static class StallingDataSource extends InMemoryDataSource {
+		private final CountDownLatch stalled = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		private volatile RuntimeException failure;
+
+		@Override
+		public void persist(TimestampedObject<?> object)
+				throws DataSourceException {
+			if (failure != null) {
+				throw failure;
+			}
+			super.persist(object);
+		}
+
+		@Override
+		public void persist(List<TimestampedObject<?>> batch)
+				throws DataSourceException {
+			stalled.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.persist(batch);
+		}
+	}
+
+	@Before
+	public void init() throws InterruptedException {
+		source = new StallingDataSource();
+		logger = new ObjectLogger<TestObject>(capacity, source) {
+		};
+
+		// Stall the worker on the first object
+		logger.log(new TestObject("stall", "stall"));
+		Assert.assertTrue(source.stalled.await(1, TimeUnit.SECONDS));
+	}
+
+	@After
+	public void release() {
+		source.release.countDown();
+		logger.destroy();
+	}
+
+	@Test
+	public void testDropNewest() throws InterruptedException {
+		logger.setBackpressurePolicy(new DropNewestBackpressurePolicy());
+		List<String> logged = logNumbered(10);
+
+		Assert.assertEquals(6, logger.getDiscardedCount());
+		Assert.assertEquals(logged.subList(0, 4), releaseAndGetPersisted());
+	}
+
+	@Test
+	public void testDropOldest() throws InterruptedException {
+		logger.setBackpressurePolicy(new DropOldestBackpressurePolicy());
+		List<String> logged = logNumbered(10);
+
+		Assert.assertEquals(6, logger.getDiscardedCount());
+		Assert.assertEquals(logged.subList(6, 10), releaseAndGetPersisted());
+	}
+
+	@Test
+	public void testSampling() throws InterruptedException {
+		logger.setBackpressurePolicy(new SamplingBackpressurePolicy(0));
+		logNumbered(10);
+		Assert.assertEquals(6, logger.getDiscardedCount());
+
+		logger.setBackpressurePolicy(new SamplingBackpressurePolicy(1));
+		List<String> logged = logNumbered(10);
+		Assert.assertEquals(16, logger.getDiscardedCount());
+		Assert.assertEquals(logged.subList(6, 10), releaseAndGetPersisted());
+	}
+
+	@Test
+	public void testCallerRuns() throws InterruptedException {
+		logger.setBackpressurePolicy(new CallerRunsBackpressurePolicy());
+		List<String> logged = logNumbered(10);
+
+		// The 6 that did not fit were persisted on this thread
+		Assert.assertEquals(0, logger.getDiscardedCount());
+		Assert.assertEquals(6, source.getPersistedCount());
+
+		List<String> persisted = releaseAndGetPersisted();
+		Assert.assertEquals(logged.subList(4, 10), persisted.subList(0, 6));
+		Assert.assertEquals(logged.subList(0, 4), persisted.subList(6, 10));
+	}
+
+	@Test
+	public void testCallerRunsFailsAckWithCause() throws InterruptedException {
+		logger.setBackpressurePolicy(new CallerRunsBackpressurePolicy());
+		logNumbered(capacity);
+		source.failure = new IllegalStateException("disk on fire");
+
+		PersistFuture future = logger.logAndAck(new TestObject("late",
+				"late"));
+		Assert.assertTrue(future.isDone());
+		Assert.assertFalse(future.isPersisted());
+		Assert.assertSame(source.failure, future.getFailure());
+		Assert.assertEquals(1, logger.getDiscardedCount());
+	}
+
+	@Test
+	public void testBlockingTimesOut() throws InterruptedException {
+		logger.setBackpressurePolicy(new BlockingBackpressurePolicy(50,
+				TimeUnit.MILLISECONDS));
+		logNumbered(capacity);
+
+		long start = System.nanoTime();
+		logger.log(new TestObject("late", "late"));
+		long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		Assert.assertTrue("Returned after " + waited + "ms", waited >= 45);
+		Assert.assertEquals(1, logger.getDiscardedCount());
+	}
+
+	@Test
+	public void testBlockingSucceeds() throws InterruptedException {
+		logger.setBackpressurePolicy(new BlockingBackpressurePolicy(10,
+				TimeUnit.SECONDS));
+		List<String> logged = logNumbered(capacity);
+
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					// Don't care
+				}
+				source.release.countDown();
+			}
+		}).start();
+		logger.log(new TestObject("late", "late"));
+		logged.add("late");
+
+		Assert.assertEquals(0, logger.getDiscardedCount());
+		Assert.assertEquals(logged, releaseAndGetPersisted());
+	}
+
+	/**
+	 * Logs <code>count</code> objects named by their number.
+	 */
+	private List<String> logNumbered(int count) {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			String name = "" + System.nanoTime();
+			logger.log(new TestObject(name, name));
+			names.add(name);
+		}
+		return names;
+	}
+
+	/**
+	 * Releases the worker and returns the names of all persisted objects
+	 * except the one used to stall the worker.
+	 */
+	private List<String> releaseAndGetPersisted() throws InterruptedException {
+		source.release.countDown();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (logger.getQueueSize() > 0
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(50);
+		List<String> names = new ArrayList<String>();
+		for (TimestampedObject<?> object : source.getPersisted()) {
+			String name = ((TestObject) object.getObj()).name;
+			if (!"stall".equals(name)) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
+
+}
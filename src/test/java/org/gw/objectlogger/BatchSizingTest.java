@@ -0,0 +1,184 @@
+/**
+ * BatchSizingTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class BatchSizingTest {
+
+	private BatchRecordingDataSource source;
+	private ObjectLogger<TestObject> logger;
+
+	/**
+	 * An {@link InMemoryDataSource} which records the size and identity of
+	 * every batch and takes <code>persistMillis</code> to persist each one.
+	 */
+	private static class BatchRecordingDataSource extends InMemoryDataSource {
+		private final List<Integer> batchSizes = new ArrayList<Integer>();
+		private final List<List<TimestampedObject<?>>> batches = new ArrayList<List<TimestampedObject<?>>>();
+		private volatile long persistMillis;
+
+		@Override
+		public void persist(List<TimestampedObject<?>> batch)
+				throws DataSourceException {
+			synchronized (batchSizes) {
+				batchSizes.add(batch.size());
+				batches.add(batch);
+			}
+			if (persistMillis > 0) {
+				try {
+					Thread.sleep(persistMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			super.persist(batch);
+		}
+
+		List<Integer> getBatchSizes() {
+			synchronized (batchSizes) {
+				return new ArrayList<Integer>(batchSizes);
+			}
+		}
+	}
+
+	@Before
+	public void init() {
+		source = new BatchRecordingDataSource();
+		logger = new ObjectLogger<TestObject>(
+				new LinkedLoggerQueue<TimestampedObject<TestObject>>(10000),
+				source, new ManualWriterScheduler()) {
+		};
+	}
+
+	@After
+	public void destroy() {
+		logger.destroy();
+	}
+
+	private void logMany(int count) {
+		for (int i = 0; i < count; i++) {
+			logger.log(new TestObject("name" + i, "value" + i));
+		}
+	}
+
+	@Test
+	public void testMaxBatchSize() {
+		logger.setMaxBatchSize(100);
+		logMany(250);
+
+		Assert.assertTrue(logger.logAllInQueue());
+		Assert.assertEquals(250, source.getPersistedCount());
+
+		List<Integer> sizes = source.getBatchSizes();
+		Assert.assertEquals(3, sizes.size());
+		Assert.assertEquals(Integer.valueOf(100), sizes.get(0));
+		Assert.assertEquals(Integer.valueOf(100), sizes.get(1));
+		Assert.assertEquals(Integer.valueOf(50), sizes.get(2));
+	}
+
+	@Test
+	public void testBatchIsReused() {
+		logger.setMaxBatchSize(10);
+		logMany(20);
+
+		Assert.assertTrue(logger.logAllInQueue());
+		Assert.assertEquals(2, source.batches.size());
+		Assert.assertSame(source.batches.get(0), source.batches.get(1));
+		Assert.assertTrue(source.batches.get(0).isEmpty());
+	}
+
+	@Test
+	public void testMaxBatchDelay() {
+		source.persistMillis = 20;
+		logger.setMaxBatchSize(10);
+		logger.setMaxBatchDelay(0);
+		logMany(30);
+
+		// Only one batch per call once the delay has passed
+		Assert.assertTrue(logger.logAllInQueue());
+		Assert.assertEquals(10, source.getPersistedCount());
+		Assert.assertEquals(20, logger.getQueueSize());
+
+		logger.setMaxBatchDelay(1000);
+		Assert.assertTrue(logger.logAllInQueue());
+		Assert.assertEquals(30, source.getPersistedCount());
+		Assert.assertFalse(logger.logAllInQueue());
+	}
+
+	@Test
+	public void testBatchSizerIsCappedByMaxBatchSize() {
+		logger.setMaxBatchSize(50);
+		logger.setBatchSizer(new FixedBatchSizer(500));
+		logMany(120);
+
+		Assert.assertTrue(logger.logAllInQueue());
+		Assert.assertEquals(3, source.getBatchSizes().size());
+		Assert.assertEquals(Integer.valueOf(50), source.getBatchSizes()
+				.get(0));
+	}
+
+	@Test
+	public void testAdaptiveBatchSizer() {
+		AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1,
+				TimeUnit.MILLISECONDS, 1, 1000);
+		Assert.assertEquals(1, sizer.nextBatchSize());
+
+		// 10us per object, so 100 objects per millisecond
+		for (int i = 0; i < 20; i++) {
+			sizer.batchPersisted(sizer.nextBatchSize(),
+					sizer.nextBatchSize() * 10000L);
+		}
+		Assert.assertEquals(100, sizer.nextBatchSize());
+
+		// The data source slows down to 50us per object
+		for (int i = 0; i < 50; i++) {
+			sizer.batchPersisted(sizer.nextBatchSize(),
+					sizer.nextBatchSize() * 50000L);
+		}
+		Assert.assertEquals(20, sizer.nextBatchSize(), 1);
+
+		// A partial batch within the target leaves the batch size alone
+		sizer.batchPersisted(1, 200000);
+		Assert.assertEquals(20, sizer.nextBatchSize(), 1);
+
+		// Limited by the max batch size
+		for (int i = 0; i < 50; i++) {
+			sizer.batchPersisted(sizer.nextBatchSize(),
+					sizer.nextBatchSize() * 10L);
+		}
+		Assert.assertEquals(1000, sizer.nextBatchSize());
+	}
+
+	@Test
+	public void testAdaptiveBatchSizerWithLogger() {
+		source.persistMillis = 1;
+		logger.setBatchSizer(new AdaptiveBatchSizer(50,
+				TimeUnit.MILLISECONDS, 1, 1000));
+		logMany(2000);
+
+		while (logger.logAllInQueue()) {
+		}
+		Assert.assertEquals(2000, source.getPersistedCount());
+
+		// A 1ms persist is well within the target so the batches grow
+		List<Integer> sizes = source.getBatchSizes();
+		Assert.assertEquals(Integer.valueOf(1), sizes.get(0));
+		Assert.assertTrue(sizes.get(sizes.size() - 2) > 100);
+	}
+
+}
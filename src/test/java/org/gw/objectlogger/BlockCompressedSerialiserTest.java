@@ -0,0 +1,155 @@
+/**
+ * BlockCompressedSerialiserTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class BlockCompressedSerialiserTest {
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+	private File file;
+	private BlockCompressedSerialiser serialiser;
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		file = new File(objectLoggerPath, "test.smilez");
+		// Small blocks so batches span several
+		serialiser = new BlockCompressedSerialiser(
+				new TimestampedObjectSmileSerialiser(), 1024,
+				Deflater.BEST_SPEED);
+	}
+
+	private List<TimestampedObject<?>> batch(int from, int to) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = from; i < to; i++) {
+			batch.add(new TimestampedObject<TestObject>(1000L + i,
+					new TestObject("" + i, "a value which repeats " + i % 10)));
+		}
+		return batch;
+	}
+
+	private void assertNames(int count) throws Exception {
+		List<TimestampedObject<TestObject>> read = new ArrayList<TimestampedObject<TestObject>>();
+		ITimestampedObjectCursor<TestObject> cursor = serialiser.openCursor(
+				file, TestObject.class);
+		try {
+			while (cursor.hasNext()) {
+				read.add(cursor.next());
+			}
+		} finally {
+			cursor.close();
+		}
+		Assert.assertEquals(count, read.size());
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals(1000L + i, read.get(i).getLogTimeMillis());
+			Assert.assertEquals("" + i, read.get(i).getObj().name);
+		}
+	}
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		serialiser.open(file);
+		serialiser.write(batch(0, 1).get(0));
+		serialiser.write(batch(1, 500));
+		serialiser.close();
+
+		Assert.assertEquals(file.length(), serialiser.getBytesWritten());
+		assertNames(500);
+		Assert.assertEquals(500, serialiser.readAll(file, TestObject.class)
+				.size());
+	}
+
+	@Test
+	public void testCompresses() throws Exception {
+		serialiser = new BlockCompressedSerialiser(
+				new TimestampedObjectSmileSerialiser());
+		serialiser.open(file);
+		serialiser.write(batch(0, 1000));
+		serialiser.close();
+
+		File uncompressed = new File(objectLoggerPath, "test.smile");
+		TimestampedObjectSmileSerialiser smile = new TimestampedObjectSmileSerialiser();
+		smile.open(uncompressed);
+		smile.write(batch(0, 1000));
+		smile.close();
+		Assert.assertTrue(file.length() * 3 < uncompressed.length());
+	}
+
+	@Test
+	public void testWriteEncoded() throws Exception {
+		List<TimestampedObject<?>> batch = batch(0, 100);
+		List<byte[]> encoded = new ArrayList<byte[]>();
+		for (TimestampedObject<?> object : batch) {
+			encoded.add(serialiser.getEncoder().encode(object));
+		}
+		serialiser.open(file);
+		serialiser.writeEncoded(batch, encoded);
+		serialiser.close();
+		assertNames(100);
+	}
+
+	@Test
+	public void testAppends() throws Exception {
+		serialiser.open(file);
+		serialiser.write(batch(0, 50));
+		serialiser.close();
+		serialiser.open(file);
+		serialiser.write(batch(50, 100));
+		serialiser.close();
+		assertNames(100);
+	}
+
+	@Test
+	public void testTruncatedLastBlock() throws Exception {
+		serialiser.open(file);
+		serialiser.write(batch(0, 3));
+		serialiser.close();
+		long complete = file.length();
+
+		// The process died mid-write
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write(new byte[] { 0, 0, 1, 0, 0, 0, 2, 0, 1, 2, 3 });
+		out.close();
+		assertNames(3);
+
+		serialiser.open(file);
+		Assert.assertEquals(complete, file.length());
+		serialiser.write(batch(3, 5));
+		serialiser.close();
+		assertNames(5);
+	}
+
+	@Test
+	public void testFileSystemDataSource() throws Exception {
+		FileSystemDataSource source = new FileSystemDataSource("test-blocks",
+				new MinuteRollingStrategy(1), serialiser);
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.persist(batch(0, 10));
+		source.close();
+
+		Assert.assertTrue(source.getFile().getName().endsWith(".smilez"));
+		Assert.assertEquals(10, source.getAll(TestObject.class).size());
+	}
+
+}
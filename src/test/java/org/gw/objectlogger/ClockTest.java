@@ -0,0 +1,107 @@
+/**
+ * ClockTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class ClockTest {
+
+	/**
+	 * An {@link IClock} which returns whatever time it is set to.
+	 */
+	private static class FixedClock implements IClock {
+		private volatile long now;
+
+		@Override
+		public long currentTimeMillis() {
+			return now;
+		}
+	}
+
+	@Test
+	public void testLoggerUsesClock() throws InterruptedException {
+		FixedClock clock = new FixedClock();
+		clock.now = 123456789L;
+
+		InMemoryDataSource source = new InMemoryDataSource();
+		ObjectLogger<TestObject> logger = new ObjectLogger<TestObject>(source) {
+		};
+		logger.setSynchronous(true);
+		logger.setClock(clock);
+		try {
+			logger.log(new TestObject("bob", "bill"));
+		} finally {
+			logger.destroy();
+		}
+
+		List<TimestampedObject<?>> persisted = source.getPersisted();
+		Assert.assertEquals(1, persisted.size());
+		Assert.assertEquals(123456789L, persisted.get(0).getLogTimeMillis());
+		Assert.assertEquals(new Date(123456789L), persisted.get(0)
+				.getLogTime());
+	}
+
+	@Test
+	public void testCachedClock() throws InterruptedException {
+		CachedClock clock = new CachedClock(5);
+		try {
+			long before = System.currentTimeMillis();
+			Thread.sleep(50);
+			long cached = clock.currentTimeMillis();
+			Assert.assertTrue(cached >= before);
+			Assert.assertTrue(cached <= System.currentTimeMillis());
+		} finally {
+			clock.shutdown();
+		}
+
+		// Stops ticking after shutdown
+		Thread.sleep(20);
+		long stopped = clock.currentTimeMillis();
+		Thread.sleep(20);
+		Assert.assertEquals(stopped, clock.currentTimeMillis());
+	}
+
+	@Test
+	public void testJsonFormatUnchanged() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		TimestampedObject<String> obj = new TimestampedObject<String>(
+				1400000000000L, "bob");
+		Assert.assertEquals("{\"logTime\":1400000000000,\"obj\":\"bob\"}",
+				mapper.writeValueAsString(obj));
+
+		TimestampedObject<?> read = mapper.readValue(
+				"{\"logTime\":1400000000000,\"obj\":\"bob\"}",
+				TimestampedObject.class);
+		Assert.assertEquals(1400000000000L, read.getLogTimeMillis());
+		Assert.assertEquals("bob", read.getObj());
+	}
+
+	@Test
+	public void testSetGroupsByMinute() {
+		TimestampedObjectSet<String> set = new TimestampedObjectSet<String>();
+		set.add(new TimestampedObject<String>(60000L, "one"));
+		set.add(new TimestampedObject<String>(119999L, "two"));
+		set.add(new TimestampedObject<String>(120000L, "three"));
+		set.add(new TimestampedObject<String>(-1L, "before"));
+
+		Assert.assertEquals(4, set.size());
+		Assert.assertEquals(3, set.asMap().size());
+		Assert.assertEquals(2, set.asMap().get(new Date(60000L)).size());
+		Assert.assertEquals(1, set.asMap().get(new Date(120000L)).size());
+		Assert.assertEquals(1, set.asMap().get(new Date(-60000L)).size());
+	}
+
+}
@@ -0,0 +1,155 @@
+/**
+ * DurabilityPolicyTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class DurabilityPolicyTest {
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	/**
+	 * A {@link TimestampedObjectJsonSerialiser} which counts the syncs.
+	 */
+	private static class CountingSerialiser extends
+			TimestampedObjectJsonSerialiser {
+		private int syncs;
+
+		@Override
+		public void sync() throws IOException {
+			super.sync();
+			syncs++;
+		}
+	}
+
+	private CountingSerialiser serialiser;
+	private FileSystemDataSource source;
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		serialiser = new CountingSerialiser();
+		source = new FileSystemDataSource("test-durability",
+				new MinuteRollingStrategy(1), serialiser);
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+	}
+
+	private List<TimestampedObject<?>> batch(int size) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = 0; i < size; i++) {
+			batch.add(new TimestampedObject<TestObject>(new TestObject(
+					"name" + i, "value" + i)));
+		}
+		return batch;
+	}
+
+	@Test
+	public void testOsBuffered() throws Exception {
+		source.setDurabilityPolicy(new OsBufferedDurabilityPolicy());
+		source.persist(batch(10));
+		source.persist(batch(10));
+		source.close();
+
+		Assert.assertEquals(0, serialiser.syncs);
+		Assert.assertEquals(20, source.getAll(TestObject.class).size());
+	}
+
+	@Test
+	public void testGroupCommit() throws Exception {
+		source.setDurabilityPolicy(new GroupCommitDurabilityPolicy());
+		source.persist(batch(10));
+		source.persist(batch(10));
+		source.persist(batch(1).get(0));
+		source.close();
+
+		// Once per batch, not per object
+		Assert.assertEquals(3, serialiser.syncs);
+		Assert.assertEquals(21, source.getAll(TestObject.class).size());
+	}
+
+	@Test
+	public void testPeriodicByBytes() throws Exception {
+		source.setDurabilityPolicy(new PeriodicDurabilityPolicy(
+				Long.MAX_VALUE / 1000000, 1000));
+		source.persist(batch(1));
+		Assert.assertEquals(0, serialiser.syncs);
+
+		// Each object is over 50 bytes
+		source.persist(batch(20));
+		Assert.assertEquals(1, serialiser.syncs);
+
+		source.persist(batch(1));
+		Assert.assertEquals(1, serialiser.syncs);
+
+		// The rest is synced before closing
+		source.close();
+		Assert.assertEquals(2, serialiser.syncs);
+		Assert.assertEquals(22, source.getAll(TestObject.class).size());
+	}
+
+	@Test
+	public void testPeriodicByTime() throws Exception {
+		source.setDurabilityPolicy(new PeriodicDurabilityPolicy(50,
+				Long.MAX_VALUE));
+		source.persist(batch(1));
+		source.persist(batch(1));
+		Assert.assertEquals(0, serialiser.syncs);
+
+		Thread.sleep(60);
+		source.persist(batch(1));
+		Assert.assertEquals(1, serialiser.syncs);
+
+		source.close();
+		Assert.assertEquals(1, serialiser.syncs);
+	}
+
+	@Test
+	public void testByteArraySerialiser() throws Exception {
+		FileSystemDataSource byteSource = new FileSystemDataSource(
+				"test-durability-bytes", new MinuteRollingStrategy(1),
+				new TimestampedByteArraySerialiser());
+		byteSource.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		byteSource.setDurabilityPolicy(new GroupCommitDurabilityPolicy());
+
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = 0; i < 10; i++) {
+			batch.add(new TimestampedByteArray(new byte[] { (byte) i, 1, 2 }));
+		}
+		byteSource.persist(batch);
+		Assert.assertEquals(10 * (4 + 8 + 3),
+				((ISyncableSerialiser) byteSource.getSerialiser())
+						.getBytesWritten());
+		byteSource.close();
+
+		Assert.assertEquals(10, byteSource.getAll(byte[].class).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownMode() {
+		System.setProperty("object.logger.durability", "sometimes");
+		try {
+			DurabilityPolicies.fromSystemProperties();
+		} finally {
+			System.clearProperty("object.logger.durability");
+		}
+	}
+
+}
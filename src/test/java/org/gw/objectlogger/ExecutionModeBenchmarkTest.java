@@ -0,0 +1,120 @@
+/**
+ * ExecutionModeBenchmarkTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares memory use and log-to-persist latency of the execution modes
+ * with one {@link ObjectLogger} and {@link IDataSource} per tenant. The
+ * number of loggers is given by
+ * <code>-Dobject.logger.benchmark.loggers</code> (default 10000).
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class ExecutionModeBenchmarkTest {
+
+	private final int loggers = Integer.getInteger(
+			"object.logger.benchmark.loggers", 10000);
+
+	@Test
+	public void testPlatformThreads() throws InterruptedException {
+		benchmark("platform",
+				WriterSchedulers.platformThreads(new BlockingWaitStrategy()));
+	}
+
+	@Test
+	public void testFixedPool() throws InterruptedException {
+		benchmark("pool", WriterSchedulers.fixedPool(Runtime.getRuntime()
+				.availableProcessors()));
+	}
+
+	@Test
+	public void testVirtualThreads() throws InterruptedException {
+		Assume.assumeTrue(VirtualThreadFactory.isSupported());
+		benchmark("virtual",
+				WriterSchedulers.virtualThreads(new BlockingWaitStrategy()));
+	}
+
+	private void benchmark(String mode, IWriterScheduler scheduler)
+			throws InterruptedException {
+		long heapBefore = usedHeap();
+		int threadsBefore = ManagementFactory.getThreadMXBean()
+				.getThreadCount();
+
+		List<InMemoryDataSource> sources = new ArrayList<InMemoryDataSource>(
+				loggers);
+		List<ObjectLogger<TestObject>> objLoggers = new ArrayList<ObjectLogger<TestObject>>(
+				loggers);
+		for (int i = 0; i < loggers; i++) {
+			InMemoryDataSource source = new InMemoryDataSource();
+			sources.add(source);
+			objLoggers.add(new ObjectLogger<TestObject>(
+					new LinkedLoggerQueue<TimestampedObject<TestObject>>(1024),
+					source, scheduler) {
+			});
+		}
+
+		// Let every lane go idle
+		Thread.sleep(500);
+		long heapAfter = usedHeap();
+		int threadsAfter = ManagementFactory.getThreadMXBean()
+				.getThreadCount();
+
+		try {
+			TestObject obj = new TestObject("tenant", "tenant");
+			long[] starts = new long[loggers];
+			for (int i = 0; i < loggers; i++) {
+				starts[i] = System.nanoTime();
+				objLoggers.get(i).log(obj);
+			}
+
+			long[] latencies = new long[loggers];
+			for (int i = 0; i < loggers; i++) {
+				Long persisted = sources.get(i).getPersistTimes()
+						.poll(10, TimeUnit.SECONDS);
+				Assert.assertNotNull(mode + ": logger " + i
+						+ " did not persist within 10s", persisted);
+				latencies[i] = persisted - starts[i];
+			}
+			Arrays.sort(latencies);
+
+			System.out.println(mode + ": " + loggers + " loggers, "
+					+ (threadsAfter - threadsBefore) + " threads, "
+					+ (heapAfter - heapBefore) / 1024 + "KB heap, latency p50 "
+					+ TimeUnit.NANOSECONDS.toMicros(latencies[loggers / 2])
+					+ "us, p99 "
+					+ TimeUnit.NANOSECONDS.toMicros(latencies[loggers * 99 / 100])
+					+ "us, max "
+					+ TimeUnit.NANOSECONDS.toMicros(latencies[loggers - 1])
+					+ "us");
+		} finally {
+			for (ObjectLogger<TestObject> objLogger : objLoggers) {
+				objLogger.destroy();
+			}
+			scheduler.shutdown();
+		}
+	}
+
+	private long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
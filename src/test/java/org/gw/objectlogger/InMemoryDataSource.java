@@ -0,0 +1,128 @@
+/**
+ * InMemoryDataSource.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * An {@link IDataSource} which keeps everything it persists in memory and
+ * records {@link System#nanoTime()} of every persist call.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class InMemoryDataSource implements IDataSource {
+
+	private final List<TimestampedObject<?>> persisted = new ArrayList<TimestampedObject<?>>();
+
+	private final BlockingQueue<Long> persistTimes = new LinkedBlockingQueue<Long>();
+
+	@Override
+	public void persist(TimestampedObject<?> object) throws DataSourceException {
+		long now = System.nanoTime();
+		synchronized (persisted) {
+			persisted.add(object);
+		}
+		persistTimes.add(now);
+	}
+
+	@Override
+	public void persist(List<TimestampedObject<?>> batch)
+			throws DataSourceException {
+		long now = System.nanoTime();
+		synchronized (persisted) {
+			persisted.addAll(batch);
+		}
+		persistTimes.add(now);
+	}
+
+	public List<TimestampedObject<?>> getPersisted() {
+		synchronized (persisted) {
+			return new ArrayList<TimestampedObject<?>>(persisted);
+		}
+	}
+
+	public int getPersistedCount() {
+		synchronized (persisted) {
+			return persisted.size();
+		}
+	}
+
+	public BlockingQueue<Long> getPersistTimes() {
+		return persistTimes;
+	}
+
+	@Override
+	public <T> TimestampedObjectSet<T> getAll(Class<T> type, File file)
+			throws FileNotFoundException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> TimestampedObjectSet<T> getAll(Class<T> type, Date from)
+			throws FileNotFoundException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> TimestampedObjectSet<T> getAll(Class<T> type)
+			throws FileNotFoundException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> TimestampedObjectSet<T> getAll(Class<T> type, Date from, Date to)
+			throws FileNotFoundException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> ITimestampedObjectCursor<T> stream(Class<T> type, Date from,
+			Date to) throws FileNotFoundException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> TimestampedObjectSet<T> getAll(Class<T> type, Date from,
+			Date to, IFieldPredicate... predicates)
+			throws FileNotFoundException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> ITimestampedObjectCursor<T> stream(Class<T> type, Date from,
+			Date to, IFieldPredicate... predicates)
+			throws FileNotFoundException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> TimestampedObjectSet<T> getAll(Class<T> type, Date from,
+			Date to, String... fields) throws FileNotFoundException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public <T> ITimestampedObjectCursor<T> stream(Class<T> type, Date from,
+			Date to, String... fields) throws FileNotFoundException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void clean() {
+		synchronized (persisted) {
+			persisted.clear();
+		}
+		persistTimes.clear();
+	}
+
+}
@@ -0,0 +1,216 @@
+/**
+ * JsonChannelSerialiserTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class JsonChannelSerialiserTest {
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+	private File file;
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		file = new File(objectLoggerPath, "test.json");
+	}
+
+	private List<TimestampedObject<?>> batch(int from, int to) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = from; i < to; i++) {
+			batch.add(new TimestampedObject<TestObject>(new TestObject("" + i,
+					"value" + i)));
+		}
+		return batch;
+	}
+
+	private List<TestObject> read() throws Exception {
+		return new TimestampedObjectJsonSerialiser().readAll(file,
+				TestObject.class).asList();
+	}
+
+	private void assertNames(int count) throws Exception {
+		List<TestObject> read = read();
+		Assert.assertEquals(count, read.size());
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals("" + i, read.get(i).name);
+		}
+	}
+
+	@Test
+	public void testSameAsJsonSerialiser() throws Exception {
+		TimestampedObjectJsonChannelSerialiser serialiser = new TimestampedObjectJsonChannelSerialiser();
+		serialiser.open(file);
+		List<TimestampedObject<?>> batch = batch(0, 3);
+		serialiser.write(batch.get(0));
+		serialiser.write(batch.subList(1, 3));
+		serialiser.close();
+
+		File rafFile = new File(objectLoggerPath, "raf.json");
+		TimestampedObjectJsonSerialiser rafSerialiser = new TimestampedObjectJsonSerialiser();
+		rafSerialiser.open(rafFile);
+		rafSerialiser.write(batch.get(0));
+		rafSerialiser.write(batch.subList(1, 3));
+		rafSerialiser.close();
+
+		Assert.assertEquals(FileUtils.readFileToString(rafFile),
+				FileUtils.readFileToString(file));
+		Assert.assertTrue(serialiser.getBytesWritten() >= file.length());
+	}
+
+	@Test
+	public void testEmptyArray() throws Exception {
+		TimestampedObjectJsonChannelSerialiser serialiser = new TimestampedObjectJsonChannelSerialiser();
+		serialiser.open(file);
+		serialiser.close();
+		assertNames(0);
+	}
+
+	@Test
+	public void testBatchLargerThanBuffer() throws Exception {
+		TimestampedObjectJsonChannelSerialiser serialiser = new TimestampedObjectJsonChannelSerialiser(
+				16);
+		serialiser.open(file);
+		serialiser.write(batch(0, 100));
+		List<TimestampedObject<?>> batch = batch(100, 200);
+		serialiser.writeEncoded(batch, encode(serialiser, batch));
+		serialiser.close();
+		assertNames(200);
+	}
+
+	@Test
+	public void testAppendsToExistingFile() throws Exception {
+		TimestampedObjectJsonChannelSerialiser serialiser = new TimestampedObjectJsonChannelSerialiser();
+		serialiser.open(file);
+		serialiser.write(batch(0, 10));
+		serialiser.close();
+
+		serialiser.open(file);
+		serialiser.write(batch(10, 20));
+		serialiser.close();
+		assertNames(20);
+	}
+
+	@Test
+	public void testTornTailIsCutOff() throws Exception {
+		TimestampedObjectJsonChannelSerialiser serialiser = new TimestampedObjectJsonChannelSerialiser();
+		serialiser.open(file);
+		serialiser.write(batch(0, 10));
+		serialiser.close();
+
+		// Crashed while writing the last object
+		String json = FileUtils.readFileToString(file);
+		FileUtils.writeStringToFile(file,
+				json.substring(0, json.lastIndexOf(",\n") + 10));
+		serialiser.open(file);
+		serialiser.write(batch(9, 20));
+		serialiser.close();
+		assertNames(20);
+	}
+
+	@Test
+	public void testFailedBatchLeavesWholeObjects() throws Exception {
+		TimestampedObjectJsonChannelSerialiser serialiser = new TimestampedObjectJsonChannelSerialiser(
+				256);
+		serialiser.open(file);
+		List<TimestampedObject<?>> batch = batch(0, 10);
+		batch.add(new TimestampedObject<Unserialisable>(new Unserialisable()));
+		try {
+			serialiser.write(batch);
+			Assert.fail("Serialised " + batch);
+		} catch (SerialisationException e) {
+			// Expected
+		}
+		// The objects written before the failure are a JSON array
+		int written = read().size();
+		Assert.assertTrue(written > 0 && written < 10);
+		assertNames(written);
+
+		serialiser.write(batch(written, 20));
+		serialiser.close();
+		assertNames(20);
+	}
+
+	@Test
+	public void testFirstObjectAfterFailedWrite() throws Exception {
+		TimestampedObjectJsonChannelSerialiser serialiser = new TimestampedObjectJsonChannelSerialiser();
+		serialiser.open(file);
+		List<TimestampedObject<?>> batch = batch(0, 1);
+		batch.add(new TimestampedObject<Unserialisable>(new Unserialisable()));
+		try {
+			serialiser.write(batch);
+			Assert.fail("Serialised " + batch);
+		} catch (SerialisationException e) {
+			// Expected
+		}
+		serialiser.write(batch(0, 2));
+		serialiser.close();
+		assertNames(2);
+	}
+
+	/**
+	 * Cannot be serialised to json
+	 */
+	public static class Unserialisable {
+		public String getValue() {
+			throw new IllegalStateException("Cannot be serialised");
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testCannotAppendToOtherFile() throws Exception {
+		FileUtils.writeStringToFile(file, "not json");
+		new TimestampedObjectJsonChannelSerialiser().open(file);
+	}
+
+	@Test
+	public void testFileSystemDataSource() throws Exception {
+		FileSystemDataSource source = new FileSystemDataSource(
+				"test-channel", new MinuteRollingStrategy(1),
+				new TimestampedObjectJsonChannelSerialiser());
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		ObjectLogger<TestObject> logger = new ObjectLogger<TestObject>(source) {
+		};
+		try {
+			for (int i = 0; i < 100; i++) {
+				logger.log(new TestObject("" + i, "" + i));
+			}
+			Assert.assertTrue(logger.flush(5, TimeUnit.SECONDS));
+		} finally {
+			logger.destroy();
+		}
+		source.close();
+
+		file = source.getFile();
+		assertNames(100);
+	}
+
+	private List<byte[]> encode(IEncodingSerialiser serialiser,
+			List<TimestampedObject<?>> batch) throws SerialisationException {
+		List<byte[]> encoded = new ArrayList<byte[]>();
+		for (TimestampedObject<?> object : batch) {
+			encoded.add(serialiser.getEncoder().encode(object));
+		}
+		return encoded;
+	}
+
+}
@@ -0,0 +1,165 @@
+/**
+ * JsonCodecBenchmarkTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares ns/op and bytes allocated per op of encoding and decoding a
+ * {@link TimestampedObject} with a fresh {@link ObjectMapper} call and
+ * {@link ByteArrayOutputStream} per object, as the json serialiser used to,
+ * against the cached writers and readers and pooled buffer of
+ * {@link TimestampedObjectJsonCodec}. The two are measured in turn for
+ * <code>-Dobject.logger.benchmark.rounds</code> rounds (default 7) of
+ * <code>-Dobject.logger.benchmark.ops</code> operations (default 200000), and
+ * the median round of each is reported, so neither is favoured by running
+ * first or by a round the JIT or the collector interrupted. Only the bytes
+ * per op are asserted: on a shared or single core machine the times of the
+ * two are within the noise of each other.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class JsonCodecBenchmarkTest {
+
+	private final int ops = Integer.getInteger("object.logger.benchmark.ops",
+			200000);
+
+	private final int rounds = Integer.getInteger(
+			"object.logger.benchmark.rounds", 7);
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final TypeFactory typeFactory = TypeFactory.defaultInstance();
+
+	private final TimestampedObjectJsonCodec codec = new TimestampedObjectJsonCodec();
+
+	private final TimestampedObject<TestObject> object = new TimestampedObject<TestObject>(
+			1000L, new TestObject("benchmark", "other"));
+
+	private long sink;
+
+	@Test
+	public void testEncode() throws Exception {
+		Op before = new Op() {
+			@Override
+			public void run() throws Exception {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				mapper.writeValue(out, object);
+				sink += out.toByteArray().length;
+			}
+		};
+		Op after = new Op() {
+			@Override
+			public void run() throws Exception {
+				sink += codec.encodeToBuffer(object).size();
+			}
+		};
+		compare("encode", before, after);
+	}
+
+	@Test
+	public void testDecode() throws Exception {
+		final byte[] json = ("[" + new String(codec.encode(object)) + "]")
+				.getBytes();
+		Op before = new Op() {
+			@Override
+			public void run() throws Exception {
+				List<?> read = mapper.readValue(json, typeFactory
+						.constructCollectionType(List.class, typeFactory
+								.constructParametricType(
+										TimestampedObject.class,
+										TestObject.class)));
+				sink += read.size();
+			}
+		};
+		Op after = new Op() {
+			@Override
+			public void run() throws Exception {
+				List<?> read = codec.listReaderFor(TestObject.class)
+						.readValue(json);
+				sink += read.size();
+			}
+		};
+		compare("decode", before, after);
+	}
+
+	private void compare(String name, Op before, Op after) throws Exception {
+		// Warm up both
+		measure(before);
+		measure(after);
+		long[][] b = new long[2][rounds];
+		long[][] a = new long[2][rounds];
+		for (int i = 0; i < rounds; i++) {
+			measure(before, b, i);
+			measure(after, a, i);
+		}
+		long bytesBefore = median(b[1]);
+		long bytesAfter = median(a[1]);
+		System.out.println(String.format(
+				"%s before: %d ns/op %d bytes/op, after: %d ns/op %d bytes/op",
+				name, median(b[0]), bytesBefore, median(a[0]), bytesAfter));
+		if (bytesBefore >= 0) {
+			Assert.assertTrue(name + " allocates more per op",
+					bytesAfter <= bytesBefore);
+		}
+	}
+
+	/**
+	 * Measures a round into <code>results[0][round]</code>, the ns/op, and
+	 * <code>results[1][round]</code>, the bytes allocated per op.
+	 */
+	private void measure(Op op, long[][] results, int round) throws Exception {
+		long[] measured = measure(op);
+		results[0][round] = measured[0];
+		results[1][round] = measured[1];
+	}
+
+	private static long median(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	/**
+	 * @return ns/op and bytes allocated per op, -1 if the JVM cannot tell.
+	 */
+	private long[] measure(Op op) throws Exception {
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < ops; i++) {
+			op.run();
+		}
+		long nanos = System.nanoTime() - start;
+		long allocatedAfter = allocatedBytes();
+		long bytes = allocatedBefore < 0 ? -1
+				: (allocatedAfter - allocatedBefore) / ops;
+		return new long[] { nanos / ops, bytes };
+	}
+
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private interface Op {
+		void run() throws Exception;
+	}
+
+}
@@ -0,0 +1,72 @@
+/**
+ * JsonCodecTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class JsonCodecTest {
+
+	private TimestampedObjectJsonCodec codec = new TimestampedObjectJsonCodec();
+
+	@Test
+	public void testEncodeMatchesObjectMapper() throws Exception {
+		TimestampedObject<TestObject> object = new TimestampedObject<TestObject>(
+				1000L, new TestObject("name", "other"));
+		Assert.assertArrayEquals(new ObjectMapper().writeValueAsBytes(object),
+				codec.encode(object));
+	}
+
+	@Test
+	public void testBufferIsReused() throws Exception {
+		ByteArrayBuffer first = codec
+				.encodeToBuffer(new TimestampedObject<TestObject>(1000L,
+						new TestObject("a long first name", "other")));
+		byte[] array = first.array();
+		ByteArrayBuffer second = codec
+				.encodeToBuffer(new TimestampedObject<TestObject>(2000L,
+						new TestObject("b", "other")));
+		Assert.assertSame(first, second);
+		Assert.assertSame(array, second.array());
+
+		TimestampedObject<TestObject> read = codec.readerFor(TestObject.class)
+				.readValue(second.array(), 0, second.size());
+		Assert.assertEquals(2000L, read.getLogTimeMillis());
+		Assert.assertEquals("b", read.getObj().name);
+	}
+
+	@Test
+	public void testReadersAreCachedPerClass() {
+		Assert.assertSame(codec.readerFor(TestObject.class),
+				codec.readerFor(TestObject.class));
+		Assert.assertSame(codec.listReaderFor(TestObject.class),
+				codec.listReaderFor(TestObject.class));
+		Assert.assertNotSame(codec.readerFor(TestObject.class),
+				codec.readerFor(String.class));
+	}
+
+	@Test
+	public void testListReader() throws Exception {
+		String json = "[" + new String(codec.encode(new TimestampedObject<TestObject>(
+				1L, new TestObject("1", "x")))) + ",\n"
+				+ new String(codec.encode(new TimestampedObject<TestObject>(2L,
+						new TestObject("2", "x")))) + "]";
+		List<TimestampedObject<TestObject>> read = codec.listReaderFor(
+				TestObject.class).readValue(json);
+		Assert.assertEquals(2, read.size());
+		Assert.assertEquals(Arrays.asList("1", "2"), Arrays.asList(
+				read.get(0).getObj().name, read.get(1).getObj().name));
+	}
+
+}
@@ -71,4 +71,46 @@ public class JsonSerialiserTest {
         Assert.assertEquals("jake", readObj2.getOther());
     }
 
+    @Test
+    public void testAppendsAfterClose() throws Exception {
+        logger.log(new TestObject("bob", "bill"));
+        source.close();
+        logger.log(new TestObject("lara", "jake"));
+        source.close();
+
+        List<TestObject> objs = source.getAll(TestObject.class).asList();
+        Assert.assertEquals(2, objs.size());
+        Assert.assertEquals("bob", objs.get(0).name);
+        Assert.assertEquals("lara", objs.get(1).name);
+    }
+
+    @Test
+    public void testTornTailIsCutOff() throws Exception {
+        TimestampedObjectJsonSerialiser serialiser = new TimestampedObjectJsonSerialiser();
+        File torn = new File(objectLoggerPath, "torn.json");
+        serialiser.open(torn);
+        serialiser.write(new TimestampedObject<TestObject>(new TestObject("bob", "bill")));
+        serialiser.write(new TimestampedObject<TestObject>(new TestObject("lara", "jake")));
+        serialiser.close();
+        String json = FileUtils.readFileToString(torn);
+
+        // Crashed while writing the second object
+        int cut = json.lastIndexOf(",\n") + 10;
+        FileUtils.writeStringToFile(torn, json.substring(0, cut));
+        serialiser.open(torn);
+        serialiser.write(new TimestampedObject<TestObject>(new TestObject("jane", "gary")));
+        serialiser.close();
+        List<TestObject> objs = serialiser.readAll(torn, TestObject.class).asList();
+        Assert.assertEquals(2, objs.size());
+        Assert.assertEquals("bob", objs.get(0).name);
+        Assert.assertEquals("jane", objs.get(1).name);
+
+        // Crashed while writing the closing bracket
+        json = FileUtils.readFileToString(torn);
+        FileUtils.writeStringToFile(torn, json.substring(0, json.length() - 1));
+        serialiser.open(torn);
+        serialiser.close();
+        Assert.assertEquals(json, FileUtils.readFileToString(torn));
+    }
+
 }
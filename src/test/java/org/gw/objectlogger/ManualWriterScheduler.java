@@ -0,0 +1,34 @@
+/**
+ * ManualWriterScheduler.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+/**
+ * An {@link IWriterScheduler} which never logs, so the test decides when
+ * logAllInQueue is called.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class ManualWriterScheduler implements IWriterScheduler {
+
+	@Override
+	public IWriterLane register(ObjectLogger<?> objLogger) {
+		return new IWriterLane() {
+			@Override
+			public void signal() {
+			}
+		};
+	}
+
+	@Override
+	public void unregister(ObjectLogger<?> objLogger) {
+	}
+
+	@Override
+	public void shutdown() {
+	}
+
+}
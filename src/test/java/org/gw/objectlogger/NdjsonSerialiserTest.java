@@ -0,0 +1,135 @@
+/**
+ * NdjsonSerialiserTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class NdjsonSerialiserTest {
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+	private File file;
+	private TimestampedObjectNdjsonSerialiser serialiser;
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		file = new File(objectLoggerPath, "test.ndjson");
+		serialiser = new TimestampedObjectNdjsonSerialiser();
+	}
+
+	private List<TimestampedObject<?>> batch(int from, int to) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = from; i < to; i++) {
+			batch.add(new TimestampedObject<TestObject>(new TestObject("" + i,
+					"value" + i)));
+		}
+		return batch;
+	}
+
+	private void assertNames(int count) throws Exception {
+		List<TestObject> read = serialiser.readAll(file, TestObject.class)
+				.asList();
+		Assert.assertEquals(count, read.size());
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals("" + i, read.get(i).name);
+		}
+	}
+
+	@Test
+	public void testOneObjectPerLine() throws Exception {
+		serialiser.open(file);
+		List<TimestampedObject<?>> batch = batch(0, 5);
+		serialiser.write(batch.get(0));
+		serialiser.write(batch.subList(1, 5));
+		serialiser.close();
+
+		List<String> lines = FileUtils.readLines(file);
+		Assert.assertEquals(5, lines.size());
+		Assert.assertTrue(lines.get(0).startsWith("{\"logTime\":"));
+		Assert.assertEquals(file.length(), serialiser.getBytesWritten());
+		assertNames(5);
+	}
+
+	@Test
+	public void testAppends() throws Exception {
+		serialiser.open(file);
+		serialiser.write(batch(0, 5));
+		serialiser.close();
+		serialiser.open(file);
+		serialiser.write(batch(5, 10));
+		serialiser.close();
+		assertNames(10);
+	}
+
+	@Test
+	public void testTruncatedLastLine() throws Exception {
+		serialiser.open(file);
+		serialiser.write(batch(0, 3));
+		serialiser.close();
+
+		// The process died mid-write
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write("{\"logTime\":1,\"obj\":{\"na".getBytes());
+		out.close();
+		assertNames(3);
+
+		// Appending starts a new line after the truncated one
+		serialiser.open(file);
+		serialiser.write(batch(3, 5));
+		serialiser.close();
+		assertNames(5);
+	}
+
+	@Test
+	public void testCursor() throws Exception {
+		serialiser.open(file);
+		serialiser.write(batch(0, 100));
+		serialiser.close();
+
+		ITimestampedObjectCursor<TestObject> cursor = serialiser.openCursor(
+				file, TestObject.class);
+		try {
+			for (int i = 0; i < 10; i++) {
+				Assert.assertTrue(cursor.hasNext());
+				Assert.assertEquals("" + i, cursor.next().getObj().name);
+			}
+		} finally {
+			cursor.close();
+		}
+		Assert.assertFalse(cursor.hasNext());
+	}
+
+	@Test
+	public void testFileSystemDataSource() throws Exception {
+		FileSystemDataSource source = new FileSystemDataSource(
+				"test-ndjson", new MinuteRollingStrategy(1), serialiser);
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.persist(batch(0, 10));
+		source.persist(batch(10, 11).get(0));
+		source.close();
+
+		Assert.assertTrue(source.getFile().getName().endsWith(".ndjson"));
+		List<TestObject> read = source.getAll(TestObject.class).asList();
+		Assert.assertEquals(11, read.size());
+	}
+
+}
@@ -0,0 +1,127 @@
+/**
+ * ParallelEncoderTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class ParallelEncoderTest {
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	private ParallelEncoder parallelEncoder;
+
+	/**
+	 * Encodes the name of the {@link TestObject} and records the threads it
+	 * was called on.
+	 */
+	private static class NameEncoder implements ITimestampedObjectEncoder {
+		private final Set<String> threads = Collections
+				.synchronizedSet(new HashSet<String>());
+
+		@Override
+		public byte[] encode(TimestampedObject<?> object)
+				throws SerialisationException {
+			threads.add(Thread.currentThread().getName());
+			String name = ((TestObject) object.getObj()).name;
+			if ("bad".equals(name)) {
+				throw new SerialisationException("Cannot encode " + name);
+			}
+			return name.getBytes();
+		}
+	}
+
+	@Before
+	public void init() throws IOException {
+		parallelEncoder = new ParallelEncoder(3, 10);
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+	}
+
+	@After
+	public void destroy() {
+		parallelEncoder.shutdown();
+	}
+
+	private List<TimestampedObject<?>> batch(int size) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = 0; i < size; i++) {
+			batch.add(new TimestampedObject<TestObject>(new TestObject("" + i,
+					"" + i)));
+		}
+		return batch;
+	}
+
+	@Test
+	public void testOrderIsKept() throws SerialisationException {
+		NameEncoder encoder = new NameEncoder();
+		List<byte[]> encoded = parallelEncoder.encode(encoder, batch(1000));
+
+		Assert.assertEquals(1000, encoded.size());
+		for (int i = 0; i < encoded.size(); i++) {
+			Assert.assertEquals("" + i, new String(encoded.get(i)));
+		}
+		Assert.assertTrue("Expected more than one thread, found "
+				+ encoder.threads, encoder.threads.size() > 1);
+	}
+
+	@Test
+	public void testSmallBatchEncodedByCaller() throws SerialisationException {
+		NameEncoder encoder = new NameEncoder();
+		List<byte[]> encoded = parallelEncoder.encode(encoder, batch(15));
+
+		Assert.assertEquals(15, encoded.size());
+		Assert.assertEquals(
+				Collections.singleton(Thread.currentThread().getName()),
+				encoder.threads);
+	}
+
+	@Test(expected = SerialisationException.class)
+	public void testFailureIsThrown() throws SerialisationException {
+		List<TimestampedObject<?>> batch = batch(100);
+		batch.set(90, new TimestampedObject<TestObject>(new TestObject("bad",
+				"bad")));
+		parallelEncoder.encode(new NameEncoder(), batch);
+	}
+
+	@Test
+	public void testFileSystemDataSource() throws Exception {
+		FileSystemDataSource source = new FileSystemDataSource(
+				"test-parallel", new MinuteRollingStrategy(1),
+				new TimestampedObjectJsonSerialiser());
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.setParallelEncoder(parallelEncoder);
+
+		source.persist(batch(500));
+		source.persist(batch(5));
+		source.close();
+
+		List<TestObject> read = source.getAll(TestObject.class).asList();
+		Assert.assertEquals(505, read.size());
+		for (int i = 0; i < 500; i++) {
+			Assert.assertEquals("" + i, read.get(i).name);
+		}
+		Assert.assertEquals("4", read.get(504).name);
+	}
+
+}
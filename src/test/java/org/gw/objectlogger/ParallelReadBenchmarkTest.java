@@ -0,0 +1,190 @@
+/**
+ * ParallelReadBenchmarkTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading a range of minute rolled files one at a time with reading
+ * them on a {@link ParallelReader} of 1 up to as many threads as there are
+ * cores. The number of files is given by
+ * <code>-Dobject.logger.benchmark.segments</code> (default 10000, about a
+ * week), each with <code>-Dobject.logger.benchmark.objects</code> objects
+ * (default 100). A single daily file split into parts is read the same way,
+ * with <code>-Dobject.logger.benchmark.large.objects</code> objects (default
+ * 1000000).
+ *
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class ParallelReadBenchmarkTest {
+
+	private static final long minute = 60000;
+
+	private final int segments = Integer.getInteger(
+			"object.logger.benchmark.segments", 10000);
+
+	private final int objects = Integer.getInteger(
+			"object.logger.benchmark.objects", 100);
+
+	private final int largeObjects = Integer.getInteger(
+			"object.logger.benchmark.large.objects", 1000000);
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+	}
+
+	@Test
+	public void testNdjson() throws Exception {
+		benchmark(new TimestampedObjectNdjsonSerialiser());
+	}
+
+	@Test
+	public void testJson() throws Exception {
+		benchmark(new TimestampedObjectJsonSerialiser());
+	}
+
+	@Test
+	public void testOneLargeJsonFile() throws Exception {
+		benchmarkLargeFile(new TimestampedObjectJsonSerialiser());
+	}
+
+	@Test
+	public void testOneLargeNdjsonFile() throws Exception {
+		benchmarkLargeFile(new TimestampedObjectNdjsonSerialiser());
+	}
+
+	private void benchmarkLargeFile(ITimestampedObjectSerialiser serialiser)
+			throws Exception {
+		long start = System.currentTimeMillis() / minute * minute + minute;
+		FileSystemDataSource source = new FileSystemDataSource("benchmark",
+				new DailyRollingStrategy(), serialiser);
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.setSegmentCompressor(null);
+		source.setParallelReader(null);
+		for (int i = 0; i < largeObjects; i += 1000) {
+			List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>(
+					1000);
+			for (int j = i; j < i + 1000; j++) {
+				batch.add(new TimestampedObject<TestObject>(start + j,
+						new TestObject("name" + j, "other value " + j)));
+			}
+			source.persist(batch);
+		}
+		source.close();
+
+		Date from = new Date(start);
+		Date to = new Date(start + largeObjects);
+		// Warm up
+		read(source, from, to, largeObjects);
+
+		long sequential = read(source, from, to, largeObjects);
+		System.out.println(serialiser.getExtension() + ": one file of "
+				+ largeObjects + " objects, sequential "
+				+ TimeUnit.NANOSECONDS.toMillis(sequential) + "ms");
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			ParallelReader reader = new ParallelReader(threads, threads * 2,
+					4 * 1024 * 1024);
+			try {
+				source.setParallelReader(reader);
+				long parallel = read(source, from, to, largeObjects);
+				System.out.println(serialiser.getExtension() + ": " + threads
+						+ " threads " + TimeUnit.NANOSECONDS.toMillis(parallel)
+						+ "ms, speedup "
+						+ String.format("%.2f", (double) sequential / parallel));
+			} finally {
+				reader.shutdown();
+			}
+		}
+	}
+
+	private void benchmark(ITimestampedObjectSerialiser serialiser)
+			throws Exception {
+		long end = System.currentTimeMillis() / minute * minute;
+		long start = end - segments * minute;
+		FileSystemDataSource source = new FileSystemDataSource("benchmark",
+				new MinuteRollingStrategy(1), serialiser);
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.setSegmentCompressor(null);
+		source.setParallelReader(null);
+
+		// Written straight to the files of each minute
+		for (long time = start; time < end; time += minute) {
+			List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>(
+					objects);
+			for (int i = 0; i < objects; i++) {
+				batch.add(new TimestampedObject<TestObject>(time + i,
+						new TestObject("name" + i, "other value " + i)));
+			}
+			serialiser.open(source.getFile(new Date(time)));
+			serialiser.write(batch);
+			serialiser.close();
+		}
+
+		Date from = new Date(start);
+		Date to = new Date(end);
+		// Warm up, and build the catalog
+		Assert.assertEquals(segments * objects,
+				source.getAll(TestObject.class, from, to).size());
+
+		long sequential = read(source, from, to, segments * objects);
+		System.out.println(serialiser.getExtension() + ": " + segments
+				+ " files, sequential "
+				+ TimeUnit.NANOSECONDS.toMillis(sequential) + "ms");
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			ParallelReader reader = new ParallelReader(threads, threads * 2);
+			try {
+				source.setParallelReader(reader);
+				long parallel = read(source, from, to, segments * objects);
+				System.out.println(serialiser.getExtension() + ": " + threads
+						+ " threads " + TimeUnit.NANOSECONDS.toMillis(parallel)
+						+ "ms, speedup "
+						+ String.format("%.2f", (double) sequential / parallel));
+			} finally {
+				reader.shutdown();
+			}
+		}
+	}
+
+	private long read(FileSystemDataSource source, Date from, Date to,
+			int expected) throws IOException {
+		long start = System.nanoTime();
+		ITimestampedObjectCursor<TestObject> cursor = source.stream(
+				TestObject.class, from, to);
+		int count = 0;
+		try {
+			while (cursor.hasNext()) {
+				cursor.next();
+				count++;
+			}
+		} finally {
+			cursor.close();
+		}
+		Assert.assertEquals(expected, count);
+		return System.nanoTime() - start;
+	}
+
+}
@@ -0,0 +1,353 @@
+/**
+ * ParallelReaderTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class ParallelReaderTest {
+
+	private static final long minute = 60000;
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		FileUtils.forceMkdir(objectLoggerPath);
+	}
+
+	/**
+	 * Opens a cursor over the objects given for each file.
+	 */
+	private ConcatenatedCursor.IFileOpener<TestObject> opener(
+			final Map<File, List<TimestampedObject<TestObject>>> contents) {
+		return new ConcatenatedCursor.IFileOpener<TestObject>() {
+			@Override
+			public ITimestampedObjectCursor<TestObject> open(File file)
+					throws IOException {
+				List<TimestampedObject<TestObject>> objects = contents
+						.get(file);
+				if (objects == null) {
+					throw new IOException("No such file " + file);
+				}
+				return new TimeFilteredCursor<TestObject>(objects.iterator(),
+						Long.MIN_VALUE, Long.MAX_VALUE);
+			}
+		};
+	}
+
+	private List<TimestampedObject<TestObject>> objects(long from, long to,
+			long step) {
+		List<TimestampedObject<TestObject>> objects = new ArrayList<TimestampedObject<TestObject>>();
+		for (long logTime = from; logTime < to; logTime += step) {
+			objects.add(new TimestampedObject<TestObject>(logTime,
+					new TestObject("" + logTime, "")));
+		}
+		return objects;
+	}
+
+	private List<Long> drain(ITimestampedObjectCursor<TestObject> cursor)
+			throws IOException {
+		List<Long> logTimes = new ArrayList<Long>();
+		try {
+			while (cursor.hasNext()) {
+				logTimes.add(cursor.next().getLogTimeMillis());
+			}
+		} finally {
+			cursor.close();
+		}
+		return logTimes;
+	}
+
+	@Test
+	public void testOverlappingFilesAreMergedInOrder() throws Exception {
+		Map<File, List<TimestampedObject<TestObject>>> contents = new HashMap<File, List<TimestampedObject<TestObject>>>();
+		List<File> files = new ArrayList<File>();
+		long[] starts = new long[20];
+		for (int i = 0; i < starts.length; i++) {
+			File file = new File(objectLoggerPath, "file" + i);
+			files.add(file);
+			starts[i] = i * 100;
+			// Each file runs on into the next two
+			contents.put(file, objects(starts[i] + i % 3, starts[i] + 300, 3));
+		}
+
+		ParallelReader reader = new ParallelReader(4, 3);
+		try {
+			List<Long> logTimes = drain(reader.read(files, starts,
+					opener(contents)));
+			int expected = 0;
+			for (List<TimestampedObject<TestObject>> objects : contents
+					.values()) {
+				expected += objects.size();
+			}
+			Assert.assertEquals(expected, logTimes.size());
+			for (int i = 1; i < logTimes.size(); i++) {
+				Assert.assertTrue(logTimes.get(i - 1) <= logTimes.get(i));
+			}
+		} finally {
+			reader.shutdown();
+		}
+	}
+
+	@Test
+	public void testFilesOutOfOrderAreSorted() throws Exception {
+		Map<File, List<TimestampedObject<TestObject>>> contents = new HashMap<File, List<TimestampedObject<TestObject>>>();
+		List<File> files = new ArrayList<File>();
+		long[] starts = new long[5];
+		for (int i = 0; i < starts.length; i++) {
+			File file = new File(objectLoggerPath, "file" + i);
+			files.add(file);
+			starts[i] = i * 100;
+			// Persisted in a different order to the one they were logged in
+			List<TimestampedObject<TestObject>> objects = objects(starts[i],
+					starts[i] + 150, 1);
+			Collections.reverse(objects.subList(0, 100));
+			contents.put(file, objects);
+		}
+
+		ParallelReader reader = new ParallelReader(2, 2);
+		try {
+			List<Long> logTimes = drain(reader.read(files, starts,
+					opener(contents)));
+			Assert.assertEquals(5 * 150, logTimes.size());
+			for (int i = 1; i < logTimes.size(); i++) {
+				Assert.assertTrue(logTimes.get(i - 1) <= logTimes.get(i));
+			}
+		} finally {
+			reader.shutdown();
+		}
+	}
+
+	@Test
+	public void testFilesWhichCannotBeOpenedAreSkipped() throws Exception {
+		Map<File, List<TimestampedObject<TestObject>>> contents = new HashMap<File, List<TimestampedObject<TestObject>>>();
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < 3; i++) {
+			files.add(new File(objectLoggerPath, "file" + i));
+		}
+		contents.put(files.get(0), objects(0, 10, 1));
+		contents.put(files.get(2), objects(20, 30, 1));
+
+		ParallelReader reader = new ParallelReader(2, 1);
+		try {
+			Assert.assertEquals(20, drain(reader.read(files, new long[] { 0,
+					10, 20 }, opener(contents))).size());
+		} finally {
+			reader.shutdown();
+		}
+	}
+
+	@Test
+	public void testShutdownReaderReadsOnCaller() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+		ParallelReader reader = new ParallelReader(executor, 1, 2);
+		Map<File, List<TimestampedObject<TestObject>>> contents = new HashMap<File, List<TimestampedObject<TestObject>>>();
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < 3; i++) {
+			File file = new File(objectLoggerPath, "file" + i);
+			files.add(file);
+			contents.put(file, objects(i * 10, i * 10 + 10, 1));
+		}
+		List<Long> logTimes = drain(reader.read(files, new long[] { -1, -1,
+				-1 }, opener(contents)));
+		Assert.assertEquals(30, logTimes.size());
+		for (int i = 0; i < logTimes.size(); i++) {
+			Assert.assertEquals(i, logTimes.get(i).longValue());
+		}
+	}
+
+	@Test
+	public void testFileSystemDataSource() throws Exception {
+		final long now = System.currentTimeMillis() / minute * minute;
+		final Date[] current = { new Date(now - 10 * minute) };
+		final boolean[] roll = { false };
+		FileSystemDataSource source = new FileSystemDataSource("test",
+				new IRollingStrategy() {
+					@Override
+					public void didRoll() {
+						roll[0] = false;
+					}
+
+					@Override
+					public boolean doRoll() {
+						return roll[0];
+					}
+				}, new TimestampedObjectNdjsonSerialiser()) {
+			@Override
+			public File getFile() {
+				return getFile(current[0]);
+			}
+		};
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.setSegmentCompressor(null);
+		for (int i = 0; i < 10; i++) {
+			current[0] = new Date(now - (10 - i) * minute);
+			roll[0] = i > 0;
+			List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+			for (TimestampedObject<TestObject> object : objects(
+					current[0].getTime(), current[0].getTime() + 100, 1)) {
+				batch.add(object);
+			}
+			source.persist(batch);
+		}
+		source.close();
+
+		Date from = new Date(now - 10 * minute);
+		ParallelReader reader = new ParallelReader(4, 8);
+		try {
+			List<TimestampedObject<TestObject>> sequential = source.getAll(
+					TestObject.class, from, new Date(now)).asTimestampedList();
+			source.setParallelReader(reader);
+			List<TimestampedObject<TestObject>> parallel = source.getAll(
+					TestObject.class, from, new Date(now)).asTimestampedList();
+			Assert.assertEquals(1000, parallel.size());
+			for (int i = 0; i < parallel.size(); i++) {
+				Assert.assertEquals(sequential.get(i).getLogTimeMillis(),
+						parallel.get(i).getLogTimeMillis());
+				Assert.assertEquals(sequential.get(i).getObj().name, parallel
+						.get(i).getObj().name);
+			}
+		} finally {
+			reader.shutdown();
+		}
+	}
+
+	private ISplittableSerialiser[] splittableSerialisers() {
+		return new ISplittableSerialiser[] {
+				new TimestampedObjectJsonSerialiser(),
+				new TimestampedObjectJsonChannelSerialiser(),
+				new TimestampedObjectNdjsonSerialiser(),
+				new TimestampedObjectSmileSerialiser(),
+				new BlockCompressedSerialiser(
+						new TimestampedObjectSmileSerialiser(), 4096, 1) };
+	}
+
+	private File write(ISplittableSerialiser serialiser, int records)
+			throws Exception {
+		File file = new File(objectLoggerPath, "test."
+				+ serialiser.getExtension());
+		serialiser.open(file);
+		for (int i = 0; i < records; i += 100) {
+			List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+			for (TimestampedObject<TestObject> object : objects(i, i + 100, 1)) {
+				batch.add(object);
+			}
+			serialiser.write(batch);
+		}
+		serialiser.close();
+		return file;
+	}
+
+	@Test
+	public void testPartsHoldEveryRecordOnce() throws Exception {
+		for (ISplittableSerialiser serialiser : splittableSerialisers()) {
+			init();
+			File file = write(serialiser, 5000);
+			List<long[]> parts = serialiser.split(file, 0, file.length(),
+					4096);
+			String extension = serialiser.getExtension();
+			Assert.assertTrue(extension, parts.size() > 4);
+			List<Long> logTimes = new ArrayList<Long>();
+			for (long[] part : parts) {
+				Assert.assertTrue(extension, part[1] - part[0] > 0);
+				logTimes.addAll(drain(serialiser.openPartCursor(file,
+						TestObject.class, part[0], part[1])));
+			}
+			Assert.assertEquals(extension, 5000, logTimes.size());
+			for (int i = 0; i < logTimes.size(); i++) {
+				Assert.assertEquals(extension, i, logTimes.get(i).longValue());
+			}
+		}
+	}
+
+	@Test
+	public void testUnbracketedJsonIsNotSplit() throws Exception {
+		TimestampedObjectJsonSerialiser serialiser = new TimestampedObjectJsonSerialiser();
+		File file = write(serialiser, 1000);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			// Cut off mid object, as if it were being written
+			raf.setLength(file.length() - 10);
+		} finally {
+			raf.close();
+		}
+		List<long[]> parts = serialiser.split(file, 0, file.length(), 1024);
+		Assert.assertEquals(1, parts.size());
+		Assert.assertEquals(999, drain(serialiser.openPartCursor(file,
+				TestObject.class, 0, file.length())).size());
+	}
+
+	@Test
+	public void testLargeFileIsReadInParts() throws Exception {
+		for (ISplittableSerialiser serialiser : splittableSerialisers()) {
+			init();
+			// Logged after the file is started
+			long start = System.currentTimeMillis() / minute * minute + 2
+					* minute;
+			FileSystemDataSource source = new FileSystemDataSource("test",
+					new DailyRollingStrategy(), serialiser);
+			source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+			source.setSegmentCompressor(null);
+			source.setParallelReader(null);
+			for (int i = 0; i < 5000; i += 500) {
+				List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+				for (TimestampedObject<TestObject> object : objects(start + i,
+						start + i + 500, 1)) {
+					batch.add(object);
+				}
+				source.persist(batch);
+			}
+			source.close();
+
+			Date from = new Date(start + 1000);
+			Date to = new Date(start + 4000);
+			List<TimestampedObject<TestObject>> sequential = source.getAll(
+					TestObject.class, from, to).asTimestampedList();
+			ParallelReader reader = new ParallelReader(4, 8, 4096);
+			try {
+				source.setParallelReader(reader);
+				List<TimestampedObject<TestObject>> parallel = source.getAll(
+						TestObject.class, from, to).asTimestampedList();
+				String extension = serialiser.getExtension();
+				Assert.assertEquals(extension, 3000, sequential.size());
+				Assert.assertEquals(extension, sequential.size(),
+						parallel.size());
+				for (int i = 0; i < parallel.size(); i++) {
+					Assert.assertEquals(extension, sequential.get(i)
+							.getLogTimeMillis(), parallel.get(i)
+							.getLogTimeMillis());
+				}
+			} finally {
+				reader.shutdown();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,233 @@
+/**
+ * PersistAckTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class PersistAckTest {
+
+	/**
+	 * An {@link InMemoryDataSource} which stalls persist(List) until it is
+	 * released.
+	 */
+	private static class StallingDataSource extends InMemoryDataSource {
+		private final CountDownLatch stalled = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public void persist(List<TimestampedObject<?>> batch)
+				throws DataSourceException {
+			stalled.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.persist(batch);
+		}
+	}
+
+	/**
+	 * An {@link InMemoryDataSource} which fails every persist.
+	 */
+	private static class FailingDataSource extends InMemoryDataSource {
+		@Override
+		public void persist(List<TimestampedObject<?>> batch)
+				throws DataSourceException {
+			throw new DataSourceException("Disk full");
+		}
+	}
+
+	private ObjectLogger<TestObject> createLogger(IDataSource source,
+			int capacity, IWriterScheduler scheduler) {
+		return new ObjectLogger<TestObject>(
+				new LinkedLoggerQueue<TimestampedObject<TestObject>>(capacity),
+				source, scheduler) {
+		};
+	}
+
+	@Test
+	public void testLogAndAck() throws Exception {
+		InMemoryDataSource source = new InMemoryDataSource();
+		ObjectLogger<TestObject> logger = new ObjectLogger<TestObject>(source) {
+		};
+		try {
+			PersistFuture future = logger.logAndAck(new TestObject("bob",
+					"bill"));
+			future.get(1, TimeUnit.SECONDS);
+			Assert.assertTrue(future.isPersisted());
+			Assert.assertEquals(1, source.getPersistedCount());
+		} finally {
+			logger.destroy();
+		}
+	}
+
+	@Test
+	public void testListener() throws Exception {
+		ObjectLogger<TestObject> logger = createLogger(
+				new InMemoryDataSource(), 10, new ManualWriterScheduler());
+		final AtomicInteger calls = new AtomicInteger();
+		Runnable listener = new Runnable() {
+			@Override
+			public void run() {
+				calls.incrementAndGet();
+			}
+		};
+
+		PersistFuture future = logger.logAndAck(new TestObject("bob", "bill"));
+		future.addListener(listener);
+		Assert.assertFalse(future.isDone());
+		Assert.assertEquals(0, calls.get());
+
+		logger.logAllInQueue();
+		Assert.assertTrue(future.isPersisted());
+		Assert.assertEquals(1, calls.get());
+
+		// Run straight away once completed
+		future.addListener(listener);
+		Assert.assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testFailedPersist() throws Exception {
+		ObjectLogger<TestObject> logger = createLogger(
+				new FailingDataSource(), 10, new ManualWriterScheduler());
+		PersistFuture future = logger.logAndAck(new TestObject("bob", "bill"));
+		logger.logAllInQueue();
+
+		Assert.assertTrue(future.isDone());
+		Assert.assertFalse(future.isPersisted());
+		try {
+			future.get();
+			Assert.fail("Expected an ExecutionException");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof DataSourceException);
+		}
+	}
+
+	@Test
+	public void testDiscarded() throws Exception {
+		ObjectLogger<TestObject> logger = createLogger(
+				new InMemoryDataSource(), 1, new ManualWriterScheduler());
+		PersistFuture first = logger.logAndAck(new TestObject("1", "1"));
+		PersistFuture second = logger.logAndAck(new TestObject("2", "2"));
+
+		Assert.assertTrue(second.isDone());
+		Assert.assertFalse(second.isPersisted());
+		Assert.assertFalse(first.isDone());
+
+		logger.logAllInQueue();
+		Assert.assertTrue(first.isPersisted());
+	}
+
+	@Test
+	public void testDisabled() {
+		ObjectLogger<TestObject> logger = createLogger(
+				new InMemoryDataSource(), 10, new ManualWriterScheduler());
+		logger.setEnabled(false);
+		PersistFuture future = logger.logAndAck(new TestObject("1", "1"));
+		Assert.assertTrue(future.isDone());
+		Assert.assertTrue(future.getFailure() instanceof IllegalStateException);
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void testGetTimeout() throws Exception {
+		ObjectLogger<TestObject> logger = createLogger(
+				new InMemoryDataSource(), 10, new ManualWriterScheduler());
+		logger.logAndAck(new TestObject("1", "1")).get(10,
+				TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void testFlush() throws InterruptedException {
+		InMemoryDataSource source = new InMemoryDataSource();
+		ObjectLogger<TestObject> logger = createLogger(source, 1000,
+				new ManualWriterScheduler());
+		List<PersistFuture> futures = new ArrayList<PersistFuture>();
+		for (int i = 0; i < 100; i++) {
+			futures.add(logger.logAndAck(new TestObject("" + i, "" + i)));
+		}
+
+		Assert.assertTrue(logger.flush(1, TimeUnit.SECONDS));
+		Assert.assertEquals(100, source.getPersistedCount());
+		for (PersistFuture future : futures) {
+			Assert.assertTrue(future.isPersisted());
+		}
+	}
+
+	@Test
+	public void testFlushWaitsForOtherThread() throws InterruptedException {
+		StallingDataSource source = new StallingDataSource();
+		final ObjectLogger<TestObject> logger = createLogger(source, 1000,
+				new ManualWriterScheduler());
+		logger.log(new TestObject("stall", "stall"));
+		Thread drainer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				logger.logAllInQueue();
+			}
+		});
+		drainer.start();
+		Assert.assertTrue(source.stalled.await(1, TimeUnit.SECONDS));
+
+		logger.log(new TestObject("1", "1"));
+		Assert.assertFalse(logger.flush(100, TimeUnit.MILLISECONDS));
+
+		source.release.countDown();
+		Assert.assertTrue(logger.flush(1, TimeUnit.SECONDS));
+		Assert.assertEquals(2, source.getPersistedCount());
+		drainer.join(1000);
+	}
+
+	@Test
+	public void testSchedulerShutdownDrainsQueue() throws InterruptedException {
+		StallingDataSource source = new StallingDataSource();
+		DedicatedThreadWriterScheduler scheduler = new DedicatedThreadWriterScheduler(
+				new BlockingWaitStrategy());
+		ObjectLogger<TestObject> logger = createLogger(source, 1000,
+				scheduler);
+		logger.log(new TestObject("stall", "stall"));
+		Assert.assertTrue(source.stalled.await(1, TimeUnit.SECONDS));
+		for (int i = 0; i < 5; i++) {
+			logger.log(new TestObject("" + i, "" + i));
+		}
+
+		scheduler.shutdown();
+		source.release.countDown();
+		for (int i = 0; i < 2; i++) {
+			Assert.assertNotNull(source.getPersistTimes().poll(1,
+					TimeUnit.SECONDS));
+		}
+		Assert.assertEquals(6, source.getPersistedCount());
+	}
+
+	@Test
+	public void testFlushAll() throws InterruptedException {
+		InMemoryDataSource source = new InMemoryDataSource();
+		ObjectLogger<TestObject> logger = createLogger(source, 1000,
+				new ManualWriterScheduler());
+		for (int i = 0; i < 10; i++) {
+			logger.log(new TestObject("" + i, "" + i));
+		}
+
+		ObjectLoggerShutdownHook.flushAll(1, TimeUnit.SECONDS);
+		Assert.assertEquals(10, source.getPersistedCount());
+	}
+
+}
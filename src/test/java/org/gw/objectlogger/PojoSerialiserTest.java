@@ -0,0 +1,194 @@
+/**
+ * PojoSerialiserTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class PojoSerialiserTest {
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+	private File file;
+
+	public enum Side {
+		BUY, SELL
+	}
+
+	public static class Fill {
+		private long id;
+		private int quantity;
+		private double price;
+		private boolean cancelled;
+		private char venue;
+		private Side side;
+		private String symbol;
+		private Date tradeTime;
+		private Long parentId;
+		private byte[] tag;
+		private transient String cached = "cached";
+
+		public Fill() {
+		}
+
+		public Fill(long id, String symbol) {
+			this.id = id;
+			this.quantity = (int) id * 100;
+			this.price = id + 0.25;
+			this.cancelled = id % 2 == 0;
+			this.venue = 'X';
+			this.side = id % 2 == 0 ? Side.BUY : Side.SELL;
+			this.symbol = symbol;
+			this.tradeTime = new Date(id);
+			this.parentId = id % 2 == 0 ? null : Long.valueOf(id);
+			this.tag = new byte[] { (byte) id };
+		}
+	}
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		file = new File(objectLoggerPath, "test.pojo");
+	}
+
+	private List<TimestampedObject<?>> fills(int from, int to) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = from; i < to; i++) {
+			batch.add(new TimestampedObject<Fill>(1000L + i, new Fill(i,
+					i % 3 == 0 ? null : "SYM" + i)));
+		}
+		return batch;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		TimestampedObjectPojoSerialiser<Fill> serialiser = new TimestampedObjectPojoSerialiser<Fill>(
+				Fill.class);
+		serialiser.open(file);
+		serialiser.write(fills(0, 10));
+		serialiser.write(new TimestampedObject<Fill>(2000L, null));
+		serialiser.close();
+
+		List<TimestampedObject<Fill>> read = new ArrayList<TimestampedObject<Fill>>();
+		ITimestampedObjectCursor<Fill> cursor = serialiser.openCursor(file,
+				Fill.class);
+		try {
+			while (cursor.hasNext()) {
+				read.add(cursor.next());
+			}
+		} finally {
+			cursor.close();
+		}
+		Assert.assertEquals(11, read.size());
+		for (int i = 0; i < 10; i++) {
+			Fill expected = new Fill(i, i % 3 == 0 ? null : "SYM" + i);
+			Fill fill = read.get(i).getObj();
+			Assert.assertEquals(1000L + i, read.get(i).getLogTimeMillis());
+			Assert.assertEquals(expected.id, fill.id);
+			Assert.assertEquals(expected.quantity, fill.quantity);
+			Assert.assertEquals(expected.price, fill.price, 0);
+			Assert.assertEquals(expected.cancelled, fill.cancelled);
+			Assert.assertEquals(expected.venue, fill.venue);
+			Assert.assertEquals(expected.side, fill.side);
+			Assert.assertEquals(expected.symbol, fill.symbol);
+			Assert.assertEquals(expected.tradeTime, fill.tradeTime);
+			Assert.assertEquals(expected.parentId, fill.parentId);
+			Assert.assertArrayEquals(expected.tag, fill.tag);
+			// Transient fields are not encoded
+			Assert.assertEquals("cached", fill.cached);
+		}
+		Assert.assertEquals(2000L, read.get(10).getLogTimeMillis());
+		Assert.assertNull(read.get(10).getObj());
+	}
+
+	@Test
+	public void testOnlyFieldsReadAreDecoded() throws Exception {
+		PojoCodec<Fill> codec = new PojoCodec<Fill>(Fill.class);
+		Set<String> fields = new HashSet<String>(Arrays.asList("symbol",
+				"tradeTime", "venue"));
+		for (TimestampedObject<?> object : fills(0, 10)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			codec.encode(object, out);
+			byte[] data = out.toByteArray();
+			Fill expected = (Fill) object.getObj();
+			Fill fill = codec.decode(data, 0, data.length, fields).getObj();
+			Assert.assertEquals(expected.symbol, fill.symbol);
+			Assert.assertEquals(expected.tradeTime, fill.tradeTime);
+			Assert.assertEquals(expected.venue, fill.venue);
+			// Everything else is skipped
+			Assert.assertEquals(0, fill.id);
+			Assert.assertEquals(0, fill.price, 0);
+			Assert.assertNull(fill.side);
+			Assert.assertNull(fill.parentId);
+			Assert.assertNull(fill.tag);
+		}
+	}
+
+	@Test
+	public void testNamedFields() throws Exception {
+		TimestampedObjectPojoSerialiser<TestObject> serialiser = new TimestampedObjectPojoSerialiser<TestObject>(
+				new PojoCodec<TestObject>(TestObject.class, "name", "other"));
+		serialiser.open(file);
+		serialiser.write(new TimestampedObject<TestObject>(1000L,
+				new TestObject("name", "other")));
+		serialiser.close();
+
+		List<TestObject> read = serialiser.readAll(file, TestObject.class)
+				.asList();
+		Assert.assertEquals(1, read.size());
+		Assert.assertEquals(new TestObject("name", "other"), read.get(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedField() {
+		// TestObject has a DataOutputStream
+		new PojoCodec<TestObject>(TestObject.class);
+	}
+
+	@Test(expected = SerialisationException.class)
+	public void testWrongClass() throws Exception {
+		TimestampedObjectPojoSerialiser<Fill> serialiser = new TimestampedObjectPojoSerialiser<Fill>(
+				Fill.class);
+		serialiser.open(file);
+		try {
+			serialiser.write(new TimestampedObject<String>("string"));
+		} finally {
+			serialiser.close();
+		}
+	}
+
+	@Test
+	public void testFileSystemDataSource() throws Exception {
+		FileSystemDataSource source = new FileSystemDataSource("test-pojo",
+				new MinuteRollingStrategy(1),
+				new TimestampedObjectPojoSerialiser<Fill>(Fill.class));
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.persist(fills(0, 10));
+		source.close();
+
+		Assert.assertTrue(source.getFile().getName().endsWith(".pojo"));
+		Assert.assertEquals(10, source.getAll(Fill.class).size());
+	}
+
+}
@@ -0,0 +1,187 @@
+/**
+ * ProjectionTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class ProjectionTest {
+
+	private static final long minute = 60000;
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	public static class Trade {
+		public String symbol;
+		public long quantity;
+		public double price;
+		public String venue;
+		public String comment;
+
+		public Trade() {
+		}
+
+		public Trade(int i) {
+			this.symbol = "SYM" + i % 10;
+			this.quantity = i;
+			this.price = i + 0.5;
+			this.venue = i % 2 == 0 ? "X" : "Y";
+			this.comment = "A comment which is never read " + i;
+		}
+	}
+
+	/**
+	 * Holds only the fields a dashboard reads.
+	 */
+	public static class TradeView {
+		public String symbol;
+		public double price;
+	}
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		FileUtils.forceMkdir(objectLoggerPath);
+	}
+
+	private ITimestampedObjectSerialiser[] jsonSerialisers() {
+		return new ITimestampedObjectSerialiser[] {
+				new TimestampedObjectJsonSerialiser(),
+				new TimestampedObjectNdjsonSerialiser(),
+				new TimestampedObjectSmileSerialiser(),
+				new BlockCompressedSerialiser(
+						new TimestampedObjectSmileSerialiser(), 4096, 1) };
+	}
+
+	/**
+	 * Logs 1000 trades from <code>start</code>, a millisecond apart.
+	 */
+	private FileSystemDataSource write(ITimestampedObjectSerialiser serialiser,
+			long start) throws Exception {
+		FileSystemDataSource source = new FileSystemDataSource("test",
+				new DailyRollingStrategy(), serialiser);
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.setSegmentCompressor(null);
+		source.setParallelReader(null);
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = 0; i < 1000; i++) {
+			batch.add(new TimestampedObject<Trade>(start + i, new Trade(i)));
+		}
+		source.persist(batch);
+		source.close();
+		return source;
+	}
+
+	private long start() {
+		// Logged after the file is started
+		return System.currentTimeMillis() / minute * minute + 2 * minute;
+	}
+
+	@Test
+	public void testOnlyNamedFieldsAreRead() throws Exception {
+		List<ITimestampedObjectSerialiser> serialisers = new ArrayList<ITimestampedObjectSerialiser>();
+		for (ITimestampedObjectSerialiser serialiser : jsonSerialisers()) {
+			serialisers.add(serialiser);
+		}
+		serialisers.add(new TimestampedObjectPojoSerialiser<Trade>(
+				Trade.class));
+		for (ITimestampedObjectSerialiser serialiser : serialisers) {
+			init();
+			long start = start();
+			FileSystemDataSource source = write(serialiser, start);
+			String extension = serialiser.getExtension();
+
+			List<TimestampedObject<Trade>> trades = source.getAll(
+					Trade.class, new Date(start + 100), new Date(start + 200),
+					"symbol", "price").asTimestampedList();
+			Assert.assertEquals(extension, 100, trades.size());
+			for (int i = 0; i < trades.size(); i++) {
+				Trade trade = trades.get(i).getObj();
+				Assert.assertEquals(extension, start + 100 + i, trades.get(i)
+						.getLogTimeMillis());
+				Assert.assertEquals(extension, "SYM" + i % 10, trade.symbol);
+				Assert.assertEquals(extension, 100 + i + 0.5, trade.price, 0);
+				Assert.assertEquals(extension, 0, trade.quantity);
+				Assert.assertNull(extension, trade.venue);
+				Assert.assertNull(extension, trade.comment);
+			}
+		}
+	}
+
+	@Test
+	public void testViewClass() throws Exception {
+		for (ITimestampedObjectSerialiser serialiser : jsonSerialisers()) {
+			init();
+			long start = start();
+			FileSystemDataSource source = write(serialiser, start);
+			String extension = serialiser.getExtension();
+
+			ITimestampedObjectCursor<TradeView> cursor = source.stream(
+					TradeView.class, new Date(start), new Date(start + 1000),
+					"symbol", "price");
+			int count = 0;
+			try {
+				while (cursor.hasNext()) {
+					TradeView view = cursor.next().getObj();
+					Assert.assertEquals(extension, "SYM" + count % 10,
+							view.symbol);
+					Assert.assertEquals(extension, count + 0.5, view.price, 0);
+					count++;
+				}
+			} finally {
+				cursor.close();
+			}
+			Assert.assertEquals(extension, 1000, count);
+		}
+	}
+
+	@Test
+	public void testFieldsWithPredicates() throws Exception {
+		for (ITimestampedObjectSerialiser serialiser : jsonSerialisers()) {
+			init();
+			long start = start();
+			FileSystemDataSource source = write(serialiser, start);
+			String extension = serialiser.getExtension();
+
+			// Tested on a field which is not read
+			RecordFilter filter = new RecordFilter(start, start + 1000,
+					FieldPredicates.equalTo("venue", "Y"),
+					FieldPredicates.equalTo("symbol", "SYM3")).withFields(
+					"symbol", "price");
+			ParallelReader reader = new ParallelReader(2, 4, 4096);
+			try {
+				for (ParallelReader parallelReader : new ParallelReader[] {
+						null, reader }) {
+					source.setParallelReader(parallelReader);
+					List<TradeView> views = source.getAll(TradeView.class,
+							filter).asList();
+					Assert.assertEquals(extension, 100, views.size());
+					for (TradeView view : views) {
+						Assert.assertEquals(extension, "SYM3", view.symbol);
+					}
+				}
+			} finally {
+				reader.shutdown();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,193 @@
+/**
+ * RecordFilterTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class RecordFilterTest {
+
+	private static final long minute = 60000;
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	public static class Order {
+		static final AtomicInteger created = new AtomicInteger();
+
+		public String symbol;
+		public long quantity;
+		public boolean cancelled;
+
+		public Order() {
+			created.incrementAndGet();
+		}
+
+		public Order(String symbol, long quantity) {
+			this();
+			this.symbol = symbol;
+			this.quantity = quantity;
+			this.cancelled = quantity % 2 == 0;
+		}
+	}
+
+	public static class Basket {
+		public List<Order> orders = new ArrayList<Order>();
+		public String owner;
+	}
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		FileUtils.forceMkdir(objectLoggerPath);
+	}
+
+	private ITimestampedObjectSerialiser[] serialisers() {
+		return new ITimestampedObjectSerialiser[] {
+				new TimestampedObjectJsonSerialiser(),
+				new TimestampedObjectNdjsonSerialiser(),
+				new TimestampedObjectSmileSerialiser(),
+				new TimestampedObjectPojoSerialiser<Order>(Order.class),
+				new BlockCompressedSerialiser(
+						new TimestampedObjectSmileSerialiser(), 4096, 1) };
+	}
+
+	/**
+	 * Logs 5000 orders from <code>start</code>, a millisecond apart, for 10
+	 * symbols in turn.
+	 */
+	private FileSystemDataSource write(ITimestampedObjectSerialiser serialiser,
+			long start) throws Exception {
+		FileSystemDataSource source = new FileSystemDataSource("test",
+				new DailyRollingStrategy(), serialiser);
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.setSegmentCompressor(null);
+		source.setParallelReader(null);
+		for (int i = 0; i < 5000; i += 500) {
+			List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+			for (int j = i; j < i + 500; j++) {
+				batch.add(new TimestampedObject<Order>(start + j, new Order(
+						"SYM" + j % 10, j)));
+			}
+			source.persist(batch);
+		}
+		source.close();
+		return source;
+	}
+
+	@Test
+	public void testPredicatesAreAppliedByEverySerialiser() throws Exception {
+		for (ITimestampedObjectSerialiser serialiser : serialisers()) {
+			init();
+			// Logged after the file is started
+			long start = System.currentTimeMillis() / minute * minute + 2
+					* minute;
+			FileSystemDataSource source = write(serialiser, start);
+			String extension = serialiser.getExtension();
+
+			List<TimestampedObject<Order>> orders = source.getAll(Order.class,
+					new Date(start + 1000), new Date(start + 2000),
+					FieldPredicates.equalTo("symbol", "SYM3"),
+					FieldPredicates.equalTo("cancelled", false))
+					.asTimestampedList();
+			Assert.assertEquals(extension, 100, orders.size());
+			for (int i = 0; i < orders.size(); i++) {
+				Order order = orders.get(i).getObj();
+				Assert.assertEquals(extension, start + 1003 + i * 10, orders
+						.get(i).getLogTimeMillis());
+				Assert.assertEquals(extension, "SYM3", order.symbol);
+				Assert.assertEquals(extension, 1003 + i * 10, order.quantity);
+			}
+
+			// Read in parts
+			ParallelReader reader = new ParallelReader(2, 4, 4096);
+			try {
+				source.setParallelReader(reader);
+				Assert.assertEquals(extension, 2, source.getAll(Order.class,
+						new Date(start), new Date(start + 5000),
+						FieldPredicates.in("quantity", 7, 4007L, 8000))
+						.size());
+			} finally {
+				reader.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void testRejectedRecordsAreNotDeserialised() throws Exception {
+		ITimestampedObjectSerialiser[] serialisers = {
+				new TimestampedObjectJsonSerialiser(),
+				new TimestampedObjectNdjsonSerialiser(),
+				new TimestampedObjectSmileSerialiser() };
+		for (ITimestampedObjectSerialiser serialiser : serialisers) {
+			init();
+			long start = System.currentTimeMillis() / minute * minute + 2
+					* minute;
+			FileSystemDataSource source = write(serialiser, start);
+
+			Order.created.set(0);
+			Assert.assertEquals(1, source.getAll(Order.class, new Date(start),
+					new Date(start + 5000),
+					FieldPredicates.equalTo("quantity", 1234),
+					FieldPredicates.in("symbol", "SYM4", "SYM5")).size());
+			Assert.assertEquals(serialiser.getExtension(), 1,
+					Order.created.get());
+		}
+	}
+
+	@Test
+	public void testTokens() throws Exception {
+		TimestampedObjectJsonCodec codec = new TimestampedObjectJsonCodec();
+		byte[] data = codec.encode(new TimestampedObject<Order>(100,
+				new Order("ABC", 7)));
+		RecordFilter filter = new RecordFilter(0, 1000,
+				FieldPredicates.equalTo("symbol", "ABC"),
+				FieldPredicates.equalTo("quantity", 7.0));
+		Assert.assertEquals("ABC", codec.decode(Order.class, data, 0,
+				data.length, filter).getObj().symbol);
+
+		// Out of the range
+		Assert.assertNull(codec.decode(Order.class, data, 0, data.length,
+				new RecordFilter(101, 1000)));
+		// A missing field is null
+		Assert.assertNull(codec.decode(Order.class, data, 0, data.length,
+				new RecordFilter(0, 1000, FieldPredicates.equalTo("missing",
+						"ABC"))));
+		Assert.assertNotNull(codec.decode(Order.class, data, 0, data.length,
+				new RecordFilter(0, 1000, FieldPredicates.equalTo("missing",
+						null))));
+
+		// An array is skipped, and tested as null
+		Basket basket = new Basket();
+		basket.orders.add(new Order("ABC", 7));
+		basket.owner = "me";
+		data = codec.encode(new TimestampedObject<Basket>(100, basket));
+		Assert.assertEquals(1, codec.decode(Basket.class, data, 0,
+				data.length, new RecordFilter(0, 1000,
+						FieldPredicates.equalTo("orders", null),
+						FieldPredicates.equalTo("owner", "me"))).getObj().orders
+				.size());
+		Assert.assertNull(codec.decode(Basket.class, data, 0, data.length,
+				new RecordFilter(0, 1000, FieldPredicates.equalTo("symbol",
+						"ABC"))));
+	}
+
+}
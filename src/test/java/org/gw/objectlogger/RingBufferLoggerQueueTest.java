@@ -0,0 +1,212 @@
+/**
+ * RingBufferLoggerQueueTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class RingBufferLoggerQueueTest {
+
+	@Test
+	public void testCapacityRoundedToPowerOfTwo() {
+		Assert.assertEquals(1, new RingBufferLoggerQueue<Integer>(1).capacity());
+		Assert.assertEquals(8, new RingBufferLoggerQueue<Integer>(8).capacity());
+		Assert.assertEquals(16, new RingBufferLoggerQueue<Integer>(9).capacity());
+		Assert.assertEquals(131072,
+				new RingBufferLoggerQueue<Integer>(100000).capacity());
+	}
+
+	@Test
+	public void testOfferPollAndFull() {
+		RingBufferLoggerQueue<Integer> queue = new RingBufferLoggerQueue<Integer>(4);
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertNull(queue.poll());
+
+		// Go round the ring a few times
+		for (int lap = 0; lap < 3; lap++) {
+			for (int i = 0; i < 4; i++) {
+				Assert.assertTrue(queue.offer(i));
+			}
+			Assert.assertFalse("Queue should be full", queue.offer(4));
+			Assert.assertEquals(4, queue.size());
+
+			Assert.assertEquals(Integer.valueOf(0), queue.poll());
+			Assert.assertTrue(queue.offer(4));
+
+			List<Integer> drained = new ArrayList<Integer>();
+			Assert.assertEquals(2, queue.drainTo(drained, 2));
+			Assert.assertEquals(2, queue.drainTo(drained, 10));
+			Assert.assertEquals(Arrays.asList(1, 2, 3, 4), drained);
+			Assert.assertTrue(queue.isEmpty());
+			Assert.assertEquals(0, queue.size());
+		}
+	}
+
+	/**
+	 * Many producers and one consumer. Nothing may be lost or duplicated and
+	 * each producer's elements must come out in the order they went in.
+	 */
+	@Test
+	public void testManyProducers() throws InterruptedException {
+		final int producers = 16;
+		final int perProducer = 50000;
+		final RingBufferLoggerQueue<long[]> queue = new RingBufferLoggerQueue<long[]>(
+				1024);
+
+		final CountDownLatch done = new CountDownLatch(producers);
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < perProducer; i++) {
+						long[] e = new long[]{producer, i};
+						while (!queue.offer(e)) {
+							Thread.yield();
+						}
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+
+		long[] next = new long[producers];
+		int received = 0;
+		List<long[]> batch = new ArrayList<long[]>();
+		long deadline = System.currentTimeMillis() + 30000;
+		while (received < producers * perProducer) {
+			Assert.assertTrue("Took too long",
+					System.currentTimeMillis() < deadline);
+			batch.clear();
+			if (queue.drainTo(batch, 256) == 0) {
+				Thread.yield();
+				continue;
+			}
+			for (long[] e : batch) {
+				Assert.assertEquals("Out of order for producer " + e[0],
+						next[(int) e[0]], e[1]);
+				next[(int) e[0]]++;
+				received++;
+			}
+		}
+		Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+		Assert.assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testObjectLogger() throws InterruptedException {
+		final int threads = 16;
+		final int perThread = 1000;
+		InMemoryDataSource source = new InMemoryDataSource();
+		final ObjectLogger<TestObject> logger = new ObjectLogger<TestObject>(
+				new RingBufferLoggerQueue<TimestampedObject<TestObject>>(
+						threads * perThread), source) {
+		};
+
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < perThread; i++) {
+						logger.log(new TestObject("" + i, "" + i));
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (source.getPersistedCount() < threads * perThread
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(threads * perThread, source.getPersistedCount());
+		Assert.assertEquals(0, logger.getQueueSize());
+		logger.destroy();
+	}
+
+	/**
+	 * Compares the contended throughput of the {@link RingBufferLoggerQueue}
+	 * and the {@link LinkedLoggerQueue} with 64 producers and one consumer.
+	 */
+	@Test
+	public void testContendedThroughput() throws InterruptedException {
+		int producers = 64;
+		int perProducer = 20000;
+
+		// Warm up
+		measureThroughput(new LinkedLoggerQueue<Object>(65536), producers,
+				perProducer / 4);
+		measureThroughput(new RingBufferLoggerQueue<Object>(65536),
+				producers, perProducer / 4);
+
+		long linked = measureThroughput(new LinkedLoggerQueue<Object>(65536),
+				producers, perProducer);
+		long ring = measureThroughput(new RingBufferLoggerQueue<Object>(65536),
+				producers, perProducer);
+
+		System.out.println(producers + " producers: LinkedLoggerQueue "
+				+ linked + " ops/ms, RingBufferLoggerQueue " + ring
+				+ " ops/ms");
+	}
+
+	/**
+	 * @return the number of elements passed through the queue per
+	 *         millisecond.
+	 */
+	private long measureThroughput(final ILoggerQueue<Object> queue,
+			int producers, final int perProducer) throws InterruptedException {
+		final Object element = new Object();
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int p = 0; p < producers; p++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < perProducer; i++) {
+						while (!queue.offer(element)) {
+							Thread.yield();
+						}
+					}
+				}
+			}).start();
+		}
+
+		List<Object> batch = new ArrayList<Object>(4096);
+		long total = (long) producers * perProducer;
+		long received = 0;
+		long begin = System.nanoTime();
+		start.countDown();
+		while (received < total) {
+			batch.clear();
+			int drained = queue.drainTo(batch, 4096);
+			if (drained == 0) {
+				Thread.yield();
+			}
+			received += drained;
+		}
+		long millis = Math.max(1,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+		return total / millis;
+	}
+
+}
@@ -0,0 +1,276 @@
+/**
+ * SegmentCacheTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class SegmentCacheTest {
+
+	private static final long minute = 60000;
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		FileUtils.forceMkdir(objectLoggerPath);
+	}
+
+	private List<TimestampedObject<?>> batch(long logTime, int from, int to) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = from; i < to; i++) {
+			batch.add(new TimestampedObject<TestObject>(logTime + i,
+					new TestObject("name" + i, "value" + i)));
+		}
+		return batch;
+	}
+
+	private List<TimestampedObject<?>> byteArrays(long logTime, int from,
+			int to) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = from; i < to; i++) {
+			batch.add(new TimestampedObject<byte[]>(logTime + i,
+					("value" + i).getBytes()));
+		}
+		return batch;
+	}
+
+	private FileSystemDataSource newSource(IRollingStrategy rollingStrategy,
+			ITimestampedObjectSerialiser serialiser, SegmentCache cache) {
+		FileSystemDataSource source = new FileSystemDataSource("test",
+				rollingStrategy, serialiser);
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.setSegmentCompressor(null);
+		source.setParallelReader(null);
+		source.setSegmentCache(cache);
+		return source;
+	}
+
+	private static void assertObjects(List<TestObject> objects, int from,
+			int to) {
+		Assert.assertEquals(to - from, objects.size());
+		for (int i = from; i < to; i++) {
+			Assert.assertEquals("name" + i, objects.get(i - from).name);
+		}
+	}
+
+	@Test
+	public void testRepeatedRangeIsReadFromCache() throws Exception {
+		SegmentCache cache = new SegmentCache(1024 * 1024);
+		FileSystemDataSource source = newSource(new DailyRollingStrategy(),
+				new TimestampedObjectNdjsonSerialiser(), cache);
+		// Logged after the file is started
+		long start = System.currentTimeMillis() / minute * minute + 2
+				* minute;
+		source.persist(batch(start, 0, 1000));
+		source.close();
+
+		Date from = new Date(start + 100);
+		Date to = new Date(start + 200);
+		assertObjects(source.getAll(TestObject.class, from, to).asList(),
+				100, 200);
+		Assert.assertEquals(1, cache.getMissCount());
+		Assert.assertEquals(0, cache.getHitCount());
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(source.getFile().length(), cache.getWeight());
+
+		// Any range of the file
+		assertObjects(source.getAll(TestObject.class, from, to).asList(),
+				100, 200);
+		assertObjects(source.getAll(TestObject.class, new Date(start),
+				new Date(start + 1000)).asList(), 0, 1000);
+		Assert.assertEquals(1, cache.getMissCount());
+		Assert.assertEquals(2, cache.getHitCount());
+
+		// A filter which tests the objects reads the file
+		Assert.assertEquals(1, source.getAll(TestObject.class, from, to,
+				FieldPredicates.equalTo("name", "name150")).size());
+		Assert.assertEquals(1, cache.getMissCount());
+		Assert.assertEquals(2, cache.getHitCount());
+	}
+
+	@Test
+	public void testGetAllFromIsReadFromCache() throws Exception {
+		SegmentCache cache = new SegmentCache(1024 * 1024);
+		FileSystemDataSource source = newSource(new DailyRollingStrategy(),
+				new TimestampedObjectNdjsonSerialiser(), cache);
+		long start = System.currentTimeMillis() / minute * minute + 2
+				* minute;
+		source.persist(batch(start, 0, 1000));
+		source.close();
+
+		Date from = new Date(System.currentTimeMillis() - minute);
+		assertObjects(source.getAll(TestObject.class, from).asList(), 0, 1000);
+		assertObjects(source.getAll(TestObject.class, from).asList(), 0, 1000);
+		Assert.assertEquals(1, cache.getMissCount());
+		Assert.assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testOnlyTheTailOfTheActiveFileIsRead() throws Exception {
+		ITimestampedObjectSerialiser[] serialisers = {
+				new TimestampedObjectNdjsonSerialiser(),
+				new TimestampedObjectJsonSerialiser(),
+				new TimestampedObjectJsonChannelSerialiser(),
+				new TimestampedObjectSmileSerialiser(),
+				new BlockCompressedSerialiser(
+						new TimestampedObjectSmileSerialiser(), 4096, 1) };
+		for (ITimestampedObjectSerialiser serialiser : serialisers) {
+			init();
+			String extension = serialiser.getClass().getSimpleName();
+			SegmentCache cache = new SegmentCache(1024 * 1024);
+			FileSystemDataSource source = newSource(
+					new DailyRollingStrategy(), serialiser, cache);
+			long start = System.currentTimeMillis() / minute * minute + 2
+					* minute;
+			Date from = new Date(start);
+			Date to = new Date(start + 1000);
+
+			source.persist(batch(start, 0, 300));
+			assertObjects(source.getAll(TestObject.class, from, to).asList(),
+					0, 300);
+			source.persist(batch(start, 300, 500));
+			assertObjects(source.getAll(TestObject.class, from, to).asList(),
+					0, 500);
+			source.persist(batch(start, 500, 600));
+			assertObjects(source.getAll(TestObject.class, from, to).asList(),
+					0, 600);
+			assertObjects(source.getAll(TestObject.class, from, to).asList(),
+					0, 600);
+			source.close();
+
+			Assert.assertEquals(extension, 1, cache.getMissCount());
+			Assert.assertEquals(extension, 2, cache.getTailReadCount());
+			Assert.assertEquals(extension, 1, cache.getHitCount());
+			Assert.assertEquals(extension, source.getFile().length(),
+					cache.getWeight());
+		}
+	}
+
+	@Test
+	public void testFileWhichCannotBeReadInPartsIsReadAgain()
+			throws Exception {
+		SegmentCache cache = new SegmentCache(1024 * 1024);
+		FileSystemDataSource source = newSource(new DailyRollingStrategy(),
+				new TimestampedByteArraySerialiser(), cache);
+		long start = System.currentTimeMillis() / minute * minute + 2
+				* minute;
+		Date from = new Date(start);
+		Date to = new Date(start + 1000);
+
+		source.persist(byteArrays(start, 0, 300));
+		Assert.assertEquals(300, source.getAll(byte[].class, from, to).size());
+		source.persist(byteArrays(start, 300, 500));
+		Assert.assertEquals(500, source.getAll(byte[].class, from, to).size());
+		source.close();
+		Assert.assertEquals(2, cache.getMissCount());
+		Assert.assertEquals(0, cache.getTailReadCount());
+		Assert.assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testLeastRecentlyReadAreEvicted() throws Exception {
+		ITimestampedObjectSerialiser serialiser = new TimestampedObjectNdjsonSerialiser();
+		FileSystemDataSource source = newSource(new MinuteRollingStrategy(1),
+				serialiser, null);
+		long start = System.currentTimeMillis() / minute * minute - 3
+				* minute;
+		long length = 0;
+		for (int i = 0; i < 3; i++) {
+			File file = source.getFile(new Date(start + i * minute));
+			serialiser.open(file);
+			serialiser.write(batch(start + i * minute, 0, 100));
+			serialiser.close();
+			length = Math.max(length, file.length());
+		}
+		// Room for two files
+		SegmentCache cache = new SegmentCache(length * 2 + 10);
+		source.setSegmentCache(cache);
+
+		int[] minutes = { 0, 1, 0, 2, 0, 1 };
+		for (int m : minutes) {
+			long time = start + m * minute;
+			assertObjects(source.getAll(TestObject.class, new Date(time),
+					new Date(time + 100)).asList(), 0, 100);
+			Assert.assertTrue(cache.getWeight() <= cache.getMaxWeight());
+		}
+		// The second minute was dropped for the third
+		Assert.assertEquals(4, cache.getMissCount());
+		Assert.assertEquals(2, cache.getHitCount());
+		Assert.assertEquals(2, cache.getEvictionCount());
+		Assert.assertEquals(2, cache.size());
+
+		// Too large to cache
+		cache = new SegmentCache(length / 2);
+		source.setSegmentCache(cache);
+		assertObjects(source.getAll(TestObject.class, new Date(start),
+				new Date(start + 100)).asList(), 0, 100);
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0, cache.getMissCount());
+	}
+
+	@Test
+	public void testChangedFileIsReadAgain() throws Exception {
+		ITimestampedObjectSerialiser serialiser = new TimestampedObjectSmileSerialiser();
+		SegmentCache cache = new SegmentCache(1024 * 1024);
+		FileSystemDataSource source = newSource(new MinuteRollingStrategy(1),
+				serialiser, cache);
+		long start = System.currentTimeMillis() / minute * minute - 2
+				* minute;
+		Date from = new Date(start);
+		Date to = new Date(start + 100);
+		File file = source.getFile(from);
+		serialiser.open(file);
+		serialiser.write(batch(start, 0, 100));
+		serialiser.close();
+		assertObjects(source.getAll(TestObject.class, from, to).asList(), 0,
+				100);
+
+		// Written again, shorter
+		FileUtils.forceDelete(file);
+		FileUtils.deleteQuietly(TimeIndex.getIndexFile(file));
+		serialiser.open(file);
+		serialiser.write(batch(start, 50, 100));
+		serialiser.close();
+		assertObjects(source.getAll(TestObject.class, from, to).asList(), 50,
+				100);
+		Assert.assertEquals(2, cache.getMissCount());
+		Assert.assertEquals(0, cache.getTailReadCount());
+
+		// Compressed since it was cached, within the same modified time
+		long weight = cache.getWeight();
+		long lastModified = file.lastModified();
+		File compressed = new SegmentCompressor(0).compress(file);
+		compressed.setLastModified(lastModified);
+		assertObjects(source.getAll(TestObject.class, from, to).asList(), 50,
+				100);
+		Assert.assertEquals(3, cache.getMissCount());
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(weight, cache.getWeight());
+		Assert.assertEquals(weight,
+				SegmentCompressor.getUncompressedLength(compressed));
+		assertObjects(source.getAll(TestObject.class, from, to).asList(), 50,
+				100);
+		Assert.assertEquals(1, cache.getHitCount());
+	}
+
+}
@@ -0,0 +1,224 @@
+/**
+ * SegmentCatalogTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class SegmentCatalogTest {
+
+	private static final long minute = 60000;
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	private File catalogFile = new File(objectLoggerPath, "test.catalog");
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		FileUtils.forceMkdir(objectLoggerPath);
+	}
+
+	private SegmentCatalog newCatalog() {
+		return new SegmentCatalog(catalogFile,
+				new SegmentCatalog.ISegmentScanner() {
+					@Override
+					public List<SegmentCatalog.Segment> scan() {
+						return Collections.emptyList();
+					}
+				});
+	}
+
+	private void addSegment(SegmentCatalog catalog, String name, long start,
+			long first, long last) throws IOException {
+		catalog.opened(new File(objectLoggerPath, name), start);
+		catalog.written(10, first, last);
+		catalog.closed(100);
+	}
+
+	private List<String> names(List<SegmentCatalog.Segment> segments) {
+		List<String> names = new ArrayList<String>();
+		for (SegmentCatalog.Segment segment : segments) {
+			names.add(segment.getFile().getName());
+		}
+		return names;
+	}
+
+	@Test
+	public void testJournalIsReadByAnotherCatalog() throws Exception {
+		SegmentCatalog catalog = newCatalog();
+		addSegment(catalog, "a", 0, 10, 50000);
+		catalog.opened(new File(objectLoggerPath, "b"), minute);
+
+		SegmentCatalog reader = newCatalog();
+		List<SegmentCatalog.Segment> segments = reader.getSegments();
+		Assert.assertEquals(2, segments.size());
+		SegmentCatalog.Segment a = segments.get(0);
+		Assert.assertEquals("a", a.getFile().getName());
+		Assert.assertEquals(0, a.getStart());
+		Assert.assertEquals(10, a.getFirstLogTime());
+		Assert.assertEquals(50000, a.getLastLogTime());
+		Assert.assertEquals(10, a.getRecords());
+		Assert.assertEquals(100, a.getBytes());
+		Assert.assertTrue(a.isClosed());
+		Assert.assertFalse(segments.get(1).isClosed());
+
+		// Lines appended later are read in by the next query
+		catalog.written(5, minute, minute + 10);
+		catalog.closed(50);
+		SegmentCatalog.Segment b = reader.getSegments().get(1);
+		Assert.assertTrue(b.isClosed());
+		Assert.assertEquals(5, b.getRecords());
+		Assert.assertEquals(minute + 10, b.getLastLogTime());
+	}
+
+	@Test
+	public void testFind() throws Exception {
+		SegmentCatalog catalog = newCatalog();
+		addSegment(catalog, "a", 0, 0, 30000);
+		addSegment(catalog, "b", minute, minute, 3 * minute);
+		addSegment(catalog, "c", 5 * minute, 5 * minute, 6 * minute);
+
+		Assert.assertEquals(Collections.singletonList("a"),
+				names(catalog.find(0, minute)));
+		// b spans the start of the range
+		Assert.assertEquals(Arrays.asList("b", "c"),
+				names(catalog.find(2 * minute, 6 * minute)));
+		Assert.assertEquals(Collections.singletonList("b"),
+				names(catalog.find(2 * minute, 4 * minute)));
+		Assert.assertTrue(catalog.find(4 * minute, 5 * minute).isEmpty());
+		Assert.assertEquals(Arrays.asList("a", "b", "c"),
+				names(catalog.find(0, 10 * minute)));
+	}
+
+	@Test
+	public void testJournalIsCompacted() throws Exception {
+		SegmentCatalog catalog = newCatalog();
+		SegmentCatalog reader = newCatalog();
+		addSegment(catalog, "b", minute, minute, 2 * minute);
+		for (int i = 0; i < SegmentCatalog.minStaleLines; i++) {
+			addSegment(catalog, "a", 0, i, i + 1);
+			if (i % 100 == 0) {
+				Assert.assertEquals(2, reader.getSegments().size());
+			}
+		}
+		List<String> lines = FileUtils.readLines(catalogFile);
+		Assert.assertTrue(lines.size() < SegmentCatalog.minStaleLines);
+
+		List<SegmentCatalog.Segment> segments = reader.getSegments();
+		Assert.assertEquals(Arrays.asList("a", "b"), names(segments));
+		Assert.assertEquals(SegmentCatalog.minStaleLines - 1, segments.get(0)
+				.getFirstLogTime());
+		Assert.assertEquals(Arrays.asList("a", "b"),
+				names(newCatalog().getSegments()));
+	}
+
+	@Test
+	public void testDataSourceUsesCatalog() throws Exception {
+		final long now = System.currentTimeMillis() / minute * minute;
+		final Date[] current = { new Date(now - 10 * minute) };
+		final boolean[] roll = { false };
+		FileSystemDataSource source = newSource(current, roll);
+
+		source.persist(batch(now - 10 * minute, 0, 10));
+		current[0] = new Date(now - 5 * minute);
+		roll[0] = true;
+		source.persist(batch(now - 5 * minute, 10, 20));
+		source.close();
+
+		SegmentCatalog catalog = source.getCatalog();
+		Assert.assertTrue(catalog.getCatalogFile().exists());
+		List<SegmentCatalog.Segment> segments = catalog.getSegments();
+		Assert.assertEquals(2, segments.size());
+		Assert.assertEquals(now - 10 * minute, segments.get(0).getStart());
+		Assert.assertEquals(10, segments.get(0).getRecords());
+		Assert.assertEquals(now - 10 * minute + 9, segments.get(0)
+				.getLastLogTime());
+		Assert.assertEquals(segments.get(0).getFile().length(),
+				segments.get(0).getBytes());
+
+		Assert.assertEquals(20, source.getAll(TestObject.class,
+				new Date(now - 20 * minute), new Date(now)).size());
+		Assert.assertEquals(10, source.getAll(TestObject.class,
+				new Date(now - 6 * minute), new Date(now)).size());
+
+		// Rebuilt from the files when the catalog is lost
+		Assert.assertTrue(catalog.getCatalogFile().delete());
+		FileSystemDataSource rebuilt = newSource(current, roll);
+		segments = rebuilt.getCatalog().getSegments();
+		Assert.assertEquals(2, segments.size());
+		Assert.assertEquals(now - 10 * minute, segments.get(0).getStart());
+		Assert.assertEquals(now - 5 * minute - 1, segments.get(0)
+				.getLastLogTime());
+		Assert.assertEquals(-1, segments.get(0).getRecords());
+		Assert.assertEquals(20, rebuilt.getAll(TestObject.class,
+				new Date(now - 20 * minute), new Date(now)).size());
+	}
+
+	@Test
+	public void testFileStartIsTheInverseOfGetFile() {
+		FileSystemDataSource source = new FileSystemDataSource("test");
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		long start = System.currentTimeMillis() / minute * minute;
+		File file = source.getFile(new Date(start + 1234));
+		Assert.assertEquals(start, source.getFileStart(file));
+		Assert.assertEquals(start, source.getFileStart(SegmentCompressor
+				.getCompressedFile(file)));
+		Assert.assertEquals(-1, source.getFileStart(new File(file
+				.getParentFile(), "other.json")));
+	}
+
+	private FileSystemDataSource newSource(final Date[] current,
+			final boolean[] roll) {
+		FileSystemDataSource source = new FileSystemDataSource("test",
+				new IRollingStrategy() {
+					@Override
+					public void didRoll() {
+						roll[0] = false;
+					}
+
+					@Override
+					public boolean doRoll() {
+						return roll[0];
+					}
+				}, new TimestampedObjectNdjsonSerialiser()) {
+			@Override
+			public File getFile() {
+				return getFile(current[0]);
+			}
+		};
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.setSegmentCompressor(null);
+		return source;
+	}
+
+	private List<TimestampedObject<?>> batch(long logTime, int from, int to) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = from; i < to; i++) {
+			batch.add(new TimestampedObject<TestObject>(logTime + i - from,
+					new TestObject("" + i, "value" + i)));
+		}
+		return batch;
+	}
+
+}
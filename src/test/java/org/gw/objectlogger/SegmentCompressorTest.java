@@ -0,0 +1,135 @@
+/**
+ * SegmentCompressorTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class SegmentCompressorTest {
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+	}
+
+	private List<TimestampedObject<?>> batch(int from, int to) {
+		return batch(1000L, from, to);
+	}
+
+	private List<TimestampedObject<?>> batch(long logTime, int from, int to) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = from; i < to; i++) {
+			batch.add(new TimestampedObject<TestObject>(logTime + i,
+					new TestObject("" + i, "value" + i)));
+		}
+		return batch;
+	}
+
+	@Test
+	public void testCompressedFilesAreReadTransparently() throws Exception {
+		ITimestampedObjectSerialiser[] serialisers = {
+				new TimestampedObjectJsonSerialiser(),
+				new TimestampedObjectNdjsonSerialiser(),
+				new TimestampedObjectSmileSerialiser(),
+				new BlockCompressedSerialiser(
+						new TimestampedObjectSmileSerialiser()) };
+		SegmentCompressor compressor = new SegmentCompressor(0);
+		for (ITimestampedObjectSerialiser serialiser : serialisers) {
+			File file = new File(objectLoggerPath, "test."
+					+ serialiser.getExtension());
+			serialiser.open(file);
+			serialiser.write(batch(0, 100));
+			serialiser.close();
+
+			File compressed = compressor.compress(file);
+			Assert.assertEquals(SegmentCompressor.getCompressedFile(file),
+					compressed);
+			Assert.assertFalse(file.exists());
+			Assert.assertTrue(compressed.exists());
+			Assert.assertFalse(new File(compressed.getPath() + ".tmp")
+					.exists());
+			Assert.assertEquals(serialiser.getExtension(), 100, serialiser
+					.readAll(compressed, TestObject.class).size());
+		}
+	}
+
+	@Test
+	public void testThrottled() throws Exception {
+		File file = new File(objectLoggerPath, "big.data");
+		FileUtils.writeByteArrayToFile(file, new byte[1024 * 1024]);
+		long start = System.nanoTime();
+		// 1MB at 4MB a second
+		new SegmentCompressor(4 * 1024 * 1024).compress(file);
+		Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+				.toNanos(200));
+	}
+
+	@Test
+	public void testRolledFilesAreCompressed() throws Exception {
+		final long minute = 60000;
+		final long now = System.currentTimeMillis() / minute * minute;
+		final Date[] current = { new Date(now - 2 * minute) };
+		final boolean[] roll = { false };
+		FileSystemDataSource source = new FileSystemDataSource("test-gz",
+				new IRollingStrategy() {
+					@Override
+					public void didRoll() {
+						roll[0] = false;
+					}
+
+					@Override
+					public boolean doRoll() {
+						return roll[0];
+					}
+				}, new TimestampedObjectNdjsonSerialiser()) {
+			@Override
+			public File getFile() {
+				return getFile(current[0]);
+			}
+		};
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		SegmentCompressor compressor = new SegmentCompressor(0);
+		source.setSegmentCompressor(compressor);
+
+		source.persist(batch(now - 2 * minute, 0, 10));
+		File first = source.getFile();
+
+		current[0] = new Date(now - minute);
+		roll[0] = true;
+		source.persist(batch(now - minute, 10, 20));
+		source.close();
+
+		compressor.shutdown();
+		Assert.assertTrue(compressor.awaitTermination(5, TimeUnit.SECONDS));
+		Assert.assertFalse(first.exists());
+		Assert.assertTrue(SegmentCompressor.getCompressedFile(first).exists());
+		// Closing is not rolling, the open file is left alone
+		Assert.assertTrue(source.getFile().exists());
+
+		Assert.assertEquals(20, source.getAll(TestObject.class,
+				new Date(now - 3 * minute), new Date(now + minute)).size());
+		Assert.assertEquals(10, source.getAll(TestObject.class, first).size());
+	}
+
+}
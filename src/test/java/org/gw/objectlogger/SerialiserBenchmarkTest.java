@@ -0,0 +1,107 @@
+/**
+ * SerialiserBenchmarkTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares write and read throughput and file size of the
+ * {@link ITimestampedObjectSerialiser}s against
+ * {@link TimestampedObjectJsonSerialiser}, writing batches of
+ * {@link TestObject}s. The number of objects is given by
+ * <code>-Dobject.logger.benchmark.objects</code> (default 200000).
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class SerialiserBenchmarkTest {
+
+	private final int objects = Integer.getInteger(
+			"object.logger.benchmark.objects", 200000);
+
+	private final int batchSize = 1000;
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	private List<TimestampedObject<?>> batch;
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		batch = new ArrayList<TimestampedObject<?>>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			batch.add(new TimestampedObject<TestObject>(1000L + i,
+					new TestObject("name" + i, "other value " + i)));
+		}
+	}
+
+	@Test
+	public void testJson() throws Exception {
+		benchmark(new TimestampedObjectJsonSerialiser());
+	}
+
+	@Test
+	public void testSmile() throws Exception {
+		benchmark(new TimestampedObjectSmileSerialiser());
+	}
+
+	@Test
+	public void testPojo() throws Exception {
+		benchmark(new TimestampedObjectPojoSerialiser<TestObject>(
+				new PojoCodec<TestObject>(TestObject.class, "name", "other")));
+	}
+
+	@Test
+	public void testBlockCompressedSmile() throws Exception {
+		benchmark(new BlockCompressedSerialiser(
+				new TimestampedObjectSmileSerialiser()));
+	}
+
+	private void benchmark(ITimestampedObjectSerialiser serialiser)
+			throws Exception {
+		// Warm up
+		for (int i = 0; i < 3; i++) {
+			run(serialiser, "warmup");
+		}
+		run(serialiser, "run");
+	}
+
+	private void run(ITimestampedObjectSerialiser serialiser, String name)
+			throws Exception {
+		File file = new File(objectLoggerPath, name + "."
+				+ serialiser.getExtension());
+		long start = System.nanoTime();
+		serialiser.open(file);
+		for (int written = 0; written < objects; written += batchSize) {
+			serialiser.write(batch);
+		}
+		serialiser.close();
+		long writeNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		int read = serialiser.readAll(file, TestObject.class).size();
+		long readNanos = System.nanoTime() - start;
+
+		if (!"warmup".equals(name)) {
+			System.out.println(String.format(
+					"%s: %d bytes/object, write %d objects/s, read %d objects/s",
+					serialiser.getClass().getSimpleName(), file.length()
+							/ objects, objects * 1000000000L / writeNanos,
+					read * 1000000000L / readNanos));
+		}
+	}
+
+}
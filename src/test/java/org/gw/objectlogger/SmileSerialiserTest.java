@@ -0,0 +1,142 @@
+/**
+ * SmileSerialiserTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class SmileSerialiserTest {
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+	private File file;
+	private TimestampedObjectSmileSerialiser serialiser;
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		file = new File(objectLoggerPath, "test.smile");
+		serialiser = new TimestampedObjectSmileSerialiser();
+	}
+
+	private List<TimestampedObject<?>> batch(int from, int to) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = from; i < to; i++) {
+			batch.add(new TimestampedObject<TestObject>(1000L + i,
+					new TestObject("" + i, "value" + i)));
+		}
+		return batch;
+	}
+
+	private void assertNames(int count) throws Exception {
+		List<TimestampedObject<TestObject>> read = new ArrayList<TimestampedObject<TestObject>>();
+		ITimestampedObjectCursor<TestObject> cursor = serialiser.openCursor(
+				file, TestObject.class);
+		try {
+			while (cursor.hasNext()) {
+				read.add(cursor.next());
+			}
+		} finally {
+			cursor.close();
+		}
+		Assert.assertEquals(count, read.size());
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals(1000L + i, read.get(i).getLogTimeMillis());
+			Assert.assertEquals("" + i, read.get(i).getObj().name);
+		}
+	}
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		serialiser.open(file);
+		List<TimestampedObject<?>> batch = batch(0, 5);
+		serialiser.write(batch.get(0));
+		serialiser.write(batch.subList(1, 5));
+		serialiser.close();
+
+		Assert.assertEquals(file.length(), serialiser.getBytesWritten());
+		assertNames(5);
+		Assert.assertEquals(5, serialiser.readAll(file, TestObject.class)
+				.size());
+	}
+
+	@Test
+	public void testWriteEncoded() throws Exception {
+		List<TimestampedObject<?>> batch = batch(0, 5);
+		List<byte[]> encoded = new ArrayList<byte[]>();
+		for (TimestampedObject<?> object : batch) {
+			encoded.add(serialiser.getEncoder().encode(object));
+		}
+		serialiser.open(file);
+		serialiser.writeEncoded(batch, encoded);
+		serialiser.close();
+		assertNames(5);
+	}
+
+	@Test
+	public void testSmallerThanJson() throws Exception {
+		serialiser.open(file);
+		serialiser.write(batch(0, 100));
+		serialiser.close();
+
+		File json = new File(objectLoggerPath, "test.json");
+		TimestampedObjectJsonSerialiser jsonSerialiser = new TimestampedObjectJsonSerialiser();
+		jsonSerialiser.open(json);
+		jsonSerialiser.write(batch(0, 100));
+		jsonSerialiser.close();
+		Assert.assertTrue(file.length() < json.length());
+	}
+
+	@Test
+	public void testTruncatedLastRecord() throws Exception {
+		serialiser.open(file);
+		serialiser.write(batch(0, 3));
+		serialiser.close();
+		long complete = file.length();
+
+		// The process died mid-write
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write(new byte[] { 0, 0, 0, 100, 1, 2, 3 });
+		out.close();
+		assertNames(3);
+
+		// Appending cuts off the truncated record first
+		serialiser.open(file);
+		Assert.assertEquals(complete, file.length());
+		serialiser.write(batch(3, 5));
+		serialiser.close();
+		assertNames(5);
+	}
+
+	@Test
+	public void testFileSystemDataSource() throws Exception {
+		FileSystemDataSource source = new FileSystemDataSource("test-smile",
+				new MinuteRollingStrategy(1), serialiser);
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.persist(batch(0, 10));
+		source.persist(batch(10, 11).get(0));
+		source.close();
+
+		Assert.assertTrue(source.getFile().getName().endsWith(".smile"));
+		List<TestObject> read = source.getAll(TestObject.class).asList();
+		Assert.assertEquals(11, read.size());
+	}
+
+}
@@ -0,0 +1,157 @@
+/**
+ * StreamTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class StreamTest {
+
+	private static final long minute = 60000;
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		FileUtils.forceMkdir(objectLoggerPath);
+	}
+
+	@Test
+	public void testFilesAreStreamedInOrder() throws Exception {
+		ITimestampedObjectSerialiser[] serialisers = {
+				new TimestampedObjectJsonSerialiser(),
+				new TimestampedObjectNdjsonSerialiser(),
+				new TimestampedObjectSmileSerialiser() };
+		for (ITimestampedObjectSerialiser serialiser : serialisers) {
+			init();
+			long now = System.currentTimeMillis() / minute * minute;
+			FileSystemDataSource source = write(serialiser, now - 3 * minute,
+					3, 100);
+
+			// Starts in the first file and ends in the last
+			Date from = new Date(now - 3 * minute + 50);
+			Date to = new Date(now - minute + 50);
+			ITimestampedObjectCursor<TestObject> cursor = source.stream(
+					TestObject.class, from, to);
+			List<Long> logTimes = new ArrayList<Long>();
+			try {
+				while (cursor.hasNext()) {
+					TimestampedObject<TestObject> object = cursor.next();
+					logTimes.add(object.getLogTimeMillis());
+					Assert.assertNotNull(object.getObj().name);
+				}
+			} finally {
+				cursor.close();
+			}
+			String extension = serialiser.getExtension();
+			Assert.assertEquals(extension, 200, logTimes.size());
+			for (int i = 1; i < logTimes.size(); i++) {
+				Assert.assertTrue(extension,
+						logTimes.get(i - 1) < logTimes.get(i));
+			}
+			Assert.assertEquals(extension, from.getTime(), logTimes.get(0)
+					.longValue());
+			Assert.assertEquals(extension, 200,
+					source.getAll(TestObject.class, from, to).size());
+		}
+	}
+
+	@Test
+	public void testClosedStreamHasNoMore() throws Exception {
+		long now = System.currentTimeMillis() / minute * minute;
+		FileSystemDataSource source = write(
+				new TimestampedObjectJsonSerialiser(), now - 3 * minute, 3, 100);
+		ITimestampedObjectCursor<TestObject> cursor = source.stream(
+				TestObject.class, new Date(now - 3 * minute), new Date(now));
+		Assert.assertTrue(cursor.hasNext());
+		cursor.next();
+		cursor.close();
+		Assert.assertFalse(cursor.hasNext());
+	}
+
+	@Test
+	public void testByteArraysAreStreamed() throws Exception {
+		TimestampedByteArraySerialiser serialiser = new TimestampedByteArraySerialiser();
+		File file = new File(objectLoggerPath, "test."
+				+ serialiser.getExtension());
+		serialiser.open(file);
+		for (int i = 0; i < 100; i++) {
+			serialiser.write(new TimestampedObject<byte[]>(i, new byte[] {
+					(byte) i, (byte) (i + 1) }));
+		}
+		serialiser.close();
+
+		ITimestampedObjectCursor<byte[]> cursor = serialiser.openCursor(file,
+				byte[].class);
+		try {
+			for (int i = 0; i < 100; i++) {
+				Assert.assertTrue(cursor.hasNext());
+				TimestampedObject<byte[]> object = cursor.next();
+				Assert.assertEquals(i, object.getLogTimeMillis());
+				Assert.assertArrayEquals(new byte[] { (byte) i, (byte) (i + 1) },
+						object.getObj());
+			}
+			Assert.assertFalse(cursor.hasNext());
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private FileSystemDataSource write(ITimestampedObjectSerialiser serialiser,
+			long start, int files, int records) throws Exception {
+		final Date[] current = { new Date(start) };
+		final boolean[] roll = { false };
+		FileSystemDataSource source = new FileSystemDataSource("test",
+				new IRollingStrategy() {
+					@Override
+					public void didRoll() {
+						roll[0] = false;
+					}
+
+					@Override
+					public boolean doRoll() {
+						return roll[0];
+					}
+				}, serialiser) {
+			@Override
+			public File getFile() {
+				return getFile(current[0]);
+			}
+		};
+		source.setFileSystemLoggerPath(objectLoggerPath.getAbsolutePath());
+		source.setSegmentCompressor(null);
+		for (int f = 0; f < files; f++) {
+			long logTime = start + f * minute;
+			current[0] = new Date(logTime);
+			roll[0] = f > 0;
+			List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+			for (int i = 0; i < records; i++) {
+				batch.add(new TimestampedObject<TestObject>(logTime + i,
+						new TestObject("" + i, "value" + i)));
+			}
+			source.persist(batch);
+		}
+		source.close();
+		return source;
+	}
+
+}
@@ -0,0 +1,186 @@
+/**
+ * TimeIndexTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ *
+ */
+public class TimeIndexTest {
+
+	private File objectLoggerPath = new File(FileUtils.getTempDirectoryPath()
+			+ File.separatorChar + getClass().getSimpleName());
+
+	@Before
+	public void init() throws IOException {
+		if (objectLoggerPath.exists()) {
+			FileUtils.forceDelete(objectLoggerPath);
+		}
+		FileUtils.forceMkdir(objectLoggerPath);
+	}
+
+	private ITimeIndexedSerialiser[] serialisers() {
+		return new ITimeIndexedSerialiser[] {
+				new TimestampedObjectNdjsonSerialiser(),
+				new TimestampedObjectSmileSerialiser(),
+				new BlockCompressedSerialiser(
+						new TimestampedObjectSmileSerialiser(), 4096, 1),
+				new TimestampedObjectJsonSerialiser(),
+				new TimestampedObjectJsonChannelSerialiser() };
+	}
+
+	private List<TimestampedObject<?>> batch(int from, int to) {
+		List<TimestampedObject<?>> batch = new ArrayList<TimestampedObject<?>>();
+		for (int i = from; i < to; i++) {
+			batch.add(new TimestampedObject<TestObject>(i, new TestObject(""
+					+ i, "value" + i)));
+		}
+		return batch;
+	}
+
+	private File write(ITimeIndexedSerialiser serialiser, int records)
+			throws Exception {
+		File file = new File(objectLoggerPath, "test."
+				+ serialiser.getExtension());
+		// The json serialisers share an extension
+		FileUtils.deleteQuietly(file);
+		FileUtils.deleteQuietly(TimeIndex.getIndexFile(file));
+		serialiser.open(file);
+		for (int i = 0; i < records; i += 100) {
+			serialiser.write(batch(i, i + 100));
+		}
+		serialiser.close();
+		return file;
+	}
+
+	private List<Long> read(ITimeIndexedSerialiser serialiser, File file,
+			long from, long to) throws IOException {
+		List<Long> logTimes = new ArrayList<Long>();
+		ITimestampedObjectCursor<TestObject> cursor = serialiser.openCursor(
+				file, TestObject.class, from, to);
+		try {
+			while (cursor.hasNext()) {
+				logTimes.add(cursor.next().getLogTimeMillis());
+			}
+		} finally {
+			cursor.close();
+		}
+		return logTimes;
+	}
+
+	private void assertRange(List<Long> logTimes, long from, long to) {
+		Assert.assertEquals(to - from, logTimes.size());
+		for (int i = 0; i < logTimes.size(); i++) {
+			Assert.assertEquals(from + i, logTimes.get(i).longValue());
+		}
+	}
+
+	private long partsLength(File file, long from, long to)
+			throws IOException {
+		long total = 0;
+		for (long[] part : TimeIndex.getParts(
+				TimeIndex.read(file, file.length()), file.length(), from, to)) {
+			total += part[1] - part[0];
+		}
+		return total;
+	}
+
+	@Test
+	public void testRangeReadsSeek() throws Exception {
+		for (ITimeIndexedSerialiser serialiser : serialisers()) {
+			File file = write(serialiser, 10000);
+			Assert.assertTrue(TimeIndex.getIndexFile(file).exists());
+			assertRange(read(serialiser, file, 5000, 5200), 5000, 5200);
+			assertRange(read(serialiser, file, 0, 10000), 0, 10000);
+			Assert.assertTrue(read(serialiser, file, 20000, 30000).isEmpty());
+			// Only the entries around the range are read
+			Assert.assertTrue(serialiser.getExtension(),
+					partsLength(file, 5000, 5200) * 4 < file.length());
+		}
+	}
+
+	@Test
+	public void testUnindexedPartsAreRead() throws Exception {
+		for (ITimeIndexedSerialiser serialiser : serialisers()) {
+			File file = write(serialiser, 5000);
+			// Written before there was an index
+			Assert.assertTrue(TimeIndex.getIndexFile(file).delete());
+			serialiser.open(file);
+			serialiser.write(batch(5000, 10000));
+			serialiser.close();
+			Assert.assertEquals(file.length(), partsLength(file, 0, 10000));
+			assertRange(read(serialiser, file, 4900, 5100), 4900, 5100);
+			assertRange(read(serialiser, file, 9000, 9500), 9000, 9500);
+		}
+	}
+
+	@Test
+	public void testEntriesBeyondTheFileAreDropped() throws Exception {
+		ITimeIndexedSerialiser serialiser = new TimestampedObjectSmileSerialiser();
+		File file = write(serialiser, 10000);
+		int entries = TimeIndex.read(file, file.length()).size();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(file.length() / 2);
+		} finally {
+			raf.close();
+		}
+		Assert.assertTrue(TimeIndex.read(file, file.length()).size() < entries);
+
+		serialiser.open(file);
+		serialiser.close();
+		Assert.assertEquals(TimeIndex.read(file, file.length()).size()
+				* TimeIndex.entryLength, TimeIndex.getIndexFile(file).length());
+	}
+
+	@Test
+	public void testOutOfOrderLogTimes() throws Exception {
+		TimeIndex index = new TimeIndex(new File(objectLoggerPath, "test"),
+				2, 1024);
+		index.open(0);
+		index.add(50, 10);
+		index.add(10, 20);
+		index.add(30, 30);
+		index.add(40, 40);
+		index.close();
+		List<TimeIndex.Entry> entries = TimeIndex.read(new File(
+				objectLoggerPath, "test"), 40);
+		Assert.assertEquals(2, entries.size());
+		Assert.assertEquals(10, entries.get(0).getFirstLogTime());
+		Assert.assertEquals(50, entries.get(0).getLastLogTime());
+		Assert.assertEquals(2, entries.get(0).getRecords());
+		Assert.assertEquals(20, entries.get(1).getStart());
+
+		Assert.assertEquals(1, TimeIndex.getParts(entries, 40, 45, 46).size());
+		Assert.assertEquals(0, TimeIndex.getParts(entries, 40, 45, 46).get(0)[0]);
+		Assert.assertEquals(20, TimeIndex.getParts(entries, 40, 45, 46).get(0)[1]);
+		Assert.assertEquals(40, TimeIndex.getParts(entries, 40, 0, 100).get(0)[1]);
+		Assert.assertTrue(TimeIndex.getParts(entries, 40, 60, 100).isEmpty());
+		// Not yet indexed
+		Assert.assertEquals(40, TimeIndex.getParts(entries, 50, 60, 100).get(0)[0]);
+	}
+
+	@Test
+	public void testCompressedFilesAreFiltered() throws Exception {
+		ITimeIndexedSerialiser serialiser = new TimestampedObjectNdjsonSerialiser();
+		File file = write(serialiser, 1000);
+		File compressed = new SegmentCompressor(0).compress(file);
+		Assert.assertFalse(TimeIndex.getIndexFile(file).exists());
+		assertRange(read(serialiser, compressed, 100, 200), 100, 200);
+	}
+
+}
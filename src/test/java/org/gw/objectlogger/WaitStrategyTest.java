@@ -0,0 +1,93 @@
+/**
+ * WaitStrategyTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time between an asynchronous log and the persist of the
+ * object for each {@link IWaitStrategy}.
+ * 
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class WaitStrategyTest {
+
+	private static final int samples = 50;
+
+	@Test
+	public void testBlockingLatency() throws InterruptedException {
+		long median = measureMedianLatencyNanos(new BlockingWaitStrategy());
+		assertFast("blocking", median);
+	}
+
+	@Test
+	public void testYieldingLatency() throws InterruptedException {
+		long median = measureMedianLatencyNanos(new YieldingWaitStrategy());
+		assertFast("yielding", median);
+	}
+
+	@Test
+	public void testBusySpinLatency() throws InterruptedException {
+		long median = measureMedianLatencyNanos(new BusySpinWaitStrategy());
+		assertFast("busy spin", median);
+	}
+
+	@Test
+	public void testSleepingLatency() throws InterruptedException {
+		long median = measureMedianLatencyNanos(new SleepingWaitStrategy(1, 10));
+		System.out.println("sleeping median latency: " + median + "ns");
+		Assert.assertTrue("Too slow. Expected max 20ms, but took " + median
+				+ "ns", median <= TimeUnit.MILLISECONDS.toNanos(20));
+	}
+
+	private void assertFast(String name, long median) {
+		System.out.println(name + " median latency: " + median + "ns");
+		// Sub millisecond on a quiet machine. Allow for a busy build server.
+		Assert.assertTrue("Too slow. Expected max 5ms, but took " + median
+				+ "ns", median <= TimeUnit.MILLISECONDS.toNanos(5));
+	}
+
+	/**
+	 * Logs <code>samples</code> objects one at a time, after letting the
+	 * worker go idle, and returns the median time from log to persist.
+	 */
+	private long measureMedianLatencyNanos(IWaitStrategy strategy)
+			throws InterruptedException {
+		DedicatedThreadWriterScheduler scheduler = new DedicatedThreadWriterScheduler(
+				strategy);
+		InMemoryDataSource source = new InMemoryDataSource();
+		ObjectLogger<TestObject> logger = new ObjectLogger<TestObject>(source) {
+		};
+		logger.setWriterScheduler(scheduler);
+
+		long[] latencies = new long[samples];
+		try {
+			for (int i = 0; i < samples; i++) {
+				// Let the worker go idle
+				Thread.sleep(5);
+				long start = System.nanoTime();
+				logger.log(new TestObject("" + i, "" + i));
+				Long persisted = source.getPersistTimes().poll(1,
+						TimeUnit.SECONDS);
+				Assert.assertNotNull("Object was not persisted within 1s",
+						persisted);
+				latencies[i] = persisted - start;
+			}
+			Assert.assertEquals(samples, source.getPersistedCount());
+		} finally {
+			scheduler.shutdown();
+		}
+
+		Arrays.sort(latencies);
+		return latencies[samples / 2];
+	}
+
+}
@@ -0,0 +1,162 @@
+/**
+ * WriterSchedulerTest.java (c) Copyright 2013 Graham Webber
+ */
+package org.gw.objectlogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gman
+ * @since 1.0
+ * @version 1.0
+ * 
+ */
+public class WriterSchedulerTest {
+
+	/**
+	 * An {@link InMemoryDataSource} which stalls in persist until released.
+	 */
+	private static class StallingDataSource extends InMemoryDataSource {
+		private final CountDownLatch stalled = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public void persist(List<TimestampedObject<?>> batch)
+				throws DataSourceException {
+			stalled.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			super.persist(batch);
+		}
+	}
+
+	@Test
+	public void testDedicatedSlowDataSourceDoesNotStallOthers()
+			throws InterruptedException {
+		assertSlowDataSourceDoesNotStallOthers(new DedicatedThreadWriterScheduler(
+				new BlockingWaitStrategy()));
+	}
+
+	@Test
+	public void testPooledSlowDataSourceDoesNotStallOthers()
+			throws InterruptedException {
+		assertSlowDataSourceDoesNotStallOthers(new PooledWriterScheduler(2));
+	}
+
+	private void assertSlowDataSourceDoesNotStallOthers(
+			IWriterScheduler scheduler) throws InterruptedException {
+		StallingDataSource slow = new StallingDataSource();
+		InMemoryDataSource fast = new InMemoryDataSource();
+		ObjectLogger<TestObject> slowLogger = createLogger(slow, scheduler);
+		ObjectLogger<TestObject> fastLogger = createLogger(fast, scheduler);
+
+		try {
+			slowLogger.log(new TestObject("slow", "slow"));
+			Assert.assertTrue(slow.stalled.await(1, TimeUnit.SECONDS));
+
+			fastLogger.log(new TestObject("fast", "fast"));
+			Assert.assertNotNull("The fast data source was stalled",
+					fast.getPersistTimes().poll(1, TimeUnit.SECONDS));
+		} finally {
+			slow.release.countDown();
+			scheduler.shutdown();
+		}
+	}
+
+	/**
+	 * Registers and unregisters loggers on a few data sources from many
+	 * threads while they log. Everything logged while registered must be
+	 * persisted.
+	 */
+	@Test
+	public void testPooledManyLoggers() throws InterruptedException {
+		assertManyLoggers(new PooledWriterScheduler(4));
+	}
+
+	@Test
+	public void testDedicatedManyLoggers() throws InterruptedException {
+		assertManyLoggers(new DedicatedThreadWriterScheduler(
+				new BlockingWaitStrategy()));
+	}
+
+	private void assertManyLoggers(final IWriterScheduler scheduler)
+			throws InterruptedException {
+		final int dataSources = 4;
+		final int loggersPerDataSource = 25;
+		final int perLogger = 200;
+		final List<InMemoryDataSource> sources = new ArrayList<InMemoryDataSource>();
+		for (int i = 0; i < dataSources; i++) {
+			sources.add(new InMemoryDataSource());
+		}
+
+		final CountDownLatch done = new CountDownLatch(dataSources
+				* loggersPerDataSource);
+		for (int i = 0; i < dataSources * loggersPerDataSource; i++) {
+			final InMemoryDataSource source = sources.get(i % dataSources);
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					ObjectLogger<TestObject> logger = createLogger(source,
+							scheduler);
+					for (int j = 0; j < perLogger; j++) {
+						logger.log(new TestObject("" + j, "" + j));
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+		try {
+			for (InMemoryDataSource source : sources) {
+				long deadline = System.currentTimeMillis() + 5000;
+				while (source.getPersistedCount() < loggersPerDataSource
+						* perLogger
+						&& System.currentTimeMillis() < deadline) {
+					Thread.sleep(10);
+				}
+				Assert.assertEquals(loggersPerDataSource * perLogger,
+						source.getPersistedCount());
+			}
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testUnregisterRemovesLane() {
+		DedicatedThreadWriterScheduler scheduler = new DedicatedThreadWriterScheduler(
+				new BlockingWaitStrategy());
+		InMemoryDataSource source = new InMemoryDataSource();
+		ObjectLogger<TestObject> logger1 = createLogger(source, scheduler);
+		ObjectLogger<TestObject> logger2 = createLogger(source, scheduler);
+		ObjectLogger<TestObject> logger3 = createLogger(
+				new InMemoryDataSource(), scheduler);
+		Assert.assertEquals(2, scheduler.getLaneCount());
+
+		logger1.destroy();
+		Assert.assertEquals(2, scheduler.getLaneCount());
+		logger2.destroy();
+		Assert.assertEquals(1, scheduler.getLaneCount());
+		logger3.destroy();
+		Assert.assertEquals(0, scheduler.getLaneCount());
+	}
+
+	private ObjectLogger<TestObject> createLogger(IDataSource source,
+			IWriterScheduler scheduler) {
+		ObjectLogger<TestObject> logger = new ObjectLogger<TestObject>(source) {
+		};
+		logger.setWriterScheduler(scheduler);
+		return logger;
+	}
+
+}